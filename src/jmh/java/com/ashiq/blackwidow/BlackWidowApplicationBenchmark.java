@@ -0,0 +1,73 @@
+package com.ashiq.blackwidow;
+
+import com.ashiq.blackwidow.payload.ScrapedPage;
+import com.ashiq.blackwidow.service.CorpusJsoupService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks printing the results tree of a crawl.
+ * The tree holds the URLs of the corpus article sitemap grouped by section and year, so it is about a thousand
+ * pages over four levels. Log output is discarded by logback-benchmark.xml, but every line is still formatted.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BlackWidowApplicationBenchmark {
+
+    private final BlackWidowApplication application = new BlackWidowApplication();
+    private ScrapedPage root;
+
+    @Setup
+    public void setUp() {
+        String sitemap = new String(CorpusJsoupService.read("sitemaps/sitemap-articles.xml"), StandardCharsets.UTF_8);
+
+        // Group the article URLs by their /<section>/<year>/ prefix
+        Map<String, Map<String, List<ScrapedPage>>> sections = new LinkedHashMap<>();
+        for (String line : sitemap.split("\n")) {
+            line = line.trim();
+            if (!line.startsWith("<loc>")) {
+                continue;
+            }
+            String url = line.substring("<loc>".length(), line.length() - "</loc>".length());
+            String[] segments = URI.create(url).getPath().split("/");
+            String section = CorpusJsoupService.BASE_URL + "/" + segments[1] + "/";
+            String year = section + segments[2] + "/";
+            sections.computeIfAbsent(section, k -> new LinkedHashMap<>())
+                    .computeIfAbsent(year, k -> new ArrayList<>())
+                    .add(new ScrapedPage(url, List.of()));
+        }
+
+        List<ScrapedPage> sectionPages = new ArrayList<>();
+        sections.forEach((section, years) -> {
+            List<ScrapedPage> yearPages = new ArrayList<>();
+            years.forEach((year, articles) -> yearPages.add(new ScrapedPage(year, articles)));
+            sectionPages.add(new ScrapedPage(section, yearPages));
+        });
+        root = new ScrapedPage(CorpusJsoupService.BASE_URL, sectionPages);
+    }
+
+    @Benchmark
+    public void printResults() {
+        application.printResults(root, 0);
+    }
+}
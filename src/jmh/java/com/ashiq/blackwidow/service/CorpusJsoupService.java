@@ -0,0 +1,116 @@
+package com.ashiq.blackwidow.service;
+
+import org.jsoup.HttpStatusException;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JsoupService serving pages from the offline benchmark corpus instead of the network.
+ * Corpus files are read into memory up front, so benchmarks measure parsing and not I/O.
+ */
+public class CorpusJsoupService extends JsoupService {
+
+    /**
+     * The site every corpus file pretends to come from.
+     */
+    public static final String BASE_URL = "https://www.example.com";
+
+    private final Map<String, byte[]> pages = new HashMap<>();
+
+    public CorpusJsoupService() {
+        super(null, null, null);
+    }
+
+    /**
+     * Serves a corpus file at a URL.
+     *
+     * @param url      The URL
+     * @param resource The path of the file in the corpus, like {@code html/news.html}
+     * @return This service
+     */
+    public CorpusJsoupService add(String url, String resource) {
+        pages.put(url, read(resource));
+        return this;
+    }
+
+    /**
+     * Reads a corpus file.
+     *
+     * @param resource The path of the file in the corpus, like {@code html/news.html}
+     * @return The content of the file
+     */
+    public static byte[] read(String resource) {
+        try (InputStream in = CorpusJsoupService.class.getResourceAsStream("/corpus/" + resource)) {
+            if (in == null) {
+                throw new IllegalArgumentException("No such corpus file: " + resource);
+            }
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Gets the absolute http(s) links of a corpus page, as a crawler would find them on the site.
+     *
+     * @param resource The path of the page in the corpus
+     * @return The links, in page order
+     */
+    public static List<String> links(String resource) {
+        Document doc = Jsoup.parse(new String(read(resource), StandardCharsets.UTF_8), BASE_URL + "/");
+        List<String> links = new ArrayList<>();
+        for (Element link : doc.select("a[href]")) {
+            String href = link.attr("abs:href");
+            if (href.startsWith("http")) {
+                links.add(href);
+            }
+        }
+        return links;
+    }
+
+    @Override
+    public Document getDocument(String url) throws IOException {
+        return Jsoup.parse(new ByteArrayInputStream(content(url)), "UTF-8", url);
+    }
+
+    @Override
+    public Reader getPageReader(String url) throws IOException {
+        return new InputStreamReader(new ByteArrayInputStream(content(url)), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public Document getContentTypeAgnosticDocument(String url) throws IOException {
+        return getDocument(url);
+    }
+
+    @Override
+    public String getRawContent(String url) throws IOException {
+        return new String(content(url), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public InputStream getContentStream(String url) throws IOException {
+        return new ByteArrayInputStream(content(url));
+    }
+
+    private byte[] content(String url) throws IOException {
+        byte[] content = pages.get(url);
+        if (content == null) {
+            throw new HttpStatusException("HTTP error fetching URL", 404, url);
+        }
+        return content;
+    }
+}
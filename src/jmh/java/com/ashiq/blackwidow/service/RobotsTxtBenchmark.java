@@ -0,0 +1,65 @@
+package com.ashiq.blackwidow.service;
+
+import com.ashiq.blackwidow.config.ScraperConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks parsing robots.txt and evaluating its rules.
+ * {@code isAllowed} checks every link of the corpus front page per operation, with and without the verdict
+ * cache, which the links of a front page mostly hit after the first operation; {@code parse} parses the
+ * whole file, including its sitemap directives, as {@link RobotsTxtService} does once per host.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RobotsTxtBenchmark {
+
+    @Param({"simple.txt", "large.txt"})
+    public String robotsTxt;
+
+    @Param({"0", "1024"})
+    public int verdictCacheSize;
+
+    private String content;
+    private String userAgent;
+    private RobotsTxtAdapter rules;
+    private String[] urls;
+
+    @Setup
+    public void setUp() {
+        content = new String(CorpusJsoupService.read("robots/" + robotsTxt), StandardCharsets.UTF_8);
+        userAgent = new ScraperConfig().getUserAgent();
+        rules = new RobotsTxtAdapter(content, userAgent, verdictCacheSize);
+        urls = CorpusJsoupService.links("html/news.html").toArray(String[]::new);
+    }
+
+    @Benchmark
+    public List<String> parse() {
+        return new RobotsTxtAdapter(content, userAgent).getSitemaps();
+    }
+
+    @Benchmark
+    public void isAllowed(Blackhole blackhole) {
+        for (String url : urls) {
+            blackhole.consume(rules.isAllowed(url));
+        }
+    }
+}
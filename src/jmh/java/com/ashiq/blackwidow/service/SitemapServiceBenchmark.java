@@ -0,0 +1,55 @@
+package com.ashiq.blackwidow.service;
+
+import com.ashiq.blackwidow.config.ScraperConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks streaming the URLs out of sitemaps: a single large urlset, and a sitemap index whose
+ * children (two urlsets and a text sitemap) are read in parallel.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SitemapServiceBenchmark {
+
+    private static final String INDEX_URL = CorpusJsoupService.BASE_URL + "/sitemap-index.xml";
+    private static final String ARTICLES_URL = CorpusJsoupService.BASE_URL + "/sitemap-articles.xml";
+
+    private SitemapService sitemapService;
+
+    @Setup
+    public void setUp() {
+        CorpusJsoupService jsoupService = new CorpusJsoupService();
+        for (String sitemap : List.of("sitemap-index.xml", "sitemap-articles.xml", "sitemap-sections.xml",
+                "sitemap-pages.txt")) {
+            jsoupService.add(CorpusJsoupService.BASE_URL + "/" + sitemap, "sitemaps/" + sitemap);
+        }
+        sitemapService = new SitemapService(jsoupService, new ScraperConfig());
+    }
+
+    @Benchmark
+    public long urlset(Blackhole blackhole) {
+        return sitemapService.streamSitemaps(List.of(ARTICLES_URL), blackhole::consume);
+    }
+
+    @Benchmark
+    public long sitemapIndex(Blackhole blackhole) {
+        return sitemapService.streamSitemaps(List.of(INDEX_URL), blackhole::consume);
+    }
+}
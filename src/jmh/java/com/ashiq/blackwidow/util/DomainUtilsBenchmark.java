@@ -0,0 +1,70 @@
+package com.ashiq.blackwidow.util;
+
+import com.ashiq.blackwidow.config.ScraperConfig;
+import com.ashiq.blackwidow.metrics.CrawlMetrics;
+import com.ashiq.blackwidow.service.CorpusJsoupService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the domain checks run for every link found during a crawl.
+ * Each operation checks every link of the corpus front page, as crawling that page would.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DomainUtilsBenchmark {
+
+    private String[] urls;
+    private URI[] uris;
+    private String domain;
+    private DomainMatcher domainMatcher;
+
+    @Setup
+    public void setUp() {
+        List<String> links = CorpusJsoupService.links("html/news.html");
+        urls = links.toArray(String[]::new);
+        uris = links.stream().map(URI::create).toArray(URI[]::new);
+        domain = DomainUtils.extractDomain(URI.create(CorpusJsoupService.BASE_URL));
+        ScraperConfig config = new ScraperConfig();
+        domainMatcher = new DomainMatcher(domain, new DomainCache(config, new CrawlMetrics(new SimpleMeterRegistry(), config)));
+    }
+
+    @Benchmark
+    public void extractDomain(Blackhole blackhole) {
+        for (URI uri : uris) {
+            blackhole.consume(DomainUtils.extractDomain(uri));
+        }
+    }
+
+    @Benchmark
+    public void isSameDomain(Blackhole blackhole) throws Exception {
+        for (URI uri : uris) {
+            blackhole.consume(DomainUtils.isSameDomain(uri, domain));
+        }
+    }
+
+    @Benchmark
+    public void domainMatcher(Blackhole blackhole) {
+        for (String url : urls) {
+            blackhole.consume(domainMatcher.matchesUrl(url));
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.ashiq.blackwidow.util;
+
+import com.ashiq.blackwidow.config.ScraperConfig;
+import com.ashiq.blackwidow.metrics.CrawlMetrics;
+import com.ashiq.blackwidow.service.CorpusJsoupService;
+import com.ashiq.blackwidow.service.RobotsTxtAdapter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks extracting the same-domain links of a page, including parsing the page and checking every
+ * link against a large robots.txt, with both link extraction strategies.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LinkUtilsBenchmark {
+
+    @Param({"news.html", "article.html", "minimal.html"})
+    public String page;
+
+    @Param({"JSOUP", "STREAMING"})
+    public ScraperConfig.LinkExtraction linkExtraction;
+
+    private LinkUtils linkUtils;
+    private String url;
+    private DomainMatcher domainMatcher;
+    private RobotsTxtAdapter robotsTxt;
+
+    @Setup
+    public void setUp() {
+        ScraperConfig config = new ScraperConfig();
+        config.setLinkExtraction(linkExtraction);
+
+        url = CorpusJsoupService.BASE_URL + "/" + page;
+        CrawlMetrics metrics = new CrawlMetrics(new SimpleMeterRegistry(), config);
+        linkUtils = new LinkUtils(new CorpusJsoupService().add(url, "html/" + page), config, metrics);
+        domainMatcher = DomainMatcher.forRoot(URI.create(url), new DomainCache(config, metrics));
+        robotsTxt = new RobotsTxtAdapter(
+                new String(CorpusJsoupService.read("robots/large.txt"), StandardCharsets.UTF_8), config.getUserAgent());
+    }
+
+    @Benchmark
+    public List<String> getLinksFromSameDomain() throws Exception {
+        return linkUtils.getLinksFromSameDomain(url, domainMatcher, robotsTxt::isAllowed);
+    }
+}
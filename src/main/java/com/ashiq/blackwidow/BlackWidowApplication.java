@@ -1,6 +1,16 @@
 package com.ashiq.blackwidow;
 
+import com.ashiq.blackwidow.cluster.ClusterCoordinator;
+import com.ashiq.blackwidow.cluster.ClusterWorker;
+import com.ashiq.blackwidow.config.ScraperConfig;
+import com.ashiq.blackwidow.fetch.DnsCache;
+import com.ashiq.blackwidow.graph.LinkGraph;
+import com.ashiq.blackwidow.metrics.CrawlMetrics;
+import com.ashiq.blackwidow.output.ResultSink;
+import com.ashiq.blackwidow.output.StreamingResultSink;
 import com.ashiq.blackwidow.payload.ScrapedPage;
+import com.ashiq.blackwidow.service.BatchCrawler;
+import com.ashiq.blackwidow.service.RobotsTxtService;
 import com.ashiq.blackwidow.service.WebScraper;
 import com.ashiq.blackwidow.validator.InputProcessor;
 import lombok.extern.slf4j.Slf4j;
@@ -9,8 +19,13 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.List;
 
 @Slf4j
@@ -22,33 +37,120 @@ public class BlackWidowApplication {
 	}
 
 	@Bean
-	public CommandLineRunner commandLineRunner(WebScraper webScraper, InputProcessor inputProcessor) {
+	public CommandLineRunner commandLineRunner(WebScraper webScraper, BatchCrawler batchCrawler, InputProcessor inputProcessor,
+			CrawlMetrics crawlMetrics, ScraperConfig config, ClusterCoordinator clusterCoordinator,
+			RobotsTxtService robotsTxtService, DnsCache dnsCache) {
 		return args -> {
-			String url;
+			String url = null;
+			String resumeDir = null;
+			String seedsFile = null;
+			boolean worker = false;
+
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].equals("--resume") && i + 1 < args.length) {
+					resumeDir = args[++i];
+				} else if (args[i].equals("--batch") && i + 1 < args.length) {
+					seedsFile = args[++i];
+				} else if (args[i].equals("--worker")) {
+					worker = true;
+				} else if (url == null && !args[i].startsWith("--")) {
+					url = args[i];
+				}
+			}
 
-			if (args.length < 1) {
-				log.info("Usage: java -jar black-widow.jar <url>");
-				log.info("  <url>   - The URL to scrape");
+			if (worker) {
+				// Keeps the process running, waiting for a coordinator to hand it a share of a crawl
+				new ClusterWorker(webScraper, robotsTxtService, dnsCache, config, crawlMetrics, config.getClusterPort());
 				return;
 			}
 
-			url = args[0];
+			long start = System.nanoTime();
+
+			if (seedsFile != null) {
+				// A seed file of "-" means the seeds are piped in
+				try (BufferedReader seeds = seedsFile.equals("-")
+						? new BufferedReader(new InputStreamReader(System.in))
+						: Files.newBufferedReader(Path.of(seedsFile))) {
+					log.info("Crawling the seeds in {}...", seedsFile.equals("-") ? "stdin" : seedsFile);
+					batchCrawler.crawl(seeds);
+				} catch (IOException e) {
+					log.error("Error running the batch crawl: {}", e.getMessage());
+				}
+				crawlMetrics.logSummary(Duration.ofNanos(System.nanoTime() - start));
+				return;
+			}
 
-			URI uri = inputProcessor.processUrl(url);
-			if(uri == null) {
-				log.error("There was a problem processing the URL: {}", url);
+			if (url == null && resumeDir == null) {
+				log.info("No URL given, accepting crawl jobs at /api/jobs");
+				log.info("Usage: java -jar black-widow.jar <url>");
+				log.info("       java -jar black-widow.jar --resume <dir>");
+				log.info("       java -jar black-widow.jar --batch <file>");
+				log.info("       java -jar black-widow.jar --worker");
+				log.info("  <url>   - The URL to scrape");
+				log.info("  <dir>   - The checkpoint directory of an interrupted crawl to continue");
+				log.info("  <file>  - A file of seed URLs to crawl, one per line, or - to read them from stdin");
+				log.info("  --worker - Wait on scraper.cluster-port for a share of a distributed crawl");
 				return;
 			}
 
+			URI uri = null;
+			if (resumeDir == null) {
+				uri = inputProcessor.processUrl(url);
+				if(uri == null) {
+					log.error("There was a problem processing the URL: {}", url);
+					return;
+				}
+			}
+
 			try {
-				// Perform the scraping
-				log.info("Scraping {}...", url);
-				ScrapedPage scrapedPage = webScraper.scrape(uri);
+				if (resumeDir == null && !config.getClusterWorkers().isEmpty()) {
+					// The tree can't be rebuilt from the workers' pages, so they are always streamed
+					try (ResultSink sink = StreamingResultSink.open(config)) {
+						log.info("Scraping {} on {} workers...", url, config.getClusterWorkers().size());
+						clusterCoordinator.crawl(uri, sink);
+					}
+					// Pages were fetched by the workers, whose metrics are on their own Actuator endpoints
+					return;
+				}
+
+				if (config.getOutputFormat() != ScraperConfig.OutputFormat.TREE) {
+					// Stream each page out as it is crawled instead of building the tree
+					try (ResultSink sink = StreamingResultSink.open(config)) {
+						if (resumeDir != null) {
+							log.info("Resuming crawl from {}...", resumeDir);
+							webScraper.resume(Path.of(resumeDir), sink);
+						} else {
+							log.info("Scraping {}...", url);
+							webScraper.scrape(uri, sink);
+						}
+					}
+					crawlMetrics.logSummary(Duration.ofNanos(System.nanoTime() - start));
+					return;
+				}
+
+				ScrapedPage scrapedPage;
+				if (resumeDir != null) {
+					log.info("Resuming crawl from {}...", resumeDir);
+					scrapedPage = webScraper.resume(Path.of(resumeDir));
+				} else {
+					// Perform the scraping
+					log.info("Scraping {}...", url);
+					scrapedPage = webScraper.scrape(uri);
+				}
+				Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
 
 				// Print the results
 				log.info("\nResults:");
 				printResults(scrapedPage, 0);
 
+				String graphFile = config.getGraphFile();
+				if (graphFile != null && !graphFile.isBlank()) {
+					LinkGraph graph = LinkGraph.fromScrapedPage(scrapedPage);
+					graph.write(Path.of(graphFile));
+					log.info("Saved link graph of {} pages and {} links to {}", graph.size(), graph.edgeCount(), graphFile);
+				}
+				crawlMetrics.logSummary(elapsed);
+
 			} catch (IOException e) {
 				log.error("Error connecting to or parsing the URL: {}", e.getMessage());
 			}
@@ -61,7 +163,7 @@ public class BlackWidowApplication {
 	 * @param rootPage The root ScrapedPage to print
 	 * @param rootLevel The starting indentation level
 	 */
-	private void printResults(ScrapedPage rootPage, int rootLevel) {
+	void printResults(ScrapedPage rootPage, int rootLevel) {
 		// Create a stack to hold pages to process along with their levels
 		java.util.Deque<Object[]> stack = new java.util.ArrayDeque<>();
 
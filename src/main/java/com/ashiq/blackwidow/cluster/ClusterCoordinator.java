@@ -0,0 +1,290 @@
+package com.ashiq.blackwidow.cluster;
+
+import com.ashiq.blackwidow.config.ScraperConfig;
+import com.ashiq.blackwidow.output.ResultSink;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.net.URI;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Coordinator of a distributed crawl, which splits a crawl between {@link ClusterWorker} processes and merges
+ * their results into one sink. It fetches nothing itself.
+ * <p>
+ * Every worker is told the seed URL and the list of workers, from which they all build the same {@link HashRing}
+ * of hosts. The worker owning the seed host starts the crawl, and URLs then flow between the workers directly.
+ * The coordinator polls the workers every {@code cluster-status-interval} and ends the crawl once two polls in a
+ * row find every worker idle, with as many URLs received as sent and no change in between, so no URL can still
+ * be on its way. This is the four-counter method of detecting termination. It also ends the crawl once the
+ * workers have reported {@code max-pages} pages; pages in progress then still finish, so a crawl may report up to
+ * {@code max-concurrency} more per worker. Losing the connection to a worker fails the crawl.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ClusterCoordinator {
+
+    private final ScraperConfig config;
+
+    /**
+     * Crawls a site on the configured workers, with the configured depth and page budgets.
+     *
+     * @param uri  The URI to scrape
+     * @param sink The sink to receive the results of all workers
+     * @return The number of pages crawled
+     * @throws IOException If a worker can't be reached or fails during the crawl
+     */
+    public int crawl(URI uri, ResultSink sink) throws IOException {
+        return crawl(uri, config.getClusterWorkers(), config.getMaxDepth(), config.getMaxPages(), sink);
+    }
+
+    /**
+     * Crawls a site on the given workers. Interrupting the calling thread stops the crawl: the workers finish the
+     * pages in progress, and the method returns with the interrupt flag set.
+     *
+     * @param uri      The URI to scrape
+     * @param workers  The addresses of the workers, as {@code host:port}
+     * @param maxDepth The maximum number of link hops from the seed page to follow
+     * @param maxPages The maximum number of pages to fetch, over all workers
+     * @param sink     The sink to receive the results of all workers
+     * @return The number of pages crawled
+     * @throws IOException If a worker can't be reached or fails during the crawl
+     */
+    public int crawl(URI uri, List<String> workers, int maxDepth, int maxPages, ResultSink sink) throws IOException {
+        if (workers.isEmpty()) {
+            throw new IllegalArgumentException("A distributed crawl needs at least one worker");
+        }
+        String seedUrl = uri.toURL().toString();
+        long crawlId = new SecureRandom().nextLong();
+        log.info("Starting distributed scrape of {} on {} workers", seedUrl, workers.size());
+
+        AtomicInteger pages = new AtomicInteger();
+        CountDownLatch budgetUsed = new CountDownLatch(1);
+        List<Connection> connections = new ArrayList<>(workers.size());
+        try {
+            for (String worker : workers) {
+                connections.add(new Connection(worker, config.getConnectTimeout(), sink, pages, maxPages, budgetUsed));
+            }
+            for (int i = 0; i < connections.size(); i++) {
+                connections.get(i).start(crawlId, i, workers, seedUrl, maxDepth, maxPages);
+            }
+
+            boolean cancelled = false;
+            boolean stop;
+            try {
+                stop = awaitEnd(connections, budgetUsed);
+            } catch (InterruptedException e) {
+                cancelled = true;
+                stop = true;
+            }
+            for (Connection connection : connections) {
+                connection.finish(stop);
+            }
+            int scheduled = 0;
+            for (Connection connection : connections) {
+                scheduled += connection.awaitDone();
+            }
+
+            if (cancelled) {
+                Thread.currentThread().interrupt();
+                log.info("Cancelled distributed scrape of {} after {} pages", seedUrl, pages.get());
+            } else {
+                log.info("Finished distributed scrape of {}: fetched {} pages on {} workers", seedUrl, scheduled,
+                        workers.size());
+            }
+            return pages.get();
+        } finally {
+            // Workers stop their share of the crawl when the coordinator goes away
+            for (Connection connection : connections) {
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * Polls the workers until they have run out of work or reported enough pages.
+     *
+     * @return True if the page budget is used up and the workers must stop, false if they ran out of work
+     */
+    private boolean awaitEnd(List<Connection> connections, CountDownLatch budgetUsed)
+            throws IOException, InterruptedException {
+        long[] previous = null;
+        while (!budgetUsed.await(Math.max(1, config.getClusterStatusInterval()), TimeUnit.MILLISECONDS)) {
+            for (Connection connection : connections) {
+                connection.requestStatus();
+            }
+            boolean idle = true;
+            long sent = 0;
+            long received = 0;
+            for (Connection connection : connections) {
+                Status status = connection.awaitStatus();
+                idle &= status.idle();
+                sent += status.sent();
+                received += status.received();
+            }
+
+            if (!idle || sent != received) {
+                previous = null;
+            } else if (previous != null && previous[0] == sent && previous[1] == received) {
+                return false;
+            } else {
+                previous = new long[]{sent, received};
+            }
+        }
+        return true;
+    }
+
+    private record Status(boolean idle, long sent, long received) {}
+
+    /**
+     * Connection to a worker, with a thread reading what it sends.
+     */
+    private static final class Connection implements Closeable {
+        private final String address;
+        private final ResultSink sink;
+        private final AtomicInteger pages;
+        private final int maxPages;
+        private final CountDownLatch budgetUsed;
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+        private final Lock lock = new ReentrantLock();
+        private final CompletableFuture<Integer> done = new CompletableFuture<>();
+        private volatile CompletableFuture<Status> status = new CompletableFuture<>();
+        private volatile IOException failure;
+
+        Connection(String address, int connectTimeout, ResultSink sink, AtomicInteger pages, int maxPages,
+                   CountDownLatch budgetUsed) throws IOException {
+            this.address = address;
+            this.sink = sink;
+            this.pages = pages;
+            this.maxPages = maxPages;
+            this.budgetUsed = budgetUsed;
+            try {
+                this.socket = ClusterProtocol.connect(address, connectTimeout);
+            } catch (IOException e) {
+                throw new IOException("Failed to connect to worker " + address + ": " + e.getMessage(), e);
+            }
+            this.in = ClusterProtocol.input(socket);
+            this.out = ClusterProtocol.output(socket);
+        }
+
+        void start(long crawlId, int index, List<String> workers, String seedUrl, int maxDepth, int maxPages)
+                throws IOException {
+            lock.lock();
+            try {
+                ClusterProtocol.writeStart(out, crawlId, index, workers, seedUrl, maxDepth, maxPages);
+            } finally {
+                lock.unlock();
+            }
+            Thread.ofVirtual().name("cluster-coordinator-" + address).start(this::read);
+        }
+
+        void requestStatus() throws IOException {
+            CompletableFuture<Status> next = new CompletableFuture<>();
+            status = next;
+            // The reader has stopped if the worker went away, and would never answer
+            IOException lost = failure;
+            if (lost != null) {
+                next.completeExceptionally(lost);
+                return;
+            }
+            send(ClusterProtocol.STATUS);
+        }
+
+        Status awaitStatus() throws IOException, InterruptedException {
+            return await(status);
+        }
+
+        void finish(boolean stop) throws IOException {
+            lock.lock();
+            try {
+                out.writeByte(ClusterProtocol.FINISH);
+                out.writeBoolean(stop);
+                out.flush();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int awaitDone() throws IOException {
+            try {
+                return await(done);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for worker " + address + " to finish");
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                log.debug("Failed to close the connection to worker {}: {}", address, e.getMessage());
+            }
+        }
+
+        private void send(byte type) throws IOException {
+            lock.lock();
+            try {
+                out.writeByte(type);
+                out.flush();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void read() {
+            try {
+                while (true) {
+                    byte type = in.readByte();
+                    if (type == ClusterProtocol.RESULT) {
+                        sink.accept(ClusterProtocol.readResult(in));
+                        if (pages.incrementAndGet() >= maxPages) {
+                            budgetUsed.countDown();
+                        }
+                    } else if (type == ClusterProtocol.STATUS_REPLY) {
+                        status.complete(new Status(in.readBoolean(), in.readLong(), in.readLong()));
+                    } else if (type == ClusterProtocol.DONE) {
+                        done.complete(in.readInt());
+                        return;
+                    } else {
+                        throw new IOException("Unexpected cluster message " + type);
+                    }
+                }
+            } catch (IOException e) {
+                IOException lost = new IOException("Lost the connection to worker " + address + ": "
+                        + e.getMessage(), e);
+                // Set before failing the current request, so a request made in between sees it
+                failure = lost;
+                status.completeExceptionally(lost);
+                done.completeExceptionally(lost);
+            }
+        }
+
+        private static <T> T await(CompletableFuture<T> future) throws IOException, InterruptedException {
+            try {
+                return future.get();
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+            }
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.ashiq.blackwidow.cluster;
+
+import com.ashiq.blackwidow.crawl.CrawlTask;
+import com.ashiq.blackwidow.payload.PageResult;
+import com.google.common.net.HostAndPort;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Wire format of the TCP connections of a distributed crawl. Every message is a type byte followed by its fields,
+ * written with {@link DataOutputStream}; strings are length-prefixed UTF-8, with a length of -1 for null.
+ * <p>
+ * The coordinator opens one connection to each worker and starts with {@link #START}. It then asks for
+ * {@link #STATUS} until the crawl is over, and ends it with {@link #FINISH}. The worker sends a {@link #RESULT}
+ * per page on the same connection, a {@link #STATUS_REPLY} per status request, and {@link #DONE} once its share
+ * of the crawl has stopped. Workers open one connection to each other worker they forward URLs to, which starts
+ * with {@link #PEER} and carries {@link #URLS} batches one way.
+ */
+final class ClusterProtocol {
+
+    /**
+     * Version sent with {@link #START}, changed whenever the format changes, so mismatched processes fail fast.
+     */
+    static final int VERSION = 1;
+
+    /**
+     * Starts a crawl: version, crawl id, worker index, worker addresses, seed URL, depth budget and page budget.
+     */
+    static final byte START = 1;
+
+    /**
+     * Asks a worker whether it is idle and how many URLs it has forwarded and received.
+     */
+    static final byte STATUS = 2;
+
+    /**
+     * Ends a worker's share of the crawl: whether to stop right away, or finish once idle.
+     */
+    static final byte FINISH = 3;
+
+    /**
+     * The result of a page.
+     */
+    static final byte RESULT = 4;
+
+    /**
+     * Answer to {@link #STATUS}: idle, URLs sent, URLs received.
+     */
+    static final byte STATUS_REPLY = 5;
+
+    /**
+     * The worker's share of the crawl has stopped: the number of pages it scheduled.
+     */
+    static final byte DONE = 6;
+
+    /**
+     * Opens a connection between workers: the crawl id.
+     */
+    static final byte PEER = 7;
+
+    /**
+     * A batch of forwarded URLs: their count, then the tasks.
+     */
+    static final byte URLS = 8;
+
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private ClusterProtocol() {
+    }
+
+    /**
+     * Opens a connection to a process of the cluster, with Nagle's algorithm off, since messages are flushed
+     * whole and a reply is often waited for.
+     *
+     * @param address        The address, as {@code host:port}
+     * @param connectTimeout How long (ms) to wait for the connection
+     * @return The connected socket
+     * @throws IOException If the process can't be reached
+     */
+    static Socket connect(String address, int connectTimeout) throws IOException {
+        HostAndPort hostAndPort = HostAndPort.fromString(address);
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(hostAndPort.getHost(), hostAndPort.getPort()), connectTimeout);
+            socket.setTcpNoDelay(true);
+            return socket;
+        } catch (IOException | RuntimeException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    static DataInputStream input(Socket socket) throws IOException {
+        return new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+    }
+
+    static DataOutputStream output(Socket socket) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE));
+    }
+
+    static void writeStart(DataOutputStream out, long crawlId, int index, List<String> workers, String seedUrl,
+                           int maxDepth, int maxPages) throws IOException {
+        out.writeByte(START);
+        out.writeInt(VERSION);
+        out.writeLong(crawlId);
+        out.writeInt(index);
+        out.writeInt(workers.size());
+        for (String worker : workers) {
+            writeString(out, worker);
+        }
+        writeString(out, seedUrl);
+        out.writeInt(maxDepth);
+        out.writeInt(maxPages);
+        out.flush();
+    }
+
+    static void writeTasks(DataOutputStream out, List<CrawlTask> tasks) throws IOException {
+        out.writeByte(URLS);
+        out.writeInt(tasks.size());
+        for (CrawlTask task : tasks) {
+            writeString(out, task.url());
+            out.writeInt(task.depth());
+            writeString(out, task.parent());
+            out.writeDouble(task.priority());
+            out.writeLong(task.lastModified() == null ? Long.MIN_VALUE : task.lastModified().toEpochMilli());
+        }
+        out.flush();
+    }
+
+    /**
+     * Reads a batch of tasks, after its {@link #URLS} type byte.
+     */
+    static List<CrawlTask> readTasks(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<CrawlTask> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String url = readString(in);
+            int depth = in.readInt();
+            String parent = readString(in);
+            double priority = in.readDouble();
+            long lastModified = in.readLong();
+            tasks.add(new CrawlTask(url, depth, parent, priority,
+                    lastModified == Long.MIN_VALUE ? null : Instant.ofEpochMilli(lastModified)));
+        }
+        return tasks;
+    }
+
+    static void writeResult(DataOutputStream out, PageResult result) throws IOException {
+        out.writeByte(RESULT);
+        writeString(out, result.url());
+        out.writeInt(result.depth());
+        writeString(out, result.parent());
+        out.writeInt(result.links().size());
+        for (String link : result.links()) {
+            writeString(out, link);
+        }
+        writeString(out, result.error());
+    }
+
+    /**
+     * Reads a page result, after its {@link #RESULT} type byte.
+     */
+    static PageResult readResult(DataInputStream in) throws IOException {
+        String url = readString(in);
+        int depth = in.readInt();
+        String parent = readString(in);
+        int count = in.readInt();
+        List<String> links = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            links.add(readString(in));
+        }
+        return new PageResult(url, depth, parent, links, readString(in));
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
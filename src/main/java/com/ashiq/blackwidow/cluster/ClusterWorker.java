@@ -0,0 +1,517 @@
+package com.ashiq.blackwidow.cluster;
+
+import com.ashiq.blackwidow.config.ScraperConfig;
+import com.ashiq.blackwidow.crawl.CrawlFrontier;
+import com.ashiq.blackwidow.crawl.CrawlPartition;
+import com.ashiq.blackwidow.crawl.CrawlTask;
+import com.ashiq.blackwidow.fetch.DnsCache;
+import com.ashiq.blackwidow.metrics.CrawlMetrics;
+import com.ashiq.blackwidow.output.ResultSink;
+import com.ashiq.blackwidow.payload.PageResult;
+import com.ashiq.blackwidow.service.RobotsTxtService;
+import com.ashiq.blackwidow.service.WebScraper;
+import com.ashiq.blackwidow.util.DomainUtils;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Worker process of a distributed crawl. It listens on a TCP port for a {@link ClusterCoordinator}, which tells
+ * it the seed URL and the addresses of all workers, and crawls the hosts a {@link HashRing} of those addresses
+ * assigns it, so each host is fetched, rate limited and checked against robots.txt by one worker only.
+ * <p>
+ * URLs found for other workers' hosts are collected per worker and sent to it in batches, once
+ * {@code cluster-batch-size} of them are waiting or every {@code cluster-flush-interval}. The owner checks them
+ * against robots.txt and adds the new ones to its frontier. Results are streamed to the coordinator as pages are
+ * crawled. The frontier is held open while the coordinator polls the workers, and released or closed once it
+ * has found them all idle with every URL sent also received.
+ * <p>
+ * A worker that can't reach another one logs the error and drops the URLs for it; there is no failover.
+ */
+@Slf4j
+public class ClusterWorker implements Closeable {
+
+    private final WebScraper webScraper;
+    private final RobotsTxtService robotsTxtService;
+    private final DnsCache dnsCache;
+    private final ScraperConfig config;
+    private final CrawlMetrics metrics;
+
+    private final ServerSocket server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<Long, Session> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a worker and starts listening.
+     *
+     * @param webScraper       The scraper running this worker's share of a crawl
+     * @param robotsTxtService The service checking forwarded URLs against robots.txt
+     * @param dnsCache         The cache to resolve the hosts of forwarded URLs in ahead of their fetch
+     * @param config           The scraper configuration
+     * @param metrics          The metrics to record forwarded URLs in
+     * @param port             The port to listen on, or 0 for any free port
+     * @throws IOException If the port can't be bound
+     */
+    public ClusterWorker(WebScraper webScraper, RobotsTxtService robotsTxtService, DnsCache dnsCache,
+                         ScraperConfig config, CrawlMetrics metrics, int port) throws IOException {
+        this.webScraper = webScraper;
+        this.robotsTxtService = robotsTxtService;
+        this.dnsCache = dnsCache;
+        this.config = config;
+        this.metrics = metrics;
+        this.server = new ServerSocket(port);
+        // A platform thread, so the process stays up while it waits for a coordinator
+        Thread.ofPlatform().name("cluster-worker-" + server.getLocalPort()).start(this::acceptConnections);
+        log.info("Cluster worker listening on port {}", server.getLocalPort());
+    }
+
+    /**
+     * Gets the port the worker listens on.
+     *
+     * @return The port
+     */
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Stops listening and stops the crawls in progress.
+     */
+    @Override
+    public void close() throws IOException {
+        server.close();
+        for (Session session : sessions.values()) {
+            session.close();
+        }
+        executor.shutdownNow();
+    }
+
+    private void acceptConnections() {
+        while (!server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                executor.execute(() -> handle(socket));
+            } catch (IOException e) {
+                if (!server.isClosed()) {
+                    log.error("Failed to accept a cluster connection: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Serves a connection from the coordinator or from another worker, until it is closed.
+     */
+    private void handle(Socket socket) {
+        try (socket) {
+            DataInputStream in = ClusterProtocol.input(socket);
+            byte type = in.readByte();
+            if (type == ClusterProtocol.START) {
+                serveCoordinator(in, ClusterProtocol.output(socket));
+            } else if (type == ClusterProtocol.PEER) {
+                servePeer(in);
+            } else {
+                log.warn("Unexpected cluster message {} from {}", type, socket.getRemoteSocketAddress());
+            }
+        } catch (EOFException e) {
+            // The other side is done
+        } catch (IOException e) {
+            log.error("Cluster connection from {} failed: {}", socket.getRemoteSocketAddress(), e.getMessage());
+        }
+    }
+
+    private void serveCoordinator(DataInputStream in, DataOutputStream out) throws IOException {
+        int version = in.readInt();
+        if (version != ClusterProtocol.VERSION) {
+            throw new IOException("Unsupported cluster protocol version " + version);
+        }
+        long crawlId = in.readLong();
+        int index = in.readInt();
+        int count = in.readInt();
+        List<String> workers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            workers.add(ClusterProtocol.readString(in));
+        }
+        String seedUrl = ClusterProtocol.readString(in);
+        int maxDepth = in.readInt();
+        int maxPages = in.readInt();
+
+        Session session = sessions.computeIfAbsent(crawlId, Session::new);
+        try {
+            session.start(index, workers, seedUrl, maxDepth, maxPages, out);
+            while (true) {
+                byte type = in.readByte();
+                if (type == ClusterProtocol.STATUS) {
+                    session.reportStatus();
+                } else if (type == ClusterProtocol.FINISH) {
+                    session.finish(in.readBoolean());
+                    return;
+                } else {
+                    throw new IOException("Unexpected cluster message " + type + " from the coordinator");
+                }
+            }
+        } finally {
+            // Stops the crawl if the coordinator went away
+            session.close();
+            sessions.remove(crawlId);
+        }
+    }
+
+    private void servePeer(DataInputStream in) throws IOException {
+        Session session = sessions.computeIfAbsent(in.readLong(), Session::new);
+        while (true) {
+            byte type = in.readByte();
+            if (type != ClusterProtocol.URLS) {
+                throw new IOException("Unexpected cluster message " + type + " from a worker");
+            }
+            session.receive(ClusterProtocol.readTasks(in));
+        }
+    }
+
+    /**
+     * This worker's share of one crawl. Another worker may forward URLs before the coordinator has started the
+     * session here, in which case they wait for its frontier.
+     */
+    private final class Session implements CrawlPartition {
+        private final long crawlId;
+        private final CompletableFuture<CrawlFrontier> frontier = new CompletableFuture<>();
+        private final AtomicLong sent = new AtomicLong();
+        private final AtomicLong received = new AtomicLong();
+        // Not a monitor, which would pin the virtual threads of the crawl while they write to the socket
+        private final Lock controlLock = new ReentrantLock();
+        private HashRing ring;
+        private int index;
+        private Peer[] peers;
+        private DataOutputStream control;
+        private Future<Integer> crawl;
+        private volatile boolean closed;
+        private volatile Boolean stopping;
+
+        Session(long crawlId) {
+            this.crawlId = crawlId;
+        }
+
+        void start(int index, List<String> workers, String seedUrl, int maxDepth, int maxPages, DataOutputStream control) {
+            this.ring = new HashRing(workers, config.getClusterVirtualNodes());
+            this.index = index;
+            this.control = control;
+            this.peers = new Peer[workers.size()];
+            for (int i = 0; i < workers.size(); i++) {
+                if (i != index) {
+                    peers[i] = new Peer(workers.get(i));
+                }
+            }
+            log.info("Starting share {} of {} of the distributed scrape of {}", index + 1, workers.size(), seedUrl);
+            ResultSink sink = new ResultSink() {
+                @Override
+                public void accept(PageResult result) {
+                    sendResult(result);
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+            crawl = executor.submit(() -> {
+                try {
+                    return webScraper.scrape(URI.create(seedUrl), maxDepth, maxPages, this, sink);
+                } catch (Exception e) {
+                    log.error("Distributed scrape of {} failed: {}", seedUrl, e.getMessage());
+                    frontier.completeExceptionally(e);
+                    return 0;
+                }
+            });
+            executor.execute(this::flushPeriodically);
+        }
+
+        @Override
+        public boolean owns(String url) {
+            return ownerOf(url) == index;
+        }
+
+        @Override
+        public void forward(CrawlTask task) {
+            peers[ownerOf(task.url())].add(task);
+        }
+
+        @Override
+        public void started(CrawlFrontier frontier) {
+            this.frontier.complete(frontier);
+            // The coordinator may have ended the crawl while the seed host's robots.txt was fetched
+            if (stopping != null) {
+                end(frontier, stopping);
+            } else if (closed) {
+                frontier.close();
+            }
+        }
+
+        /**
+         * Finds the worker owning the host of a URL. Politeness and robots.txt go by the host key, so the URLs
+         * of a host on different ports or schemes may belong to different workers.
+         */
+        private int ownerOf(String url) {
+            return ring.ownerOf(DomainUtils.getHostKey(URI.create(url)));
+        }
+
+        /**
+         * Adds URLs forwarded by another worker to the frontier, once they are checked against robots.txt.
+         * They only count as received once they are in the frontier, so the coordinator can't see this worker
+         * idle in between. URLs for a crawl the coordinator doesn't start here in time, because it has already
+         * ended, are dropped.
+         */
+        void receive(List<CrawlTask> tasks) {
+            try {
+                CrawlFrontier target = frontier.get(config.getTimeout(), TimeUnit.MILLISECONDS);
+                Set<String> allowed = new HashSet<>(robotsTxtService.filterAllowed(
+                        tasks.stream().map(CrawlTask::url).toList()));
+                for (CrawlTask task : tasks) {
+                    if (allowed.contains(task.url()) && target.accept(task)) {
+                        dnsCache.prefetch(DomainUtils.extractHost(task.url()));
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                // The crawl failed to start, so the URLs have nowhere to go
+            } catch (TimeoutException e) {
+                log.warn("Dropping {} URLs forwarded for crawl {}, which isn't running here", tasks.size(), crawlId);
+                close();
+                sessions.remove(crawlId, this);
+            }
+            received.addAndGet(tasks.size());
+            metrics.recordClusterUrls("received", tasks.size());
+        }
+
+        /**
+         * Sends the counts of URLs sent and received, read before the idle state, so that URLs received in
+         * between make the worker look busy rather than make the counts look settled.
+         */
+        void reportStatus() throws IOException {
+            flushPeers();
+            long sentCount = sent.get();
+            long receivedCount = received.get();
+            boolean idle = isIdle();
+            controlLock.lock();
+            try {
+                control.writeByte(ClusterProtocol.STATUS_REPLY);
+                control.writeBoolean(idle);
+                control.writeLong(sentCount);
+                control.writeLong(receivedCount);
+                control.flush();
+            } finally {
+                controlLock.unlock();
+            }
+        }
+
+        private boolean isIdle() {
+            if (!frontier.isDone() || frontier.isCompletedExceptionally()) {
+                // Either still starting, or failed before it had a frontier
+                return crawl.isDone();
+            }
+            if (!frontier.join().isIdle()) {
+                return false;
+            }
+            for (Peer peer : peers) {
+                if (peer != null && !peer.isEmpty()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Ends the crawl, right away or, if it has simply run out of work, by letting the frontier finish, and
+         * tells the coordinator once it has.
+         */
+        void finish(boolean stop) throws IOException {
+            stopping = stop;
+            if (frontier.isDone() && !frontier.isCompletedExceptionally()) {
+                end(frontier.join(), stop);
+            }
+            int scheduled = 0;
+            try {
+                scheduled = crawl.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                // Already logged by the crawl
+            }
+            log.info("Finished share {} of the distributed scrape: fetched {} pages, forwarded {} URLs, received {}",
+                    index + 1, scheduled, sent.get(), received.get());
+            controlLock.lock();
+            try {
+                control.writeByte(ClusterProtocol.DONE);
+                control.writeInt(scheduled);
+                control.flush();
+            } finally {
+                controlLock.unlock();
+            }
+        }
+
+        private void end(CrawlFrontier target, boolean stop) {
+            if (stop) {
+                target.close();
+            } else {
+                target.release();
+            }
+        }
+
+        void close() {
+            closed = true;
+            if (frontier.isDone() && !frontier.isCompletedExceptionally()) {
+                frontier.join().close();
+            } else {
+                frontier.completeExceptionally(new IOException("Crawl " + crawlId + " was closed"));
+            }
+            if (peers != null) {
+                for (Peer peer : peers) {
+                    if (peer != null) {
+                        peer.close();
+                    }
+                }
+            }
+        }
+
+        private void sendResult(PageResult result) {
+            controlLock.lock();
+            try {
+                ClusterProtocol.writeResult(control, result);
+                control.flush();
+            } catch (IOException e) {
+                // The coordinator connection is gone, which stops the crawl
+                log.debug("Failed to send the result of {}: {}", result.url(), e.getMessage());
+            } finally {
+                controlLock.unlock();
+            }
+        }
+
+        private void flushPeriodically() {
+            try {
+                while (!closed) {
+                    Thread.sleep(Math.max(1, config.getClusterFlushInterval()));
+                    flushPeers();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void flushPeers() {
+            for (Peer peer : peers) {
+                if (peer != null) {
+                    peer.flush();
+                }
+            }
+        }
+
+        /**
+         * Connection to another worker, opened when the first batch of URLs for it is sent.
+         */
+        private final class Peer {
+            private final String address;
+            private final Lock lock = new ReentrantLock();
+            private final List<CrawlTask> batch = new ArrayList<>();
+            private Socket socket;
+            private DataOutputStream out;
+            private boolean failed;
+
+            Peer(String address) {
+                this.address = address;
+            }
+
+            void add(CrawlTask task) {
+                lock.lock();
+                try {
+                    if (failed || closed) {
+                        return;
+                    }
+                    batch.add(task);
+                    if (batch.size() >= config.getClusterBatchSize()) {
+                        flush();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+
+            /**
+             * Sends the collected URLs. They only leave the batch once they are counted as sent, so the worker
+             * isn't idle while a batch is on its way.
+             */
+            void flush() {
+                lock.lock();
+                try {
+                    if (batch.isEmpty()) {
+                        return;
+                    }
+                    try {
+                        if (out == null) {
+                            socket = ClusterProtocol.connect(address, config.getConnectTimeout());
+                            out = ClusterProtocol.output(socket);
+                            out.writeByte(ClusterProtocol.PEER);
+                            out.writeLong(crawlId);
+                        }
+                        ClusterProtocol.writeTasks(out, batch);
+                        sent.addAndGet(batch.size());
+                        metrics.recordClusterUrls("sent", batch.size());
+                    } catch (IOException e) {
+                        log.error("Failed to forward URLs to worker {}, dropping the URLs for it: {}", address, e.getMessage());
+                        failed = true;
+                    }
+                    batch.clear();
+                } finally {
+                    lock.unlock();
+                }
+            }
+
+            boolean isEmpty() {
+                lock.lock();
+                try {
+                    return batch.isEmpty();
+                } finally {
+                    lock.unlock();
+                }
+            }
+
+            void close() {
+                lock.lock();
+                try {
+                    batch.clear();
+                    if (socket != null) {
+                        try {
+                            socket.close();
+                        } catch (IOException e) {
+                            log.debug("Failed to close the connection to worker {}: {}", address, e.getMessage());
+                        }
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+}
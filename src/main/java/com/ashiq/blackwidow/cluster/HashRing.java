@@ -0,0 +1,83 @@
+package com.ashiq.blackwidow.cluster;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Consistent hash ring assigning keys, like the host keys of URLs, to the nodes of a cluster.
+ * Every node is placed on the ring at a number of pseudo-random points, its virtual nodes, and a key belongs to
+ * the node of the first point at or after the key's hash. With enough virtual nodes the keys are spread evenly,
+ * and adding or removing a node only moves the keys of that node, about {@code 1 / nodes} of them, which is what
+ * lets a crawl scale out without every host changing owner.
+ * <p>
+ * The points are kept as sorted primitive arrays and looked up by binary search. Rings built from the same nodes
+ * in the same order assign keys identically in every process.
+ */
+public class HashRing {
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    private final int nodes;
+    private final long[] points;
+    private final int[] owners;
+
+    /**
+     * Creates a ring.
+     *
+     * @param nodes        The names of the nodes, like their addresses; a node is identified by its index here
+     * @param virtualNodes The number of points per node
+     */
+    public HashRing(List<String> nodes, int virtualNodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("A hash ring needs at least one node");
+        }
+        this.nodes = nodes.size();
+        int perNode = Math.max(1, virtualNodes);
+        long[][] entries = new long[nodes.size() * perNode][];
+        for (int node = 0; node < nodes.size(); node++) {
+            for (int i = 0; i < perNode; i++) {
+                entries[node * perNode + i] = new long[]{hash(nodes.get(node) + "#" + i), node};
+            }
+        }
+        // Ties are broken by the node index, so the ring doesn't depend on the sort's stability
+        Arrays.sort(entries, (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+        this.points = new long[entries.length];
+        this.owners = new int[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            points[i] = entries[i][0];
+            owners[i] = (int) entries[i][1];
+        }
+    }
+
+    /**
+     * Finds the node a key belongs to.
+     *
+     * @param key The key
+     * @return The index of the node
+     */
+    public int ownerOf(String key) {
+        int i = Arrays.binarySearch(points, hash(key));
+        if (i < 0) {
+            i = -i - 1;
+        }
+        // Keys past the last point wrap around to the first
+        return owners[i == points.length ? 0 : i];
+    }
+
+    /**
+     * Gets the number of nodes on the ring.
+     *
+     * @return The number of nodes
+     */
+    public int size() {
+        return nodes;
+    }
+
+    private static long hash(String value) {
+        return HASH.hashString(value, StandardCharsets.UTF_8).asLong();
+    }
+}
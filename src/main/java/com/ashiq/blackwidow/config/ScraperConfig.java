@@ -5,6 +5,13 @@ import lombok.Setter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 /**
  * Configuration properties for the web scraper.
  */
@@ -20,12 +27,427 @@ public class ScraperConfig {
     private String userAgent = "BlackWidow/1.0";
     
     /**
-     * Timeout for HTTP requests in milliseconds.
+     * Read timeout for HTTP requests in milliseconds: how long to wait for the response headers once a
+     * request has been sent.
      */
     private int timeout = 10000;
+
+    /**
+     * Timeout for connecting to a host in milliseconds.
+     */
+    private int connectTimeout = 5000;
     
     /**
      * Whether to follow redirects.
      */
     private boolean followRedirects = true;
+
+    /**
+     * Whether to negotiate HTTP/2 with servers that support it.
+     */
+    private boolean http2 = true;
+
+    /**
+     * Maximum number of requests in flight to a single host.
+     */
+    private int maxConnectionsPerHost = 8;
+
+    /**
+     * Whether the number of requests in flight to a host adapts to its latency and 429/503 responses,
+     * between the minimum and maximum connections per host. When off, every host gets the maximum.
+     */
+    private boolean adaptiveConcurrency = true;
+
+    /**
+     * Minimum number of requests in flight to a single host when adapting concurrency.
+     */
+    private int minConnectionsPerHost = 1;
+
+    /**
+     * Number of requests in flight a host starts out with when adapting concurrency.
+     */
+    private int initialConnectionsPerHost = 2;
+
+    /**
+     * How many times slower than a host's baseline latency a response must be to count as a latency spike,
+     * which cuts the host's concurrency.
+     */
+    private double latencySpikeRatio = 3.0;
+
+    /**
+     * Factor a host's concurrency is multiplied by when it throttles or its latency spikes.
+     */
+    private double concurrencyBackoffRatio = 0.5;
+
+    /**
+     * Number of times a request answered with 429 or 503 is retried once its Retry-After has passed.
+     */
+    private int throttleRetries = 2;
+
+    /**
+     * Longest Retry-After (in milliseconds) waited for before retrying; longer waits give up on the request.
+     */
+    private long maxRetryAfter = 60000;
+
+    /**
+     * Number of times a request that failed to connect, timed out or got a 500, 502 or 504 response is retried.
+     */
+    private int maxRetries = 2;
+
+    /**
+     * Base delay (in milliseconds) before retrying a failed request. It doubles with every retry, and a random
+     * part of up to half of it is added so retries of many requests don't line up.
+     */
+    private long retryBackoff = 500;
+
+    /**
+     * Retries allowed per request sent, across all hosts, so failures can't multiply the number of requests.
+     */
+    private double retryBudgetRatio = 0.1;
+
+    /**
+     * Retries that can be banked in the retry budget, and that a run starts with.
+     */
+    private int retryBudgetReserve = 100;
+
+    /**
+     * Failed requests in a row after which a host's circuit opens and its requests fail right away
+     * (0 to disable the circuit breaker).
+     */
+    private int circuitFailureThreshold = 5;
+
+    /**
+     * How long (in milliseconds) a host's circuit stays open before a probe request is let through.
+     * It doubles every time the probe fails, up to eight times this.
+     */
+    private long circuitOpenTime = 10000;
+
+    /**
+     * Number of times in a row a host's circuit may open before its pages are given up on. Until then, pages
+     * of a host whose circuit is open are put back in the frontier until the circuit half-opens.
+     */
+    private int maxCircuitOpens = 3;
+
+    /**
+     * Maximum number of hosts whose DNS lookups are cached, or 0 to leave lookups to the JVM alone.
+     */
+    private int dnsCacheSize = 10000;
+
+    /**
+     * Time in milliseconds that the addresses of a host are cached. The HTTP client still looks hosts up through
+     * the JVM's own cache, so this should not exceed its {@code networkaddress.cache.ttl}, 30 seconds by default.
+     */
+    private long dnsCacheTtl = 30000;
+
+    /**
+     * Time in milliseconds that a host that could not be resolved is remembered, during which its fetches fail
+     * without another lookup.
+     */
+    private long dnsNegativeCacheTtl = 60000;
+
+    /**
+     * Whether hosts are resolved in the background as soon as their first URL is discovered, so their first
+     * fetch doesn't wait for DNS.
+     */
+    private boolean dnsPrefetch = true;
+
+    /**
+     * Maximum size in bytes of a page or robots.txt body, by media type. A key can also cover a whole type, like
+     * {@code text/*}. Pages over their limit are given up on as soon as that is known, from the Content-Length
+     * header or while they are being read; robots.txt files are cut off at it. A limit of 0 means no limit.
+     */
+    private Map<String, Long> maxBodySizes = new LinkedHashMap<>(Map.of(
+            "text/html", 5L * 1024 * 1024,
+            "application/xhtml+xml", 5L * 1024 * 1024,
+            "text/plain", 512L * 1024));
+
+    /**
+     * Maximum size in bytes of a page or robots.txt body whose media type has no entry in the max body sizes.
+     */
+    private long maxBodySize = 2L * 1024 * 1024;
+
+    /**
+     * URL extensions, in lower case, that suggest binary content rather than a page. Links ending in one are
+     * checked with a HEAD request first, and only downloaded if the response headers say they are a page of
+     * acceptable size. Leave empty to never send HEAD requests.
+     */
+    private Set<String> headCheckExtensions = new LinkedHashSet<>(List.of(
+            "pdf", "zip", "gz", "tgz", "bz2", "xz", "7z", "rar", "tar", "exe", "msi", "dmg", "iso", "apk", "bin",
+            "jpg", "jpeg", "png", "gif", "webp", "bmp", "tif", "tiff", "ico",
+            "mp3", "wav", "ogg", "flac", "m4a", "mp4", "m4v", "mov", "avi", "mkv", "webm", "wmv",
+            "doc", "docx", "xls", "xlsx", "ppt", "pptx", "odt", "ods", "odp"));
+
+    /**
+     * Directory for the on-disk HTTP response cache.
+     * Leave empty to disable caching.
+     */
+    private String responseCacheDir;
+
+    /**
+     * Maximum total size in bytes of the response cache before least recently used entries are evicted.
+     */
+    private long responseCacheMaxSize = 1024L * 1024 * 1024;
+
+    /**
+     * Maximum number of link hops from the seed page to follow.
+     * Pages at this depth are fetched, but the links found on them are not.
+     */
+    private int maxDepth = 3;
+
+    /**
+     * Maximum number of pages to fetch in a single crawl.
+     */
+    private int maxPages = 1000;
+
+    /**
+     * Maximum number of page fetches in flight at once.
+     */
+    private int maxConcurrency = 64;
+
+    /**
+     * Delay in milliseconds between two fetches from the same host when robots.txt doesn't specify a crawl delay.
+     */
+    private long crawlDelay = 0;
+
+    /**
+     * Minimum delay in milliseconds between two fetches from the same host, even if robots.txt asks for less.
+     */
+    private long minCrawlDelay = 0;
+
+    /**
+     * Time in milliseconds that parsed robots.txt rules and sitemaps are cached per host.
+     */
+    private long robotsCacheTtl = 3600000;
+
+    /**
+     * Time in milliseconds that a robots.txt which couldn't be retrieved, because of a network error or a 5xx or
+     * 429 response, disallows every URL of its host before it is fetched again.
+     */
+    private long robotsFailureTtl = 60000;
+
+    /**
+     * Maximum number of hosts whose robots.txt rules are cached. The least recently used are evicted first.
+     */
+    private int robotsCacheSize = 10000;
+
+    /**
+     * Maximum number of hosts whose registrable domain is cached, shared by all crawls, so the public suffix list
+     * isn't walked for every link (0 to disable).
+     */
+    private int domainCacheSize = 10000;
+
+    /**
+     * Number of slots in the per-host cache of robots.txt verdicts for recently checked paths, rounded down to a
+     * power of two, or 0 to always match the rules.
+     */
+    private int robotsVerdictCacheSize = 1024;
+
+    /**
+     * Maximum number of sitemaps fetched at once when expanding a sitemap index.
+     */
+    private int sitemapConcurrency = 4;
+
+    /**
+     * Number of distinct URLs a crawl is expected to discover, used to size the visited-URL set.
+     */
+    private long visitedExpectedUrls = 100000;
+
+    /**
+     * Whether to put a Bloom filter in front of the visited-URL set, so new URLs are added without probing the
+     * table for an existing copy, at the cost of about a byte per expected URL.
+     */
+    private boolean visitedBloomFilter = false;
+
+    /**
+     * Weight of the sitemap priority of a URL, from 0.0 to 1.0, in the score the URLs of a host are fetched in.
+     * URLs found as links have the default priority of 0.5.
+     */
+    private double frontierPriorityWeight = 1.0;
+
+    /**
+     * Weight of the freshness of a URL in its score: 1 for a page the sitemap says was just modified, halving with
+     * every {@code frontier-freshness-half-life}, and 0 for pages without a modification time.
+     */
+    private double frontierFreshnessWeight = 0.5;
+
+    /**
+     * Age in milliseconds at which the freshness of a page has halved.
+     */
+    private long frontierFreshnessHalfLife = 2592000000L;
+
+    /**
+     * Score taken off a URL per link hop from the seed page. Setting all three weights to 0 fetches the URLs of a
+     * host in the order they were found.
+     */
+    private double frontierDepthWeight = 0.25;
+
+    /**
+     * Number of URLs waiting to be fetched that are kept in memory, up to twice this many while a backlog is being
+     * spilled. Further URLs are spilled to sorted files on disk. 0 keeps them all in memory.
+     */
+    private int frontierMemorySize = 100000;
+
+    /**
+     * Directory to spill the frontier to, or empty for the temporary directory.
+     */
+    private String frontierSpillDir;
+
+    /**
+     * Whether the links of pages whose text is nearly the same as that of a page crawled before are left alone,
+     * so the same content under other URLs, like session ids, sort orders or print views, isn't expanded again.
+     * Off by default: the whole page text is fingerprinted, so distinct pages sharing a heavy template, like
+     * paginated listings, can look alike and have their links dropped.
+     */
+    private boolean nearDuplicateDetection;
+
+    /**
+     * Number of bits the 64-bit SimHash fingerprints of two pages' text may differ in for the pages to count as
+     * near-duplicates, from 0 for exact duplicates up to 15. An edit changes fewer bits the longer the page, so
+     * higher values also catch variants of short pages, at the risk of matching pages that only share a template.
+     */
+    private int nearDuplicateDistance = 3;
+
+    /**
+     * How links are extracted from pages.
+     */
+    private LinkExtraction linkExtraction = LinkExtraction.JSOUP;
+
+    /**
+     * Directory to log crawl progress to, so that an interrupted crawl can be resumed.
+     * Leave empty to keep crawl state in memory only.
+     */
+    private String checkpointDir;
+
+    /**
+     * Least number of finished pages between compactions of the checkpoint log, or 0 to never compact.
+     * The log is compacted once finished pages also make up half the URLs it holds.
+     */
+    private int checkpointCompactInterval = 10000;
+
+    /**
+     * How crawl results are written.
+     */
+    private OutputFormat outputFormat = OutputFormat.TREE;
+
+    /**
+     * File to stream NDJSON or TSV results to. Leave empty to write them to stdout.
+     */
+    private String outputFile;
+
+    /**
+     * Whether to gzip streamed results. Output files ending in .gz are always gzipped.
+     */
+    private boolean outputGzip = false;
+
+    /**
+     * How often (ms) streamed results are flushed to their destination.
+     */
+    private long outputFlushInterval = 1000;
+
+    /**
+     * File to save the crawled pages and their links to as a compact, memory-mappable link graph.
+     * Only used with the tree output format. Leave empty to skip it.
+     */
+    private String graphFile;
+
+    /**
+     * Maximum number of crawl jobs from the job API that run at once.
+     */
+    private int jobConcurrency = 2;
+
+    /**
+     * Maximum number of crawl jobs waiting to run before new jobs are rejected.
+     */
+    private int jobQueueSize = 100;
+
+    /**
+     * How long (ms) finished crawl jobs and their results are kept.
+     */
+    private long jobRetention = 3600000;
+
+    /**
+     * Maximum number of seeds of a batch crawl that are crawled at once.
+     */
+    private int batchConcurrency = 16;
+
+    /**
+     * Directory the per-seed result files and the summary of a batch crawl are written to.
+     */
+    private String batchOutputDir = "batch-results";
+
+    /**
+     * Port a worker of a distributed crawl, started with {@code --worker}, listens on for its coordinator and for
+     * URLs forwarded by the other workers.
+     */
+    private int clusterPort = 7300;
+
+    /**
+     * Addresses ({@code host:port}) of the workers of a distributed crawl. When set, a crawl started from the
+     * command line is split between them by host instead of run in this process. The workers must be able to reach
+     * each other at these addresses.
+     */
+    private List<String> clusterWorkers = new ArrayList<>();
+
+    /**
+     * Number of points each worker gets on the consistent hash ring that assigns hosts to workers. More points
+     * spread the hosts more evenly.
+     */
+    private int clusterVirtualNodes = 128;
+
+    /**
+     * Number of URLs a worker collects for another worker before sending them on.
+     */
+    private int clusterBatchSize = 256;
+
+    /**
+     * How often (ms) a worker sends on the URLs collected for other workers, however few.
+     */
+    private long clusterFlushInterval = 50;
+
+    /**
+     * How often (ms) the coordinator of a distributed crawl checks whether the workers have run out of work.
+     */
+    private long clusterStatusInterval = 200;
+
+    /**
+     * Whether fetch metrics are tagged with the host. Off by default, since batch and distributed crawls cover
+     * many hosts, and one set of time series per host would grow the metrics registry without bound. Turn it on
+     * for crawls of a few hosts.
+     */
+    private boolean metricsHostTag = false;
+
+    /**
+     * Ways of extracting links from a page.
+     */
+    public enum LinkExtraction {
+        /**
+         * Parse the page into a Jsoup document and select the anchors.
+         */
+        JSOUP,
+
+        /**
+         * Tokenize the response body as a stream without building a document.
+         */
+        STREAMING
+    }
+
+    /**
+     * Ways of writing crawl results.
+     */
+    public enum OutputFormat {
+        /**
+         * Log the whole tree of pages once the crawl has finished.
+         */
+        TREE,
+
+        /**
+         * Stream one JSON object per page as it is crawled.
+         */
+        NDJSON,
+
+        /**
+         * Stream one tab-separated line per page as it is crawled.
+         */
+        TSV
+    }
 }
\ No newline at end of file
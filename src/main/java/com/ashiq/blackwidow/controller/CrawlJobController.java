@@ -0,0 +1,137 @@
+package com.ashiq.blackwidow.controller;
+
+import com.ashiq.blackwidow.job.CrawlJob;
+import com.ashiq.blackwidow.job.CrawlJobService;
+import com.ashiq.blackwidow.payload.CrawlJobRequest;
+import com.ashiq.blackwidow.payload.CrawlJobStatus;
+import com.ashiq.blackwidow.payload.PageResult;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * REST API for running crawls as jobs in the long-lived application.
+ * <ul>
+ *   <li>{@code POST /api/jobs} queues a job for {@code {"url": ..., "maxDepth": ..., "maxPages": ...}}</li>
+ *   <li>{@code GET /api/jobs} and {@code GET /api/jobs/{id}} report job status</li>
+ *   <li>{@code GET /api/jobs/{id}/events} streams the job's pages and progress as Server-Sent Events</li>
+ *   <li>{@code DELETE /api/jobs/{id}} cancels a job</li>
+ * </ul>
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/jobs")
+@RequiredArgsConstructor
+public class CrawlJobController {
+
+    /**
+     * How long (ms) an event stream waits for new pages before sending a status event.
+     */
+    private static final long STATUS_INTERVAL = 5000;
+
+    private final CrawlJobService crawlJobService;
+
+    @PostMapping
+    public ResponseEntity<CrawlJobStatus> submit(@RequestBody CrawlJobRequest request) {
+        CrawlJob job;
+        try {
+            job = crawlJobService.submit(request);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        } catch (RejectedExecutionException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "The job queue is full, try again later");
+        }
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/jobs/" + job.getId()))
+                .body(job.getStatus());
+    }
+
+    @GetMapping
+    public List<CrawlJobStatus> list() {
+        return crawlJobService.list().stream().map(CrawlJob::getStatus).toList();
+    }
+
+    @GetMapping("/{id}")
+    public CrawlJobStatus status(@PathVariable String id) {
+        return findJob(id).getStatus();
+    }
+
+    @DeleteMapping("/{id}")
+    public CrawlJobStatus cancel(@PathVariable String id) {
+        CrawlJob job = crawlJobService.cancel(id);
+        if (job == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No job with id " + id);
+        }
+        return job.getStatus();
+    }
+
+    /**
+     * Streams a job as Server-Sent Events: a {@code page} event for every page from the start of the crawl,
+     * a {@code status} event whenever no page arrived for a while, and a final {@code status} event once the
+     * job has ended, after which the stream is closed.
+     * Each stream is fed by its own virtual thread, so a slow client never holds up the crawl.
+     */
+    @GetMapping(path = "/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter events(@PathVariable String id) {
+        CrawlJob job = findJob(id);
+        SseEmitter emitter = new SseEmitter(0L);
+        Thread.ofVirtual().name("crawl-job-events-" + id).start(() -> streamEvents(job, emitter));
+        return emitter;
+    }
+
+    private void streamEvents(CrawlJob job, SseEmitter emitter) {
+        try {
+            emitter.send(SseEmitter.event().name("status").data(job.getStatus()));
+            int sent = 0;
+            while (true) {
+                List<PageResult> pages = job.awaitResults(sent, STATUS_INTERVAL);
+                for (PageResult page : pages) {
+                    emitter.send(SseEmitter.event().name("page").data(page));
+                }
+                sent += pages.size();
+
+                if (pages.isEmpty()) {
+                    CrawlJobStatus status = job.getStatus();
+                    if (status.state().isFinished() && status.pagesCrawled() == sent) {
+                        emitter.send(SseEmitter.event().name("status").data(status));
+                        break;
+                    }
+                    if (!status.state().isFinished()) {
+                        emitter.send(SseEmitter.event().name("status").data(status));
+                    }
+                }
+            }
+            emitter.complete();
+        } catch (IOException | IllegalStateException e) {
+            // The client went away
+            log.debug("Event stream of job {} closed: {}", job.getId(), e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            emitter.complete();
+        }
+    }
+
+    private CrawlJob findJob(String id) {
+        CrawlJob job = crawlJobService.get(id);
+        if (job == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No job with id " + id);
+        }
+        return job;
+    }
+}
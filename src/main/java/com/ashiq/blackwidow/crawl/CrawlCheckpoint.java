@@ -0,0 +1,546 @@
+package com.ashiq.blackwidow.crawl;
+
+import com.ashiq.blackwidow.util.UrlNormalizer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Crash-safe record of a crawl, kept as an append-only log in a checkpoint directory.
+ * Every URL the frontier sees is logged together with the page it was found on, its depth and whether it
+ * was scheduled, and every finished page is logged by fingerprint. Replaying the log restores the visited
+ * set, the tree edges and the pages that were still waiting to be fetched.
+ * <p>
+ * The log is written through memory-mapped chunks, so appending a record is a memory copy and everything
+ * appended survives the JVM dying. Chunks are flushed to disk when the next one is mapped, on compaction and
+ * on close. Each record carries a CRC and its length is written last, so a torn record ends the log rather
+ * than corrupting it.
+ * <p>
+ * The log is split into numbered segments, optionally preceded by a snapshot. Compaction seals the current
+ * segment, sends further appends to a fresh one, and then folds the snapshot and the sealed segments into a
+ * new snapshot on a background thread, with one record per URL. The new snapshot replaces the files it was
+ * made from in a single rename, so a crash during compaction leaves the old ones in place. Compaction starts
+ * once the records of finished pages make up half the URLs logged, so each one rewrites at most twice the
+ * records appended since the previous one.
+ * <p>
+ * Appends are synchronized, so a checkpoint can be shared by all workers of a crawl.
+ */
+@Slf4j
+public class CrawlCheckpoint implements Closeable {
+
+    private static final Pattern LOG_FILE = Pattern.compile("frontier\\.(\\d+)\\.(log|snapshot)");
+    private static final String SNAPSHOT_TEMP_FILE = "frontier.snapshot.tmp";
+
+    private static final int CHUNK_SIZE = 8 * 1024 * 1024;
+    private static final int FRAME_HEADER = 8;
+    private static final int PADDING = -1;
+
+    private static final byte DISCOVERED = 1;
+    private static final byte COMPLETED = 2;
+
+    private static final byte FLAG_SCHEDULED = 1;
+    private static final byte FLAG_DONE = 2;
+
+    private static final Executor COMPACTOR = task -> Thread.ofPlatform().name("checkpoint-compaction").daemon().start(task);
+
+    private final Path directory;
+    private final int compactInterval;
+    private final String seedUrl;
+    private final Executor compactor;
+
+    private LogWriter writer;
+    private long segment;
+    private long snapshot = -1;
+    private int discovered;
+    private int completedSinceCompaction;
+    private boolean failed;
+    private volatile CompletableFuture<Void> compaction = CompletableFuture.completedFuture(null);
+
+    /**
+     * Entry of the log, describing one URL of the crawl.
+     *
+     * @param parent    The URL of the page the URL was found on, or null for the seed
+     * @param url       The URL
+     * @param depth     The number of link hops from the seed
+     * @param scheduled Whether the URL was scheduled for fetching
+     * @param done      Whether the page was fetched
+     */
+    public record Entry(String parent, String url, int depth, boolean scheduled, boolean done) {
+    }
+
+    private CrawlCheckpoint(Path directory, int compactInterval, String seedUrl, Executor compactor) {
+        this.directory = directory;
+        this.compactInterval = compactInterval;
+        this.seedUrl = seedUrl;
+        this.compactor = compactor;
+    }
+
+    /**
+     * Starts a new checkpoint for a crawl.
+     *
+     * @param directory       The checkpoint directory, created if it doesn't exist
+     * @param seedUrl         The URL the crawl starts from
+     * @param compactInterval The least number of finished pages between compactions of the log, or 0 to never compact
+     * @return The checkpoint
+     * @throws IOException If the directory already holds a checkpoint or the log can't be created
+     */
+    public static CrawlCheckpoint create(Path directory, String seedUrl, int compactInterval) throws IOException {
+        return create(directory, seedUrl, compactInterval, COMPACTOR);
+    }
+
+    static CrawlCheckpoint create(Path directory, String seedUrl, int compactInterval, Executor compactor) throws IOException {
+        Files.createDirectories(directory);
+        if (!listLogFiles(directory).isEmpty()) {
+            throw new IOException("Checkpoint directory " + directory + " already holds a crawl, resume it instead");
+        }
+
+        CrawlCheckpoint checkpoint = new CrawlCheckpoint(directory, compactInterval, seedUrl, compactor);
+        checkpoint.writer = LogWriter.open(logFile(directory, 0, false), 0);
+        checkpoint.recordDiscovered(null, seedUrl, 0, true);
+        return checkpoint;
+    }
+
+    /**
+     * Opens the checkpoint of an earlier crawl so that it can be replayed and continued.
+     *
+     * @param directory       The checkpoint directory
+     * @param compactInterval The least number of finished pages between compactions of the log, or 0 to never compact
+     * @return The checkpoint
+     * @throws IOException If the directory holds no readable checkpoint
+     */
+    public static CrawlCheckpoint open(Path directory, int compactInterval) throws IOException {
+        return open(directory, compactInterval, COMPACTOR);
+    }
+
+    static CrawlCheckpoint open(Path directory, int compactInterval, Executor compactor) throws IOException {
+        long snapshot = -1;
+        long segment = -1;
+        List<LogFile> logFiles = listLogFiles(directory);
+        for (LogFile file : logFiles) {
+            if (file.snapshot()) {
+                snapshot = Math.max(snapshot, file.number());
+            }
+            segment = Math.max(segment, file.number());
+        }
+        if (segment < 0) {
+            throw new IOException("No checkpoint found in " + directory);
+        }
+
+        // Drop whatever a compaction cut short by a crash left behind: the newest snapshot covers all segments up to its number
+        Files.deleteIfExists(directory.resolve(SNAPSHOT_TEMP_FILE));
+        for (LogFile file : logFiles) {
+            if (file.snapshot() ? file.number() < snapshot : file.number() <= snapshot) {
+                Files.delete(file.path());
+            }
+        }
+        segment = Math.max(segment, snapshot + 1);
+
+        String[] seed = new String[1];
+        int[] counts = new int[2];
+        long end = 0;
+        for (Path file : logFiles(directory, snapshot, segment)) {
+            end = !Files.exists(file) ? 0 : readLog(file, (type, body) -> {
+                if (type == DISCOVERED) {
+                    if (seed[0] == null) {
+                        seed[0] = readDiscovered(body).url();
+                    }
+                    counts[0]++;
+                } else if (type == COMPLETED) {
+                    counts[1]++;
+                }
+            });
+        }
+        if (seed[0] == null) {
+            throw new IOException("Checkpoint in " + directory + " is empty");
+        }
+
+        CrawlCheckpoint checkpoint = new CrawlCheckpoint(directory, compactInterval, seed[0], compactor);
+        checkpoint.snapshot = snapshot;
+        checkpoint.segment = segment;
+        checkpoint.discovered = counts[0];
+        checkpoint.completedSinceCompaction = counts[1];
+        checkpoint.writer = LogWriter.open(logFile(directory, segment, false), end);
+        log.info("Opened checkpoint in {} for {} ({} URLs and {} finished pages logged)", directory, seed[0], counts[0], counts[1]);
+        return checkpoint;
+    }
+
+    /**
+     * Gets the URL the checkpointed crawl started from.
+     *
+     * @return The seed URL
+     */
+    public String getSeedUrl() {
+        return seedUrl;
+    }
+
+    /**
+     * Replays the log, passing every URL the crawl has seen to the consumer in the order they were logged.
+     *
+     * @param consumer The consumer for the entries
+     * @throws IOException If the log can't be read
+     */
+    public synchronized void replay(Consumer<Entry> consumer) throws IOException {
+        List<Path> files = logFiles(directory, snapshot, segment);
+        VisitedUrlSet completed = readCompleted(files);
+        for (Path file : files) {
+            readLog(file, (type, body) -> {
+                if (type == DISCOVERED) {
+                    Entry entry = readDiscovered(body);
+                    boolean done = entry.done() || completed.containsFingerprint(fingerprint(entry.url()));
+                    consumer.accept(new Entry(entry.parent(), entry.url(), entry.depth(), entry.scheduled(), done));
+                }
+            });
+        }
+    }
+
+    /**
+     * Logs a URL seen for the first time.
+     *
+     * @param parent    The URL of the page it was found on, or null for the seed
+     * @param url       The URL
+     * @param depth     The number of link hops from the seed
+     * @param scheduled Whether the URL was scheduled for fetching
+     */
+    public synchronized void recordDiscovered(String parent, String url, int depth, boolean scheduled) {
+        append(encodeDiscovered(parent, url, depth, scheduled ? FLAG_SCHEDULED : 0));
+        discovered++;
+    }
+
+    /**
+     * Logs a page as finished, starting a compaction in the background once enough pages have finished.
+     *
+     * @param url The URL of the page
+     */
+    public synchronized void recordCompleted(String url) {
+        ByteBuffer body = ByteBuffer.allocate(9);
+        body.put(COMPLETED).putLong(fingerprint(url));
+        append(body.array());
+
+        if (compactInterval > 0 && ++completedSinceCompaction >= Math.max(compactInterval, discovered / 2)) {
+            long sealed = seal();
+            if (sealed >= 0) {
+                compactor.execute(() -> {
+                    try {
+                        compact(sealed);
+                    } catch (IOException e) {
+                        log.error("Failed to compact checkpoint in {}: {}", directory, e.getMessage());
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Rewrites the log with one record per URL, folding in the records of finished pages.
+     * Waits for a compaction already running to finish first. Appends go on while the log is rewritten.
+     *
+     * @throws IOException If the log can't be rewritten
+     */
+    public void compact() throws IOException {
+        compaction.join();
+        long sealed = seal();
+        if (sealed >= 0) {
+            compact(sealed);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        compaction.join();
+        synchronized (this) {
+            if (writer != null) {
+                writer.close();
+                writer = null;
+            }
+        }
+    }
+
+    /**
+     * Sends further appends to a fresh segment, so that the segments before it can be compacted.
+     *
+     * @return The number of the last sealed segment, or -1 if a compaction is running or checkpointing is disabled
+     */
+    private synchronized long seal() {
+        if (failed || !compaction.isDone()) {
+            return -1;
+        }
+        try {
+            writer.close();
+            writer = LogWriter.open(logFile(directory, segment + 1, false), 0);
+        } catch (IOException e) {
+            log.error("Failed to start a new checkpoint segment in {}, checkpointing is disabled: {}", directory, e.getMessage());
+            failed = true;
+            return -1;
+        }
+        segment++;
+        completedSinceCompaction = 0;
+        compaction = new CompletableFuture<>();
+        return segment - 1;
+    }
+
+    /**
+     * Folds the snapshot and the sealed segments up to the given one into a new snapshot.
+     */
+    private void compact(long sealed) throws IOException {
+        Path temp = directory.resolve(SNAPSHOT_TEMP_FILE);
+        try {
+            List<Path> files;
+            synchronized (this) {
+                files = logFiles(directory, snapshot, sealed);
+            }
+
+            Files.deleteIfExists(temp);
+            VisitedUrlSet completed = readCompleted(files);
+            long end;
+            try (LogWriter out = LogWriter.open(temp, 0)) {
+                for (Path file : files) {
+                    readLog(file, (type, body) -> {
+                        if (type == DISCOVERED) {
+                            Entry entry = readDiscovered(body);
+                            boolean done = entry.done() || completed.containsFingerprint(fingerprint(entry.url()));
+                            byte flags = (byte) ((entry.scheduled() ? FLAG_SCHEDULED : 0) | (done ? FLAG_DONE : 0));
+                            out.append(encodeDiscovered(entry.parent(), entry.url(), entry.depth(), flags));
+                        }
+                    });
+                }
+                end = out.end();
+            }
+
+            synchronized (this) {
+                Files.move(temp, logFile(directory, sealed, true), StandardCopyOption.ATOMIC_MOVE);
+                snapshot = sealed;
+                for (Path file : files) {
+                    Files.delete(file);
+                }
+            }
+            log.debug("Compacted checkpoint in {} to {} bytes", directory, end);
+        } finally {
+            Files.deleteIfExists(temp);
+            compaction.complete(null);
+        }
+    }
+
+    private void append(byte[] body) {
+        if (failed) {
+            return;
+        }
+        if (FRAME_HEADER + body.length > CHUNK_SIZE) {
+            log.warn("Record of {} bytes is too large for the checkpoint, skipping it", body.length);
+            return;
+        }
+
+        try {
+            writer.append(body);
+        } catch (IOException e) {
+            log.error("Failed to extend checkpoint in {}, checkpointing is disabled: {}", directory, e.getMessage());
+            failed = true;
+        }
+    }
+
+    /**
+     * Gets the files of the log in order: the snapshot, if any, then the segments after it.
+     */
+    private static List<Path> logFiles(Path directory, long snapshot, long lastSegment) {
+        List<Path> files = new ArrayList<>();
+        if (snapshot >= 0) {
+            files.add(logFile(directory, snapshot, true));
+        }
+        for (long i = snapshot + 1; i <= lastSegment; i++) {
+            files.add(logFile(directory, i, false));
+        }
+        return files;
+    }
+
+    private static Path logFile(Path directory, long number, boolean snapshot) {
+        return directory.resolve("frontier." + number + (snapshot ? ".snapshot" : ".log"));
+    }
+
+    /**
+     * File of the log: a segment, or a snapshot of all segments up to its number.
+     */
+    private record LogFile(Path path, long number, boolean snapshot) {
+    }
+
+    private static List<LogFile> listLogFiles(Path directory) throws IOException {
+        List<LogFile> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                Matcher matcher = LOG_FILE.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    files.add(new LogFile(file, Long.parseLong(matcher.group(1)), matcher.group(2).equals("snapshot")));
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Appends records to a log file through memory-mapped chunks.
+     */
+    private static class LogWriter implements Closeable {
+
+        private final FileChannel channel;
+        private MappedByteBuffer buffer;
+        private long chunkStart;
+
+        private LogWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Opens a log file for appending at the given position, dropping anything after it.
+         */
+        static LogWriter open(Path file, long end) throws IOException {
+            LogWriter writer = new LogWriter(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE));
+            long size = writer.channel.size();
+            long start = end / CHUNK_SIZE * CHUNK_SIZE;
+            if (size > start + CHUNK_SIZE) {
+                writer.channel.truncate(start + CHUNK_SIZE);
+            }
+            writer.mapChunk(start);
+            writer.buffer.position((int) (end - start));
+
+            // Clear the remains of a torn record, so they can't be mistaken for records appended later
+            long written = Math.min(size - start, CHUNK_SIZE);
+            for (int i = writer.buffer.position(); i < written; i++) {
+                writer.buffer.put(i, (byte) 0);
+            }
+            return writer;
+        }
+
+        void append(byte[] body) throws IOException {
+            int size = FRAME_HEADER + body.length;
+            if (buffer.remaining() < size) {
+                if (buffer.remaining() >= FRAME_HEADER) {
+                    buffer.putInt(buffer.position(), PADDING);
+                }
+                buffer.force();
+                mapChunk(chunkStart + CHUNK_SIZE);
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            int position = buffer.position();
+            buffer.put(position + FRAME_HEADER, body);
+            buffer.putInt(position + 4, (int) crc.getValue());
+            // The length goes in last, so a record cut short by a crash reads as the end of the log
+            buffer.putInt(position, body.length);
+            buffer.position(position + size);
+        }
+
+        long end() {
+            return chunkStart + buffer.position();
+        }
+
+        @Override
+        public void close() throws IOException {
+            buffer.force();
+            channel.close();
+        }
+
+        private void mapChunk(long start) throws IOException {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, start, CHUNK_SIZE);
+            chunkStart = start;
+        }
+    }
+
+    private static VisitedUrlSet readCompleted(List<Path> files) throws IOException {
+        VisitedUrlSet completed = new VisitedUrlSet(1024, false);
+        for (Path file : files) {
+            readLog(file, (type, body) -> {
+                if (type == COMPLETED) {
+                    completed.addFingerprint(body.getLong());
+                }
+            });
+        }
+        return completed;
+    }
+
+    private interface RecordHandler {
+        void handle(byte type, ByteBuffer body) throws IOException;
+    }
+
+    /**
+     * Reads the valid records of a log file.
+     *
+     * @return The position after the last valid record
+     */
+    private static long readLog(Path file, RecordHandler handler) throws IOException {
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = in.size();
+            for (long start = 0; start < size; start += CHUNK_SIZE) {
+                ByteBuffer chunk = in.map(FileChannel.MapMode.READ_ONLY, start, Math.min(CHUNK_SIZE, size - start));
+                while (chunk.remaining() >= FRAME_HEADER) {
+                    int position = chunk.position();
+                    int length = chunk.getInt();
+                    if (length == PADDING) {
+                        break;
+                    }
+                    int checksum = chunk.getInt();
+                    if (length <= 0 || length > chunk.remaining()) {
+                        return start + position;
+                    }
+
+                    ByteBuffer body = chunk.slice(chunk.position(), length);
+                    CRC32 crc = new CRC32();
+                    crc.update(body.duplicate());
+                    if ((int) crc.getValue() != checksum) {
+                        log.warn("Checkpoint {} has a damaged record at {}, ignoring the rest of the log", file, start + position);
+                        return start + position;
+                    }
+
+                    handler.handle(body.get(), body);
+                    chunk.position(chunk.position() + length);
+                }
+            }
+            return size;
+        }
+    }
+
+    private static byte[] encodeDiscovered(String parent, String url, int depth, int flags) {
+        byte[] parentBytes = parent == null ? new byte[0] : parent.getBytes(StandardCharsets.UTF_8);
+        byte[] urlBytes = url.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer body = ByteBuffer.allocate(14 + parentBytes.length + urlBytes.length);
+        body.put(DISCOVERED).put((byte) flags).putInt(depth)
+                .putInt(parentBytes.length).put(parentBytes)
+                .putInt(urlBytes.length).put(urlBytes);
+        return body.array();
+    }
+
+    private static Entry readDiscovered(ByteBuffer body) {
+        byte flags = body.get();
+        int depth = body.getInt();
+        String parent = readString(body);
+        String url = readString(body);
+        return new Entry(parent.isEmpty() ? null : parent, url, depth,
+                (flags & FLAG_SCHEDULED) != 0, (flags & FLAG_DONE) != 0);
+    }
+
+    private static String readString(ByteBuffer body) {
+        byte[] bytes = new byte[body.getInt()];
+        body.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long fingerprint(String url) {
+        return VisitedUrlSet.fingerprint(UrlNormalizer.normalize(url));
+    }
+}
@@ -0,0 +1,443 @@
+package com.ashiq.blackwidow.crawl;
+
+import com.ashiq.blackwidow.payload.ScrapedPage;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * URL frontier shared by all workers of a single crawl.
+ * Keeps track of the URLs that have been seen, the URLs waiting to be fetched and the
+ * tree edges between pages, and detects when the crawl has run out of work.
+ * URLs are handed out through a {@link PolitenessScheduler}, so a worker only waits when every
+ * host with queued URLs is cooling down. The page budget applies to the pages handed out rather than to the URLs
+ * queued, so when the scheduler orders URLs by score, a crawl that runs out of budget has fetched the best ones.
+ * <p>
+ * With a {@link SpillingTaskQueue} backlog, the scheduler holds at most as many URLs as the backlog keeps in
+ * memory. Further URLs wait in the backlog, which spills to disk, and move to the scheduler best first as it
+ * drains.
+ * <p>
+ * With a {@link CrawlCheckpoint}, every URL seen and every page finished is logged, so an interrupted crawl
+ * can be restored with {@link #restore(CrawlCheckpoint)}.
+ * <p>
+ * With a {@link CrawlPartition}, the frontier holds one process's share of a distributed crawl. URLs of hosts
+ * owned by other processes are forwarded to them, once each, and the frontier doesn't finish when it runs out of
+ * work, since other processes may still forward URLs to it, until it is {@link #release() released}.
+ */
+public class CrawlFrontier {
+
+    private final int maxDepth;
+    private final int maxPages;
+
+    private final VisitedUrlSet seen;
+    private final Map<String, List<String>> children = new ConcurrentHashMap<>();
+    private final boolean keepTree;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final PolitenessScheduler scheduler;
+    private final SpillingTaskQueue backlog;
+    private final CrawlCheckpoint checkpoint;
+    private final CrawlPartition partition;
+    private int inProgress;
+    private int scheduled;
+    private boolean closed;
+    private boolean held;
+    private long politenessWaitNanos;
+
+    /**
+     * Creates a new frontier.
+     *
+     * @param maxDepth   The maximum depth of pages that are fetched
+     * @param maxPages   The maximum number of pages that are fetched, by this process in a distributed crawl
+     * @param scheduler  The scheduler that decides when each host may be fetched
+     * @param backlog    The backlog of URLs waiting for room in the scheduler, or null to keep them all there;
+     *                   it is closed with the frontier
+     * @param seen       The set of URLs already seen, shared by all workers
+     * @param checkpoint The checkpoint to log to, or null to keep the crawl in memory only
+     * @param keepTree   Whether to keep the tree edges for {@link #toScrapedPage(String)}; crawls that stream
+     *                   their results as they go don't need them
+     * @param partition  The share of the crawl this frontier holds, or null if it holds the whole crawl; the
+     *                   frontier is held open until {@link #release()} if there is one
+     */
+    public CrawlFrontier(int maxDepth, int maxPages, PolitenessScheduler scheduler, SpillingTaskQueue backlog,
+                         VisitedUrlSet seen, CrawlCheckpoint checkpoint, boolean keepTree, CrawlPartition partition) {
+        this.maxDepth = maxDepth;
+        this.maxPages = maxPages;
+        this.scheduler = scheduler;
+        this.backlog = backlog;
+        this.seen = seen;
+        this.checkpoint = checkpoint;
+        this.keepTree = keepTree;
+        this.partition = partition;
+        this.held = partition != null;
+    }
+
+    /**
+     * Adds the seed URL to the frontier.
+     *
+     * @param url The URL the crawl starts from
+     */
+    public void seed(String url) {
+        if (seen.add(url)) {
+            schedule(new CrawlTask(url, 0, null));
+        }
+    }
+
+    /**
+     * Restores the state of an interrupted crawl from its checkpoint: the URLs seen, the tree edges, the page
+     * budget used by the finished pages and the pages that were scheduled but not finished, which are scheduled
+     * again. Sitemap priorities and modification times aren't logged, so the restored URLs get the defaults.
+     *
+     * @param checkpoint The checkpoint to restore from
+     * @throws IOException If the checkpoint can't be read
+     */
+    public void restore(CrawlCheckpoint checkpoint) throws IOException {
+        lock.lock();
+        try {
+            checkpoint.replay(entry -> {
+                if (!seen.add(entry.url())) {
+                    return;
+                }
+                if (keepTree && entry.parent() != null) {
+                    children.computeIfAbsent(entry.parent(), k -> Collections.synchronizedList(new ArrayList<>())).add(entry.url());
+                }
+                if (entry.done()) {
+                    scheduled++;
+                } else if (entry.scheduled()) {
+                    enqueue(new CrawlTask(entry.url(), entry.depth(), entry.parent()));
+                }
+            });
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records a link found on a page, or a URL listed in the sitemaps of a page, and schedules it for fetching if
+     * it hasn't been seen before and the depth and page budgets allow it.
+     * A URL becomes a child of the first page it was discovered on, so the result is a tree.
+     * URLs are compared after normalization, so e.g. a fragment doesn't make a link new.
+     * A URL owned by another process of a distributed crawl is forwarded to it instead, within the depth budget.
+     *
+     * @param parent       The page the link was found on, or whose sitemaps list it
+     * @param url          The URL
+     * @param priority     The priority for the scheduler to order the URL by, like its sitemap priority
+     * @param lastModified When the page was last modified, or null if not known
+     * @return True if the URL was seen for the first time, false otherwise
+     */
+    public boolean offer(CrawlTask parent, String url, double priority, Instant lastModified) {
+        if (!seen.add(url)) {
+            return false;
+        }
+
+        if (keepTree) {
+            children.computeIfAbsent(parent.url(), k -> Collections.synchronizedList(new ArrayList<>())).add(url);
+        }
+
+        int depth = parent.depth() + 1;
+        CrawlTask task = new CrawlTask(url, depth, parent.url(), priority, lastModified);
+        if (partition != null && !partition.owns(url)) {
+            // Only seen here so it is forwarded once; its owner tells whether it is new to the crawl
+            if (depth <= maxDepth) {
+                partition.forward(task);
+            }
+            return true;
+        }
+        boolean queued = depth <= maxDepth && schedule(task);
+        if (checkpoint != null) {
+            checkpoint.recordDiscovered(parent.url(), url, depth, queued);
+        }
+        return true;
+    }
+
+    /**
+     * Records a URL forwarded by another process of a distributed crawl, and schedules it for fetching if it hasn't
+     * been seen before and the depth and page budgets allow it.
+     *
+     * @param task The task for the URL, with the depth and parent it was found at
+     * @return True if the URL was seen for the first time, false otherwise
+     */
+    public boolean accept(CrawlTask task) {
+        if (!seen.add(task.url())) {
+            return false;
+        }
+
+        if (keepTree && task.parent() != null) {
+            children.computeIfAbsent(task.parent(), k -> Collections.synchronizedList(new ArrayList<>())).add(task.url());
+        }
+
+        boolean queued = task.depth() <= maxDepth && schedule(task);
+        if (checkpoint != null) {
+            checkpoint.recordDiscovered(task.parent(), task.url(), task.depth(), queued);
+        }
+        return true;
+    }
+
+    /**
+     * Checks if a URL is fetched by this frontier rather than forwarded to another process.
+     *
+     * @param url The absolute URL
+     * @return True if the frontier holds the whole crawl or its partition owns the URL, false otherwise
+     */
+    public boolean owns(String url) {
+        return partition == null || partition.owns(url);
+    }
+
+    private boolean schedule(CrawlTask task) {
+        lock.lock();
+        try {
+            // Pages in progress may still be postponed and give back their share of the budget, but rarely are
+            if (closed || scheduled >= maxPages) {
+                return false;
+            }
+            enqueue(task);
+            changed.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queues a task in the scheduler, or in the backlog if the scheduler is full or the backlog has better tasks
+     * waiting. Must be called with the lock held.
+     */
+    private void enqueue(CrawlTask task) {
+        if (backlog == null || (backlog.isEmpty() && scheduler.size() < backlog.getMemoryLimit())) {
+            scheduler.add(task);
+        } else {
+            backlog.add(task);
+            refill();
+        }
+    }
+
+    /**
+     * Moves the best tasks of the backlog to the scheduler while it has room. Must be called with the lock held.
+     */
+    private void refill() {
+        while (backlog != null && scheduler.size() < backlog.getMemoryLimit()) {
+            CrawlTask task = backlog.poll();
+            if (task == null) {
+                return;
+            }
+            scheduler.add(task);
+        }
+    }
+
+    /**
+     * Takes the next URL to fetch, waiting until one becomes available and its host may be fetched.
+     * Every task returned by this method must be passed to {@link #complete(CrawlTask)}.
+     *
+     * @return The next task, or null if the crawl is finished
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public CrawlTask take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (true) {
+                boolean budgetUsed = scheduled >= maxPages;
+                if (closed || ((scheduler.isEmpty() || budgetUsed) && inProgress == 0 && !held)) {
+                    return null;
+                }
+
+                long now = System.nanoTime();
+                CrawlTask task = budgetUsed ? null : scheduler.poll(now);
+                if (task != null) {
+                    scheduled++;
+                    inProgress++;
+                    refill();
+                    return task;
+                }
+
+                long wait = budgetUsed ? -1 : scheduler.nanosUntilReady(now);
+                if (wait < 0) {
+                    changed.await();
+                } else {
+                    // Every queued host is cooling down
+                    changed.awaitNanos(Math.max(wait, TimeUnit.MILLISECONDS.toNanos(1)));
+                    politenessWaitNanos += System.nanoTime() - now;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Marks a task as finished, waking up idle workers if there is no work left.
+     *
+     * @param task The task returned by {@link #take()}
+     */
+    public void complete(CrawlTask task) {
+        if (checkpoint != null) {
+            checkpoint.recordCompleted(task.url());
+        }
+        lock.lock();
+        try {
+            inProgress--;
+            if (inProgress == 0 && (scheduler.isEmpty() || scheduled >= maxPages)) {
+                changed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Puts a task whose host is unavailable back in the frontier, instead of completing it, and holds off the
+     * host's other URLs until it may be tried again.
+     *
+     * @param task  The task returned by {@link #take()}
+     * @param until The time from {@link System#nanoTime()} at which the host may be tried again
+     * @return True if the task was put back, false if the frontier is closed and it must be completed as usual
+     */
+    public boolean postpone(CrawlTask task, long until) {
+        lock.lock();
+        try {
+            if (closed) {
+                return false;
+            }
+            inProgress--;
+            // The page gets fetched again later, and counted again then
+            scheduled--;
+            scheduler.postpone(task, until);
+            changed.signalAll();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Lets a held frontier finish once it runs out of work, when no more URLs will be forwarded to it.
+     */
+    public void release() {
+        lock.lock();
+        try {
+            held = false;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Checks if no page is in progress and none is waiting to be fetched within the page budget, so the frontier
+     * only gets more work if URLs are forwarded to it.
+     *
+     * @return True if the frontier is idle, false otherwise
+     */
+    public boolean isIdle() {
+        lock.lock();
+        try {
+            return inProgress == 0 && (closed || scheduler.isEmpty() || scheduled >= maxPages);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops handing out work. Tasks that are already in progress are allowed to finish.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            scheduler.clear();
+            if (backlog != null) {
+                backlog.close();
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of pages handed out for fetching so far, which is what the page budget limits.
+     *
+     * @return The number of scheduled pages
+     */
+    public int getScheduledCount() {
+        lock.lock();
+        try {
+            return scheduled;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of pages waiting to be fetched.
+     *
+     * @return The number of queued pages
+     */
+    public long getQueuedCount() {
+        lock.lock();
+        try {
+            return scheduler.size() + (backlog == null ? 0 : backlog.size());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of pages waiting to be fetched that were spilled to disk.
+     *
+     * @return The number of spilled pages
+     */
+    public long getSpilledCount() {
+        lock.lock();
+        try {
+            return backlog == null ? 0 : backlog.getSpilledCount();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the total time workers have waited because every host with queued pages was cooling down.
+     *
+     * @return The wait time in nanoseconds, summed over all workers
+     */
+    public long getPolitenessWaitNanos() {
+        lock.lock();
+        try {
+            return politenessWaitNanos;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Builds the tree of scraped pages rooted at the given URL.
+     *
+     * @param url The URL of the root page
+     * @return The ScrapedPage tree
+     */
+    public ScrapedPage toScrapedPage(String url) {
+        List<String> links = children.get(url);
+        if (links == null) {
+            return new ScrapedPage(url, List.of());
+        }
+
+        List<ScrapedPage> pages;
+        synchronized (links) {
+            pages = new ArrayList<>(links.size());
+            for (String link : links) {
+                pages.add(toScrapedPage(link));
+            }
+        }
+        return new ScrapedPage(url, pages);
+    }
+}
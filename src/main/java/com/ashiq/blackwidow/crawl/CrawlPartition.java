@@ -0,0 +1,34 @@
+package com.ashiq.blackwidow.crawl;
+
+/**
+ * The share of a distributed crawl that one process is responsible for.
+ * Hosts are split between the processes, each of which fetches the URLs of its own hosts with its own
+ * politeness and robots.txt state. URLs found for hosts owned by another process are forwarded to it instead
+ * of being queued, and URLs forwarded by the others are added with {@link CrawlFrontier#accept(CrawlTask)}.
+ */
+public interface CrawlPartition {
+
+    /**
+     * Checks if a URL belongs to this process.
+     *
+     * @param url The absolute URL
+     * @return True if this process fetches the URL, false if another one does
+     */
+    boolean owns(String url);
+
+    /**
+     * Hands a URL owned by another process over to it. Called at most once per URL by each process.
+     *
+     * @param task The task for the URL, with the depth and parent it was found at
+     */
+    void forward(CrawlTask task);
+
+    /**
+     * Called once the frontier of this process's share of the crawl has been created and, if this process owns
+     * the seed URL, seeded. It is not called if the seed URL is disallowed by robots.txt.
+     *
+     * @param frontier The frontier to add forwarded URLs to
+     */
+    default void started(CrawlFrontier frontier) {
+    }
+}
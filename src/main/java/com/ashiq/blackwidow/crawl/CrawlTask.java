@@ -0,0 +1,29 @@
+package com.ashiq.blackwidow.crawl;
+
+import com.ashiq.blackwidow.model.SitemapEntry;
+
+import java.time.Instant;
+
+/**
+ * Record representing a URL waiting in the frontier to be fetched.
+ *
+ * @param url          The URL to fetch
+ * @param depth        The number of link hops from the seed page
+ * @param parent       The URL of the page the URL was first found on, or null for the seed page
+ * @param priority     The sitemap priority of the URL, or {@link SitemapEntry#DEFAULT_PRIORITY} if it wasn't found
+ *                     in a sitemap
+ * @param lastModified When the page was last modified according to the sitemap, or null if unknown
+ */
+public record CrawlTask(String url, int depth, String parent, double priority, Instant lastModified) {
+
+    /**
+     * Creates a task for a URL found as a link, which has no sitemap priority or modification time.
+     *
+     * @param url    The URL to fetch
+     * @param depth  The number of link hops from the seed page
+     * @param parent The URL of the page the URL was first found on, or null for the seed page
+     */
+    public CrawlTask(String url, int depth, String parent) {
+        this(url, depth, parent, SitemapEntry.DEFAULT_PRIORITY, null);
+    }
+}
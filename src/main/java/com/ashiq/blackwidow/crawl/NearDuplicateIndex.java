@@ -0,0 +1,128 @@
+package com.ashiq.blackwidow.crawl;
+
+import com.ashiq.blackwidow.util.SimHash;
+
+/**
+ * Index of the {@link SimHash} fingerprints of the pages of a crawl, finding pages whose fingerprint is within a
+ * few bits of an earlier one.
+ * Fingerprints are cut into {@code maxDistance + 1} bands of bits. Two fingerprints that differ in at most
+ * {@code maxDistance} bits agree exactly on at least one band, so only fingerprints sharing a band with the new
+ * one need to be compared, like in locality-sensitive hashing. Each band has its own open-addressing table
+ * of fingerprints, probed from a slot derived from the band, so a lookup is a few probes per band whatever the
+ * number of pages, and the fingerprints are stored as primitives like in the {@link VisitedUrlSet}.
+ * <p>
+ * All methods are synchronized; checking and adding a fingerprint takes well under a microsecond.
+ */
+public class NearDuplicateIndex {
+
+    /**
+     * Largest distance supported, at which bands are 4 bits wide and match too many fingerprints to be useful.
+     */
+    static final int MAX_DISTANCE = 15;
+
+    private static final double MAX_LOAD = 0.5;
+
+    private final int maxDistance;
+    private final int[] bandShifts;
+    private final long[] bandMasks;
+    private final long[][] tables;
+    private int size;
+
+    /**
+     * Creates a new index.
+     *
+     * @param maxDistance The number of bits a fingerprint may differ in from an earlier one to be a near-duplicate,
+     *                    from 0 for exact duplicates up to {@value #MAX_DISTANCE}
+     */
+    public NearDuplicateIndex(int maxDistance) {
+        this.maxDistance = Math.clamp(maxDistance, 0, MAX_DISTANCE);
+        int bands = this.maxDistance + 1;
+        this.bandShifts = new int[bands];
+        this.bandMasks = new long[bands];
+        this.tables = new long[bands][];
+        for (int band = 0; band < bands; band++) {
+            int start = band * 64 / bands;
+            int end = (band + 1) * 64 / bands;
+            bandShifts[band] = start;
+            bandMasks[band] = (1L << (end - start)) - 1;
+            tables[band] = new long[1024];
+        }
+    }
+
+    /**
+     * Adds a fingerprint unless it is a near-duplicate of one already in the index.
+     *
+     * @param fingerprint The fingerprint, as returned by {@link SimHash#fingerprint()}
+     * @return True if the fingerprint was added, false if the index holds one within the distance of it
+     */
+    public synchronized boolean add(long fingerprint) {
+        for (int band = 0; band < tables.length; band++) {
+            if (findNear(band, fingerprint)) {
+                return false;
+            }
+        }
+        for (int band = 0; band < tables.length; band++) {
+            insert(tables[band], band, fingerprint);
+        }
+        if (++size > tables[0].length * MAX_LOAD) {
+            resize();
+        }
+        return true;
+    }
+
+    /**
+     * Gets the number of fingerprints in the index, that is the number of distinct pages.
+     *
+     * @return The number of fingerprints
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Looks for a fingerprint within the distance among those sharing a band with the given one.
+     */
+    private boolean findNear(int band, long fingerprint) {
+        long[] table = tables[band];
+        int mask = table.length - 1;
+        long key = bandOf(band, fingerprint);
+        for (int i = slot(key, mask); table[i] != 0; i = (i + 1) & mask) {
+            if (bandOf(band, table[i]) == key && SimHash.distance(table[i], fingerprint) <= maxDistance) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void insert(long[] table, int band, long fingerprint) {
+        int mask = table.length - 1;
+        int i = slot(bandOf(band, fingerprint), mask);
+        while (table[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        table[i] = fingerprint;
+    }
+
+    private void resize() {
+        for (int band = 0; band < tables.length; band++) {
+            long[] old = tables[band];
+            tables[band] = new long[old.length << 1];
+            for (long fingerprint : old) {
+                if (fingerprint != 0) {
+                    insert(tables[band], band, fingerprint);
+                }
+            }
+        }
+    }
+
+    private long bandOf(int band, long fingerprint) {
+        return fingerprint >>> bandShifts[band] & bandMasks[band];
+    }
+
+    /**
+     * Spreads the bits of a band, which may be only a few bits wide, over the table with a multiplicative hash.
+     */
+    private static int slot(long key, int mask) {
+        return (int) ((key + 1) * 0x9e3779b97f4a7c15L >>> 32) & mask;
+    }
+}
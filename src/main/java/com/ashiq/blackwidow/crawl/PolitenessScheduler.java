@@ -0,0 +1,231 @@
+package com.ashiq.blackwidow.crawl;
+
+import com.ashiq.blackwidow.util.DomainUtils;
+
+import java.net.URI;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+/**
+ * Per-host politeness scheduler.
+ * URLs are queued per host (scheme, host and port) and every host keeps the earliest time it may be
+ * fetched again. Hosts are kept in a heap ordered by that time, so while one host cools down the URLs
+ * of other hosts are handed out instead, and no thread ever has to sleep for a crawl delay. Hosts take turns,
+ * and the URLs of a host are handed out in the order of a {@link TaskScorer}.
+ * <p>
+ * This class is not thread-safe; callers must guard it with their own lock.
+ */
+public class PolitenessScheduler {
+
+    private final ToLongFunction<String> crawlDelay;
+    private final long defaultDelayNanos;
+    private final long minDelayNanos;
+    private final TaskScorer scorer;
+
+    private final Map<String, HostQueue> hosts = new HashMap<>();
+    private final PriorityQueue<HostQueue> ready = new PriorityQueue<>(Comparator.comparingLong(HostQueue::getNextFetchAt));
+    /**
+     * Hosts whose URLs ran out while they were cooling down, kept only until they may be fetched again.
+     */
+    private final PriorityQueue<CoolingHost> cooling = new PriorityQueue<>(Comparator.comparingLong(CoolingHost::until));
+    private int size;
+    private long sequence;
+
+    /**
+     * Creates a new scheduler that hands out the URLs of a host in the order they were queued.
+     *
+     * @param crawlDelay   Function returning the robots.txt crawl delay in milliseconds for a host key, or 0 if there is none
+     * @param defaultDelay Delay in milliseconds to use for hosts without a robots.txt crawl delay
+     * @param minDelay     Lower bound in milliseconds for the delay between two fetches from the same host
+     */
+    public PolitenessScheduler(ToLongFunction<String> crawlDelay, long defaultDelay, long minDelay) {
+        this(crawlDelay, defaultDelay, minDelay, TaskScorer.FIFO);
+    }
+
+    /**
+     * Creates a new scheduler.
+     *
+     * @param crawlDelay   Function returning the robots.txt crawl delay in milliseconds for a host key, or 0 if there is none
+     * @param defaultDelay Delay in milliseconds to use for hosts without a robots.txt crawl delay
+     * @param minDelay     Lower bound in milliseconds for the delay between two fetches from the same host
+     * @param scorer       The scorer deciding which URL of a host is handed out first
+     */
+    public PolitenessScheduler(ToLongFunction<String> crawlDelay, long defaultDelay, long minDelay, TaskScorer scorer) {
+        this.crawlDelay = crawlDelay;
+        this.defaultDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, defaultDelay));
+        this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, minDelay));
+        this.scorer = scorer;
+    }
+
+    /**
+     * Queues a task among the other URLs of the same host, behind those with the same or a higher score.
+     *
+     * @param task The task to queue
+     */
+    public void add(CrawlTask task) {
+        String hostKey = DomainUtils.getHostKey(URI.create(task.url()));
+        HostQueue host = hosts.computeIfAbsent(hostKey, HostQueue::new);
+        if (host.tasks.isEmpty()) {
+            ready.add(host);
+        }
+        host.tasks.add(scored(task));
+        size++;
+    }
+
+    /**
+     * Puts a task back among the other URLs of its host, and holds off the whole host until the given time.
+     *
+     * @param task  The task to put back
+     * @param until The time from {@link System#nanoTime()} before which the host is not fetched
+     */
+    public void postpone(CrawlTask task, long until) {
+        String hostKey = DomainUtils.getHostKey(URI.create(task.url()));
+        HostQueue host = hosts.computeIfAbsent(hostKey, HostQueue::new);
+        if (!host.tasks.isEmpty()) {
+            // Re-insert the host so the heap sees its new time
+            ready.remove(host);
+        }
+        if (until - host.nextFetchAt > 0) {
+            host.nextFetchAt = until;
+        }
+        host.tasks.add(scored(task));
+        ready.add(host);
+        size++;
+    }
+
+    /**
+     * Takes the next task whose host may be fetched now.
+     *
+     * @param now The current time from {@link System#nanoTime()}
+     * @return The next task, or null if every host with queued URLs is still cooling down
+     */
+    public CrawlTask poll(long now) {
+        forgetCooledHosts(now);
+        HostQueue host = ready.peek();
+        if (host == null || host.nextFetchAt - now > 0) {
+            return null;
+        }
+
+        ready.poll();
+        CrawlTask task = host.tasks.poll().task();
+        size--;
+        if (host.delayNanos < 0) {
+            // By the time a URL of the host is handed out, its robots.txt has been loaded to check the URL
+            host.delayNanos = delayNanos(host.hostKey);
+        }
+        host.nextFetchAt = now + host.delayNanos;
+        if (host.tasks.isEmpty()) {
+            // Keep the cool-down state only while it still matters
+            if (host.nextFetchAt - now <= 0) {
+                hosts.remove(host.hostKey);
+            } else {
+                cooling.add(new CoolingHost(host, host.nextFetchAt));
+            }
+        } else {
+            ready.add(host);
+        }
+        return task;
+    }
+
+    /**
+     * Gets the time until the next host becomes ready.
+     *
+     * @param now The current time from {@link System#nanoTime()}
+     * @return The wait in nanoseconds, 0 if a host is ready now, or -1 if nothing is queued
+     */
+    public long nanosUntilReady(long now) {
+        HostQueue host = ready.peek();
+        if (host == null) {
+            return -1;
+        }
+        return Math.max(0, host.nextFetchAt - now);
+    }
+
+    /**
+     * Gets the number of queued tasks across all hosts.
+     *
+     * @return The number of queued tasks
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks if no tasks are queued.
+     *
+     * @return True if no tasks are queued, false otherwise
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes all queued tasks.
+     */
+    public void clear() {
+        hosts.clear();
+        ready.clear();
+        cooling.clear();
+        size = 0;
+    }
+
+    /**
+     * Gets the number of hosts the scheduler keeps state for, queued or cooling down.
+     */
+    int hostCount() {
+        return hosts.size();
+    }
+
+    /**
+     * Drops the hosts that ran out of URLs once they may be fetched again, so a crawl over many hosts doesn't keep
+     * one entry for every host it has seen. A host that got new URLs meanwhile is back in the ready heap and stays.
+     */
+    private void forgetCooledHosts(long now) {
+        while (!cooling.isEmpty() && cooling.peek().until() - now <= 0) {
+            HostQueue host = cooling.poll().host();
+            if (host.tasks.isEmpty() && host.nextFetchAt - now <= 0 && hosts.get(host.hostKey) == host) {
+                hosts.remove(host.hostKey);
+            }
+        }
+    }
+
+    private ScoredTask scored(CrawlTask task) {
+        return new ScoredTask(task, scorer.score(task), sequence++);
+    }
+
+    private long delayNanos(String hostKey) {
+        long robotsDelay = TimeUnit.MILLISECONDS.toNanos(crawlDelay.applyAsLong(hostKey));
+        long delay = robotsDelay > 0 ? robotsDelay : defaultDelayNanos;
+        return Math.max(delay, minDelayNanos);
+    }
+
+    /**
+     * Host without queued URLs that has to be remembered until the given time.
+     */
+    private record CoolingHost(HostQueue host, long until) {
+    }
+
+    /**
+     * URLs waiting for a single host, plus the earliest time the host may be fetched again and the delay between
+     * its fetches, looked up once.
+     */
+    private static class HostQueue {
+        private final String hostKey;
+        private final Queue<ScoredTask> tasks = new PriorityQueue<>(ScoredTask.ORDER);
+        private long nextFetchAt = System.nanoTime();
+        private long delayNanos = -1;
+
+        private HostQueue(String hostKey) {
+            this.hostKey = hostKey;
+        }
+
+        private long getNextFetchAt() {
+            return nextFetchAt;
+        }
+    }
+}
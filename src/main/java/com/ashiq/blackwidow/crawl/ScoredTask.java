@@ -0,0 +1,19 @@
+package com.ashiq.blackwidow.crawl;
+
+import java.util.Comparator;
+
+/**
+ * Task waiting in a queue of the frontier, with its score and the order it was queued in.
+ *
+ * @param task     The task
+ * @param score    The score from the {@link TaskScorer}
+ * @param sequence The number of tasks queued before it, which breaks ties between equal scores
+ */
+record ScoredTask(CrawlTask task, double score, long sequence) {
+
+    /**
+     * Order in which tasks are taken: highest score first, then first queued first.
+     */
+    static final Comparator<ScoredTask> ORDER = Comparator.comparingDouble(ScoredTask::score).reversed()
+            .thenComparingLong(ScoredTask::sequence);
+}
@@ -0,0 +1,330 @@
+package com.ashiq.blackwidow.crawl;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Priority queue of crawl tasks that keeps a bounded number of them in memory and spills the rest to disk, so a
+ * frontier of millions of URLs doesn't have to fit in the heap.
+ * Tasks are ordered by their {@link TaskScorer} score, best first. When more than the memory limit are queued,
+ * the worse half of the in-memory heap is sorted and written to a segment file. Segments are read back lazily:
+ * each keeps only its next task in memory, and {@link #poll()} takes the best of the heap and the segment heads,
+ * like the merge phase of an external sort. Once there are more than {@link #MAX_SEGMENTS} segments they are
+ * merged into one, which bounds the number of open files.
+ * <p>
+ * If a segment can't be written, the tasks stay in memory and spilling is disabled; if it can't be read back,
+ * its remaining tasks are lost. Both are logged. This class is not thread-safe; callers must guard it with their
+ * own lock.
+ */
+@Slf4j
+public class SpillingTaskQueue implements Closeable {
+
+    /**
+     * Number of segments above which they are merged into one.
+     */
+    static final int MAX_SEGMENTS = 16;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final TaskScorer scorer;
+    private final int memoryLimit;
+    private final Path parentDirectory;
+
+    private final PriorityQueue<ScoredTask> heap = new PriorityQueue<>(ScoredTask.ORDER);
+    private final List<Segment> segments = new ArrayList<>();
+    private Path directory;
+    private long sequence;
+    private int segmentCount;
+    private boolean failed;
+
+    /**
+     * Creates a new queue.
+     *
+     * @param scorer          The scorer ordering the tasks
+     * @param memoryLimit     The number of tasks kept in memory before spilling to disk
+     * @param parentDirectory The directory to create the queue's own directory of segments in, or null for the
+     *                        temporary directory; it is only created once the queue first spills
+     */
+    public SpillingTaskQueue(TaskScorer scorer, int memoryLimit, Path parentDirectory) {
+        this.scorer = scorer;
+        this.memoryLimit = Math.max(2, memoryLimit);
+        this.parentDirectory = parentDirectory;
+    }
+
+    /**
+     * Adds a task, spilling the worse half of the tasks in memory to disk if there are too many.
+     *
+     * @param task The task to add
+     */
+    public void add(CrawlTask task) {
+        heap.add(new ScoredTask(task, scorer.score(task), sequence++));
+        if (heap.size() > memoryLimit && !failed) {
+            spill();
+        }
+    }
+
+    /**
+     * Takes the best task, from memory or from disk.
+     *
+     * @return The task with the highest score, or null if the queue is empty
+     */
+    public CrawlTask poll() {
+        Segment best = best(segments);
+        if (best == null || (!heap.isEmpty() && ScoredTask.ORDER.compare(heap.peek(), best.head) < 0)) {
+            return heap.isEmpty() ? null : heap.poll().task();
+        }
+        CrawlTask task = best.head.task();
+        advance(best);
+        return task;
+    }
+
+    /**
+     * Gets the number of queued tasks, in memory and on disk.
+     *
+     * @return The number of tasks
+     */
+    public long size() {
+        return heap.size() + getSpilledCount();
+    }
+
+    /**
+     * Checks if no tasks are queued.
+     *
+     * @return True if the queue is empty, false otherwise
+     */
+    public boolean isEmpty() {
+        return heap.isEmpty() && segments.isEmpty();
+    }
+
+    /**
+     * Gets the number of tasks waiting on disk.
+     *
+     * @return The number of spilled tasks
+     */
+    public long getSpilledCount() {
+        long spilled = 0;
+        for (Segment segment : segments) {
+            spilled += segment.remaining + 1;
+        }
+        return spilled;
+    }
+
+    /**
+     * Gets the number of tasks kept in memory before spilling to disk.
+     *
+     * @return The memory limit
+     */
+    public int getMemoryLimit() {
+        return memoryLimit;
+    }
+
+    /**
+     * Removes all tasks and deletes the segment files. The queue can still be used afterwards.
+     */
+    @Override
+    public void close() {
+        heap.clear();
+        for (Segment segment : segments) {
+            segment.delete();
+        }
+        segments.clear();
+        if (directory != null) {
+            try {
+                Files.deleteIfExists(directory);
+            } catch (IOException e) {
+                log.warn("Failed to delete frontier spill directory {}: {}", directory, e.getMessage());
+            }
+            directory = null;
+        }
+    }
+
+    private void spill() {
+        ScoredTask[] tasks = heap.toArray(new ScoredTask[0]);
+        Arrays.sort(tasks, ScoredTask.ORDER);
+        int keep = tasks.length / 2;
+        try {
+            Segment segment = write(Arrays.asList(tasks).subList(keep, tasks.length).iterator());
+            heap.clear();
+            heap.addAll(Arrays.asList(tasks).subList(0, keep));
+            segments.add(segment);
+            advance(segment);
+            if (segments.size() > MAX_SEGMENTS) {
+                merge();
+            }
+        } catch (IOException e) {
+            log.error("Failed to spill the frontier to disk, keeping it in memory: {}", e.getMessage());
+            failed = true;
+        }
+    }
+
+    /**
+     * Merges all segments into one, reading them in step.
+     */
+    private void merge() throws IOException {
+        List<Segment> merged = new ArrayList<>(segments);
+        segments.clear();
+        Segment segment;
+        try {
+            segment = write(new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return !merged.isEmpty();
+                }
+
+                @Override
+                public ScoredTask next() {
+                    Segment best = best(merged);
+                    ScoredTask task = best.head;
+                    if (!best.next()) {
+                        merged.remove(best);
+                        best.delete();
+                    }
+                    return task;
+                }
+            });
+        } catch (IOException e) {
+            // The tasks merged so far are lost with the file, the others can still be read
+            segments.addAll(merged);
+            throw e;
+        }
+        segments.add(segment);
+        advance(segment);
+    }
+
+    private Segment write(Iterator<ScoredTask> tasks) throws IOException {
+        if (directory == null) {
+            directory = parentDirectory == null
+                    ? Files.createTempDirectory("blackwidow-frontier")
+                    : Files.createTempDirectory(Files.createDirectories(parentDirectory), "frontier");
+        }
+        Path file = directory.resolve("segment-" + segmentCount++);
+        long count = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE))) {
+            while (tasks.hasNext()) {
+                ScoredTask scored = tasks.next();
+                CrawlTask task = scored.task();
+                out.writeDouble(scored.score());
+                out.writeLong(scored.sequence());
+                out.writeInt(task.depth());
+                out.writeDouble(task.priority());
+                out.writeLong(task.lastModified() == null ? Long.MIN_VALUE : task.lastModified().toEpochMilli());
+                writeString(out, task.url());
+                writeString(out, task.parent());
+                count++;
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        return new Segment(file, count);
+    }
+
+    /**
+     * Moves a segment on to its next task, dropping it once it is used up or can't be read.
+     */
+    private void advance(Segment segment) {
+        if (!segment.next()) {
+            segments.remove(segment);
+            segment.delete();
+        }
+    }
+
+    private static Segment best(List<Segment> segments) {
+        Segment best = null;
+        for (Segment segment : segments) {
+            if (best == null || ScoredTask.ORDER.compare(segment.head, best.head) < 0) {
+                best = segment;
+            }
+        }
+        return best;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        return length < 0 ? null : new String(in.readNBytes(length), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Sorted file of spilled tasks, read one task at a time. Segments in the list always have a head.
+     */
+    private static final class Segment {
+        private final Path file;
+        private DataInputStream in;
+        private ScoredTask head;
+        private long remaining;
+
+        Segment(Path file, long count) {
+            this.file = file;
+            this.remaining = count;
+        }
+
+        /**
+         * Reads the next task into the head.
+         *
+         * @return True if there was one, false at the end of the file or if it can't be read
+         */
+        boolean next() {
+            head = null;
+            if (remaining == 0) {
+                return false;
+            }
+            try {
+                if (in == null) {
+                    in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE));
+                }
+                double score = in.readDouble();
+                long sequence = in.readLong();
+                int depth = in.readInt();
+                double priority = in.readDouble();
+                long lastModified = in.readLong();
+                String url = readString(in);
+                String parent = readString(in);
+                head = new ScoredTask(new CrawlTask(url, depth, parent, priority,
+                        lastModified == Long.MIN_VALUE ? null : Instant.ofEpochMilli(lastModified)), score, sequence);
+                remaining--;
+                return true;
+            } catch (IOException e) {
+                log.error("Failed to read frontier segment {}, losing its {} remaining URLs: {}", file, remaining,
+                        e.getMessage());
+                remaining = 0;
+                return false;
+            }
+        }
+
+        void delete() {
+            try {
+                if (in != null) {
+                    in.close();
+                }
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Failed to delete frontier segment {}: {}", file, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.ashiq.blackwidow.crawl;
+
+/**
+ * Scores the URLs waiting in the frontier. The URLs of a host are fetched highest score first, and URLs with equal
+ * scores in the order they were found.
+ */
+@FunctionalInterface
+public interface TaskScorer {
+
+    /**
+     * Scorer giving every URL the same score, so URLs are fetched in the order they were found.
+     */
+    TaskScorer FIFO = task -> 0;
+
+    /**
+     * Scores a URL. The score of a task must not change while it waits in the frontier.
+     *
+     * @param task The task of the URL
+     * @return The score, higher for URLs to fetch sooner
+     */
+    double score(CrawlTask task);
+}
@@ -0,0 +1,196 @@
+package com.ashiq.blackwidow.crawl;
+
+import com.ashiq.blackwidow.util.UrlNormalizer;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+/**
+ * Compact, concurrent set of visited URLs.
+ * URLs are normalized and reduced to 64-bit fingerprints, which are stored in primitive open-addressing
+ * tables instead of as strings, so ten million URLs take around a hundred megabytes rather than gigabytes.
+ * The tables are split into segments with their own locks, so workers adding URLs rarely contend.
+ * <p>
+ * Two different URLs map to the same fingerprint with a probability of about n²/2⁶⁵, i.e. roughly one
+ * in 400,000 for a crawl of ten million URLs, in which case the second URL is treated as already visited.
+ * <p>
+ * An optional Bloom filter sits in front of the tables. A URL it has definitely not seen is inserted at the first
+ * free slot without probing for an existing copy, which is the common case while a crawl discovers new pages, and
+ * most {@link #contains(String)} calls for unseen URLs are answered without taking a lock.
+ */
+public class VisitedUrlSet {
+
+    private static final int SEGMENT_BITS = 6;
+    private static final int SEGMENT_COUNT = 1 << SEGMENT_BITS;
+
+    private final Segment[] segments = new Segment[SEGMENT_COUNT];
+    private final BloomFilter<Long> bloomFilter;
+
+    /**
+     * Creates a new set.
+     *
+     * @param expectedUrls The number of URLs the set is expected to hold, used for the initial capacity
+     * @param bloomFilter  Whether to put a Bloom filter in front of the tables
+     */
+    public VisitedUrlSet(long expectedUrls, boolean bloomFilter) {
+        int segmentCapacity = (int) Math.min(1 << 28, Math.max(16, expectedUrls / SEGMENT_COUNT));
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment(segmentCapacity);
+        }
+        this.bloomFilter = bloomFilter
+                ? BloomFilter.create(Funnels.longFunnel(), Math.max(1000, expectedUrls), 0.01)
+                : null;
+    }
+
+    /**
+     * Adds a URL if it isn't in the set yet.
+     *
+     * @param url The URL to add
+     * @return True if the URL was added, false if it was already in the set
+     */
+    public boolean add(String url) {
+        return addFingerprint(fingerprint(UrlNormalizer.normalize(url)));
+    }
+
+    /**
+     * Checks if a URL is in the set.
+     *
+     * @param url The URL to check
+     * @return True if the URL is in the set, false otherwise
+     */
+    public boolean contains(String url) {
+        return containsFingerprint(fingerprint(UrlNormalizer.normalize(url)));
+    }
+
+    /**
+     * Adds a fingerprint if it isn't in the set yet.
+     *
+     * @param fingerprint The fingerprint to add, as returned by {@link #fingerprint(String)}
+     * @return True if the fingerprint was added, false if it was already in the set
+     */
+    public boolean addFingerprint(long fingerprint) {
+        return segmentFor(fingerprint).add(fingerprint, bloomFilter);
+    }
+
+    /**
+     * Checks if a fingerprint is in the set.
+     *
+     * @param fingerprint The fingerprint to check, as returned by {@link #fingerprint(String)}
+     * @return True if the fingerprint is in the set, false otherwise
+     */
+    public boolean containsFingerprint(long fingerprint) {
+        if (bloomFilter != null && !bloomFilter.mightContain(fingerprint)) {
+            return false;
+        }
+        return segmentFor(fingerprint).contains(fingerprint);
+    }
+
+    /**
+     * Gets the number of URLs in the set.
+     *
+     * @return The number of URLs
+     */
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * Computes the 64-bit fingerprint of a URL, using FNV-1a over its characters followed by the
+     * MurmurHash3 finalizer so that all bits are well mixed. Zero is reserved for empty slots.
+     *
+     * @param url The URL, normally already normalized
+     * @return The fingerprint, never 0
+     */
+    public static long fingerprint(String url) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < url.length(); i++) {
+            h ^= url.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h;
+    }
+
+    private Segment segmentFor(long fingerprint) {
+        return segments[(int) (fingerprint >>> (64 - SEGMENT_BITS))];
+    }
+
+    /**
+     * Open-addressing hash table of fingerprints with linear probing, guarded by its own monitor.
+     */
+    private static class Segment {
+        private static final double MAX_LOAD = 0.75;
+
+        private long[] table;
+        private int size;
+
+        private Segment(int expected) {
+            int capacity = Integer.highestOneBit((int) Math.max(16, expected / MAX_LOAD) - 1) << 1;
+            this.table = new long[capacity];
+        }
+
+        /**
+         * Adds a fingerprint, skipping the search for an existing copy if the Bloom filter has never seen it.
+         * The filter is updated under this segment's lock, which every add of the same fingerprint takes, so a
+         * concurrent add of it can't also see a definite miss.
+         */
+        private synchronized boolean add(long fingerprint, BloomFilter<Long> bloomFilter) {
+            boolean absent = bloomFilter != null && !bloomFilter.mightContain(fingerprint);
+            int mask = table.length - 1;
+            int i = (int) fingerprint & mask;
+            while (table[i] != 0) {
+                if (!absent && table[i] == fingerprint) {
+                    return false;
+                }
+                i = (i + 1) & mask;
+            }
+            table[i] = fingerprint;
+            if (bloomFilter != null) {
+                bloomFilter.put(fingerprint);
+            }
+            if (++size > table.length * MAX_LOAD) {
+                resize();
+            }
+            return true;
+        }
+
+        private synchronized boolean contains(long fingerprint) {
+            int mask = table.length - 1;
+            int i = (int) fingerprint & mask;
+            while (table[i] != 0) {
+                if (table[i] == fingerprint) {
+                    return true;
+                }
+                i = (i + 1) & mask;
+            }
+            return false;
+        }
+
+        private synchronized int size() {
+            return size;
+        }
+
+        private void resize() {
+            long[] old = table;
+            long[] resized = new long[old.length << 1];
+            int mask = resized.length - 1;
+            for (long fingerprint : old) {
+                if (fingerprint != 0) {
+                    int i = (int) fingerprint & mask;
+                    while (resized[i] != 0) {
+                        i = (i + 1) & mask;
+                    }
+                    resized[i] = fingerprint;
+                }
+            }
+            table = resized;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.ashiq.blackwidow.crawl;
+
+import java.time.Instant;
+
+/**
+ * Scorer adding up the sitemap priority of a URL, how recently its page was modified and how close it is to the
+ * seed page, each with its own weight.
+ * Freshness is 1 for a page modified when the crawl started and halves with every half-life of age, so it is 0 for
+ * pages without a modification time. Depth counts against a URL, so that with the default weights links are still
+ * fetched roughly breadth first, with sitemap URLs of high priority or recent changes coming a level or two early.
+ */
+public class WeightedTaskScorer implements TaskScorer {
+
+    private final double priorityWeight;
+    private final double freshnessWeight;
+    private final double halfLifeMillis;
+    private final double depthWeight;
+    private final long now = System.currentTimeMillis();
+
+    /**
+     * Creates a new scorer.
+     *
+     * @param priorityWeight  Weight of the sitemap priority, between 0 and 1
+     * @param freshnessWeight Weight of the freshness, between 0 and 1
+     * @param halfLife        Age in milliseconds at which a page's freshness has halved
+     * @param depthWeight     Score taken off per link hop from the seed page
+     */
+    public WeightedTaskScorer(double priorityWeight, double freshnessWeight, long halfLife, double depthWeight) {
+        this.priorityWeight = priorityWeight;
+        this.freshnessWeight = freshnessWeight;
+        this.halfLifeMillis = Math.max(1, halfLife);
+        this.depthWeight = depthWeight;
+    }
+
+    @Override
+    public double score(CrawlTask task) {
+        double score = priorityWeight * task.priority() - depthWeight * task.depth();
+        Instant lastModified = task.lastModified();
+        if (lastModified != null && freshnessWeight != 0) {
+            long age = Math.max(0, now - lastModified.toEpochMilli());
+            score += freshnessWeight * Math.pow(0.5, age / halfLifeMillis);
+        }
+        return score;
+    }
+}
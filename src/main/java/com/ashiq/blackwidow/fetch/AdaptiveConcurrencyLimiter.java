@@ -0,0 +1,221 @@
+package com.ashiq.blackwidow.fetch;
+
+import com.ashiq.blackwidow.config.ScraperConfig;
+import com.ashiq.blackwidow.metrics.CrawlMetrics;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalListener;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Per-host limit on requests in flight that adapts to how the host copes, additive increase / multiplicative
+ * decrease (AIMD) style.
+ * Every host starts at the initial limit. Each response that arrives in about the usual time raises the limit by
+ * 1/limit, so by one per round of requests, up to the maximum. A 429 or 503 response, or a response much slower
+ * than the host's baseline latency, cuts the limit by the backoff ratio, down to the minimum. Cuts happen at most
+ * once per round trip, so one burst of throttled responses counts as a single signal. A Retry-After on a throttled
+ * response also stops new requests to the host until it has passed.
+ * <p>
+ * Waiting uses {@link ReentrantLock} conditions, which don't pin the virtual threads the crawl runs on.
+ * With {@code adaptive-concurrency} off, the limit stays at {@code max-connections-per-host}.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    /**
+     * Weight of a new sample in the baseline latency, low so a few slow responses don't drag the baseline up.
+     */
+    private static final double BASELINE_WEIGHT = 0.1;
+
+    private final boolean adaptive;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int initialLimit;
+    private final double spikeRatio;
+    private final double backoffRatio;
+    private final CrawlMetrics metrics;
+
+    /**
+     * Host limits, kept while the host is being crawled, for as many hosts as robots.txt rules are cached for.
+     * A host that is evicted while requests are in flight starts over from the initial limit.
+     */
+    private final LoadingCache<String, HostLimit> hosts;
+
+    public AdaptiveConcurrencyLimiter(ScraperConfig config, CrawlMetrics metrics) {
+        this.adaptive = config.isAdaptiveConcurrency();
+        this.maxLimit = Math.max(1, config.getMaxConnectionsPerHost());
+        this.minLimit = Math.clamp(config.getMinConnectionsPerHost(), 1, maxLimit);
+        this.initialLimit = adaptive ? Math.clamp(config.getInitialConnectionsPerHost(), minLimit, maxLimit) : maxLimit;
+        this.spikeRatio = config.getLatencySpikeRatio();
+        this.backoffRatio = Math.clamp(config.getConcurrencyBackoffRatio(), 0.1, 0.9);
+        this.metrics = metrics;
+        this.hosts = CacheBuilder.newBuilder()
+                .expireAfterAccess(10, TimeUnit.MINUTES)
+                .maximumSize(config.getRobotsCacheSize())
+                .removalListener((RemovalListener<String, HostLimit>) removal -> metrics.removeHostLimit(removal.getKey()))
+                .build(CacheLoader.from(host -> {
+                    HostLimit limit = new HostLimit(initialLimit);
+                    metrics.monitorHostLimit(host, limit, HostLimit::getLimit);
+                    return limit;
+                }));
+    }
+
+    /**
+     * Waits until a request to a host may be sent.
+     *
+     * @param hostKey The host key, as returned by {@link com.ashiq.blackwidow.util.DomainUtils#getHostKey}
+     * @return The permit, which must be released once the response has been read
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public Permit acquire(String hostKey) throws InterruptedException {
+        HostLimit host = hosts.getUnchecked(hostKey);
+        host.acquire();
+        return new Permit(host);
+    }
+
+    /**
+     * Gets the current limit of a host.
+     *
+     * @param hostKey The host key
+     * @return The number of requests that may be in flight to the host
+     */
+    public int getLimit(String hostKey) {
+        HostLimit host = hosts.getIfPresent(hostKey);
+        return host == null ? initialLimit : (int) host.getLimit();
+    }
+
+    /**
+     * A granted request slot for a host.
+     */
+    public final class Permit {
+        private final HostLimit host;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(HostLimit host) {
+            this.host = host;
+        }
+
+        /**
+         * Reports the response to the request, as soon as its headers have arrived.
+         *
+         * @param throttled  Whether the host answered 429 or 503
+         * @param latency    Nanoseconds from sending the request until the response headers arrived
+         * @param retryAfter Nanoseconds the host asked to be left alone for, or 0
+         */
+        public void onResponse(boolean throttled, long latency, long retryAfter) {
+            host.onResponse(throttled, latency, retryAfter);
+        }
+
+        /**
+         * Gives the slot back. Releasing more than once has no effect.
+         */
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                host.release();
+            }
+        }
+    }
+
+    /**
+     * Limit and state of a single host.
+     */
+    private final class HostLimit {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition changed = lock.newCondition();
+        private double limit;
+        private int inFlight;
+        private double baselineLatency;
+        private long lastCutAt;
+        private long blockedUntil;
+        private boolean blocked;
+
+        HostLimit(int limit) {
+            this.limit = limit;
+        }
+
+        double getLimit() {
+            return limit;
+        }
+
+        void acquire() throws InterruptedException {
+            lock.lock();
+            try {
+                while (true) {
+                    long wait = blocked ? blockedUntil - System.nanoTime() : 0;
+                    if (wait > 0) {
+                        changed.awaitNanos(wait);
+                    } else if (inFlight >= (int) limit) {
+                        blocked = false;
+                        changed.await();
+                    } else {
+                        blocked = false;
+                        inFlight++;
+                        return;
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void release() {
+            lock.lock();
+            try {
+                inFlight--;
+                // Waiters for the end of a Retry-After can't take the slot, so wake everyone rather than one of them
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void onResponse(boolean throttled, long latency, long retryAfter) {
+            lock.lock();
+            try {
+                long now = System.nanoTime();
+                if (retryAfter > 0 && (!blocked || now + retryAfter - blockedUntil > 0)) {
+                    blocked = true;
+                    blockedUntil = now + retryAfter;
+                }
+                if (!adaptive) {
+                    return;
+                }
+
+                if (throttled) {
+                    cut(now, "throttled");
+                } else if (baselineLatency > 0 && latency > baselineLatency * spikeRatio) {
+                    cut(now, "latency");
+                } else {
+                    int before = (int) limit;
+                    limit = Math.min(maxLimit, limit + 1 / limit);
+                    if ((int) limit > before) {
+                        changed.signalAll();
+                    }
+                }
+                if (!throttled) {
+                    baselineLatency = baselineLatency == 0
+                            ? latency
+                            : baselineLatency + BASELINE_WEIGHT * (latency - baselineLatency);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Cuts the limit, unless it was already cut within the last round trip.
+         */
+        private void cut(long now, String reason) {
+            if (lastCutAt != 0 && now - lastCutAt < baselineLatency) {
+                return;
+            }
+            lastCutAt = now;
+            limit = Math.max(minLimit, limit * backoffRatio);
+            metrics.recordConcurrencyBackoff(reason);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.ashiq.blackwidow.fetch;
+
+import com.ashiq.blackwidow.config.ScraperConfig;
+import com.ashiq.blackwidow.metrics.CrawlMetrics;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache of host name lookups, so a crawl touching many hosts doesn't wait for DNS on the first fetch of each.
+ * Hosts are resolved in the background with {@link #prefetch(String)} as soon as their first URL is discovered,
+ * and {@link #resolve(String)} is called before each fetch, which waits for the lookup only if it hasn't finished
+ * yet. Lookups run on virtual threads, at most {@link #MAX_CONCURRENT_LOOKUPS} at a time, and concurrent requests
+ * for the same host share one lookup. Addresses are cached for {@code dns-cache-ttl}, and hosts that could not be
+ * resolved for {@code dns-negative-cache-ttl}, during which their fetches fail right away.
+ * <p>
+ * The {@link java.net.http.HttpClient} has no way to plug in a resolver, so it still looks the host up itself
+ * when it connects. Lookups here go through {@link InetAddress} as well, which leaves the addresses in the JVM's
+ * own cache for it to find; {@code dns-cache-ttl} should therefore not exceed the JVM's
+ * {@code networkaddress.cache.ttl}, 30 seconds by default.
+ */
+@Slf4j
+@Component
+public class DnsCache {
+
+    /**
+     * Limit of lookups in progress at once. The JDK resolver blocks a carrier thread per lookup.
+     */
+    static final int MAX_CONCURRENT_LOOKUPS = 16;
+
+    /**
+     * Resolves a host name to its addresses.
+     */
+    @FunctionalInterface
+    interface Resolver {
+        InetAddress[] resolve(String host) throws UnknownHostException;
+    }
+
+    private final Resolver resolver;
+    private final CrawlMetrics metrics;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final boolean prefetch;
+
+    /**
+     * Lookups by lower-cased host name, or null if the cache is disabled.
+     */
+    private final Cache<String, Lookup> lookups;
+    private final Semaphore permits = new Semaphore(MAX_CONCURRENT_LOOKUPS);
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    @Autowired
+    public DnsCache(ScraperConfig config, CrawlMetrics metrics) {
+        this(config, metrics, InetAddress::getAllByName);
+    }
+
+    DnsCache(ScraperConfig config, CrawlMetrics metrics, Resolver resolver) {
+        this.resolver = resolver;
+        this.metrics = metrics;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(config.getDnsCacheTtl());
+        this.negativeTtlNanos = TimeUnit.MILLISECONDS.toNanos(config.getDnsNegativeCacheTtl());
+        this.prefetch = config.isDnsPrefetch();
+        this.lookups = config.getDnsCacheSize() <= 0 ? null : CacheBuilder.newBuilder()
+                .maximumSize(config.getDnsCacheSize())
+                .expireAfterWrite(Math.max(ttlNanos, negativeTtlNanos) + TimeUnit.SECONDS.toNanos(1), TimeUnit.NANOSECONDS)
+                .build();
+    }
+
+    /**
+     * Starts resolving a host in the background, unless it is cached or already being resolved.
+     *
+     * @param host The host name, or null for URLs without one
+     */
+    public void prefetch(String host) {
+        if (lookups != null && prefetch && host != null && !host.isEmpty()) {
+            lookup(host.toLowerCase(Locale.ROOT), false);
+        }
+    }
+
+    /**
+     * Resolves a host, from the cache if it was resolved recently or waiting for a lookup in progress.
+     *
+     * @param host The host name
+     * @return The addresses of the host
+     * @throws UnknownHostException If the host could not be resolved, now or within the negative cache time
+     * @throws InterruptedIOException If interrupted while waiting for the lookup
+     */
+    public InetAddress[] resolve(String host) throws IOException {
+        if (lookups == null) {
+            return resolver.resolve(host);
+        }
+        Lookup lookup = lookup(host.toLowerCase(Locale.ROOT), true);
+        try {
+            return lookup.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while resolving " + host);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UnknownHostException unknown) {
+                // A copy, so the stack trace shows the fetch that failed rather than the lookup
+                throw (UnknownHostException) new UnknownHostException(unknown.getMessage()).initCause(unknown);
+            }
+            throw new IOException("Failed to resolve " + host, e.getCause());
+        }
+    }
+
+    /**
+     * Gets the lookup of a host, starting a new one if there is none or the cached one has expired. If recorded,
+     * it counts as a hit if it has finished, a wait if it is in progress, and a miss if it had to be started.
+     */
+    private Lookup lookup(String host, boolean record) {
+        Lookup lookup = lookups.getIfPresent(host);
+        while (lookup == null || lookup.isExpired()) {
+            Lookup started = new Lookup();
+            if (lookup == null ? lookups.asMap().putIfAbsent(host, started) == null
+                    : lookups.asMap().replace(host, lookup, started)) {
+                if (record) {
+                    metrics.recordDnsCacheGet("miss");
+                }
+                executor.execute(() -> started.run(host));
+                return started;
+            }
+            // Another thread started a lookup of the host first
+            lookup = lookups.getIfPresent(host);
+        }
+        if (record) {
+            metrics.recordDnsCacheGet(lookup.result.isDone() ? "hit" : "wait");
+        }
+        return lookup;
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * A lookup of a host, in progress or done.
+     */
+    private final class Lookup {
+        private final CompletableFuture<InetAddress[]> result = new CompletableFuture<>();
+        private volatile long expiresAt;
+
+        void run(String host) {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                expiresAt = System.nanoTime();
+                result.completeExceptionally(new InterruptedIOException("Interrupted while resolving " + host));
+                return;
+            }
+            long start = System.nanoTime();
+            try {
+                InetAddress[] addresses = resolver.resolve(host);
+                metrics.recordDnsLookup(true, System.nanoTime() - start);
+                expiresAt = System.nanoTime() + ttlNanos;
+                result.complete(addresses);
+            } catch (UnknownHostException e) {
+                metrics.recordDnsLookup(false, System.nanoTime() - start);
+                log.debug("Could not resolve {}: {}", host, e.getMessage());
+                expiresAt = System.nanoTime() + negativeTtlNanos;
+                result.completeExceptionally(e);
+            } catch (RuntimeException e) {
+                expiresAt = System.nanoTime();
+                result.completeExceptionally(e);
+            } finally {
+                permits.release();
+            }
+        }
+
+        /**
+         * Checks if the lookup is done and its result too old to use. Lookups in progress never expire.
+         */
+        boolean isExpired() {
+            return result.isDone() && System.nanoTime() - expiresAt >= 0;
+        }
+    }
+}
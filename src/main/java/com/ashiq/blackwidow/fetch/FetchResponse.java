@@ -0,0 +1,112 @@
+package com.ashiq.blackwidow.fetch;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpHeaders;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Record representing the response to a fetch, with the body still to be read.
+ * The body is already decompressed. It must be closed, which also returns the connection to the pool.
+ *
+ * @param url        The URL the response came from, after following redirects
+ * @param statusCode The HTTP status code
+ * @param headers    The response headers
+ * @param body       The response body
+ */
+public record FetchResponse(String url, int statusCode, HttpHeaders headers, InputStream body) implements Closeable {
+
+    /**
+     * Checks if the status code is in the 2xx range.
+     *
+     * @return True if the request succeeded, false otherwise
+     */
+    public boolean isSuccessful() {
+        return statusCode >= 200 && statusCode < 300;
+    }
+
+    /**
+     * Gets the media type from the Content-Type header, without parameters.
+     *
+     * @return The lower-cased media type, or null if the header is missing
+     */
+    public String contentType() {
+        return headers.firstValue("Content-Type")
+                .map(value -> {
+                    int semicolon = value.indexOf(';');
+                    return (semicolon >= 0 ? value.substring(0, semicolon) : value).trim().toLowerCase(Locale.ROOT);
+                })
+                .orElse(null);
+    }
+
+    /**
+     * Gets the length of the body from the Content-Length header. For compressed responses, this is the
+     * compressed length.
+     *
+     * @return The length in bytes, or -1 if the header is missing or invalid
+     */
+    public long contentLength() {
+        try {
+            return headers.firstValueAsLong("Content-Length").orElse(-1);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Gets the charset from the Content-Type header.
+     *
+     * @return The charset, or null if the header doesn't specify a supported one
+     */
+    public Charset charset() {
+        String value = headers.firstValue("Content-Type").orElse("");
+        int index = value.toLowerCase(Locale.ROOT).indexOf("charset=");
+        if (index < 0) {
+            return null;
+        }
+
+        String name = value.substring(index + 8).trim();
+        int end = name.indexOf(';');
+        if (end >= 0) {
+            name = name.substring(0, end).trim();
+        }
+        name = name.replace("\"", "").replace("'", "");
+        try {
+            return Charset.isSupported(name) ? Charset.forName(name) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads the whole body as a string, decoded with the response charset or UTF-8.
+     *
+     * @return The body
+     * @throws IOException If there's an error reading the body
+     */
+    public String bodyAsString() throws IOException {
+        Charset charset = charset();
+        return new String(body.readAllBytes(), charset == null ? StandardCharsets.UTF_8 : charset);
+    }
+
+    /**
+     * Reads the body as a string, up to a number of bytes, decoded with the response charset or UTF-8.
+     * The rest of the body is left unread.
+     *
+     * @param maxBytes The number of bytes to read at most
+     * @return The body, cut off after {@code maxBytes} bytes
+     * @throws IOException If there's an error reading the body
+     */
+    public String bodyAsString(int maxBytes) throws IOException {
+        Charset charset = charset();
+        return new String(body.readNBytes(maxBytes), charset == null ? StandardCharsets.UTF_8 : charset);
+    }
+
+    @Override
+    public void close() throws IOException {
+        body.close();
+    }
+}
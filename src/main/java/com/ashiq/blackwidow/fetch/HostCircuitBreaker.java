@@ -0,0 +1,162 @@
+package com.ashiq.blackwidow.fetch;
+
+import com.ashiq.blackwidow.config.ScraperConfig;
+import com.ashiq.blackwidow.metrics.CrawlMetrics;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-host circuit breaker, so a host that stopped answering costs one failed request rather than a timeout
+ * for every URL of it.
+ * A host's circuit is closed while its requests succeed. After {@code circuit-failure-threshold} failures in a
+ * row it opens, and requests to the host fail right away with a {@link HostUnavailableException}. Once the open
+ * time has passed, the circuit is half-open: a single probe request goes through, and closes the circuit if it
+ * succeeds. If it fails, the circuit opens again for twice as long, up to {@link #MAX_OPEN_TIME_FACTOR} times the
+ * configured open time.
+ * <p>
+ * Failures are requests that could not connect, timed out, or got a 5xx response other than 503, which is a
+ * sign of throttling and left to the {@link AdaptiveConcurrencyLimiter}.
+ */
+public class HostCircuitBreaker {
+
+    /**
+     * Limit of how much longer than the configured open time a circuit stays open after failed probes.
+     */
+    static final int MAX_OPEN_TIME_FACTOR = 8;
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private final long probeTimeoutNanos;
+    private final CrawlMetrics metrics;
+    private final LongSupplier clock;
+
+    /**
+     * Circuits, kept for as many hosts as robots.txt rules are cached for.
+     */
+    private final LoadingCache<String, Circuit> circuits;
+
+    public HostCircuitBreaker(ScraperConfig config, CrawlMetrics metrics) {
+        this(config, metrics, System::nanoTime);
+    }
+
+    /**
+     * Creates a circuit breaker reading the time from the given clock, in nanoseconds like
+     * {@link System#nanoTime()}.
+     */
+    HostCircuitBreaker(ScraperConfig config, CrawlMetrics metrics, LongSupplier clock) {
+        this.clock = clock;
+        this.failureThreshold = config.getCircuitFailureThreshold();
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, config.getCircuitOpenTime()));
+        this.probeTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(config.getConnectTimeout() + config.getTimeout());
+        this.metrics = metrics;
+        this.circuits = CacheBuilder.newBuilder()
+                .expireAfterAccess(10, TimeUnit.MINUTES)
+                .maximumSize(config.getRobotsCacheSize())
+                .build(CacheLoader.from(Circuit::new));
+    }
+
+    /**
+     * Checks that a request may be sent to a host. While the circuit is half-open, the first caller gets to send
+     * the probe request.
+     *
+     * @param hostKey The host key
+     * @throws HostUnavailableException If the circuit is open, or half-open with the probe still in flight
+     */
+    public void checkAvailable(String hostKey) throws HostUnavailableException {
+        if (failureThreshold > 0) {
+            circuits.getUnchecked(hostKey).checkAvailable();
+        }
+    }
+
+    /**
+     * Records a request that succeeded, closing the host's circuit.
+     *
+     * @param hostKey The host key
+     */
+    public void onSuccess(String hostKey) {
+        Circuit circuit = circuits.getIfPresent(hostKey);
+        if (circuit != null) {
+            circuit.onSuccess();
+        }
+    }
+
+    /**
+     * Records a request that failed, opening the host's circuit once enough failed in a row.
+     *
+     * @param hostKey The host key
+     */
+    public void onFailure(String hostKey) {
+        if (failureThreshold > 0) {
+            circuits.getUnchecked(hostKey).onFailure();
+        }
+    }
+
+    private enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * Circuit of a single host. Its methods only update a few fields, so holding the monitor never blocks.
+     */
+    private final class Circuit {
+        private final String hostKey;
+        private State state = State.CLOSED;
+        private int failures;
+        private int opens;
+        private long openFor = openNanos;
+        private long openUntil;
+        private long probeSentAt;
+
+        Circuit(String hostKey) {
+            this.hostKey = hostKey;
+        }
+
+        synchronized void checkAvailable() throws HostUnavailableException {
+            long now = clock.getAsLong();
+            if (state == State.OPEN) {
+                if (openUntil - now > 0) {
+                    metrics.recordHostUnavailable();
+                    throw new HostUnavailableException(hostKey, openUntil, opens);
+                }
+                state = State.HALF_OPEN;
+                probeSentAt = now;
+            } else if (state == State.HALF_OPEN) {
+                if (now - probeSentAt < probeTimeoutNanos) {
+                    // The probe will most likely be answered well before it times out
+                    metrics.recordHostUnavailable();
+                    throw new HostUnavailableException(hostKey, now + openFor, opens);
+                }
+                // The probe never reported back, so let another one through
+                probeSentAt = now;
+            }
+        }
+
+        synchronized void onSuccess() {
+            state = State.CLOSED;
+            failures = 0;
+            opens = 0;
+            openFor = openNanos;
+        }
+
+        synchronized void onFailure() {
+            failures++;
+            if (state == State.HALF_OPEN) {
+                openFor = Math.min(openFor * 2, openNanos * MAX_OPEN_TIME_FACTOR);
+                open();
+            } else if (state == State.CLOSED && failures >= failureThreshold) {
+                open();
+            }
+        }
+
+        private void open() {
+            state = State.OPEN;
+            opens++;
+            openUntil = clock.getAsLong() + openFor;
+            metrics.recordCircuitOpened();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.ashiq.blackwidow.fetch;
+
+import java.io.IOException;
+import java.io.Serial;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thrown instead of sending a request to a host whose circuit is open, because its recent requests failed.
+ */
+public class HostUnavailableException extends IOException {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAt;
+    private final int opens;
+
+    /**
+     * Creates a new exception.
+     *
+     * @param hostKey The host key
+     * @param retryAt The time from {@link System#nanoTime()} at which the host may be tried again
+     * @param opens   The number of times in a row the host's circuit has opened
+     */
+    public HostUnavailableException(String hostKey, long retryAt, int opens) {
+        super("Host " + hostKey + " is unavailable after repeated failures, retrying in "
+                + TimeUnit.NANOSECONDS.toMillis(Math.max(0, retryAt - System.nanoTime())) + " ms");
+        this.retryAt = retryAt;
+        this.opens = opens;
+    }
+
+    /**
+     * Gets the time at which the host may be tried again.
+     *
+     * @return The time from {@link System#nanoTime()}
+     */
+    public long getRetryAt() {
+        return retryAt;
+    }
+
+    /**
+     * Gets the number of times in a row the host's circuit has opened, that is 1 plus the number of probe
+     * requests that failed since.
+     *
+     * @return The number of openings
+     */
+    public int getOpens() {
+        return opens;
+    }
+}
@@ -0,0 +1,361 @@
+package com.ashiq.blackwidow.fetch;
+
+import com.ashiq.blackwidow.config.ScraperConfig;
+import com.ashiq.blackwidow.metrics.CrawlMetrics;
+import com.ashiq.blackwidow.util.DomainUtils;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Fetch layer built on a single shared {@link HttpClient}.
+ * The client pools and reuses connections, negotiates HTTP/2 where the server supports it (multiplexing
+ * requests to the same host over one connection), and asks for compressed responses. The number of
+ * requests in flight per host is adapted to the host by an {@link AdaptiveConcurrencyLimiter}, and hosts that
+ * keep failing are cut off for a while by a {@link HostCircuitBreaker}. Hosts are resolved through the
+ * {@link DnsCache}, usually ahead of time, so hosts that don't resolve fail without a lookup per URL. Responses are returned with an unread, decompressed body, so
+ * callers decide whether to stream it or read it whole. When the {@link HttpResponseCache} is enabled,
+ * cached URLs are revalidated with a conditional request and served from disk if unchanged.
+ * Request latency and downloaded bytes are recorded in {@link CrawlMetrics}.
+ */
+@Slf4j
+@Component
+public class HttpFetcher {
+
+    private static final String ACCEPT_ENCODING = "gzip, deflate";
+
+    /**
+     * How long a host is left alone after a 429 or 503 response without a usable Retry-After.
+     */
+    static final Duration DEFAULT_RETRY_AFTER = Duration.ofSeconds(1);
+
+    private final ScraperConfig config;
+    private final HttpResponseCache responseCache;
+    private final DnsCache dnsCache;
+    private final CrawlMetrics metrics;
+    private final HttpClient client;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * Per-host request permits.
+     */
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final HostCircuitBreaker circuitBreaker;
+    private final RetryBudget retryBudget;
+
+    public HttpFetcher(ScraperConfig config, HttpResponseCache responseCache, DnsCache dnsCache, CrawlMetrics metrics) {
+        this.config = config;
+        this.responseCache = responseCache;
+        this.dnsCache = dnsCache;
+        this.metrics = metrics;
+        this.client = HttpClient.newBuilder()
+                .version(config.isHttp2() ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .followRedirects(config.isFollowRedirects() ? HttpClient.Redirect.NORMAL : HttpClient.Redirect.NEVER)
+                .connectTimeout(Duration.ofMillis(config.getConnectTimeout()))
+                .executor(executor)
+                .build();
+        this.limiter = new AdaptiveConcurrencyLimiter(config, metrics);
+        this.circuitBreaker = new HostCircuitBreaker(config, metrics);
+        this.retryBudget = new RetryBudget(config.getRetryBudgetRatio(), config.getRetryBudgetReserve());
+    }
+
+    /**
+     * Fetches a URL.
+     *
+     * @param url The URL to fetch
+     * @return The response, whatever its status code; the caller must close it
+     * @throws IOException If there's an error connecting to the URL
+     */
+    public FetchResponse fetch(String url) throws IOException {
+        return fetch(url, Map.of());
+    }
+
+    /**
+     * Fetches a URL with extra request headers.
+     * Blocks while the host already has as many requests in flight as its {@link AdaptiveConcurrencyLimiter}
+     * allows, or has asked to be left alone with a Retry-After. Responses with status 429 or 503 are retried
+     * after their Retry-After, up to {@code throttle-retries} times, and requests that fail to connect, time out
+     * or get a 500, 502 or 504 response after a jittered exponential backoff, up to {@code max-retries} times.
+     * Retries are only made while the {@link RetryBudget} allows. The response cache is
+     * only consulted when no extra headers are given, since they may change what the server returns.
+     *
+     * @param url     The URL to fetch
+     * @param headers Extra request headers
+     * @return The response, whatever its status code; the caller must close it
+     * @throws IOException If there's an error connecting to the URL, or a {@link HostUnavailableException} if
+     *                     the host's circuit is open
+     */
+    public FetchResponse fetch(String url, Map<String, String> headers) throws IOException {
+        return send("GET", url, headers);
+    }
+
+    /**
+     * Sends a HEAD request for a URL, to look at its headers without downloading the body.
+     * It is limited, retried and counted like a {@link #fetch(String)}, but never served from the response cache.
+     *
+     * @param url The URL to request
+     * @return The response, with an empty body; the caller must close it
+     * @throws IOException If there's an error connecting to the URL, or a {@link HostUnavailableException} if
+     *                     the host's circuit is open
+     */
+    public FetchResponse head(String url) throws IOException {
+        return send("HEAD", url, Map.of());
+    }
+
+    private FetchResponse send(String method, String url, Map<String, String> headers) throws IOException {
+        URI uri;
+        try {
+            uri = URI.create(url);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid URL: " + url, e);
+        }
+
+        boolean cacheable = method.equals("GET") && headers.isEmpty();
+        HttpResponseCache.CachedResponse cached = cacheable ? responseCache.lookup(url) : null;
+        String hostKey = DomainUtils.getHostKey(uri);
+        if (uri.getHost() != null) {
+            // Usually prefetched by now; fails right away for hosts that recently didn't resolve
+            dnsCache.resolve(uri.getHost());
+        }
+        retryBudget.recordRequest();
+
+        int throttledRetries = 0;
+        int failedRetries = 0;
+        while (true) {
+            circuitBreaker.checkAvailable(hostKey);
+            AdaptiveConcurrencyLimiter.Permit permit;
+            try {
+                permit = limiter.acquire(hostKey);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting to fetch " + url);
+            }
+
+            try {
+                HttpRequest.Builder request = HttpRequest.newBuilder(uri)
+                        .method(method, HttpRequest.BodyPublishers.noBody())
+                        .timeout(Duration.ofMillis(config.getTimeout()))
+                        .header("User-Agent", config.getUserAgent())
+                        .header("Accept-Encoding", ACCEPT_ENCODING);
+                headers.forEach(request::header);
+                if (cached != null) {
+                    responseCache.validators(cached).forEach(request::header);
+                }
+
+                HttpResponse<InputStream> response;
+                long start = System.nanoTime();
+                try {
+                    response = client.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+                } catch (InterruptedIOException e) {
+                    throw e;
+                } catch (IOException e) {
+                    metrics.recordFetch(uri.getHost(), e.getClass().getSimpleName(), System.nanoTime() - start);
+                    permit.release();
+                    circuitBreaker.onFailure(hostKey);
+                    if (failedRetries < config.getMaxRetries() && tryRetry("error")) {
+                        log.debug("Fetching {} failed, retrying: {}", url, e.toString());
+                        backOff(failedRetries++, url);
+                        continue;
+                    }
+                    throw e;
+                }
+                long latency = System.nanoTime() - start;
+                int status = response.statusCode();
+                metrics.recordFetch(uri.getHost(), String.valueOf(status), latency);
+
+                boolean throttled = status == 429 || status == 503;
+                long retryAfter = throttled ? retryAfterNanos(response.headers()) : 0;
+                long maxRetryAfter = TimeUnit.MILLISECONDS.toNanos(config.getMaxRetryAfter());
+                permit.onResponse(throttled, latency, Math.min(retryAfter, maxRetryAfter));
+                if (throttled) {
+                    // A throttling host is up, so it counts as a success for the circuit breaker
+                    circuitBreaker.onSuccess(hostKey);
+                    if (throttledRetries < config.getThrottleRetries() && retryAfter <= maxRetryAfter
+                            && tryRetry("throttled")) {
+                        response.body().close();
+                        permit.release();
+                        throttledRetries++;
+                        log.debug("{} answered {}, retrying in {} ms", url, status,
+                                TimeUnit.NANOSECONDS.toMillis(retryAfter));
+                        continue;
+                    }
+                } else if (status == 500 || status == 502 || status == 504) {
+                    circuitBreaker.onFailure(hostKey);
+                    if (failedRetries < config.getMaxRetries() && tryRetry("error")) {
+                        response.body().close();
+                        permit.release();
+                        log.debug("{} answered {}, retrying", url, status);
+                        backOff(failedRetries++, url);
+                        continue;
+                    }
+                } else {
+                    circuitBreaker.onSuccess(hostKey);
+                }
+
+                if (cached != null && status == 304) {
+                    response.body().close();
+                    permit.release();
+                    FetchResponse served = responseCache.serve(cached);
+                    if (served != null) {
+                        log.debug("Serving {} from the response cache", url);
+                        metrics.recordCachedResponse();
+                        return served;
+                    }
+                    // Evicted since it was looked up, so the 304 has nothing to refer to
+                    log.debug("Cached response for {} is gone, fetching it again", url);
+                    cached = null;
+                    continue;
+                }
+
+                InputStream decoded;
+                try {
+                    InputStream counted = metrics.countDownloaded(response.body());
+                    // A HEAD response has no body to decompress, whatever its Content-Encoding says
+                    decoded = method.equals("HEAD") ? counted : decode(response.headers(), counted);
+                } catch (IOException e) {
+                    response.body().close();
+                    throw e;
+                }
+                InputStream body = new PermitReleasingInputStream(decoded, permit);
+                FetchResponse fetched = new FetchResponse(response.uri().toString(), status, response.headers(), body);
+                return cacheable ? responseCache.store(url, fetched) : fetched;
+            } catch (InterruptedException e) {
+                permit.release();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while fetching " + url);
+            } catch (IOException | RuntimeException e) {
+                permit.release();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Takes a retry from the retry budget, recording whether it was granted.
+     */
+    private boolean tryRetry(String reason) {
+        if (retryBudget.tryRetry()) {
+            metrics.recordRetry(reason);
+            return true;
+        }
+        metrics.recordRetryDenied(reason);
+        return false;
+    }
+
+    /**
+     * Sleeps before a retry, for the retry backoff doubled per earlier retry, plus up to half of that again
+     * at random.
+     */
+    private void backOff(int retry, String url) throws InterruptedIOException {
+        long delay = config.getRetryBackoff() << Math.min(retry, 20);
+        try {
+            Thread.sleep(delay + ThreadLocalRandom.current().nextLong(delay / 2 + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry " + url);
+        }
+    }
+
+    /**
+     * Fetches a URL asynchronously on a virtual thread.
+     *
+     * @param url The URL to fetch
+     * @return A future completing with the response, or exceptionally with the IOException
+     */
+    public CompletableFuture<FetchResponse> fetchAsync(String url) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return fetch(url);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Reads the Retry-After header, given either in seconds or as an HTTP date.
+     *
+     * @return The nanoseconds to wait, or {@link #DEFAULT_RETRY_AFTER} if the header is missing or invalid
+     */
+    static long retryAfterNanos(HttpHeaders headers) {
+        String value = headers.firstValue("Retry-After").orElse("").trim();
+        if (value.isEmpty()) {
+            return DEFAULT_RETRY_AFTER.toNanos();
+        }
+        try {
+            return TimeUnit.SECONDS.toNanos(Math.max(0, Long.parseLong(value)));
+        } catch (NumberFormatException e) {
+            // Not a number of seconds, so it should be a date
+        }
+        try {
+            Instant until = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            return Math.max(0, Duration.between(Instant.now(), until).toNanos());
+        } catch (DateTimeParseException | ArithmeticException e) {
+            return DEFAULT_RETRY_AFTER.toNanos();
+        }
+    }
+
+    /**
+     * Wraps the body in a decompressing stream matching the Content-Encoding of the response.
+     */
+    private static InputStream decode(HttpHeaders headers, InputStream body) throws IOException {
+        String encoding = headers.firstValue("Content-Encoding").orElse("").trim().toLowerCase(Locale.ROOT);
+        return switch (encoding) {
+            case "gzip", "x-gzip" -> new GZIPInputStream(body);
+            case "deflate" -> new InflaterInputStream(body);
+            default -> body;
+        };
+    }
+
+    @PreDestroy
+    public void close() {
+        client.close();
+        executor.close();
+    }
+
+    /**
+     * Body stream that gives the host permit back when it is closed.
+     */
+    private static class PermitReleasingInputStream extends FilterInputStream {
+        private final AdaptiveConcurrencyLimiter.Permit permit;
+
+        private PermitReleasingInputStream(InputStream in, AdaptiveConcurrencyLimiter.Permit permit) {
+            super(in);
+            this.permit = permit;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                permit.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,425 @@
+package com.ashiq.blackwidow.fetch;
+
+import com.ashiq.blackwidow.config.ScraperConfig;
+import com.ashiq.blackwidow.util.UrlNormalizer;
+import com.google.common.hash.Hashing;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.http.HttpHeaders;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persistent HTTP response cache keyed by normalized URL.
+ * Successful responses that carry an ETag or Last-Modified validator are written to disk while the caller
+ * reads them. On the next fetch of the same URL the validators are sent as If-None-Match and
+ * If-Modified-Since, and a 304 Not Modified answer is served from disk. The total size of the cache is
+ * capped; when it grows past the cap, the least recently used entries are evicted.
+ * <p>
+ * The cache is disabled unless {@code scraper.response-cache-dir} is set.
+ */
+@Slf4j
+@Component
+public class HttpResponseCache {
+
+    private static final int FORMAT_VERSION = 1;
+    private static final String ENTRY_SUFFIX = ".entry";
+
+    /**
+     * Headers that describe the transfer rather than the content, which is stored decoded.
+     */
+    private static final Set<String> SKIPPED_HEADERS = Set.of(
+            "connection", "content-encoding", "content-length", "keep-alive", "transfer-encoding", ":status");
+
+    private final Path directory;
+    private final long maxSize;
+
+    private final Map<String, Long> entrySizes = new ConcurrentHashMap<>();
+    private final AtomicLong totalSize = new AtomicLong();
+
+    public HttpResponseCache(ScraperConfig config) {
+        String dir = config.getResponseCacheDir();
+        this.maxSize = config.getResponseCacheMaxSize();
+        this.directory = dir == null || dir.isBlank() ? null : Path.of(dir);
+        if (directory != null) {
+            load();
+        }
+    }
+
+    /**
+     * Checks if the cache is enabled.
+     *
+     * @return True if responses are cached, false otherwise
+     */
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * Looks up the cached response for a URL, without reading its body.
+     *
+     * @param url The URL to look up
+     * @return The cached response, or null if there is none
+     */
+    public CachedResponse lookup(String url) {
+        if (directory == null) {
+            return null;
+        }
+
+        Path file = entryFile(url);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            CachedResponse cached = readHeader(in, file);
+            return cached.normalizedUrl().equals(UrlNormalizer.normalize(url)) ? cached : null;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            log.warn("Discarding unreadable cache entry for {}: {}", url, e.getMessage());
+            remove(file);
+            return null;
+        }
+    }
+
+    /**
+     * Builds the request headers that ask the server to answer 304 if the cached response is still current.
+     *
+     * @param cached The cached response
+     * @return The conditional request headers
+     */
+    public Map<String, String> validators(CachedResponse cached) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        cached.headers().firstValue("ETag").ifPresent(etag -> headers.put("If-None-Match", etag));
+        cached.headers().firstValue("Last-Modified").ifPresent(lastModified -> headers.put("If-Modified-Since", lastModified));
+        return headers;
+    }
+
+    /**
+     * Serves a cached response from disk, marking it as recently used.
+     * The entry may have been evicted since it was looked up, in which case the page has to be fetched again
+     * without validators.
+     *
+     * @param cached The cached response
+     * @return The response, with the body read from disk, or null if the entry is gone or can no longer be read
+     */
+    public FetchResponse serve(CachedResponse cached) {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cached.file())));
+            readHeader(in, cached.file());
+        } catch (IOException e) {
+            if (!(e instanceof NoSuchFileException)) {
+                log.warn("Discarding unreadable cache entry for {}: {}", cached.url(), e.getMessage());
+            }
+            closeQuietly(in);
+            remove(cached.file());
+            return null;
+        }
+        touch(cached.file());
+        return new FetchResponse(cached.url(), cached.statusCode(), cached.headers(), in);
+    }
+
+    /**
+     * Wraps a fresh response so that its body is written to the cache while the caller reads it.
+     * The entry is only committed if the caller reads the body to the end; responses without validators
+     * or marked no-store are returned unchanged.
+     *
+     * @param requestUrl The URL that was requested
+     * @param response   The response from the server
+     * @return The response to hand to the caller
+     */
+    public FetchResponse store(String requestUrl, FetchResponse response) {
+        if (directory == null || response.statusCode() != 200 || !isCacheable(response.headers())) {
+            return response;
+        }
+
+        Path file = entryFile(requestUrl);
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(directory, "tmp-", ENTRY_SUFFIX);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)));
+            writeHeader(out, requestUrl, response);
+            InputStream body = new CachingInputStream(response.body(), out, temp, file);
+            return new FetchResponse(response.url(), response.statusCode(), response.headers(), body);
+        } catch (IOException e) {
+            log.warn("Could not cache response for {}: {}", requestUrl, e.getMessage());
+            if (temp != null) {
+                remove(temp);
+            }
+            return response;
+        }
+    }
+
+    private static boolean isCacheable(HttpHeaders headers) {
+        boolean noStore = headers.allValues("Cache-Control").stream()
+                .anyMatch(value -> value.toLowerCase(Locale.ROOT).contains("no-store"));
+        return !noStore && (headers.firstValue("ETag").isPresent() || headers.firstValue("Last-Modified").isPresent());
+    }
+
+    private void writeHeader(DataOutputStream out, String requestUrl, FetchResponse response) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        out.writeUTF(UrlNormalizer.normalize(requestUrl));
+        out.writeUTF(response.url());
+        out.writeInt(response.statusCode());
+
+        List<Map.Entry<String, List<String>>> headers = response.headers().map().entrySet().stream()
+                .filter(header -> !SKIPPED_HEADERS.contains(header.getKey().toLowerCase(Locale.ROOT)))
+                .toList();
+        out.writeInt(headers.size());
+        for (Map.Entry<String, List<String>> header : headers) {
+            out.writeUTF(header.getKey());
+            out.writeInt(header.getValue().size());
+            for (String value : header.getValue()) {
+                out.writeUTF(value);
+            }
+        }
+    }
+
+    private static CachedResponse readHeader(DataInputStream in, Path file) throws IOException {
+        if (in.readInt() != FORMAT_VERSION) {
+            throw new IOException("Unsupported cache entry format");
+        }
+        String normalizedUrl = in.readUTF();
+        String url = in.readUTF();
+        int statusCode = in.readInt();
+
+        Map<String, List<String>> headers = new LinkedHashMap<>();
+        int headerCount = in.readInt();
+        for (int i = 0; i < headerCount; i++) {
+            String name = in.readUTF();
+            int valueCount = in.readInt();
+            List<String> values = new ArrayList<>(valueCount);
+            for (int j = 0; j < valueCount; j++) {
+                values.add(in.readUTF());
+            }
+            headers.put(name, values);
+        }
+        return new CachedResponse(normalizedUrl, url, statusCode, HttpHeaders.of(headers, (name, value) -> true), file);
+    }
+
+    private Path entryFile(String url) {
+        String key = Hashing.sha256().hashString(UrlNormalizer.normalize(url), StandardCharsets.UTF_8).toString();
+        return directory.resolve(key + ENTRY_SUFFIX);
+    }
+
+    /**
+     * Moves a completely written entry into place and evicts old entries if the cache is over its size cap.
+     */
+    private void commit(Path temp, Path file) throws IOException {
+        long size = Files.size(temp);
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Long previous = entrySizes.put(file.getFileName().toString(), size);
+        totalSize.addAndGet(size - (previous == null ? 0 : previous));
+
+        if (totalSize.get() > maxSize) {
+            evict();
+        }
+    }
+
+    /**
+     * Evicts the least recently used entries until the cache is back under 90% of its size cap.
+     */
+    private synchronized void evict() {
+        long target = maxSize / 10 * 9;
+        if (totalSize.get() <= target) {
+            return;
+        }
+
+        List<Path> files = new ArrayList<>();
+        for (String name : entrySizes.keySet()) {
+            files.add(directory.resolve(name));
+        }
+        files.sort(Comparator.comparingLong(HttpResponseCache::lastUsed));
+
+        int evicted = 0;
+        for (Path file : files) {
+            if (totalSize.get() <= target) {
+                break;
+            }
+            remove(file);
+            evicted++;
+        }
+        log.debug("Evicted {} entries from the response cache, {} bytes remaining", evicted, totalSize.get());
+    }
+
+    private void remove(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Could not delete cache file {}: {}", file, e.getMessage());
+        }
+        Long size = entrySizes.remove(file.getFileName().toString());
+        if (size != null) {
+            totalSize.addAndGet(-size);
+        }
+    }
+
+    private static void touch(Path file) {
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            log.debug("Could not update access time of {}: {}", file, e.getMessage());
+        }
+    }
+
+    private static void closeQuietly(InputStream in) {
+        if (in != null) {
+            try {
+                in.close();
+            } catch (IOException e) {
+                log.debug("Could not close cache entry: {}", e.getMessage());
+            }
+        }
+    }
+
+    private static long lastUsed(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Builds the in-memory size index from the entries left by earlier runs, and removes half-written files.
+     */
+    private void load() {
+        try {
+            Files.createDirectories(directory);
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, "*" + ENTRY_SUFFIX)) {
+                for (Path file : entries) {
+                    if (file.getFileName().toString().startsWith("tmp-")) {
+                        Files.deleteIfExists(file);
+                        continue;
+                    }
+                    long size = Files.size(file);
+                    entrySizes.put(file.getFileName().toString(), size);
+                    totalSize.addAndGet(size);
+                }
+            }
+            log.info("Response cache at {} holds {} entries, {} bytes", directory, entrySizes.size(), totalSize.get());
+            if (totalSize.get() > maxSize) {
+                evict();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not open response cache directory " + directory, e);
+        }
+    }
+
+    /**
+     * Record representing the metadata of a cached response.
+     *
+     * @param normalizedUrl The normalized URL the entry is keyed by
+     * @param url           The URL the response came from, after following redirects
+     * @param statusCode    The HTTP status code
+     * @param headers       The stored response headers
+     * @param file          The file holding the entry
+     */
+    public record CachedResponse(String normalizedUrl, String url, int statusCode, HttpHeaders headers, Path file) {
+    }
+
+    /**
+     * Body stream that copies everything read into a cache entry, which is committed once the end is reached.
+     */
+    private class CachingInputStream extends FilterInputStream {
+        private final OutputStream out;
+        private final Path temp;
+        private final Path file;
+        private boolean failed;
+        private boolean complete;
+        private boolean closed;
+
+        private CachingInputStream(InputStream in, OutputStream out, Path temp, Path file) {
+            super(in);
+            this.out = out;
+            this.temp = temp;
+            this.file = file;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b == -1) {
+                complete = true;
+            } else {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n == -1) {
+                complete = true;
+            } else {
+                write(buffer, offset, n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Skipped bytes would be missing from the entry
+            failed = true;
+            return super.skip(n);
+        }
+
+        private void write(byte[] buffer, int offset, int length) {
+            if (failed) {
+                return;
+            }
+            try {
+                out.write(buffer, offset, length);
+            } catch (IOException e) {
+                log.warn("Could not write cache entry {}: {}", file, e.getMessage());
+                failed = true;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            // Parsers close the body and so does the response, but the entry must only be committed once
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                super.close();
+            } finally {
+                try {
+                    out.close();
+                    if (complete && !failed) {
+                        commit(temp, file);
+                    } else {
+                        Files.deleteIfExists(temp);
+                    }
+                } catch (IOException e) {
+                    log.warn("Could not commit cache entry {}: {}", file, e.getMessage());
+                    Files.deleteIfExists(temp);
+                }
+            }
+        }
+    }
+}
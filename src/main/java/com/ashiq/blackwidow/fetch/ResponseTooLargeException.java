@@ -0,0 +1,36 @@
+package com.ashiq.blackwidow.fetch;
+
+import java.io.IOException;
+import java.io.Serial;
+
+/**
+ * Thrown when a response body is larger than the limit for its content type, as soon as that is known from the
+ * Content-Length header or from the bytes read so far.
+ */
+public class ResponseTooLargeException extends IOException {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private final long maxBytes;
+
+    /**
+     * Creates a new exception.
+     *
+     * @param url      The URL of the response
+     * @param maxBytes The size limit that was exceeded
+     */
+    public ResponseTooLargeException(String url, long maxBytes) {
+        super("Response body of " + url + " is larger than " + maxBytes + " bytes");
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Gets the size limit that was exceeded.
+     *
+     * @return The limit in bytes
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+}
@@ -0,0 +1,46 @@
+package com.ashiq.blackwidow.fetch;
+
+/**
+ * Budget capping retries at a fraction of the requests made, shared by all hosts, so retries can't multiply the
+ * load when many requests fail at once.
+ * Every request sent for the first time adds the ratio to a balance, and every retry takes one from it. The balance
+ * is capped at the reserve, which is also what it starts with, so short bursts of failures can always be retried.
+ */
+public class RetryBudget {
+
+    private final double ratio;
+    private final double reserve;
+    private double balance;
+
+    /**
+     * Creates a new budget.
+     *
+     * @param ratio   Retries allowed per request
+     * @param reserve Retries that can be banked
+     */
+    public RetryBudget(double ratio, int reserve) {
+        this.ratio = Math.max(0, ratio);
+        this.reserve = Math.max(0, reserve);
+        this.balance = this.reserve;
+    }
+
+    /**
+     * Records a request sent for the first time.
+     */
+    public synchronized void recordRequest() {
+        balance = Math.min(reserve, balance + ratio);
+    }
+
+    /**
+     * Takes a retry from the budget.
+     *
+     * @return True if the request may be retried, false if the budget is used up
+     */
+    public synchronized boolean tryRetry() {
+        if (balance < 1) {
+            return false;
+        }
+        balance--;
+        return true;
+    }
+}
@@ -0,0 +1,344 @@
+package com.ashiq.blackwidow.graph;
+
+import com.ashiq.blackwidow.payload.ScrapedPage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact, immutable directed graph of links between pages.
+ * Pages are identified by the int ids of a front-coded {@link UrlDictionary}, and edges are stored in
+ * compressed sparse row form: the outlinks of page {@code i} are {@code targets[offsets[i]..offsets[i + 1])},
+ * in the order they were added. A page costs a few bytes of dictionary plus one offset, and an edge one int,
+ * instead of a String and a record per link.
+ * <p>
+ * The graph can be written to a binary file and memory-mapped back, so large graphs load without parsing
+ * and are paged in by the OS as they are used.
+ */
+public class LinkGraph {
+
+    private static final int MAGIC = 0x42574C47;
+    private static final int VERSION = 1;
+    private static final int HEADER_INTS = 5;
+
+    private final UrlDictionary urls;
+    private final IntBuffer offsets;
+    private final IntBuffer targets;
+
+    private LinkGraph(UrlDictionary urls, IntBuffer offsets, IntBuffer targets) {
+        this.urls = urls;
+        this.offsets = offsets;
+        this.targets = targets;
+    }
+
+    /**
+     * Creates a builder for a graph.
+     *
+     * @return The builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Builds a graph from a tree of scraped pages, with an edge from each page to each of its links.
+     *
+     * @param root The root of the tree
+     * @return The graph
+     */
+    public static LinkGraph fromScrapedPage(ScrapedPage root) {
+        Builder builder = builder();
+        builder.addPage(root.url());
+
+        Deque<ScrapedPage> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            ScrapedPage page = stack.pop();
+            for (ScrapedPage link : page.links()) {
+                builder.addEdge(page.url(), link.url());
+                stack.push(link);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Builds a tree of scraped pages from the graph, rooted at the given URL.
+     * Each page reachable from the root appears once, as a link of the first page it is reached from in
+     * breadth-first order, so a graph built from a tree converts back to the same tree.
+     *
+     * @param rootUrl The URL of the root page
+     * @return The ScrapedPage tree
+     * @throws IllegalArgumentException If the URL isn't in the graph
+     */
+    public ScrapedPage toScrapedPage(String rootUrl) {
+        int root = urls.id(rootUrl);
+        if (root < 0) {
+            throw new IllegalArgumentException("URL is not in the graph: " + rootUrl);
+        }
+
+        // Pick the tree edges breadth-first, then build the pages from the leaves up
+        int[] parent = new int[size()];
+        Arrays.fill(parent, -1);
+        parent[root] = root;
+        int[] order = new int[size()];
+        int count = 0;
+        order[count++] = root;
+        for (int i = 0; i < count; i++) {
+            int page = order[i];
+            for (int e = offsets.get(page); e < offsets.get(page + 1); e++) {
+                int target = targets.get(e);
+                if (parent[target] < 0) {
+                    parent[target] = page;
+                    order[count++] = target;
+                }
+            }
+        }
+
+        ScrapedPage[] pages = new ScrapedPage[size()];
+        for (int i = count - 1; i >= 0; i--) {
+            int page = order[i];
+            List<ScrapedPage> links = new ArrayList<>();
+            for (int e = offsets.get(page); e < offsets.get(page + 1); e++) {
+                int target = targets.get(e);
+                if (target != root && parent[target] == page && pages[target] != null) {
+                    links.add(pages[target]);
+                    // A link listed twice only becomes a child once
+                    pages[target] = null;
+                }
+            }
+            pages[page] = new ScrapedPage(urls.url(page), links);
+        }
+        return pages[root];
+    }
+
+    /**
+     * Gets the number of pages in the graph.
+     *
+     * @return The number of pages
+     */
+    public int size() {
+        return urls.size();
+    }
+
+    /**
+     * Gets the number of links in the graph.
+     *
+     * @return The number of links
+     */
+    public int edgeCount() {
+        return targets.limit();
+    }
+
+    /**
+     * Gets the dictionary mapping the URLs of the pages to ids.
+     *
+     * @return The URL dictionary
+     */
+    public UrlDictionary getUrls() {
+        return urls;
+    }
+
+    /**
+     * Gets the number of links on a page.
+     *
+     * @param id The id of the page
+     * @return The number of outlinks
+     */
+    public int outDegree(int id) {
+        return offsets.get(id + 1) - offsets.get(id);
+    }
+
+    /**
+     * Gets the links on a page.
+     *
+     * @param id The id of the page
+     * @return The ids of the pages linked to, in the order they were added
+     */
+    public int[] outlinks(int id) {
+        int start = offsets.get(id);
+        int[] links = new int[offsets.get(id + 1) - start];
+        targets.get(start, links);
+        return links;
+    }
+
+    /**
+     * Writes the graph to a binary file, replacing it atomically.
+     *
+     * @param file The file to write
+     * @throws IOException If the file can't be written
+     */
+    public void write(Path file) throws IOException {
+        IntBuffer blockOffsets = urls.blockOffsets();
+        ByteBuffer data = urls.data();
+        long length = 4L * (HEADER_INTS + blockOffsets.limit() + offsets.limit() + targets.limit()) + data.limit();
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Graph is too large for a single file: " + length + " bytes");
+        }
+
+        ByteBuffer out = ByteBuffer.allocate((int) length);
+        out.putInt(MAGIC).putInt(VERSION).putInt(size()).putInt(edgeCount()).putInt(data.limit());
+        IntBuffer ints = out.asIntBuffer();
+        ints.put(blockOffsets).put(offsets.duplicate().rewind()).put(targets.duplicate().rewind());
+        out.position(out.position() + 4 * ints.position());
+        out.put(data.rewind());
+        out.flip();
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Memory-maps a graph written by {@link #write(Path)}. Nothing is copied onto the heap.
+     *
+     * @param file The file to map
+     * @return The graph, backed by the file
+     * @throws IOException If the file can't be read or isn't a graph file
+     */
+    public static LinkGraph map(Path file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE || channel.size() < 4 * HEADER_INTS) {
+                throw new IOException("Not a link graph file: " + file);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a link graph file: " + file);
+        }
+        int size = buffer.getInt(8);
+        int edgeCount = buffer.getInt(12);
+        int dataLength = buffer.getInt(16);
+        int blocks = UrlDictionary.blockCount(size);
+
+        int position = 4 * HEADER_INTS;
+        IntBuffer blockOffsets = buffer.slice(position, 4 * blocks).asIntBuffer();
+        position += 4 * blocks;
+        IntBuffer offsets = buffer.slice(position, 4 * (size + 1)).asIntBuffer();
+        position += 4 * (size + 1);
+        IntBuffer targets = buffer.slice(position, 4 * edgeCount).asIntBuffer();
+        position += 4 * edgeCount;
+        if (position + dataLength != buffer.limit()) {
+            throw new IOException("Link graph file is truncated: " + file);
+        }
+        ByteBuffer data = buffer.slice(position, dataLength);
+
+        return new LinkGraph(new UrlDictionary(size, blockOffsets, data), offsets, targets);
+    }
+
+    /**
+     * Builder collecting pages and links before they are packed into a graph.
+     * URLs are kept as strings only once each; links are kept as pairs of temporary ids.
+     */
+    public static class Builder {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> urls = new ArrayList<>();
+        private long[] edges = new long[1024];
+        private int edgeCount;
+
+        private Builder() {
+        }
+
+        /**
+         * Adds a page, which may have no links.
+         *
+         * @param url The URL of the page
+         * @return This builder
+         */
+        public Builder addPage(String url) {
+            idOf(url);
+            return this;
+        }
+
+        /**
+         * Adds a link between two pages, adding the pages if needed.
+         *
+         * @param from The URL of the page the link is on
+         * @param to   The URL the link points to
+         * @return This builder
+         */
+        public Builder addEdge(String from, String to) {
+            if (edgeCount == edges.length) {
+                edges = Arrays.copyOf(edges, edgeCount * 2);
+            }
+            edges[edgeCount++] = ((long) idOf(from) << 32) | idOf(to);
+            return this;
+        }
+
+        private int idOf(String url) {
+            return ids.computeIfAbsent(url, k -> {
+                urls.add(k);
+                return urls.size() - 1;
+            });
+        }
+
+        /**
+         * Packs the pages and links into a graph. Duplicate links from one page to another are dropped.
+         *
+         * @return The graph
+         */
+        public LinkGraph build() {
+            UrlDictionary dictionary = UrlDictionary.build(urls);
+            int size = dictionary.size();
+            int[] remap = new int[urls.size()];
+            for (int i = 0; i < remap.length; i++) {
+                remap[i] = dictionary.id(urls.get(i));
+            }
+
+            // Counting sort by source keeps the links of each page in the order they were added
+            int[] offsets = new int[size + 1];
+            for (int i = 0; i < edgeCount; i++) {
+                offsets[remap[(int) (edges[i] >>> 32)] + 1]++;
+            }
+            for (int i = 0; i < size; i++) {
+                offsets[i + 1] += offsets[i];
+            }
+            int[] next = Arrays.copyOf(offsets, size);
+            int[] targets = new int[edgeCount];
+            for (int i = 0; i < edgeCount; i++) {
+                int from = remap[(int) (edges[i] >>> 32)];
+                targets[next[from]++] = remap[(int) edges[i]];
+            }
+
+            // Drop duplicate links within each row, compacting the rows in place
+            int[] lastRow = new int[size];
+            Arrays.fill(lastRow, -1);
+            int write = 0;
+            for (int row = 0; row < size; row++) {
+                int start = offsets[row];
+                int end = offsets[row + 1];
+                offsets[row] = write;
+                for (int e = start; e < end; e++) {
+                    if (lastRow[targets[e]] != row) {
+                        lastRow[targets[e]] = row;
+                        targets[write++] = targets[e];
+                    }
+                }
+            }
+            offsets[size] = write;
+
+            return new LinkGraph(dictionary, IntBuffer.wrap(offsets), IntBuffer.wrap(Arrays.copyOf(targets, write)));
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.ashiq.blackwidow.graph;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Immutable dictionary mapping URLs to dense int ids and back.
+ * URLs are sorted and stored front-coded: they are grouped in blocks of {@value #BLOCK_SIZE}, and every URL
+ * but the first of a block is stored as the length of the prefix it shares with the URL before it plus the
+ * remaining bytes. URLs of one site share long prefixes, so this takes a fraction of the space of the strings.
+ * <p>
+ * Ids follow the sort order of the URLs. Looking up an id is a binary search over the first URLs of the
+ * blocks and a scan of one block. The dictionary reads from buffers, so it can sit in a memory-mapped file.
+ */
+public class UrlDictionary {
+
+    /**
+     * Number of URLs per front-coded block.
+     */
+    public static final int BLOCK_SIZE = 16;
+
+    private final int size;
+    private final IntBuffer blockOffsets;
+    private final ByteBuffer data;
+
+    /**
+     * Creates a dictionary over already encoded data.
+     *
+     * @param size         The number of URLs
+     * @param blockOffsets The offset in the data of each block
+     * @param data         The front-coded URLs
+     */
+    UrlDictionary(int size, IntBuffer blockOffsets, ByteBuffer data) {
+        this.size = size;
+        this.blockOffsets = blockOffsets;
+        this.data = data;
+    }
+
+    /**
+     * Builds a dictionary of the given URLs. Duplicates are dropped.
+     *
+     * @param urls The URLs
+     * @return The dictionary
+     */
+    public static UrlDictionary build(Collection<String> urls) {
+        String[] sorted = urls.stream().distinct().sorted().toArray(String[]::new);
+        int[] offsets = new int[blockCount(sorted.length)];
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        byte[] previous = new byte[0];
+        for (int i = 0; i < sorted.length; i++) {
+            byte[] bytes = sorted[i].getBytes(StandardCharsets.UTF_8);
+            int shared = 0;
+            if (i % BLOCK_SIZE == 0) {
+                offsets[i / BLOCK_SIZE] = out.size();
+            } else {
+                int max = Math.min(previous.length, bytes.length);
+                while (shared < max && previous[shared] == bytes[shared]) {
+                    shared++;
+                }
+            }
+            writeVarint(out, shared);
+            writeVarint(out, bytes.length - shared);
+            out.write(bytes, shared, bytes.length - shared);
+            previous = bytes;
+        }
+
+        return new UrlDictionary(sorted.length, IntBuffer.wrap(offsets), ByteBuffer.wrap(out.toByteArray()));
+    }
+
+    /**
+     * Gets the number of URLs in the dictionary.
+     *
+     * @return The number of URLs
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the id of a URL.
+     *
+     * @param url The URL
+     * @return The id, or -1 if the URL isn't in the dictionary
+     */
+    public int id(String url) {
+        // Find the last block whose first URL is not greater than the URL
+        int low = 0;
+        int high = blockOffsets.limit() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = new Cursor(blockOffsets.get(mid)).next().compareTo(url);
+            if (cmp == 0) {
+                return mid * BLOCK_SIZE;
+            } else if (cmp < 0) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (high < 0) {
+            return -1;
+        }
+
+        Cursor cursor = new Cursor(blockOffsets.get(high));
+        int end = Math.min(size, (high + 1) * BLOCK_SIZE);
+        for (int id = high * BLOCK_SIZE; id < end; id++) {
+            int cmp = cursor.next().compareTo(url);
+            if (cmp == 0) {
+                return id;
+            } else if (cmp > 0) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the URL with an id.
+     *
+     * @param id The id
+     * @return The URL
+     * @throws IndexOutOfBoundsException If there is no URL with the id
+     */
+    public String url(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("No URL with id " + id);
+        }
+        Cursor cursor = new Cursor(blockOffsets.get(id / BLOCK_SIZE));
+        String url = cursor.next();
+        for (int i = id % BLOCK_SIZE; i > 0; i--) {
+            url = cursor.next();
+        }
+        return url;
+    }
+
+    IntBuffer blockOffsets() {
+        return blockOffsets.duplicate();
+    }
+
+    ByteBuffer data() {
+        return data.duplicate();
+    }
+
+    static int blockCount(int size) {
+        return (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    }
+
+    /**
+     * Decodes the URLs of a block one after the other.
+     */
+    private class Cursor {
+        private int position;
+        private byte[] previous = new byte[0];
+
+        private Cursor(int position) {
+            this.position = position;
+        }
+
+        private String next() {
+            int shared = readVarint();
+            int suffix = readVarint();
+            byte[] bytes = Arrays.copyOf(previous, shared + suffix);
+            data.get(position, bytes, shared, suffix);
+            position += suffix;
+            previous = bytes;
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private int readVarint() {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = data.get(position++);
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+}
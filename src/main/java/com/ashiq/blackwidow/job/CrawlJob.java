@@ -0,0 +1,211 @@
+package com.ashiq.blackwidow.job;
+
+import com.ashiq.blackwidow.output.ResultSink;
+import com.ashiq.blackwidow.payload.CrawlJobStatus;
+import com.ashiq.blackwidow.payload.PageResult;
+import lombok.Getter;
+
+import java.net.URI;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A crawl submitted through the job API, and the results it has produced so far.
+ * The job is the result sink of its crawl. Results are kept for the lifetime of the job, so readers
+ * can follow them from the start at their own pace without slowing the crawl down.
+ */
+public class CrawlJob implements ResultSink {
+
+    /**
+     * States of a job.
+     */
+    public enum State {
+        QUEUED,
+        RUNNING,
+        COMPLETED,
+        FAILED,
+        CANCELLED;
+
+        /**
+         * Checks if the job has ended.
+         *
+         * @return True if the job can't change state anymore, false otherwise
+         */
+        public boolean isFinished() {
+            return this == COMPLETED || this == FAILED || this == CANCELLED;
+        }
+    }
+
+    @Getter
+    private final String id;
+    @Getter
+    private final URI uri;
+    @Getter
+    private final int maxDepth;
+    @Getter
+    private final int maxPages;
+    private final Instant submittedAt = Instant.now();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final List<PageResult> results = new ArrayList<>();
+    private State state = State.QUEUED;
+    private Instant startedAt;
+    private Instant finishedAt;
+    private String error;
+    private boolean cancelRequested;
+    private Future<?> future;
+
+    /**
+     * Creates a new queued job.
+     *
+     * @param id       The id of the job
+     * @param uri      The URI the crawl starts from
+     * @param maxDepth The maximum number of link hops from the seed page to follow
+     * @param maxPages The maximum number of pages to fetch
+     */
+    public CrawlJob(String id, URI uri, int maxDepth, int maxPages) {
+        this.id = id;
+        this.uri = uri;
+        this.maxDepth = maxDepth;
+        this.maxPages = maxPages;
+    }
+
+    @Override
+    public void accept(PageResult result) {
+        lock.lock();
+        try {
+            results.add(result);
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        // Results stay available until the job is evicted
+    }
+
+    /**
+     * Attaches the future of the task running the job, so that it can be cancelled.
+     *
+     * @param future The future
+     */
+    void setFuture(Future<?> future) {
+        lock.lock();
+        try {
+            this.future = future;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Moves the job from queued to running.
+     *
+     * @return True if the job should run, false if it was cancelled while queued
+     */
+    boolean start() {
+        lock.lock();
+        try {
+            if (state != State.QUEUED) {
+                return false;
+            }
+            state = State.RUNNING;
+            startedAt = Instant.now();
+            changed.signalAll();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ends the job. A job that was asked to cancel ends as cancelled, unless it failed.
+     *
+     * @param error The reason the job failed, or null if it didn't
+     */
+    void finish(String error) {
+        lock.lock();
+        try {
+            if (state.isFinished()) {
+                return;
+            }
+            this.error = error;
+            state = error != null ? State.FAILED : cancelRequested ? State.CANCELLED : State.COMPLETED;
+            finishedAt = Instant.now();
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Cancels the job. A queued job ends straight away; a running job stops starting new pages and
+     * ends once the pages in flight are done.
+     *
+     * @return True if the job was still queued or running, false if it had already ended
+     */
+    boolean cancel() {
+        lock.lock();
+        try {
+            if (state.isFinished()) {
+                return false;
+            }
+            cancelRequested = true;
+            if (state == State.QUEUED) {
+                state = State.CANCELLED;
+                finishedAt = Instant.now();
+                changed.signalAll();
+            }
+            if (future != null) {
+                future.cancel(true);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits for results after the given position, or for the job to end.
+     *
+     * @param from    The number of results already seen
+     * @param timeout How long (ms) to wait at most
+     * @return The new results, which is empty if the job has ended or the timeout passed
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public List<PageResult> awaitResults(int from, long timeout) throws InterruptedException {
+        lock.lock();
+        try {
+            long nanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+            while (results.size() <= from && !state.isFinished() && nanos > 0) {
+                nanos = changed.awaitNanos(nanos);
+            }
+            return results.size() > from ? new ArrayList<>(results.subList(from, results.size())) : List.of();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes a snapshot of the state of the job.
+     *
+     * @return The status
+     */
+    public CrawlJobStatus getStatus() {
+        lock.lock();
+        try {
+            return new CrawlJobStatus(id, uri.toString(), maxDepth, maxPages, state, results.size(),
+                    submittedAt, startedAt, finishedAt, error);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.ashiq.blackwidow.job;
+
+import com.ashiq.blackwidow.config.ScraperConfig;
+import com.ashiq.blackwidow.payload.CrawlJobRequest;
+import com.ashiq.blackwidow.service.WebScraper;
+import com.ashiq.blackwidow.validator.InputProcessor;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.net.URI;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service running crawl jobs submitted through the job API inside the long-lived application.
+ * Jobs wait in a bounded queue and at most {@code scraper.job-concurrency} of them run at once. All jobs
+ * share the application's HTTP client, response cache and robots.txt cache, so a job for a host that was
+ * crawled before starts warm. Finished jobs are kept for {@code scraper.job-retention} ms.
+ */
+@Slf4j
+@Service
+public class CrawlJobService {
+
+    private final WebScraper webScraper;
+    private final InputProcessor inputProcessor;
+    private final ScraperConfig config;
+
+    private final ThreadPoolExecutor executor;
+    private final Map<String, CrawlJob> jobs = new ConcurrentHashMap<>();
+
+    public CrawlJobService(WebScraper webScraper, InputProcessor inputProcessor, ScraperConfig config) {
+        this.webScraper = webScraper;
+        this.inputProcessor = inputProcessor;
+        this.config = config;
+        int concurrency = Math.max(1, config.getJobConcurrency());
+        this.executor = new ThreadPoolExecutor(concurrency, concurrency, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, config.getJobQueueSize())),
+                Thread.ofVirtual().name("crawl-job-", 0).factory());
+    }
+
+    /**
+     * Queues a crawl job.
+     *
+     * @param request The job request
+     * @return The queued job
+     * @throws IllegalArgumentException   If the URL or the limits are invalid
+     * @throws RejectedExecutionException If the job queue is full
+     */
+    public CrawlJob submit(CrawlJobRequest request) {
+        URI uri = inputProcessor.processUrl(request.url());
+        if (!inputProcessor.isCrawlable(uri)) {
+            throw new IllegalArgumentException("URL must be an absolute http:// or https:// URL: " + request.url());
+        }
+        int maxDepth = request.maxDepth() != null ? request.maxDepth() : config.getMaxDepth();
+        int maxPages = request.maxPages() != null ? request.maxPages() : config.getMaxPages();
+        if (maxDepth < 0 || maxPages < 1) {
+            throw new IllegalArgumentException("maxDepth must be at least 0 and maxPages at least 1");
+        }
+
+        evictFinishedJobs();
+        CrawlJob job = new CrawlJob(UUID.randomUUID().toString(), uri, maxDepth, maxPages);
+        jobs.put(job.getId(), job);
+        try {
+            job.setFuture(executor.submit(() -> run(job)));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            throw e;
+        }
+        log.info("Queued crawl job {} for {} (depth {}, {} pages)", job.getId(), uri, maxDepth, maxPages);
+        return job;
+    }
+
+    /**
+     * Gets a job.
+     *
+     * @param id The id of the job
+     * @return The job, or null if there is no job with the id
+     */
+    public CrawlJob get(String id) {
+        return jobs.get(id);
+    }
+
+    /**
+     * Gets all jobs that are queued, running or recently finished, oldest first.
+     *
+     * @return The jobs
+     */
+    public List<CrawlJob> list() {
+        return jobs.values().stream()
+                .sorted(Comparator.comparing(job -> job.getStatus().submittedAt()))
+                .toList();
+    }
+
+    /**
+     * Cancels a job.
+     *
+     * @param id The id of the job
+     * @return The job, or null if there is no job with the id
+     */
+    public CrawlJob cancel(String id) {
+        CrawlJob job = jobs.get(id);
+        if (job != null && job.cancel()) {
+            // Drop the cancelled task from the queue right away so it doesn't hold a slot
+            executor.purge();
+            log.info("Cancelled crawl job {}", id);
+        }
+        return job;
+    }
+
+    private void run(CrawlJob job) {
+        if (!job.start()) {
+            return;
+        }
+        log.info("Starting crawl job {}", job.getId());
+        String error = null;
+        try {
+            webScraper.scrape(job.getUri(), job.getMaxDepth(), job.getMaxPages(), job);
+        } catch (Exception e) {
+            log.error("Crawl job {} failed: {}", job.getId(), e.getMessage());
+            error = e.getMessage() != null ? e.getMessage() : e.toString();
+        } finally {
+            job.finish(error);
+        }
+        log.info("Crawl job {} ended as {}", job.getId(), job.getStatus().state());
+    }
+
+    private void evictFinishedJobs() {
+        Instant cutoff = Instant.now().minusMillis(config.getJobRetention());
+        jobs.values().removeIf(job -> {
+            Instant finishedAt = job.getStatus().finishedAt();
+            return finishedAt != null && finishedAt.isBefore(cutoff);
+        });
+    }
+
+    @PreDestroy
+    public void close() {
+        jobs.values().forEach(CrawlJob::cancel);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,484 @@
+package com.ashiq.blackwidow.metrics;
+
+import com.ashiq.blackwidow.config.ScraperConfig;
+import com.ashiq.blackwidow.crawl.CrawlFrontier;
+import com.google.common.cache.Cache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Micrometer instrumentation of the crawler, in one place so the meter names stay consistent.
+ * The meters tell where crawl time goes: waiting on the network ({@code blackwidow.fetch.*}), parsing pages
+ * ({@code blackwidow.parse.duration}) or waiting for hosts to cool down ({@code blackwidow.politeness.wait}).
+ * They are exposed through the Actuator {@code metrics} and {@code prometheus} endpoints, and
+ * {@link #logSummary(Duration)} logs the totals at the end of a command line run.
+ */
+@Slf4j
+@Component
+public class CrawlMetrics {
+
+    private static final Duration[] LATENCY_BUCKETS = {
+            Duration.ofMillis(10), Duration.ofMillis(25), Duration.ofMillis(50), Duration.ofMillis(100),
+            Duration.ofMillis(250), Duration.ofMillis(500), Duration.ofSeconds(1), Duration.ofMillis(2500),
+            Duration.ofSeconds(5), Duration.ofSeconds(10)
+    };
+
+    private final MeterRegistry registry;
+    private final boolean hostTag;
+
+    private final Counter bytesDownloaded;
+    private final Counter cachedResponses;
+    private final DistributionSummary linksPerPage;
+    private final Counter robotsDenied;
+    private final Counter circuitsOpened;
+    private final Counter hostUnavailable;
+    private final Counter duplicatePages;
+    private final Set<CrawlFrontier> frontiers = ConcurrentHashMap.newKeySet();
+    private final Map<String, Gauge> hostLimits = new ConcurrentHashMap<>();
+    private long finishedPolitenessWaitNanos;
+
+    public CrawlMetrics(MeterRegistry registry, ScraperConfig config) {
+        this.registry = registry;
+        this.hostTag = config.isMetricsHostTag();
+        this.bytesDownloaded = Counter.builder("blackwidow.fetch.bytes")
+                .description("Bytes of response bodies downloaded, before decompression")
+                .baseUnit("bytes")
+                .register(registry);
+        this.cachedResponses = Counter.builder("blackwidow.fetch.cached")
+                .description("Responses served from the response cache after revalidation")
+                .register(registry);
+        this.linksPerPage = DistributionSummary.builder("blackwidow.page.links")
+                .description("Same-domain links found per page")
+                .register(registry);
+        this.robotsDenied = Counter.builder("blackwidow.robots.denied")
+                .description("URLs disallowed by robots.txt")
+                .register(registry);
+        this.circuitsOpened = Counter.builder("blackwidow.host.circuit.opened")
+                .description("Times a host's circuit opened after repeated failures")
+                .register(registry);
+        this.hostUnavailable = Counter.builder("blackwidow.host.unavailable")
+                .description("Requests refused because their host's circuit was open")
+                .register(registry);
+        this.duplicatePages = Counter.builder("blackwidow.pages.duplicate")
+                .description("Pages whose text nearly matched a page crawled before, so their links were not followed")
+                .register(registry);
+        FunctionCounter.builder("blackwidow.politeness.wait", this, CrawlMetrics::politenessWaitSeconds)
+                .description("Time workers spent waiting for hosts to cool down after a fetch")
+                .baseUnit("seconds")
+                .register(registry);
+        Gauge.builder("blackwidow.frontier.size", frontiers, CrawlMetrics::queuedPages)
+                .description("Pages waiting to be fetched in the running crawls")
+                .register(registry);
+        Gauge.builder("blackwidow.frontier.spilled", frontiers, CrawlMetrics::spilledPages)
+                .description("Pages waiting to be fetched that were spilled to disk")
+                .register(registry);
+    }
+
+    /**
+     * Records a fetch, from sending the request until the response headers arrived.
+     *
+     * @param host    The host the request went to
+     * @param outcome The HTTP status code, or the name of the exception if the request failed
+     * @param nanos   How long the request took
+     */
+    public void recordFetch(String host, String outcome, long nanos) {
+        Timer.builder("blackwidow.fetch.duration")
+                .description("Time from sending a request until its response headers arrived")
+                .tag("host", hostTag ? host : "all")
+                .tag("status", outcome)
+                .serviceLevelObjectives(LATENCY_BUCKETS)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records a response served from the response cache after the server confirmed it is unchanged.
+     */
+    public void recordCachedResponse() {
+        cachedResponses.increment();
+    }
+
+    /**
+     * Wraps a response body so the bytes read from it are counted as downloaded.
+     *
+     * @param in The raw response body
+     * @return The counting stream
+     */
+    public InputStream countDownloaded(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    bytesDownloaded.increment();
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n > 0) {
+                    bytesDownloaded.increment(n);
+                }
+                return n;
+            }
+        };
+    }
+
+    /**
+     * Records parsing a page.
+     *
+     * @param parser The parser used, {@code jsoup} or {@code streaming}
+     * @param nanos  How long parsing took, including reading the body as it arrived
+     */
+    public void recordParse(String parser, long nanos) {
+        Timer.builder("blackwidow.parse.duration")
+                .description("Time spent reading and parsing page bodies")
+                .tag("parser", parser)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records the number of links found on a page.
+     *
+     * @param links The number of same-domain links
+     */
+    public void recordLinks(int links) {
+        linksPerPage.record(links);
+    }
+
+    /**
+     * Records a URL disallowed by robots.txt.
+     */
+    public void recordRobotsDenied() {
+        robotsDenied.increment();
+    }
+
+    /**
+     * Records a cut of a host's concurrency limit.
+     *
+     * @param reason {@code throttled} for a 429 or 503 response, {@code latency} for a latency spike
+     */
+    public void recordConcurrencyBackoff(String reason) {
+        Counter.builder("blackwidow.host.backoff")
+                .description("Cuts of per-host concurrency limits")
+                .tag("reason", reason)
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * Records a request that is retried.
+     *
+     * @param reason {@code throttled} for a 429 or 503 response, {@code error} for a failed request
+     */
+    public void recordRetry(String reason) {
+        Counter.builder("blackwidow.fetch.retries")
+                .description("Requests retried, or not retried because the retry budget was used up")
+                .tag("reason", reason)
+                .tag("outcome", "retried")
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * Records a request that is not retried because the retry budget is used up.
+     *
+     * @param reason {@code throttled} for a 429 or 503 response, {@code error} for a failed request
+     */
+    public void recordRetryDenied(String reason) {
+        Counter.builder("blackwidow.fetch.retries")
+                .description("Requests retried, or not retried because the retry budget was used up")
+                .tag("reason", reason)
+                .tag("outcome", "denied")
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * Records a response that was given up on before its body was read in full.
+     *
+     * @param reason {@code content-type} for content that isn't a page, {@code too-large} for a body over its
+     *               size limit
+     * @param check  {@code head} if a HEAD request gave it away, {@code headers} for the response headers of the
+     *               request itself, {@code body} if the body turned out too large while being read
+     */
+    public void recordRejected(String reason, String check) {
+        Counter.builder("blackwidow.fetch.rejected")
+                .description("Responses given up on because they weren't pages or were too large")
+                .tag("reason", reason)
+                .tag("check", check)
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * Records a host's circuit opening after repeated failures.
+     */
+    public void recordCircuitOpened() {
+        circuitsOpened.increment();
+    }
+
+    /**
+     * Records a request refused because its host's circuit is open.
+     */
+    public void recordHostUnavailable() {
+        hostUnavailable.increment();
+    }
+
+    /**
+     * Records a DNS lookup.
+     *
+     * @param resolved Whether the host could be resolved
+     * @param nanos    How long the lookup took
+     */
+    public void recordDnsLookup(boolean resolved, long nanos) {
+        Timer.builder("blackwidow.dns.lookup")
+                .description("Time spent resolving host names")
+                .tag("outcome", resolved ? "resolved" : "unknown")
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records a get from the DNS cache.
+     *
+     * @param result {@code hit} for a finished lookup, {@code wait} for a lookup in progress, as when a prefetch
+     *               hasn't finished, or {@code miss} for a lookup that had to be started
+     */
+    public void recordDnsCacheGet(String result) {
+        Counter.builder("blackwidow.dns.cache")
+                .description("Gets from the DNS cache")
+                .tag("result", result)
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * Records URLs forwarded between the workers of a distributed crawl.
+     *
+     * @param direction {@code sent} for URLs forwarded to the worker owning their host, {@code received} for URLs
+     *                  forwarded to this one
+     * @param count     The number of URLs
+     */
+    public void recordClusterUrls(String direction, int count) {
+        Counter.builder("blackwidow.cluster.urls")
+                .description("URLs forwarded between the workers of a distributed crawl")
+                .tag("direction", direction)
+                .register(registry)
+                .increment(count);
+    }
+
+    /**
+     * Reports the concurrency limit of a host. Only done when metrics are tagged with the host, so crawls over
+     * many hosts don't create a gauge per host.
+     *
+     * @param host  The host key
+     * @param state The object holding the limit, only weakly referenced
+     * @param limit Reads the limit from the state
+     * @param <T>   The type of the state
+     */
+    public <T> void monitorHostLimit(String host, T state, ToDoubleFunction<T> limit) {
+        if (hostTag) {
+            hostLimits.put(host, Gauge.builder("blackwidow.host.concurrency.limit", state, limit)
+                    .description("Requests allowed in flight to a host")
+                    .tag("host", host)
+                    .register(registry));
+        }
+    }
+
+    /**
+     * Stops reporting the concurrency limit of a host that is no longer tracked.
+     *
+     * @param host The host key
+     */
+    public void removeHostLimit(String host) {
+        Gauge gauge = hostLimits.remove(host);
+        if (gauge != null) {
+            registry.remove(gauge);
+        }
+    }
+
+    /**
+     * Records a page that was crawled.
+     *
+     * @param success Whether its links could be extracted
+     */
+    public void recordPage(boolean success) {
+        Counter.builder("blackwidow.pages")
+                .description("Pages crawled")
+                .tag("outcome", success ? "success" : "error")
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * Records a page found to be a near-duplicate of a page crawled before, whose links are not followed.
+     */
+    public void recordDuplicatePage() {
+        duplicatePages.increment();
+    }
+
+    /**
+     * Reports the hit and miss counts of a cache.
+     *
+     * @param cache The cache, which must record stats
+     * @param name  The name of the cache
+     */
+    public void monitorCache(Cache<?, ?> cache, String name) {
+        GuavaCacheMetrics.monitor(registry, cache, name);
+    }
+
+    /**
+     * Adds a running crawl's frontier to the frontier size gauge.
+     *
+     * @param frontier The frontier
+     */
+    public void addFrontier(CrawlFrontier frontier) {
+        frontiers.add(frontier);
+    }
+
+    /**
+     * Removes a finished crawl's frontier from the frontier size gauge, keeping its politeness wait time.
+     *
+     * @param frontier The frontier
+     */
+    public synchronized void removeFrontier(CrawlFrontier frontier) {
+        if (frontiers.remove(frontier)) {
+            finishedPolitenessWaitNanos += frontier.getPolitenessWaitNanos();
+        }
+    }
+
+    private static double queuedPages(Collection<CrawlFrontier> frontiers) {
+        return frontiers.stream().mapToLong(CrawlFrontier::getQueuedCount).sum();
+    }
+
+    private static double spilledPages(Collection<CrawlFrontier> frontiers) {
+        return frontiers.stream().mapToLong(CrawlFrontier::getSpilledCount).sum();
+    }
+
+    private synchronized double politenessWaitSeconds() {
+        long nanos = finishedPolitenessWaitNanos;
+        for (CrawlFrontier frontier : frontiers) {
+            nanos += frontier.getPolitenessWaitNanos();
+        }
+        return nanos / 1e9;
+    }
+
+    /**
+     * Logs a summary of the metrics since the application started.
+     *
+     * @param elapsed How long the run took
+     */
+    public void logSummary(Duration elapsed) {
+        double seconds = Math.max(elapsed.toNanos(), 1) / 1e9;
+        double pages = sumCounters("blackwidow.pages");
+        double failed = registry.find("blackwidow.pages").tag("outcome", "error").counters().stream()
+                .mapToDouble(Counter::count).sum();
+
+        Collection<Timer> fetches = registry.find("blackwidow.fetch.duration").timers();
+        long fetchCount = fetches.stream().mapToLong(Timer::count).sum();
+        double fetchSeconds = fetches.stream().mapToDouble(timer -> timer.totalTime(TimeUnit.SECONDS)).sum();
+        double fetchMax = fetches.stream().mapToDouble(timer -> timer.max(TimeUnit.MILLISECONDS)).max().orElse(0);
+        Collection<Timer> parses = registry.find("blackwidow.parse.duration").timers();
+        long parseCount = parses.stream().mapToLong(Timer::count).sum();
+        double parseSeconds = parses.stream().mapToDouble(timer -> timer.totalTime(TimeUnit.SECONDS)).sum();
+        double waitSeconds = politenessWaitSeconds();
+        double bytes = bytesDownloaded.count();
+
+        log.info("Crawl metrics:");
+        double duplicates = duplicatePages.count();
+        log.info("  Pages:      {} in {}s ({} pages/s), {} failed, {} near-duplicates ({}%)",
+                (long) pages, format(seconds), format(pages / seconds), (long) failed, (long) duplicates,
+                format(pages == 0 ? 0 : duplicates * 100 / pages));
+        log.info("  Fetches:    {} requests, {} ms mean / {} ms max until headers, {} served from cache",
+                fetchCount, format(fetchCount == 0 ? 0 : fetchSeconds * 1000 / fetchCount), format(fetchMax),
+                (long) cachedResponses.count());
+        log.info("  Throttling: {} concurrency cuts after 429/503 responses, {} after latency spikes",
+                (long) backoffs("throttled"), (long) backoffs("latency"));
+        log.info("  Failures:   {} retries, {} denied by the retry budget, {} circuits opened, {} requests refused",
+                (long) retries("retried"), (long) retries("denied"), (long) circuitsOpened.count(),
+                (long) hostUnavailable.count());
+        log.info("  Rejected:   {} responses that weren't pages, {} too large, {} of them after a HEAD request",
+                (long) rejected("reason", "content-type"), (long) rejected("reason", "too-large"),
+                (long) rejected("check", "head"));
+        Collection<Timer> lookups = registry.find("blackwidow.dns.lookup").timers();
+        long lookupCount = lookups.stream().mapToLong(Timer::count).sum();
+        double lookupSeconds = lookups.stream().mapToDouble(timer -> timer.totalTime(TimeUnit.SECONDS)).sum();
+        log.info("  DNS:        {} lookups, {} ms mean, {} unknown hosts; {} cache hits, {} waits, {} misses",
+                lookupCount, format(lookupCount == 0 ? 0 : lookupSeconds * 1000 / lookupCount),
+                registry.find("blackwidow.dns.lookup").tag("outcome", "unknown").timers().stream()
+                        .mapToLong(Timer::count).sum(),
+                (long) dnsCacheGets("hit"), (long) dnsCacheGets("wait"), (long) dnsCacheGets("miss"));
+        log.info("  Downloaded: {} ({}/s)", formatBytes(bytes), formatBytes(bytes / seconds));
+        log.info("  Parsing:    {}s in total, {} ms mean, {} links per page",
+                format(parseSeconds), format(parseCount == 0 ? 0 : parseSeconds * 1000 / parseCount),
+                format(linksPerPage.mean()));
+        log.info("  Robots:     {} cache hits, {} misses, {} URLs disallowed",
+                (long) cacheGets("hit"), (long) cacheGets("miss"), (long) robotsDenied.count());
+        log.info("  Worker time: {}s fetching, {}s parsing, {}s waiting on crawl delays",
+                format(fetchSeconds), format(parseSeconds), format(waitSeconds));
+    }
+
+    private double sumCounters(String name) {
+        return registry.find(name).counters().stream().mapToDouble(Counter::count).sum();
+    }
+
+    private double backoffs(String reason) {
+        return registry.find("blackwidow.host.backoff").tag("reason", reason).counters().stream()
+                .mapToDouble(Counter::count).sum();
+    }
+
+    private double retries(String outcome) {
+        return registry.find("blackwidow.fetch.retries").tag("outcome", outcome).counters().stream()
+                .mapToDouble(Counter::count).sum();
+    }
+
+    private double rejected(String tag, String value) {
+        return registry.find("blackwidow.fetch.rejected").tag(tag, value).counters().stream()
+                .mapToDouble(Counter::count).sum();
+    }
+
+    private double dnsCacheGets(String result) {
+        return registry.find("blackwidow.dns.cache").tag("result", result).counters().stream()
+                .mapToDouble(Counter::count).sum();
+    }
+
+    private double cacheGets(String result) {
+        return registry.find("cache.gets").tag("cache", "robots").tag("result", result).functionCounters().stream()
+                .mapToDouble(FunctionCounter::count).sum();
+    }
+
+    private static String format(double value) {
+        return String.format("%.2f", value);
+    }
+
+    private static String formatBytes(double bytes) {
+        if (bytes >= 1e9) {
+            return format(bytes / 1e9) + " GB";
+        } else if (bytes >= 1e6) {
+            return format(bytes / 1e6) + " MB";
+        }
+        return format(bytes / 1e3) + " kB";
+    }
+}
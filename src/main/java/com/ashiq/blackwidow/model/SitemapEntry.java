@@ -0,0 +1,18 @@
+package com.ashiq.blackwidow.model;
+
+import java.time.Instant;
+
+/**
+ * Record representing a URL listed in a sitemap.
+ *
+ * @param url          The URL of the page
+ * @param lastModified When the page was last modified, or null if the sitemap doesn't say
+ * @param priority     The priority of the page relative to other pages of the site, between 0.0 and 1.0
+ */
+public record SitemapEntry(String url, Instant lastModified, double priority) {
+
+    /**
+     * Priority of pages whose sitemap entry doesn't specify one, as defined by the sitemaps protocol.
+     */
+    public static final double DEFAULT_PRIORITY = 0.5;
+}
@@ -0,0 +1,28 @@
+package com.ashiq.blackwidow.output;
+
+import com.ashiq.blackwidow.payload.PageResult;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Destination for crawl results, which receives each page as soon as it has been processed.
+ * Implementations must be safe to call from all workers of a crawl at once.
+ */
+public interface ResultSink extends Closeable {
+
+    /**
+     * Accepts the result of a single page.
+     *
+     * @param result The result
+     */
+    void accept(PageResult result);
+
+    /**
+     * Writes out everything accepted so far and releases the sink.
+     *
+     * @throws IOException If the results can't be written
+     */
+    @Override
+    void close() throws IOException;
+}
@@ -0,0 +1,240 @@
+package com.ashiq.blackwidow.output;
+
+import com.ashiq.blackwidow.config.ScraperConfig;
+import com.ashiq.blackwidow.payload.PageResult;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedWriter;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Result sink that writes one line per page, as NDJSON or TSV, to stdout or a file.
+ * Workers only put results on a bounded queue; a single writer thread formats them into a buffered,
+ * optionally gzipped stream and flushes it at a fixed interval, so consumers see results while the crawl
+ * runs without every page paying for a flush. Workers only block when the writer falls behind by more
+ * than the queue holds.
+ * <p>
+ * NDJSON lines look like {@code {"url":...,"depth":1,"parent":...,"links":[...]}}, with an {@code "error"}
+ * field for pages that could not be processed. TSV lines hold the URL, depth, parent, space-separated
+ * links and error, with empty fields for missing values.
+ */
+@Slf4j
+public class StreamingResultSink implements ResultSink {
+
+    private static final int QUEUE_CAPACITY = 4096;
+    private static final PageResult END = new PageResult("", 0, null, List.of(), null);
+
+    /**
+     * Line formats supported by the sink.
+     */
+    public enum Format {
+        NDJSON,
+        TSV
+    }
+
+    private final Format format;
+    private final Writer writer;
+    private final JsonGenerator json;
+    private final long flushIntervalNanos;
+    private final BlockingQueue<PageResult> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread writerThread;
+
+    private volatile IOException failure;
+    private boolean closed;
+
+    /**
+     * Creates a sink writing to a stream.
+     *
+     * @param out           The stream to write to, which is closed with the sink
+     * @param format        The line format
+     * @param gzip          Whether to gzip the output
+     * @param flushInterval How often (ms) to flush written lines to the stream
+     * @throws IOException If the output can't be set up
+     */
+    public StreamingResultSink(OutputStream out, Format format, boolean gzip, long flushInterval) throws IOException {
+        this.format = format;
+        OutputStream stream = gzip ? new GZIPOutputStream(out, 64 * 1024, true) : out;
+        this.writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), 64 * 1024);
+        this.json = format == Format.NDJSON
+                ? new JsonFactory().createGenerator(writer).disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM)
+                : null;
+        if (json != null) {
+            // Lines are separated explicitly, not by the default space between root values
+            json.setRootValueSeparator(null);
+        }
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, flushInterval));
+        this.writerThread = Thread.ofPlatform().name("result-sink").daemon().start(this::drain);
+    }
+
+    /**
+     * Opens the sink described by the output settings of the configuration.
+     * Output goes to the configured file, or to stdout if there is none; a file name ending in .gz turns on gzip.
+     *
+     * @param config The scraper configuration
+     * @return The sink
+     * @throws IOException If the output file can't be created
+     */
+    public static StreamingResultSink open(ScraperConfig config) throws IOException {
+        Format format = config.getOutputFormat() == ScraperConfig.OutputFormat.TSV ? Format.TSV : Format.NDJSON;
+        String file = config.getOutputFile();
+        if (file == null || file.isBlank()) {
+            return new StreamingResultSink(new FilterOutputStream(System.out) {
+                @Override
+                public void write(byte[] b, int off, int len) {
+                    System.out.write(b, off, len);
+                }
+
+                @Override
+                public void close() {
+                    // Leave stdout open for whatever runs after the crawl
+                    System.out.flush();
+                }
+            }, format, config.isOutputGzip(), config.getOutputFlushInterval());
+        }
+
+        return open(Path.of(file), config);
+    }
+
+    /**
+     * Opens a sink writing to a file in the configured format, creating its parent directories.
+     * The file is gzipped if gzip output is enabled or its name ends in .gz.
+     *
+     * @param path   The file to write
+     * @param config The scraper configuration
+     * @return The sink
+     * @throws IOException If the file can't be created
+     */
+    public static StreamingResultSink open(Path path, ScraperConfig config) throws IOException {
+        Format format = config.getOutputFormat() == ScraperConfig.OutputFormat.TSV ? Format.TSV : Format.NDJSON;
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        boolean gzip = config.isOutputGzip() || path.getFileName().toString().endsWith(".gz");
+        return new StreamingResultSink(Files.newOutputStream(path), format, gzip, config.getOutputFlushInterval());
+    }
+
+    @Override
+    public void accept(PageResult result) {
+        if (failure != null) {
+            return;
+        }
+        try {
+            queue.put(result);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            queue.put(END);
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            writer.close();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Writer thread loop: writes queued results until the end marker, flushing at most once per interval,
+     * so a line written after a quiet spell goes out straight away.
+     */
+    private void drain() {
+        long lastFlush = System.nanoTime();
+        boolean dirty = false;
+        try {
+            while (true) {
+                long wait = dirty ? flushIntervalNanos - (System.nanoTime() - lastFlush) : Long.MAX_VALUE;
+                PageResult result = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+                if (result == END) {
+                    break;
+                }
+                if (result != null) {
+                    write(result);
+                    dirty = true;
+                }
+                if (dirty && System.nanoTime() - lastFlush >= flushIntervalNanos) {
+                    writer.flush();
+                    lastFlush = System.nanoTime();
+                    dirty = false;
+                }
+            }
+            writer.flush();
+        } catch (IOException e) {
+            log.error("Failed to write crawl results: {}", e.getMessage());
+            failure = e;
+            queue.clear();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write(PageResult result) throws IOException {
+        if (format == Format.NDJSON) {
+            json.writeStartObject();
+            json.writeStringField("url", result.url());
+            json.writeNumberField("depth", result.depth());
+            if (result.parent() != null) {
+                json.writeStringField("parent", result.parent());
+            }
+            json.writeArrayFieldStart("links");
+            for (String link : result.links()) {
+                json.writeString(link);
+            }
+            json.writeEndArray();
+            if (result.error() != null) {
+                json.writeStringField("error", result.error());
+            }
+            json.writeEndObject();
+            json.writeRaw('\n');
+            json.flush();
+            return;
+        }
+
+        writer.write(tsvField(result.url()));
+        writer.write('\t');
+        writer.write(Integer.toString(result.depth()));
+        writer.write('\t');
+        writer.write(tsvField(result.parent()));
+        writer.write('\t');
+        for (int i = 0; i < result.links().size(); i++) {
+            if (i > 0) {
+                writer.write(' ');
+            }
+            writer.write(tsvField(result.links().get(i)));
+        }
+        writer.write('\t');
+        writer.write(tsvField(result.error()));
+        writer.write('\n');
+    }
+
+    private static String tsvField(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+}
@@ -0,0 +1,10 @@
+package com.ashiq.blackwidow.payload;
+
+/**
+ * Record representing a request to start a crawl job.
+ *
+ * @param url      The URL to start crawling from
+ * @param maxDepth The maximum number of link hops from the seed page to follow, or null for the configured default
+ * @param maxPages The maximum number of pages to fetch, or null for the configured default
+ */
+public record CrawlJobRequest(String url, Integer maxDepth, Integer maxPages) {}
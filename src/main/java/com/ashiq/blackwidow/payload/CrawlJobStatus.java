@@ -0,0 +1,22 @@
+package com.ashiq.blackwidow.payload;
+
+import com.ashiq.blackwidow.job.CrawlJob;
+
+import java.time.Instant;
+
+/**
+ * Record representing the state of a crawl job at one point in time.
+ *
+ * @param id           The id of the job
+ * @param url          The URL the crawl starts from
+ * @param maxDepth     The maximum number of link hops from the seed page to follow
+ * @param maxPages     The maximum number of pages to fetch
+ * @param state        The state of the job
+ * @param pagesCrawled The number of pages processed so far
+ * @param submittedAt  When the job was submitted
+ * @param startedAt    When the job started running, or null if it hasn't
+ * @param finishedAt   When the job finished, or null if it hasn't
+ * @param error        The reason the job failed, or null
+ */
+public record CrawlJobStatus(String id, String url, int maxDepth, int maxPages, CrawlJob.State state, int pagesCrawled,
+                             Instant submittedAt, Instant startedAt, Instant finishedAt, String error) {}
@@ -0,0 +1,14 @@
+package com.ashiq.blackwidow.payload;
+
+import java.util.List;
+
+/**
+ * Record representing the result of crawling a single page, emitted as soon as the page is processed.
+ *
+ * @param url    The URL of the page
+ * @param depth  The number of link hops from the seed page
+ * @param parent The URL of the page this page was first found on, or null for the seed page
+ * @param links  The same-domain links found on the page that are allowed by robots.txt
+ * @param error  The reason the page could not be processed, or null if it was
+ */
+public record PageResult(String url, int depth, String parent, List<String> links, String error) {}
@@ -0,0 +1,133 @@
+package com.ashiq.blackwidow.service;
+
+import com.ashiq.blackwidow.config.ScraperConfig;
+import com.ashiq.blackwidow.output.ResultSink;
+import com.ashiq.blackwidow.output.StreamingResultSink;
+import com.ashiq.blackwidow.validator.InputProcessor;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Service crawling a list of seed URLs in one run.
+ * Seeds are read one per line, validated, and crawled concurrently, with at most {@code scraper.batch-concurrency}
+ * crawls in flight; reading the list blocks while that many are running, so a long list is never held in memory.
+ * All crawls share the HTTP client and its connection pools, the per-host limits and the robots.txt and response
+ * caches, so seeds on the same host are crawled politely and warm.
+ * <p>
+ * Every seed gets its own NDJSON or TSV result file in {@code scraper.batch-output-dir}, and a
+ * {@code summary.tsv} there records the outcome of each seed.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BatchCrawler {
+
+    private final WebScraper webScraper;
+    private final InputProcessor inputProcessor;
+    private final ScraperConfig config;
+
+    /**
+     * Crawls the seeds read from a reader. Blank lines and lines starting with # are skipped.
+     *
+     * @param seeds The reader to read seed URLs from, one per line
+     * @throws IOException If the seeds can't be read or the output directory can't be written
+     */
+    public void crawl(BufferedReader seeds) throws IOException {
+        Path outputDir = Path.of(config.getBatchOutputDir());
+        Files.createDirectories(outputDir);
+
+        Semaphore inFlight = new Semaphore(Math.max(1, config.getBatchConcurrency()));
+        AtomicInteger crawled = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        AtomicLong pages = new AtomicLong();
+        int invalid = 0;
+        int index = 0;
+
+        try (BufferedWriter summary = Files.newBufferedWriter(outputDir.resolve("summary.tsv"));
+             ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            String line;
+            while ((line = seeds.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                int seedIndex = ++index;
+
+                URI uri = inputProcessor.processUrl(line);
+                if (!inputProcessor.isCrawlable(uri)) {
+                    log.warn("Skipping invalid seed {}: {}", seedIndex, line);
+                    writeSummary(summary, seedIndex, line, 0, "invalid URL");
+                    invalid++;
+                    continue;
+                }
+
+                try {
+                    inFlight.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    log.info("Cancelled batch crawl after {} seeds", seedIndex - 1);
+                    break;
+                }
+                String seed = line;
+                executor.submit(() -> {
+                    try {
+                        int count = crawlSeed(uri, outputDir.resolve(outputFileName(seedIndex, uri)));
+                        pages.addAndGet(count);
+                        crawled.incrementAndGet();
+                        writeSummary(summary, seedIndex, seed, count, "ok");
+                    } catch (Exception e) {
+                        log.error("Crawl of seed {} failed: {}", seed, e.getMessage());
+                        failed.incrementAndGet();
+                        writeSummary(summary, seedIndex, seed, 0, "failed: " + e.getMessage());
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+        }
+
+        log.info("Batch crawl finished: {} seeds crawled, {} failed, {} invalid, {} pages in total",
+                crawled.get(), failed.get(), invalid, pages.get());
+    }
+
+    private int crawlSeed(URI uri, Path outputFile) throws IOException, URISyntaxException {
+        log.info("Scraping {} into {}...", uri, outputFile);
+        try (ResultSink sink = StreamingResultSink.open(outputFile, config)) {
+            return webScraper.scrape(uri, config.getMaxDepth(), config.getMaxPages(), sink);
+        }
+    }
+
+    private String outputFileName(int index, URI uri) {
+        String extension = config.getOutputFormat() == ScraperConfig.OutputFormat.TSV ? ".tsv" : ".ndjson";
+        if (config.isOutputGzip()) {
+            extension += ".gz";
+        }
+        return String.format("%05d-%s%s", index, uri.getHost().replaceAll("[^A-Za-z0-9.-]", "_"), extension);
+    }
+
+    private void writeSummary(BufferedWriter summary, int index, String seed, int pages, String status) {
+        synchronized (summary) {
+            try {
+                summary.write(index + "\t" + seed + "\t" + pages + "\t" + status.replaceAll("[\t\r\n]", " "));
+                summary.newLine();
+                summary.flush();
+            } catch (IOException e) {
+                log.error("Error writing batch summary: {}", e.getMessage());
+            }
+        }
+    }
+}
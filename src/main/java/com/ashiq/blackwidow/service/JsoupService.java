@@ -1,16 +1,39 @@
 package com.ashiq.blackwidow.service;
 
 import com.ashiq.blackwidow.config.ScraperConfig;
+import com.ashiq.blackwidow.fetch.FetchResponse;
+import com.ashiq.blackwidow.fetch.HostUnavailableException;
+import com.ashiq.blackwidow.fetch.HttpFetcher;
+import com.ashiq.blackwidow.fetch.ResponseTooLargeException;
+import com.ashiq.blackwidow.metrics.CrawlMetrics;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.jsoup.HttpStatusException;
 import org.jsoup.Jsoup;
+import org.jsoup.UnsupportedMimeTypeException;
 import org.jsoup.nodes.Document;
+import org.jsoup.parser.Parser;
 import org.springframework.stereotype.Service;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Service for handling all Jsoup operations.
+ * Content is fetched through the pooled {@link HttpFetcher}; Jsoup is only used to parse what it returns.
+ * Pages are read as a stream and given up on as soon as they turn out not to be HTML, text or XML, or to be larger
+ * than the {@code max-body-sizes} limit for their type. Links that look like they lead to binary files are
+ * checked with a HEAD request before anything is downloaded.
  * This centralizes all Jsoup usage to ensure consistent configuration and behavior.
  */
 @Slf4j
@@ -18,6 +41,8 @@ import java.io.IOException;
 @RequiredArgsConstructor
 public class JsoupService {
 
+    private final HttpFetcher httpFetcher;
+    private final CrawlMetrics metrics;
     private final ScraperConfig config;
 
     /**
@@ -28,25 +53,44 @@ public class JsoupService {
      * @throws IOException If there's an error connecting to or parsing the URL
      */
     public Document getDocument(String url) throws IOException {
-        try {
-            return Jsoup.connect(url)
-                    .userAgent(config.getUserAgent())
-                    .timeout(config.getTimeout())
-                    .followRedirects(config.isFollowRedirects())
-                    .get();
-        } catch (org.jsoup.HttpStatusException e) {
-            // Handle HTTP errors, particularly 403 Forbidden
-            if (e.getStatusCode() == 403) {
-                log.warn("Received HTTP 403 Forbidden when accessing URL: {}. This website may be blocking web scrapers.", url);
-                log.warn("Consider using a real browser or adding authentication if required.");
-
+        try (FetchResponse response = fetchPage(url)) {
+            if (response == null) {
                 // Return an empty document with a warning message
                 return Jsoup.parse("<html><body><p>Error: This website returned HTTP 403 Forbidden. It may be blocking web scrapers.</p></body></html>");
             }
-            // Re-throw other HTTP errors
+            long start = System.nanoTime();
+            Document document = parse(response);
+            metrics.recordParse("jsoup", System.nanoTime() - start);
+            return document;
+        } catch (IOException e) {
+            if (!isExpected(e)) {
+                log.error("Error connecting to URL: {}", url, e);
+            }
             throw e;
+        }
+    }
+
+    /**
+     * Opens an HTML page for reading without parsing it, for callers that tokenize the content themselves.
+     * Like {@link #getDocument(String)}, non-HTML content is rejected and HTTP 403 yields an empty page, and reading
+     * fails with a {@link ResponseTooLargeException} once the page turns out to be too large.
+     *
+     * @param url The URL to get the page from
+     * @return A reader over the page content, decoded with the charset from the response, which the caller must close
+     * @throws IOException If there's an error connecting to the URL
+     */
+    public Reader getPageReader(String url) throws IOException {
+        try {
+            FetchResponse response = fetchPage(url);
+            if (response == null) {
+                return new StringReader("");
+            }
+            Charset charset = response.charset();
+            return new InputStreamReader(response.body(), charset == null ? StandardCharsets.UTF_8 : charset);
         } catch (IOException e) {
-            log.error("Error connecting to URL: {}", url, e);
+            if (!isExpected(e)) {
+                log.error("Error connecting to URL: {}", url, e);
+            }
             throw e;
         }
     }
@@ -59,13 +103,8 @@ public class JsoupService {
      * @throws IOException If there's an error connecting to or parsing the URL
      */
     public Document getContentTypeAgnosticDocument(String url) throws IOException {
-        try {
-            return Jsoup.connect(url)
-                    .userAgent(config.getUserAgent())
-                    .timeout(config.getTimeout())
-                    .followRedirects(config.isFollowRedirects())
-                    .ignoreContentType(true)
-                    .get();
+        try (FetchResponse response = fetchSuccessful(url)) {
+            return parse(response);
         } catch (IOException e) {
             log.error("Error connecting to URL: {}", url, e);
             throw e;
@@ -74,24 +113,226 @@ public class JsoupService {
 
     /**
      * Gets the raw content of a URL as a string, preserving all formatting.
-     * This is useful for files like robots.txt where formatting is important.
+     * This is useful for files like robots.txt where formatting is important. Content over the limit for its
+     * type is cut off, as crawlers do with overly long robots.txt files.
      *
      * @param url The URL to get the content from
      * @return The raw content as a string
      * @throws IOException If there's an error connecting to or parsing the URL
      */
     public String getRawContent(String url) throws IOException {
+        try (FetchResponse response = fetchSuccessful(url)) {
+            long maxBytes = maxBodySize(response.contentType());
+            return maxBytes > 0
+                    ? response.bodyAsString((int) Math.min(maxBytes, Integer.MAX_VALUE - 8))
+                    : response.bodyAsString();
+        } catch (IOException e) {
+            log.error("Error connecting to URL: {}", url, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a stream over the raw content of a URL without loading the body into memory.
+     * The body size is not limited, so this is meant for content that is consumed incrementally, like sitemaps.
+     *
+     * @param url The URL to get the content from
+     * @return The content as a stream, which the caller must close
+     * @throws IOException If there's an error connecting to the URL
+     */
+    public InputStream getContentStream(String url) throws IOException {
         try {
-            return Jsoup.connect(url)
-                    .userAgent(config.getUserAgent())
-                    .timeout(config.getTimeout())
-                    .followRedirects(config.isFollowRedirects())
-                    .ignoreContentType(true)
-                    .execute()
-                    .body();
+            return fetchSuccessful(url).body();
         } catch (IOException e) {
             log.error("Error connecting to URL: {}", url, e);
             throw e;
         }
     }
+
+    /**
+     * Fetches an HTML page, rejecting other content types and bodies over their size limit.
+     *
+     * @return The response, with a body that fails once it exceeds its limit, or null if the server answered
+     *         HTTP 403 Forbidden
+     */
+    private FetchResponse fetchPage(String url) throws IOException {
+        if (hasBinaryExtension(url)) {
+            checkHead(url);
+        }
+
+        FetchResponse response = httpFetcher.fetch(url);
+        if (response.statusCode() == 403) {
+            response.close();
+            // Handle HTTP errors, particularly 403 Forbidden
+            log.warn("Received HTTP 403 Forbidden when accessing URL: {}. This website may be blocking web scrapers.", url);
+            log.warn("Consider using a real browser or adding authentication if required.");
+            return null;
+        }
+        checkSuccessful(response, url);
+        checkPage(response, url, "headers");
+
+        long maxBytes = maxBodySize(response.contentType());
+        if (maxBytes <= 0) {
+            return response;
+        }
+        return new FetchResponse(response.url(), response.statusCode(), response.headers(),
+                new LimitedInputStream(response.body(), url, maxBytes));
+    }
+
+    /**
+     * Sends a HEAD request for a URL that looks like it leads to a binary file, to reject it before its body is
+     * downloaded if the headers say it isn't a page or is too large. Many servers answer HEAD requests with an
+     * error, so anything but a 2xx response leaves the decision to the GET request.
+     */
+    private void checkHead(String url) throws IOException {
+        try (FetchResponse response = httpFetcher.head(url)) {
+            if (response.isSuccessful()) {
+                checkPage(response, url, "head");
+            }
+        }
+    }
+
+    /**
+     * Rejects a response whose content type isn't HTML, text or XML, or whose Content-Length is over the limit
+     * for its type.
+     *
+     * @param check Which request the headers are from, for the metrics
+     */
+    private void checkPage(FetchResponse response, String url, String check) throws IOException {
+        String contentType = response.contentType();
+        if (contentType != null && !contentType.startsWith("text/") && !contentType.equals("application/xml")
+                && !(contentType.startsWith("application/") && contentType.endsWith("+xml"))) {
+            response.close();
+            metrics.recordRejected("content-type", check);
+            throw new UnsupportedMimeTypeException("Unhandled content type. Must be text/*, application/xml, or application/*+xml",
+                    contentType, url);
+        }
+
+        long maxBytes = maxBodySize(contentType);
+        if (maxBytes > 0 && response.contentLength() > maxBytes) {
+            response.close();
+            metrics.recordRejected("too-large", check);
+            throw new ResponseTooLargeException(url, maxBytes);
+        }
+    }
+
+    /**
+     * Gets the body size limit of a media type, from its own entry in {@code max-body-sizes}, the entry of its
+     * whole type, or {@code max-body-size}.
+     */
+    private long maxBodySize(String contentType) {
+        Map<String, Long> sizes = config.getMaxBodySizes();
+        if (contentType != null) {
+            Long size = sizes.get(contentType);
+            int slash = contentType.indexOf('/');
+            if (size == null && slash > 0) {
+                size = sizes.get(contentType.substring(0, slash) + "/*");
+            }
+            if (size != null) {
+                return size;
+            }
+        }
+        return config.getMaxBodySize();
+    }
+
+    /**
+     * Checks if the path of a URL ends in one of the {@code head-check-extensions}.
+     */
+    private boolean hasBinaryExtension(String url) {
+        Set<String> extensions = config.getHeadCheckExtensions();
+        if (extensions.isEmpty()) {
+            return false;
+        }
+        String path;
+        try {
+            path = URI.create(url).getRawPath();
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        int dot = path == null ? -1 : path.lastIndexOf('.');
+        return dot > path.lastIndexOf('/') && extensions.contains(path.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Checks if an exception is an expected outcome of fetching a page, not worth a stack trace.
+     */
+    private static boolean isExpected(IOException e) {
+        return e instanceof HttpStatusException || e instanceof HostUnavailableException
+                || e instanceof UnsupportedMimeTypeException || e instanceof ResponseTooLargeException;
+    }
+
+    private FetchResponse fetchSuccessful(String url) throws IOException {
+        FetchResponse response = httpFetcher.fetch(url);
+        checkSuccessful(response, url);
+        return response;
+    }
+
+    private static void checkSuccessful(FetchResponse response, String url) throws IOException {
+        if (!response.isSuccessful()) {
+            response.close();
+            throw new HttpStatusException("HTTP error fetching URL", response.statusCode(), url);
+        }
+    }
+
+    private static Document parse(FetchResponse response) throws IOException {
+        Charset charset = response.charset();
+        String contentType = response.contentType();
+        Parser parser = contentType != null && contentType.contains("xml") && !contentType.contains("html")
+                ? Parser.xmlParser()
+                : Parser.htmlParser();
+        // A null charset lets Jsoup detect it from the BOM or a meta tag
+        return Jsoup.parse(response.body(), charset == null ? null : charset.name(), response.url(), parser);
+    }
+
+    /**
+     * Body stream that fails with a {@link ResponseTooLargeException} as soon as more than the limit has been read,
+     * so an oversized page is abandoned without downloading the rest of it.
+     */
+    private class LimitedInputStream extends FilterInputStream {
+        private final String url;
+        private final long maxBytes;
+        private long count;
+
+        private LimitedInputStream(InputStream in, String url, long maxBytes) {
+            super(in);
+            this.url = url;
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+
+        private void count(long n) throws ResponseTooLargeException {
+            boolean first = count <= maxBytes;
+            count += n;
+            if (count > maxBytes) {
+                if (first) {
+                    metrics.recordRejected("too-large", "body");
+                }
+                throw new ResponseTooLargeException(url, maxBytes);
+            }
+        }
+    }
 }
@@ -0,0 +1,239 @@
+package com.ashiq.blackwidow.service;
+
+import crawlercommons.robots.SimpleRobotRules;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Robots.txt rules compiled into a trie over their path prefixes, with the same verdicts as Crawler-Commons'
+ * {@link SimpleRobotRules}: the longest matching rule wins, an Allow beats a Disallow of the same length,
+ * {@code *} matches any run of characters and a trailing {@code $} anchors the rule at the end of the path.
+ * <p>
+ * Rules without wildcards end at a trie node, so they are all matched in a single walk down the path. Rules with
+ * {@code *} or {@code $} hang off the node of their literal prefix, so only those whose prefix matches the path
+ * are evaluated. Instances are immutable and safe to share between threads.
+ */
+public final class RobotsRuleMatcher {
+
+    /**
+     * Characters that {@link SimpleRobotRules} percent-encodes in paths, so they can't be taken for wildcards.
+     */
+    private static final boolean[] SPECIAL_CHARACTERS = new boolean[128];
+
+    /**
+     * Printable ASCII characters that normalizing a path leaves alone, so paths made of them can skip it.
+     */
+    private static final boolean[] PLAIN_CHARACTERS = new boolean[128];
+
+    static {
+        SPECIAL_CHARACTERS['*'] = true;
+        SPECIAL_CHARACTERS['$'] = true;
+        for (char c = '!'; c <= '~'; c++) {
+            PLAIN_CHARACTERS[c] = "\"#$%*<>[]^`{|}".indexOf(c) < 0;
+        }
+    }
+
+    private final Node root = new Node();
+    private final boolean allowAll;
+    private final boolean allowNone;
+
+    /**
+     * Compiles parsed robots.txt rules.
+     *
+     * @param rules The rules for the crawler's user agent
+     */
+    public RobotsRuleMatcher(SimpleRobotRules rules) {
+        this.allowAll = rules.isAllowAll();
+        this.allowNone = rules.isAllowNone();
+        for (SimpleRobotRules.RobotRule rule : rules.getRobotRules()) {
+            String prefix = rule.getPrefix();
+            add(prefix, rule.isAllow());
+
+            // Crawler-Commons lets a rule for /dir/index.html also match /dir/ itself
+            int index = prefix.indexOf("index.htm");
+            if (prefix.endsWith("index.htm") || prefix.endsWith("index.html")) {
+                add(prefix.substring(0, index) + "$", rule.isAllow());
+            }
+        }
+    }
+
+    /**
+     * Checks if a path is allowed.
+     *
+     * @param rawPath  The raw path of the URL, still percent-encoded; empty or null means {@code /}
+     * @param rawQuery The raw query of the URL, or null if it has none
+     * @return True if the path is allowed, false otherwise
+     */
+    public boolean isAllowed(String rawPath, String rawQuery) {
+        if (allowNone) {
+            return false;
+        }
+        if (allowAll) {
+            return true;
+        }
+        String path = normalize(rawPath, rawQuery);
+        if (path.equals("/robots.txt")) {
+            return true;
+        }
+
+        // Walk down the path, remembering the longest rule that matched so far
+        boolean allowed = true;
+        int longest = -1;
+        Node node = root;
+        for (int depth = 0; node != null; depth++) {
+            if (node.terminal) {
+                // The literal rule ending here is as long as the depth
+                allowed = depth > longest ? node.allow : depth == longest ? allowed || node.allow : allowed;
+                longest = Math.max(longest, depth);
+            }
+            if (node.patterns != null) {
+                for (Pattern pattern : node.patterns) {
+                    if (pattern.length >= longest && pattern.matches(path, depth)) {
+                        allowed = pattern.length > longest ? pattern.allow : allowed || pattern.allow;
+                        longest = pattern.length;
+                    }
+                }
+            }
+            node = depth < path.length() ? node.child(path.charAt(depth)) : null;
+        }
+        return allowed;
+    }
+
+    /**
+     * Joins the path and query and percent-encodes them the way {@link SimpleRobotRules} does before matching.
+     */
+    static String normalize(String rawPath, String rawQuery) {
+        String path = rawPath == null || rawPath.isEmpty() ? "/" : rawPath;
+        if (rawQuery != null) {
+            path = path + "?" + rawQuery;
+        }
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (c >= 128 || !PLAIN_CHARACTERS[c]) {
+                return SimpleRobotRules.escapePath(path, SPECIAL_CHARACTERS);
+            }
+        }
+        return path;
+    }
+
+    private void add(String prefix, boolean allow) {
+        int wildcard = prefix.indexOf('*');
+        boolean anchored = prefix.endsWith("$");
+        int literalEnd = wildcard >= 0 ? wildcard : anchored ? prefix.length() - 1 : prefix.length();
+
+        Node node = root;
+        for (int i = 0; i < literalEnd; i++) {
+            node = node.childOrCreate(prefix.charAt(i));
+        }
+        if (literalEnd == prefix.length()) {
+            node.allow = node.terminal ? node.allow || allow : allow;
+            node.terminal = true;
+        } else {
+            if (node.patterns == null) {
+                node.patterns = new ArrayList<>(1);
+            }
+            node.patterns.add(new Pattern(prefix, allow, anchored));
+        }
+    }
+
+    /**
+     * Node of the trie. The few children of most nodes are kept in parallel arrays, which are smaller
+     * and faster to scan than a map; nodes with many children switch to a map.
+     */
+    private static final class Node {
+        private static final int MAX_ARRAY_CHILDREN = 8;
+
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private Map<Character, Node> childMap;
+        private boolean terminal;
+        private boolean allow;
+        private List<Pattern> patterns;
+
+        Node child(char c) {
+            if (childMap != null) {
+                return childMap.get(c);
+            }
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        Node childOrCreate(char c) {
+            Node child = child(c);
+            if (child != null) {
+                return child;
+            }
+            child = new Node();
+            if (childMap == null && keys.length < MAX_ARRAY_CHILDREN) {
+                keys = Arrays.copyOf(keys, keys.length + 1);
+                children = Arrays.copyOf(children, children.length + 1);
+                keys[keys.length - 1] = c;
+                children[children.length - 1] = child;
+            } else {
+                if (childMap == null) {
+                    childMap = new HashMap<>();
+                    for (int i = 0; i < keys.length; i++) {
+                        childMap.put(keys[i], children[i]);
+                    }
+                    keys = null;
+                    children = null;
+                }
+                childMap.put(c, child);
+            }
+            return child;
+        }
+    }
+
+    /**
+     * Rule with a wildcard or an end anchor, matched against the rest of the path after its literal prefix.
+     */
+    private static final class Pattern {
+        private final String[] segments;
+        private final boolean anchored;
+        private final boolean allow;
+        private final int length;
+
+        Pattern(String rule, boolean allow, boolean anchored) {
+            String body = anchored ? rule.substring(0, rule.length() - 1) : rule;
+            // Splitting on * keeps the literal prefix as the first segment, and a trailing * as an empty last one
+            this.segments = body.split("\\*", -1);
+            this.anchored = anchored;
+            this.allow = allow;
+            this.length = rule.length();
+        }
+
+        /**
+         * Checks if the path matches, given that its first segment is already known to match.
+         */
+        boolean matches(String path, int from) {
+            if (segments.length == 1) {
+                // No wildcard, so the rule only matches a path of exactly its literal prefix
+                return !anchored || from == path.length();
+            }
+            int position = from;
+            int last = segments.length - 1;
+            for (int i = 1; i < last; i++) {
+                int found = path.indexOf(segments[i], position);
+                if (found < 0) {
+                    return false;
+                }
+                position = found + segments[i].length();
+            }
+            // Like Crawler-Commons, take the first occurrence of the last segment even when the rule is anchored
+            String tail = segments[last];
+            if (tail.isEmpty()) {
+                return true;
+            }
+            int found = path.indexOf(tail, position);
+            return found >= 0 && (!anchored || found + tail.length() == path.length());
+        }
+    }
+}
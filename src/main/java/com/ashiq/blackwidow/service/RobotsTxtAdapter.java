@@ -1,22 +1,32 @@
 package com.ashiq.blackwidow.service;
 
-import crawlercommons.robots.BaseRobotRules;
+import crawlercommons.robots.SimpleRobotRules;
 import crawlercommons.robots.SimpleRobotRulesParser;
 import lombok.Getter;
 
+import java.net.URI;
 import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.List;
 
 /**
  * Adapter for Crawler-Commons' robots.txt parser.
+ * The parsed rules are compiled into a {@link RobotsRuleMatcher}, and the verdicts for recently checked
+ * paths can be kept in a small cache, since the same navigation links turn up on every page of a site.
+ * The cache is direct-mapped: each path has one slot, and a new verdict simply replaces whatever was there.
+ * That needs no locks or LRU bookkeeping, which would cost as much as matching the rules again.
  */
 public class RobotsTxtAdapter {
-    private final BaseRobotRules robotRules;
+    private final SimpleRobotRules robotRules;
+    private final RobotsRuleMatcher matcher;
+    private final Verdict[] verdicts;
 
     @Getter
     private final List<String> sitemaps;
 
+    @Getter
+    private final boolean fetched;
+
     /**
      * Creates a new RobotsTxtAdapter from robots.txt content.
      * 
@@ -24,6 +34,21 @@ public class RobotsTxtAdapter {
      * @param userAgent The user agent to use for parsing
      */
     public RobotsTxtAdapter(String content, String userAgent) {
+        this(content, userAgent, 0);
+    }
+
+    /**
+     * Creates a new RobotsTxtAdapter from robots.txt content, caching the verdicts for recently checked paths.
+     *
+     * @param content          The content of the robots.txt file
+     * @param userAgent        The user agent to use for parsing
+     * @param verdictCacheSize The number of paths to cache verdicts for, or 0 for no cache
+     */
+    public RobotsTxtAdapter(String content, String userAgent, int verdictCacheSize) {
+        this(content, userAgent, true, verdictCacheSize);
+    }
+
+    private RobotsTxtAdapter(String content, String userAgent, boolean fetched, int verdictCacheSize) {
         SimpleRobotRulesParser parser = new SimpleRobotRulesParser();
 
         this.robotRules = parser.parseContent(
@@ -33,6 +58,32 @@ public class RobotsTxtAdapter {
                 Collections.singletonList(userAgent)
         );
         this.sitemaps = robotRules.getSitemaps();
+        this.fetched = fetched;
+        this.matcher = new RobotsRuleMatcher(robotRules);
+        this.verdicts = verdictCacheSize > 0 && !robotRules.isAllowAll() && !robotRules.isAllowNone()
+                ? new Verdict[Integer.highestOneBit(verdictCacheSize)]
+                : null;
+    }
+
+    /**
+     * Creates rules that allow every URL, for hosts whose robots.txt couldn't be retrieved.
+     *
+     * @param userAgent The user agent to use for parsing
+     * @return Rules that allow every URL
+     */
+    public static RobotsTxtAdapter allowAll(String userAgent) {
+        return new RobotsTxtAdapter("", userAgent, false, 0);
+    }
+
+    /**
+     * Creates rules that disallow every URL, for hosts whose robots.txt is unreachable because of a server or
+     * network error.
+     *
+     * @param userAgent The user agent to use for parsing
+     * @return Rules that disallow every URL
+     */
+    public static RobotsTxtAdapter disallowAll(String userAgent) {
+        return new RobotsTxtAdapter("User-agent: *\nDisallow: /\n", userAgent, false, 0);
     }
 
     /**
@@ -42,15 +93,49 @@ public class RobotsTxtAdapter {
      * @return True if the URL is allowed, false otherwise
      */
     public boolean isAllowed(String url) {
-        return robotRules.isAllowed(url);
+        URI uri;
+        try {
+            uri = URI.create(url);
+        } catch (IllegalArgumentException e) {
+            // Let Crawler-Commons make what it can of URLs that don't parse as URIs
+            return robotRules.isAllowed(url);
+        }
+        return isAllowed(uri);
+    }
+
+    /**
+     * Checks if an already parsed URL is allowed to be crawled.
+     * Only the path and query are matched; the caller is responsible for the URL being on this host.
+     *
+     * @param uri The URL to check
+     * @return True if the URL is allowed, false otherwise
+     */
+    public boolean isAllowed(URI uri) {
+        String path = uri.getRawPath();
+        String query = uri.getRawQuery();
+        if (verdicts == null || path == null) {
+            return matcher.isAllowed(path, query);
+        }
+        String key = query == null ? path : path + "?" + query;
+        int slot = key.hashCode() & (verdicts.length - 1);
+        // Verdicts are immutable, so a slot read while another thread replaces it is either the old or the new one
+        Verdict verdict = verdicts[slot];
+        if (verdict == null || !verdict.path().equals(key)) {
+            verdict = new Verdict(key, matcher.isAllowed(path, query));
+            verdicts[slot] = verdict;
+        }
+        return verdict.allowed();
     }
 
     /**
      * Gets the crawl delay in milliseconds.
      * 
-     * @return The crawl delay in milliseconds
+     * @return The crawl delay in milliseconds, or 0 if robots.txt doesn't specify one
      */
     public long getCrawlDelay() {
-        return robotRules.getCrawlDelay() * 1000; // Convert to milliseconds
+        // Crawler-Commons already converts to milliseconds, and uses a negative value when unset
+        return Math.max(0, robotRules.getCrawlDelay());
     }
+
+    private record Verdict(String path, boolean allowed) {}
 }
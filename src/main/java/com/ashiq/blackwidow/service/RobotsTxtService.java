@@ -1,151 +1,150 @@
 package com.ashiq.blackwidow.service;
 
 import com.ashiq.blackwidow.config.ScraperConfig;
-import crawlercommons.sitemaps.AbstractSiteMap;
-import crawlercommons.sitemaps.SiteMap;
-import crawlercommons.sitemaps.SiteMapIndex;
-import crawlercommons.sitemaps.SiteMapParser;
-import crawlercommons.sitemaps.SiteMapURL;
-import lombok.Getter;
-import lombok.RequiredArgsConstructor;
+import com.ashiq.blackwidow.metrics.CrawlMetrics;
+import com.ashiq.blackwidow.util.DomainUtils;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import lombok.extern.slf4j.Slf4j;
+import org.jsoup.HttpStatusException;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.net.URI;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
-import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Service for handling robots.txt and sitemap functionality.
+ * Service for handling robots.txt functionality.
+ * Parsed robots.txt rules are cached per host (scheme, host and port) with a TTL and a
+ * size bound, each with a small cache of verdicts for recently checked paths. Concurrent lookups of an uncached host wait for a single robots.txt fetch.
+ * As RFC 9309 asks, a robots.txt that is unavailable (4xx) allows everything, while one that is unreachable,
+ * because of a network error or a 5xx or 429 response, disallows everything until it is fetched again after the
+ * shorter {@code robots-failure-ttl}, so a passing outage neither opens up the host nor shuts it for the full TTL.
+ * Cache hits and misses and disallowed URLs are recorded in {@link CrawlMetrics}.
  */
 @Slf4j
 @Service
-@RequiredArgsConstructor
-@Getter
 public class RobotsTxtService {
 
     private final JsoupService jsoupService;
     private final ScraperConfig config;
-
-    private RobotsTxtAdapter robotsTxt;
-    private Set<String> sitemap;
+    private final CrawlMetrics metrics;
+
+    private final LoadingCache<String, CachedRules> robotsCache;
+
+    public RobotsTxtService(JsoupService jsoupService, ScraperConfig config, CrawlMetrics metrics) {
+        this.jsoupService = jsoupService;
+        this.config = config;
+        this.metrics = metrics;
+        this.robotsCache = CacheBuilder.newBuilder()
+                .maximumSize(config.getRobotsCacheSize())
+                .expireAfterWrite(config.getRobotsCacheTtl(), TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build(CacheLoader.from(this::loadRobotsTxt));
+        metrics.monitorCache(robotsCache, "robots");
+    }
 
     /**
-     * Initializes the robots.txt service for a specific domain and scheme.
-     * This method should be called before any other methods to ensure the robots.txt file is fetched only once.
-     * 
-     * @param domain The domain to initialize for
+     * Initializes the robots.txt rules for the host of a crawl's seed URL.
+     * Rules for other hosts are loaded on demand the first time one of their URLs is checked.
+     *
      * @param uri the URI of the target
-     * @return True if initialization was successful, false otherwise
+     * @return True if the robots.txt file could be retrieved, false otherwise
      */
-    public boolean initialize(URI uri, String domain) {
-
-
+    public boolean initialize(URI uri) {
         try {
-            // Check if we already have the robots.txt file in the cache
-            if (robotsTxt != null) {
-                return true;
-            }
-
-            // Construct the robots.txt URL using the provided scheme
-            String robotsUrl = uri.getScheme() + "://" + domain + "/robots.txt";
-
-            log.info("Initializing robots.txt from {}", robotsUrl);
-
-            try {
-                // Fetch the robots.txt file, preserving original formatting
-                String content = jsoupService.getRawContent(robotsUrl);
-
-                // Log the content for debugging
-                log.debug("Robots.txt content: {}", content);
-
-                // Parse with Crawler-Commons
-                robotsTxt = new RobotsTxtAdapter(content, config.getUserAgent());
-
-                // Process sitemaps
-                processSitemaps(robotsTxt.getSitemaps());
-                return true;
-            } catch (IOException e) {
-                log.warn("Initialization Failed ",e);
-                return false;
-            }
+            String hostKey = DomainUtils.getHostKey(uri);
+            return getRules(hostKey).isFetched();
         } catch (Exception e) {
             log.error("Unexpected error during robots initialization",e);
             return false;
         }
     }
 
-
     /**
-     * Processes sitemaps specified in a robots.txt file.
-     * 
-     * @param sitemapUrls The URLs of the sitemaps to process
+     * Gets the robots.txt rules for a host, fetching them if they aren't cached.
+     * If robots.txt is malformed or missing, the returned rules allow everything, and if it is unreachable they
+     * disallow everything until the failure TTL has passed.
+     *
+     * @param hostKey The host key, as returned by {@link DomainUtils#getHostKey(URI)}
+     * @return The robots.txt rules
      */
-    private void processSitemaps(List<String> sitemapUrls) {
-        // Skip if we already have sitemaps for this domain
-        if (sitemap != null) {
-            return;
+    public RobotsTxtAdapter getRules(String hostKey) {
+        CachedRules cached = robotsCache.getUnchecked(hostKey);
+        if (cached.expiresAt() != 0 && cached.expiresAt() - System.nanoTime() <= 0) {
+            // Only the thread that removes the failure fetches robots.txt again, the others wait for it
+            robotsCache.asMap().remove(hostKey, cached);
+            cached = robotsCache.getUnchecked(hostKey);
         }
+        return cached.rules();
+    }
 
-        Set<String> urls = new HashSet<>();
-        SiteMapParser siteMapParser = new SiteMapParser();
+    /**
+     * Gets the sitemap URLs listed in the robots.txt file of a host.
+     *
+     * @param uri A URI on the host
+     * @return The sitemap URLs, or an empty list if there are none
+     */
+    public List<String> getSitemaps(URI uri) {
+        return getRules(DomainUtils.getHostKey(uri)).getSitemaps();
+    }
 
-        for (String sitemapUrl : sitemapUrls) {
-            try {
-                log.info("Fetching sitemap from {}", sitemapUrl);
-
-                // Fetch the sitemap, preserving original formatting
-                byte[] content = jsoupService.getRawContent(sitemapUrl)
-                    .getBytes(StandardCharsets.UTF_8);
-
-                // Parse with Crawler-Commons
-                URI uri = new URI(sitemapUrl);
-                URL url = uri.toURL();
-                AbstractSiteMap abstractSiteMap = siteMapParser.parseSiteMap(content, url);
-
-                // Handle different types of sitemaps
-                if (abstractSiteMap.isIndex()) {
-                    // It's a sitemap index, process each sitemap in the index
-                    SiteMapIndex siteMapIndex = (SiteMapIndex) abstractSiteMap;
-                    for (AbstractSiteMap subSiteMap : siteMapIndex.getSitemaps()) {
-                        if (subSiteMap instanceof SiteMap actualSiteMap) {
-                            for (SiteMapURL siteMapUrl : actualSiteMap.getSiteMapUrls()) {
-                                urls.add(siteMapUrl.getUrl().toString());
-                            }
-                        }
-                    }
-                } else if (abstractSiteMap instanceof SiteMap siteMap) {
-                    // It's a regular sitemap
-                    for (SiteMapURL siteMapUrl : siteMap.getSiteMapUrls()) {
-                        urls.add(siteMapUrl.getUrl().toString());
-                    }
-                }
+    /**
+     * Fetches and parses the robots.txt file of a host. Called by the cache at most once per host at a time.
+     */
+    private CachedRules loadRobotsTxt(String hostKey) {
+        String robotsUrl = hostKey + "/robots.txt";
 
-                log.info("Found {} URLs in sitemap {}", urls.size(), sitemapUrl);
-            } catch (Exception e) {
-                log.warn("Failed to fetch/parse sitemap from {}: {}", sitemapUrl, e.getMessage());
+        log.info("Initializing robots.txt from {}", robotsUrl);
+
+        try {
+            // Fetch the robots.txt file, preserving original formatting
+            String content = jsoupService.getRawContent(robotsUrl);
+
+            // Log the content for debugging
+            log.debug("Robots.txt content: {}", content);
+
+            // Parse with Crawler-Commons
+            return new CachedRules(new RobotsTxtAdapter(content, config.getUserAgent(), config.getRobotsVerdictCacheSize()), 0);
+        } catch (HttpStatusException e) {
+            if (e.getStatusCode() < 500 && e.getStatusCode() != 429) {
+                log.info("No robots.txt at {} (HTTP {}), allowing everything", robotsUrl, e.getStatusCode());
+                return new CachedRules(RobotsTxtAdapter.allowAll(config.getUserAgent()), 0);
             }
+            log.warn("Could not retrieve robots.txt from {}: HTTP {}", robotsUrl, e.getStatusCode());
+            return failed(RobotsTxtAdapter.disallowAll(config.getUserAgent()));
+        } catch (IOException e) {
+            log.warn("Could not retrieve robots.txt from {}: {}", robotsUrl, e.getMessage());
+            return failed(RobotsTxtAdapter.disallowAll(config.getUserAgent()));
+        } catch (Exception e) {
+            log.error("Unexpected error while loading robots.txt from {}", robotsUrl, e);
+            return failed(RobotsTxtAdapter.allowAll(config.getUserAgent()));
         }
+    }
 
-        // Cache the results
-        sitemap = urls;
-        log.info("Found {} URLs in {} sitemaps", urls.size(), sitemapUrls.size());
+    private CachedRules failed(RobotsTxtAdapter rules) {
+        return new CachedRules(rules, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(1, config.getRobotsFailureTtl())));
     }
 
     /**
-     * Checks if a URL is allowed to be crawled according to the robots.txt rules.
-     * If robots.txt is malformed or couldn't be retrieved, all URLs are allowed.
+     * Checks if a URL is allowed to be crawled according to the robots.txt rules of its host.
+     * If robots.txt is malformed or missing, all URLs are allowed, and if it is unreachable none are.
      * 
      * @param url The URL to check
      * @return True if the URL is allowed to be crawled, false otherwise
      */
     public boolean isAllowed(String url) {
         try {
-            return robotsTxt.isAllowed(url);
+            URI uri = URI.create(url);
+            boolean allowed = getRules(DomainUtils.getHostKey(uri)).isAllowed(uri);
+            if (!allowed) {
+                metrics.recordRobotsDenied();
+            }
+            return allowed;
         } catch (Exception e) {
             log.error("Error checking if URL {} is allowed: {}", url, e.getMessage());
             // If there's an error, allow the URL to be crawled
@@ -154,20 +153,58 @@ public class RobotsTxtService {
     }
 
     /**
-     * Respects the crawl delay specified in the robots.txt file.
-     * If robots.txt is malformed or couldn't be retrieved, uses the default crawl delay.
-     * 
+     * Keeps the URLs that are allowed to be crawled according to the robots.txt rules of their hosts.
+     * Each URL is parsed once, and the rules are looked up once per run of URLs on the same host, which is
+     * what the links of a page mostly are. URLs that can't be checked are kept, as in {@link #isAllowed(String)}.
+     *
+     * @param urls The URLs to check
+     * @return The allowed URLs, in their original order
      */
-    public void respectCrawlDelay() {
-
-        try {
-            long crawlDelay;
-            crawlDelay = robotsTxt.getCrawlDelay();
-            log.debug("Respecting crawl delay of {} ms ", crawlDelay);
-            Thread.sleep(crawlDelay);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+    public List<String> filterAllowed(Collection<String> urls) {
+        List<String> allowed = new ArrayList<>(urls.size());
+        String hostKey = null;
+        RobotsTxtAdapter rules = null;
+        for (String url : urls) {
+            try {
+                URI uri = URI.create(url);
+                String urlHostKey = DomainUtils.getHostKey(uri);
+                if (!urlHostKey.equals(hostKey)) {
+                    hostKey = urlHostKey;
+                    rules = getRules(hostKey);
+                }
+                if (rules.isAllowed(uri)) {
+                    allowed.add(url);
+                } else {
+                    log.debug("URL {} is disallowed by robots.txt. Skipping.", url);
+                    metrics.recordRobotsDenied();
+                }
+            } catch (Exception e) {
+                log.error("Error checking if URL {} is allowed: {}", url, e.getMessage());
+                allowed.add(url);
+            }
         }
+        return allowed;
+    }
+
+    /**
+     * Gets the crawl delay specified in the robots.txt file for a host.
+     * If robots.txt is malformed, couldn't be retrieved or hasn't been loaded yet, there is no crawl delay.
+     * This never fetches robots.txt, so it is safe to call while holding the frontier lock, and it doesn't count
+     * as a cache hit or miss, since it isn't a lookup of rules to check a URL against.
+     *
+     * @param hostKey The host key, as returned by {@link DomainUtils#getHostKey(URI)}
+     * @return The crawl delay in milliseconds, or 0 if there is none
+     */
+    public long getCrawlDelay(String hostKey) {
+        CachedRules cached = robotsCache.asMap().get(hostKey);
+        return cached == null ? 0 : cached.rules().getCrawlDelay();
+    }
+
+    /**
+     * Rules in the cache, with the time from {@link System#nanoTime()} at which they are fetched again if robots.txt
+     * couldn't be retrieved, or 0 if they are kept for the full TTL.
+     */
+    private record CachedRules(RobotsTxtAdapter rules, long expiresAt) {
     }
 
 }
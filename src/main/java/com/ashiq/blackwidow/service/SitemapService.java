@@ -0,0 +1,312 @@
+package com.ashiq.blackwidow.service;
+
+import com.ashiq.blackwidow.config.ScraperConfig;
+import com.ashiq.blackwidow.model.SitemapEntry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Service for reading sitemaps as a stream.
+ * Sitemaps are parsed with StAX straight from the response body, gzip is decompressed on the fly, and
+ * every URL is handed to a consumer as soon as it is parsed, so memory use doesn't grow with the size
+ * of the sitemap. The child sitemaps of a sitemap index are fetched in parallel, up to a configurable limit.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SitemapService {
+
+    /**
+     * How deep sitemap indexes may be nested before their children are ignored.
+     */
+    private static final int MAX_INDEX_DEPTH = 3;
+
+    /**
+     * How many leading bytes are looked at to tell plain text sitemaps from XML ones.
+     */
+    private static final int SNIFF_LIMIT = 1024;
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = createXmlInputFactory();
+
+    private final JsoupService jsoupService;
+    private final ScraperConfig config;
+
+    /**
+     * Reads sitemaps and their nested sitemaps, passing every URL to the consumer as it is parsed.
+     * The consumer may be called from several threads at once.
+     *
+     * @param sitemapUrls The URLs of the sitemaps to read, usually from robots.txt
+     * @param consumer    The consumer to pass the URLs to
+     * @return The number of URLs passed to the consumer
+     */
+    public long streamSitemaps(List<String> sitemapUrls, Consumer<SitemapEntry> consumer) {
+        if (sitemapUrls.isEmpty()) {
+            return 0;
+        }
+
+        SitemapWalk walk = new SitemapWalk(consumer, Math.max(1, config.getSitemapConcurrency()));
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            walk.executor = executor;
+            List<Future<?>> futures = new ArrayList<>();
+            for (String sitemapUrl : sitemapUrls) {
+                futures.add(walk.submit(sitemapUrl, 0));
+            }
+            walk.await(futures);
+        }
+
+        log.info("Found {} URLs in {} sitemaps", walk.count.get(), walk.visited.size());
+        return walk.count.get();
+    }
+
+    /**
+     * State shared by all the sitemaps read for a single call to {@link #streamSitemaps(List, Consumer)}.
+     */
+    private class SitemapWalk {
+        private final Consumer<SitemapEntry> consumer;
+        private final Semaphore permits;
+        private final Set<String> visited = ConcurrentHashMap.newKeySet();
+        private final AtomicLong count = new AtomicLong();
+        private ExecutorService executor;
+
+        private SitemapWalk(Consumer<SitemapEntry> consumer, int concurrency) {
+            this.consumer = consumer;
+            this.permits = new Semaphore(concurrency);
+        }
+
+        private Future<?> submit(String sitemapUrl, int depth) {
+            return executor.submit(() -> read(sitemapUrl, depth));
+        }
+
+        /**
+         * Reads a single sitemap. Children of an index are submitted while the index is still being
+         * parsed, and waited for only after the fetch permit has been released, so nested indexes
+         * can't starve each other of permits.
+         */
+        private void read(String sitemapUrl, int depth) {
+            if (!visited.add(sitemapUrl)) {
+                return;
+            }
+
+            List<Future<?>> children = new ArrayList<>();
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            log.info("Fetching sitemap from {}", sitemapUrl);
+            try (InputStream in = openSitemap(sitemapUrl)) {
+                long found = parse(in, sitemapUrl, child -> {
+                    if (depth < MAX_INDEX_DEPTH) {
+                        children.add(submit(child, depth + 1));
+                    } else {
+                        log.warn("Ignoring sitemap {} nested too deeply in {}", child, sitemapUrl);
+                    }
+                });
+                log.info("Found {} URLs in sitemap {}", found, sitemapUrl);
+            } catch (Exception e) {
+                log.warn("Failed to fetch/parse sitemap from {}: {}", sitemapUrl, e.getMessage());
+            } finally {
+                permits.release();
+            }
+
+            await(children);
+        }
+
+        private void await(List<Future<?>> futures) {
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (ExecutionException e) {
+                    log.warn("Failed to read sitemap: {}", e.getCause().getMessage());
+                }
+            }
+        }
+
+        /**
+         * Parses a sitemap, passing URLs to the consumer and child sitemaps of an index to the given callback.
+         *
+         * @return The number of URLs found
+         */
+        private long parse(InputStream in, String sitemapUrl, Consumer<String> childSitemaps) throws IOException, XMLStreamException {
+            // Plain text sitemaps list one URL per line
+            in.mark(SNIFF_LIMIT);
+            if (firstSignificantByte(in, SNIFF_LIMIT) != '<') {
+                in.reset();
+                return parseText(in);
+            }
+            in.reset();
+
+            XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(in);
+            try {
+                long found = 0;
+                String namespace = null;
+                String loc = null;
+                String lastmod = null;
+                String priority = null;
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        // Extensions like image:loc reuse element names, so only the namespace of the root counts
+                        String elementNamespace = Objects.requireNonNullElse(reader.getNamespaceURI(), "");
+                        if (namespace == null) {
+                            namespace = elementNamespace;
+                        } else if (!namespace.equals(elementNamespace)) {
+                            continue;
+                        }
+                        switch (reader.getLocalName()) {
+                            case "url", "sitemap" -> {
+                                loc = null;
+                                lastmod = null;
+                                priority = null;
+                            }
+                            case "loc" -> loc = reader.getElementText().trim();
+                            case "lastmod" -> lastmod = reader.getElementText().trim();
+                            case "priority" -> priority = reader.getElementText().trim();
+                            default -> {
+                                // Other elements, e.g. changefreq or image extensions, are not used
+                            }
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT && loc != null && !loc.isEmpty()) {
+                        String name = reader.getLocalName();
+                        if ("url".equals(name)) {
+                            emit(new SitemapEntry(loc, parseLastModified(lastmod), parsePriority(priority)));
+                            found++;
+                            loc = null;
+                        } else if ("sitemap".equals(name)) {
+                            childSitemaps.accept(loc);
+                            loc = null;
+                        }
+                    }
+                }
+                return found;
+            } finally {
+                reader.close();
+            }
+        }
+
+        private long parseText(InputStream in) throws IOException {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            long found = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.startsWith("http://") || line.startsWith("https://")) {
+                    emit(new SitemapEntry(line, null, SitemapEntry.DEFAULT_PRIORITY));
+                    found++;
+                }
+            }
+            return found;
+        }
+
+        private void emit(SitemapEntry entry) {
+            count.incrementAndGet();
+            consumer.accept(entry);
+        }
+    }
+
+    /**
+     * Opens a sitemap for reading, decompressing it if it is gzipped.
+     * Gzip is detected from the content itself, because servers label .xml.gz files inconsistently.
+     */
+    private InputStream openSitemap(String sitemapUrl) throws IOException {
+        InputStream in = new BufferedInputStream(jsoupService.getContentStream(sitemapUrl));
+        try {
+            in.mark(2);
+            int first = in.read();
+            int second = in.read();
+            in.reset();
+            if (first == 0x1f && second == 0x8b) {
+                in = new BufferedInputStream(new GZIPInputStream(in));
+            }
+            return in;
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads up to the first byte that isn't whitespace or a byte order mark, but no further than the limit, so the
+     * stream can still be reset to its mark. Content that is only padding up to the limit is taken for XML.
+     */
+    private static int firstSignificantByte(InputStream in, int limit) throws IOException {
+        for (int i = 0; i < limit; i++) {
+            int b = in.read();
+            if (b != ' ' && b != '\t' && b != '\r' && b != '\n' && b != 0xEF && b != 0xBB && b != 0xBF) {
+                return b;
+            }
+        }
+        return '<';
+    }
+
+    private static Instant parseLastModified(String lastmod) {
+        if (lastmod == null || lastmod.isEmpty()) {
+            return null;
+        }
+        try {
+            return OffsetDateTime.parse(lastmod).toInstant();
+        } catch (DateTimeParseException e) {
+            try {
+                return LocalDate.parse(lastmod).atStartOfDay(ZoneOffset.UTC).toInstant();
+            } catch (DateTimeParseException ignored) {
+                log.debug("Ignoring invalid lastmod: {}", lastmod);
+                return null;
+            }
+        }
+    }
+
+    private static double parsePriority(String priority) {
+        if (priority == null || priority.isEmpty()) {
+            return SitemapEntry.DEFAULT_PRIORITY;
+        }
+        try {
+            double value = Double.parseDouble(priority);
+            return Double.isNaN(value) ? SitemapEntry.DEFAULT_PRIORITY : Math.min(1.0, Math.max(0.0, value));
+        } catch (NumberFormatException e) {
+            return SitemapEntry.DEFAULT_PRIORITY;
+        }
+    }
+
+    private static XMLInputFactory createXmlInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        // Sitemaps have no business declaring DTDs or external entities
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+}
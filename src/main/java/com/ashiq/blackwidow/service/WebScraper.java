@@ -1,8 +1,28 @@
 package com.ashiq.blackwidow.service;
 
+import com.ashiq.blackwidow.config.ScraperConfig;
+import com.ashiq.blackwidow.crawl.CrawlCheckpoint;
+import com.ashiq.blackwidow.crawl.CrawlFrontier;
+import com.ashiq.blackwidow.crawl.CrawlPartition;
+import com.ashiq.blackwidow.crawl.CrawlTask;
+import com.ashiq.blackwidow.crawl.NearDuplicateIndex;
+import com.ashiq.blackwidow.crawl.PolitenessScheduler;
+import com.ashiq.blackwidow.crawl.SpillingTaskQueue;
+import com.ashiq.blackwidow.crawl.TaskScorer;
+import com.ashiq.blackwidow.crawl.VisitedUrlSet;
+import com.ashiq.blackwidow.crawl.WeightedTaskScorer;
+import com.ashiq.blackwidow.fetch.DnsCache;
+import com.ashiq.blackwidow.fetch.HostUnavailableException;
+import com.ashiq.blackwidow.metrics.CrawlMetrics;
+import com.ashiq.blackwidow.model.SitemapEntry;
+import com.ashiq.blackwidow.output.ResultSink;
+import com.ashiq.blackwidow.payload.PageResult;
 import com.ashiq.blackwidow.payload.ScrapedPage;
+import com.ashiq.blackwidow.util.DomainCache;
+import com.ashiq.blackwidow.util.DomainMatcher;
 import com.ashiq.blackwidow.util.DomainUtils;
 import com.ashiq.blackwidow.util.LinkUtils;
+import com.ashiq.blackwidow.util.SimHash;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -10,8 +30,16 @@ import org.springframework.stereotype.Service;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * Service for scraping web pages and extracting links.
@@ -23,56 +51,371 @@ public class WebScraper {
 
     private final LinkUtils linkUtils;
     private final RobotsTxtService robotsTxtService;
+    private final SitemapService sitemapService;
+    private final ScraperConfig config;
+    private final CrawlMetrics metrics;
+    private final DnsCache dnsCache;
+    private final DomainCache domainCache;
 
 
     /**
-     * Scrapes a web page and returns links from the same domain.
+     * Crawls a site starting from the given page and returns the tree of pages from the same domain.
+     * Pages are fetched concurrently on virtual threads, up to the configured depth and page budget.
+     * If a checkpoint directory is configured, progress is logged there so the crawl can be resumed.
      *
      * @param uri   The URI to scrape
      * @return A ScrapedPage representing the scraped page and its links
      * @throws IOException If there's an error connecting to or parsing the URL
      */
     public ScrapedPage scrape(URI uri) throws IOException, URISyntaxException {
+        String seedUrl = uri.toURL().toString();
+        try (CrawlCheckpoint checkpoint = createCheckpoint(seedUrl)) {
+            return crawl(uri, checkpoint, false, null, config.getMaxDepth(), config.getMaxPages(), null).toScrapedPage(seedUrl);
+        }
+    }
+
+    /**
+     * Crawls a site starting from the given page, handing each page to the sink as soon as it is processed.
+     * Unlike {@link #scrape(URI)}, no tree of pages is kept in memory.
+     *
+     * @param uri  The URI to scrape
+     * @param sink The sink to receive the results
+     * @return The number of pages scheduled for fetching
+     * @throws IOException If there's an error connecting to or parsing the URL
+     */
+    public int scrape(URI uri, ResultSink sink) throws IOException, URISyntaxException {
+        try (CrawlCheckpoint checkpoint = createCheckpoint(uri.toURL().toString())) {
+            return crawl(uri, checkpoint, false, sink, config.getMaxDepth(), config.getMaxPages(), null).getScheduledCount();
+        }
+    }
+
+    /**
+     * Crawls a site with its own depth and page budget, handing each page to the sink as soon as it is processed.
+     * The crawl is not checkpointed. Interrupting the calling thread cancels the crawl: no new pages are
+     * started, the pages in flight are finished, and the method returns with the interrupt flag set.
+     *
+     * @param uri      The URI to scrape
+     * @param maxDepth The maximum number of link hops from the seed page to follow
+     * @param maxPages The maximum number of pages to fetch
+     * @param sink     The sink to receive the results
+     * @return The number of pages scheduled for fetching
+     * @throws IOException If there's an error connecting to or parsing the URL
+     */
+    public int scrape(URI uri, int maxDepth, int maxPages, ResultSink sink) throws IOException, URISyntaxException {
+        return crawl(uri, null, false, sink, maxDepth, maxPages, null).getScheduledCount();
+    }
+
+    /**
+     * Crawls one process's share of a distributed crawl, handing each page to the sink as soon as it is processed.
+     * Only the process owning the seed URL fetches it and its sitemaps; the others start out idle and crawl the
+     * URLs forwarded to them. The crawl runs until its frontier, passed to
+     * {@link CrawlPartition#started(CrawlFrontier)}, is released or closed. Interrupting the calling thread cancels
+     * the crawl as in {@link #scrape(URI, int, int, ResultSink)}.
+     *
+     * @param uri       The URI the whole crawl starts from
+     * @param maxDepth  The maximum number of link hops from the seed page to follow
+     * @param maxPages  The maximum number of pages this process fetches
+     * @param partition The share of the crawl this process is responsible for
+     * @param sink      The sink to receive the results
+     * @return The number of pages this process scheduled for fetching
+     * @throws IOException If there's an error connecting to or parsing the URL
+     */
+    public int scrape(URI uri, int maxDepth, int maxPages, CrawlPartition partition, ResultSink sink)
+            throws IOException, URISyntaxException {
+        return crawl(uri, null, false, sink, maxDepth, maxPages, partition).getScheduledCount();
+    }
+
+    /**
+     * Resumes a checkpointed crawl where it stopped and returns the tree of pages from the same domain.
+     * Pages that were already fetched are not fetched again, and the depth and page budgets carry over.
+     *
+     * @param checkpointDir The directory holding the checkpoint of the crawl
+     * @return A ScrapedPage representing the seed page and its links
+     * @throws IOException If the checkpoint can't be read, or there's an error connecting to or parsing the URL
+     */
+    public ScrapedPage resume(Path checkpointDir) throws IOException, URISyntaxException {
+        try (CrawlCheckpoint checkpoint = CrawlCheckpoint.open(checkpointDir, config.getCheckpointCompactInterval())) {
+            return crawl(new URI(checkpoint.getSeedUrl()), checkpoint, true, null, config.getMaxDepth(), config.getMaxPages(), null).toScrapedPage(checkpoint.getSeedUrl());
+        }
+    }
+
+    /**
+     * Resumes a checkpointed crawl where it stopped, handing each page fetched from now on to the sink.
+     *
+     * @param checkpointDir The directory holding the checkpoint of the crawl
+     * @param sink          The sink to receive the results
+     * @return The number of pages scheduled for fetching, including those of the interrupted run
+     * @throws IOException If the checkpoint can't be read, or there's an error connecting to or parsing the URL
+     */
+    public int resume(Path checkpointDir, ResultSink sink) throws IOException, URISyntaxException {
+        try (CrawlCheckpoint checkpoint = CrawlCheckpoint.open(checkpointDir, config.getCheckpointCompactInterval())) {
+            return crawl(new URI(checkpoint.getSeedUrl()), checkpoint, true, sink, config.getMaxDepth(), config.getMaxPages(), null).getScheduledCount();
+        }
+    }
+
+    /**
+     * Starts a checkpoint for a new crawl if a checkpoint directory is configured.
+     *
+     * @return The checkpoint, or null if checkpointing is off
+     */
+    private CrawlCheckpoint createCheckpoint(String seedUrl) throws IOException {
+        String checkpointDir = config.getCheckpointDir();
+        if (checkpointDir == null || checkpointDir.isBlank()) {
+            return null;
+        }
+        return CrawlCheckpoint.create(Path.of(checkpointDir), seedUrl, config.getCheckpointCompactInterval());
+    }
+
+    /**
+     * Runs a crawl to the end, or until the calling thread is interrupted.
+     *
+     * @param uri        The URI the crawl starts from
+     * @param checkpoint The checkpoint to log to, or null
+     * @param resume     Whether to restore the frontier from the checkpoint instead of seeding it
+     * @param sink       The sink to stream results to, or null to keep the tree of pages in the frontier
+     * @param maxDepth   The maximum number of link hops from the seed page to follow
+     * @param maxPages   The maximum number of pages to fetch
+     * @param partition  The share of a distributed crawl to run, or null to run the whole crawl
+     * @return The frontier of the finished crawl
+     */
+    private CrawlFrontier crawl(URI uri, CrawlCheckpoint checkpoint, boolean resume, ResultSink sink,
+                                int maxDepth, int maxPages, CrawlPartition partition) throws IOException, URISyntaxException {
+
+        log.info("{} scrape of {}", resume ? "Resuming" : "Starting", uri.toURL());
+
+        TaskScorer scorer = new WeightedTaskScorer(config.getFrontierPriorityWeight(),
+                config.getFrontierFreshnessWeight(), config.getFrontierFreshnessHalfLife(),
+                config.getFrontierDepthWeight());
+        PolitenessScheduler scheduler = new PolitenessScheduler(
+                robotsTxtService::getCrawlDelay,
+                config.getCrawlDelay(),
+                config.getMinCrawlDelay(),
+                scorer
+        );
+        String spillDir = config.getFrontierSpillDir();
+        SpillingTaskQueue backlog = config.getFrontierMemorySize() <= 0 ? null : new SpillingTaskQueue(scorer,
+                config.getFrontierMemorySize(), spillDir == null || spillDir.isBlank() ? null : Path.of(spillDir));
+        VisitedUrlSet seen = new VisitedUrlSet(config.getVisitedExpectedUrls(), config.isVisitedBloomFilter());
+        CrawlFrontier frontier = new CrawlFrontier(maxDepth, maxPages, scheduler, backlog, seen,
+                checkpoint, sink == null, partition);
+        // Not checkpointed: a resumed crawl only recognizes duplicates of the pages it fetches itself
+        NearDuplicateIndex duplicates = config.isNearDuplicateDetection()
+                ? new NearDuplicateIndex(config.getNearDuplicateDistance())
+                : null;
+        metrics.addFrontier(frontier);
+        try {
+            runCrawl(uri, checkpoint, resume, sink, frontier, partition, duplicates);
+        } finally {
+            // Deletes what was spilled of pages left over by the page budget
+            frontier.close();
+            metrics.removeFrontier(frontier);
+        }
+        return frontier;
+    }
+
+    /**
+     * Seeds or restores the frontier and runs the workers until the crawl is finished or cancelled.
+     */
+    private void runCrawl(URI uri, CrawlCheckpoint checkpoint, boolean resume, ResultSink sink, CrawlFrontier frontier,
+                          CrawlPartition partition, NearDuplicateIndex duplicates) throws IOException, URISyntaxException {
+        DomainMatcher domainMatcher = DomainMatcher.forRoot(uri, domainCache);
+        String domain = domainMatcher.getDomain();
+        String seedUrl = uri.toURL().toString();
 
-        String domain = DomainUtils.extractDomain(uri);
+        // In a distributed crawl, the seed host's robots.txt is only fetched by the process owning it
+        boolean ownsSeed = frontier.owns(seedUrl);
+        if (ownsSeed) {
+            // Initialize robots.txt service for this host
+            boolean robotsTxtInitialized = robotsTxtService.initialize(uri);
+            if (!robotsTxtInitialized) {
+                log.warn("Robots.txt could not be properly initialized for {}. Will proceed with scraping but some URLs might be disallowed by the site owner.", domain);
+            }
 
-        log.info("Starting scrape of {}", uri.toURL());
+            // Check if the URL is allowed by robots.txt
+            if (!robotsTxtService.isAllowed(seedUrl)) {
+                log.warn("URL {} is disallowed by robots.txt. Skipping.", seedUrl);
+                return;
+            }
 
-        // Initialize robots.txt service for this domain
-        boolean robotsTxtInitialized = robotsTxtService.initialize(uri,domain);
-        if (!robotsTxtInitialized) {
-            log.warn("Robots.txt could not be properly initialized for {}. Will proceed with scraping but some URLs might be disallowed by the site owner.", domain);
+            if (resume) {
+                frontier.restore(checkpoint);
+                log.info("Restored checkpoint with {} pages scheduled so far", frontier.getScheduledCount());
+            } else {
+                frontier.seed(seedUrl);
+            }
         }
+        // Only now, or the process owning the seed would look idle while it fetches robots.txt
+        if (partition != null) {
+            partition.started(frontier);
+        }
+
+        // Sitemap URLs are only attached to the seed page, they would be duplicates everywhere else
+        List<String> sitemapUrls = ownsSeed ? robotsTxtService.getSitemaps(uri) : List.of();
+
+        int workers = Math.max(1, config.getMaxConcurrency());
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        for (int i = 0; i < workers; i++) {
+            executor.submit(() -> runWorker(frontier, seedUrl, domainMatcher, sitemapUrls, sink, duplicates));
+        }
+        executor.shutdown();
 
-        // Check if the URL is allowed by robots.txt
-        if (!robotsTxtService.isAllowed(uri.toURL().toString())) {
-            log.warn("URL {} is disallowed by robots.txt. Skipping.", uri.toURL());
-            return new ScrapedPage(uri.toURL().toString(), List.of());
+        boolean cancelled = false;
+        while (!executor.isTerminated()) {
+            try {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                // Stop handing out pages, and let the workers finish the pages they are on
+                cancelled = true;
+                frontier.close();
+            }
         }
 
-        // Respect crawl delay
-        robotsTxtService.respectCrawlDelay();
+        if (cancelled) {
+            Thread.currentThread().interrupt();
+            log.info("Cancelled scrape of {} after {} pages", seedUrl, frontier.getScheduledCount());
+        } else {
+            log.info("Finished scrape of {}: fetched {} pages", seedUrl, frontier.getScheduledCount());
+        }
+    }
 
+    /**
+     * Takes pages from the frontier and fetches them until the crawl runs out of work.
+     *
+     * @param frontier The frontier shared by all workers
+     * @param seedUrl  The URL the crawl started from
+     * @param domainMatcher The matcher for the domain to filter links by
+     * @param sitemapUrls The URLs of the sitemaps of the seed host
+     * @param sink The sink to stream results to, or null
+     * @param duplicates The fingerprints of the pages crawled so far, or null if near-duplicates aren't detected
+     */
+    private void runWorker(CrawlFrontier frontier, String seedUrl, DomainMatcher domainMatcher, List<String> sitemapUrls,
+                           ResultSink sink, NearDuplicateIndex duplicates) {
+        try {
+            CrawlTask task;
+            while ((task = frontier.take()) != null) {
+                boolean postponed = false;
+                try {
+                    postponed = crawlPage(frontier, task, task.url().equals(seedUrl) ? sitemapUrls : List.of(),
+                            domainMatcher, sink, duplicates);
+                } finally {
+                    if (!postponed) {
+                        frontier.complete(task);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            frontier.close();
+        }
+    }
+
+    /**
+     * Fetches a single page and adds the links found on it, and then the URLs of the given sitemaps, to the frontier.
+     * The page is handed to the sink, if there is one, once its links are known. If the page's host is unavailable,
+     * the page is put back in the frontier for when the host may be tried again, unless the host has stayed
+     * unavailable through too many probes, in which case the page fails right away. The links of a page whose text
+     * is a near-duplicate of a page crawled before are reported, but not added to the frontier.
+     *
+     * @return True if the page was put back in the frontier, false if it is done
+     */
+    private boolean crawlPage(CrawlFrontier frontier, CrawlTask task, List<String> sitemapUrls,
+                              DomainMatcher domainMatcher, ResultSink sink, NearDuplicateIndex duplicates) {
         // Get all links from the page that match the domain
         List<String> links;
+        SimHash text = duplicates == null ? null : new SimHash();
         try {
-            links = linkUtils.getLinksFromSameDomain(
-                uri.toURL().toString(),
-                domain,
-                robotsTxtService.getSitemap(),
-                    robotsTxtService::isAllowed
-            );
-        } catch (URISyntaxException e) {
-            log.error("Failed to extract links: {}", e.getMessage());
-            return new ScrapedPage(uri.toURL().toString(), List.of());
+            links = linkUtils.getLinksFromSameDomain(task.url(), domainMatcher,
+                    found -> filterAllowed(frontier, found), text);
+        } catch (HostUnavailableException e) {
+            if (e.getOpens() < config.getMaxCircuitOpens() && frontier.postpone(task, e.getRetryAt())) {
+                log.debug("Postponing {}: {}", task.url(), e.getMessage());
+                return true;
+            }
+            log.error("Failed to extract links from {}: {}", task.url(), e.getMessage());
+            metrics.recordPage(false);
+            emit(sink, task, List.of(), e.getMessage());
+            return false;
+        } catch (IOException | URISyntaxException e) {
+            log.error("Failed to extract links from {}: {}", task.url(), e.getMessage());
+            metrics.recordPage(false);
+            emit(sink, task, List.of(), e.getMessage());
+            return false;
+        } catch (RuntimeException e) {
+            log.error("Unexpected error while scraping {}", task.url(), e);
+            metrics.recordPage(false);
+            emit(sink, task, List.of(), e.toString());
+            return false;
         }
 
-        // Create a list of ScrapedPage objects for the links
-        List<ScrapedPage> scrapedLinks = new ArrayList<>();
-        for (String link : links) {
-            scrapedLinks.add(new ScrapedPage(link, List.of()));
+        // Pages with little text, like error pages, look alike without being the same content
+        if (text != null && text.getShingleCount() >= SimHash.MIN_SHINGLES && !duplicates.add(text.fingerprint())) {
+            log.debug("{} is a near-duplicate of a page crawled before, not following its links", task.url());
+            metrics.recordDuplicatePage();
+        } else {
+            for (String link : links) {
+                offer(frontier, task, link, SitemapEntry.DEFAULT_PRIORITY, null);
+            }
         }
+        log.debug("Scraped {} (depth {}): {} links", task.url(), task.depth(), links.size());
+        metrics.recordPage(true);
+        emit(sink, task, links, null);
 
-        return ScrapedPage.builder().url(uri.toURL().toString()).links(scrapedLinks).build();
+        // Stream sitemap URLs into the frontier as they are parsed. The task stays in progress
+        // meanwhile, so idle workers don't mistake the frontier running dry for the end of the crawl.
+        if (!sitemapUrls.isEmpty()) {
+            sitemapService.streamSitemaps(sitemapUrls, entry -> offerSitemapEntry(frontier, task, entry, domainMatcher));
+        }
+        return false;
+    }
+
+    /**
+     * Adds a URL to the frontier, and starts resolving its host if the URL is new and fetched by this process, so
+     * the lookup is done by the time the URL is fetched. Hosts already resolved are found in the cache right away.
+     */
+    private void offer(CrawlFrontier frontier, CrawlTask task, String url, double priority, Instant lastModified) {
+        if (frontier.offer(task, url, priority, lastModified) && frontier.owns(url)) {
+            dnsCache.prefetch(DomainUtils.extractHost(url));
+        }
+    }
+
+    /**
+     * Keeps the links that are allowed by robots.txt. In a distributed crawl, only the links fetched by this process
+     * are checked here; the others are checked by the process they are forwarded to, which owns their host's
+     * robots.txt.
+     */
+    private List<String> filterAllowed(CrawlFrontier frontier, List<String> links) {
+        List<String> owned = links.stream().filter(frontier::owns).toList();
+        if (owned.size() == links.size()) {
+            return robotsTxtService.filterAllowed(links);
+        }
+        Set<String> disallowed = new HashSet<>(owned);
+        robotsTxtService.filterAllowed(owned).forEach(disallowed::remove);
+        return links.stream().filter(link -> !disallowed.contains(link)).collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    private static void emit(ResultSink sink, CrawlTask task, List<String> links, String error) {
+        if (sink != null) {
+            sink.accept(new PageResult(task.url(), task.depth(), task.parent(), links, error));
+        }
+    }
+
+    private void offerSitemapEntry(CrawlFrontier frontier, CrawlTask task, SitemapEntry entry, DomainMatcher domainMatcher) {
+        if (!domainMatcher.matchesUrl(entry.url())) {
+            return;
+        }
+        try {
+            // Make sure the URL is valid before handing it on
+            new URI(entry.url());
+        } catch (URISyntaxException e) {
+            log.warn("Skipping Invalid URL in sitemap: {}", entry.url());
+            return;
+        }
+
+        // Check if the sitemap URL is allowed by robots.txt, unless it is for another process of a distributed crawl
+        if (!frontier.owns(entry.url()) || robotsTxtService.isAllowed(entry.url())) {
+            offer(frontier, task, entry.url(), entry.priority(), entry.lastModified());
+        } else {
+            log.debug("Sitemap URL {} is disallowed by robots.txt. Skipping.", entry.url());
+        }
     }
 }
@@ -0,0 +1,56 @@
+package com.ashiq.blackwidow.util;
+
+import com.ashiq.blackwidow.config.ScraperConfig;
+import com.ashiq.blackwidow.metrics.CrawlMetrics;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+
+/**
+ * Cache of the registrable domains of hosts, shared by all crawls.
+ * Pages link to the same handful of hosts over and over, and the crawls of a batch or of the job API often link to
+ * the same ones again, so this saves walking the public suffix list for every link. Up to
+ * {@code domain-cache-size} hosts are kept, the least recently used evicted first. Cache hits and misses are
+ * recorded in {@link CrawlMetrics}.
+ */
+@Component
+public class DomainCache {
+
+    /**
+     * Registrable domains by lower-cased host, or null if the cache is disabled.
+     */
+    private final Cache<String, String> domains;
+
+    public DomainCache(ScraperConfig config, CrawlMetrics metrics) {
+        if (config.getDomainCacheSize() <= 0) {
+            this.domains = null;
+            return;
+        }
+        this.domains = CacheBuilder.newBuilder()
+                .maximumSize(config.getDomainCacheSize())
+                .recordStats()
+                .build();
+        metrics.monitorCache(domains, "domains");
+    }
+
+    /**
+     * Gets the registrable domain of a host, as {@link DomainUtils#extractDomain(String)} does.
+     *
+     * @param host The host name
+     * @return The domain of the host
+     */
+    public String getDomain(String host) {
+        String key = host.toLowerCase(Locale.ROOT);
+        if (domains == null) {
+            return DomainUtils.extractDomain(key);
+        }
+        String domain = domains.getIfPresent(key);
+        if (domain == null) {
+            domain = DomainUtils.extractDomain(key);
+            domains.put(key, domain);
+        }
+        return domain;
+    }
+}
@@ -0,0 +1,68 @@
+package com.ashiq.blackwidow.util;
+
+import java.net.URI;
+
+/**
+ * Matcher for links from the same domain as a crawl root, built once per crawl.
+ * Same-domain checks work from the URL string, so no URI is constructed, and look the domain of the host up in
+ * the shared {@link DomainCache}, so the public suffix list is only walked once per distinct host.
+ */
+public class DomainMatcher {
+
+    private final String domain;
+    private final DomainCache domains;
+
+    /**
+     * Creates a matcher for a registrable domain.
+     *
+     * @param domain  The domain to match, as returned by {@link DomainUtils#extractDomain(URI)}
+     * @param domains The cache to look up the domains of hosts in
+     */
+    public DomainMatcher(String domain, DomainCache domains) {
+        this.domain = domain;
+        this.domains = domains;
+    }
+
+    /**
+     * Creates a matcher for the domain of a crawl root.
+     *
+     * @param root    The URI the crawl starts from
+     * @param domains The cache to look up the domains of hosts in
+     * @return The matcher
+     */
+    public static DomainMatcher forRoot(URI root, DomainCache domains) {
+        return new DomainMatcher(DomainUtils.extractDomain(root), domains);
+    }
+
+    /**
+     * Gets the domain this matcher accepts.
+     *
+     * @return The registrable domain
+     */
+    public String getDomain() {
+        return domain;
+    }
+
+    /**
+     * Checks if a host belongs to the domain.
+     *
+     * @param host The host name
+     * @return True if the host is the domain or one of its subdomains, false otherwise
+     */
+    public boolean matchesHost(String host) {
+        if (host == null || host.isEmpty()) {
+            return false;
+        }
+        return host.equalsIgnoreCase(domain) || domain.equalsIgnoreCase(domains.getDomain(host));
+    }
+
+    /**
+     * Checks if an absolute URL is from the domain.
+     *
+     * @param url The URL to check
+     * @return True if the URL's host belongs to the domain, false otherwise
+     */
+    public boolean matchesUrl(String url) {
+        return matchesHost(DomainUtils.extractHost(url));
+    }
+}
@@ -25,13 +25,29 @@ public class DomainUtils {
             log.debug("No host found in URI: {}", uri);
             return "";
         }
+        // URI keeps the brackets of IPv6 literals, which extractHost strips
+        if (host.startsWith("[") && host.endsWith("]")) {
+            host = host.substring(1, host.length() - 1);
+        }
+
+        return extractDomain(host);
+    }
 
+    /**
+     * Extracts the registrable domain from a host name. This walks the public suffix list, so callers checking
+     * many links should look it up in the {@link DomainCache} instead.
+     *
+     * @param host The host name
+     * @return The domain of the host
+     */
+    public static String extractDomain(String host) {
+        host = host.toLowerCase();
         try {
             // Use Guava's InternetDomainName to extract the top private domain
             InternetDomainName internetDomainName = InternetDomainName.from(host);
 
-            // Check if the domain has a public suffix
-            if (internetDomainName.hasPublicSuffix()) {
+            // Check if the domain has a public suffix, and isn't one itself
+            if (internetDomainName.hasPublicSuffix() && !internetDomainName.isPublicSuffix()) {
                 // Get the top private domain (e.g., example.com from www.example.com or subdomain.example.com)
                 // This also handles special cases like co.uk, com.au, etc.
                 return internetDomainName.topPrivateDomain().toString();
@@ -52,6 +68,67 @@ public class DomainUtils {
         }
     }
 
+    /**
+     * Extracts the host from an absolute URL without parsing the whole URL.
+     * User info, port and IPv6 brackets are stripped; the host is not lower-cased.
+     *
+     * @param url The URL to extract the host from
+     * @return The host, or null if the URL has no authority
+     */
+    public static String extractHost(String url) {
+        int schemeEnd = url.indexOf("://");
+        if (schemeEnd <= 0 || !isScheme(url, schemeEnd)) {
+            return null;
+        }
+
+        int start = schemeEnd + 3;
+        int end = start;
+        while (end < url.length()) {
+            char c = url.charAt(end);
+            if (c == '/' || c == '?' || c == '#' || c == '\\') {
+                break;
+            }
+            end++;
+        }
+
+        int at = url.lastIndexOf('@', end - 1);
+        if (at >= start) {
+            start = at + 1;
+        }
+
+        if (start < end && url.charAt(start) == '[') {
+            int close = url.indexOf(']', start);
+            return close > start && close < end ? url.substring(start + 1, close) : null;
+        }
+
+        int colon = url.indexOf(':', start);
+        if (colon >= 0 && colon < end) {
+            end = colon;
+        }
+        return start < end ? url.substring(start, end) : null;
+    }
+
+    /**
+     * Checks that a URL starts with a scheme, as URI parses it, ending at the given index. Otherwise the "://"
+     * belongs to something else, like a URL inside a javascript: link.
+     */
+    private static boolean isScheme(String url, int end) {
+        if (!isAsciiLetter(url.charAt(0))) {
+            return false;
+        }
+        for (int i = 1; i < end; i++) {
+            char c = url.charAt(i);
+            if (!isAsciiLetter(c) && !(c >= '0' && c <= '9') && c != '+' && c != '-' && c != '.') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
     /**
      * Checks if a URL is from the same domain as the specified domain.
      * Uses the improved domain extraction with Guava's InternetDomainName.
@@ -65,4 +142,22 @@ public class DomainUtils {
         String urlDomain = extractDomain(uri);
         return domain.equalsIgnoreCase(urlDomain);
     }
+
+    /**
+     * Gets the key identifying the host a URL is served from, made of the scheme, host and port.
+     * Default ports are left out so that equivalent URLs share the same key, which makes the key
+     * usable as the base URL of the host.
+     *
+     * @param uri The URI to get the host key for
+     * @return The host key, e.g. https://www.example.com or http://localhost:8080
+     */
+    public static String getHostKey(URI uri) {
+        String scheme = uri.getScheme() == null ? "http" : uri.getScheme().toLowerCase();
+        String host = uri.getHost() == null ? "" : uri.getHost().toLowerCase();
+        int port = uri.getPort();
+        if (port == -1 || ("http".equals(scheme) && port == 80) || ("https".equals(scheme) && port == 443)) {
+            return scheme + "://" + host;
+        }
+        return scheme + "://" + host + ":" + port;
+    }
 }
\ No newline at end of file
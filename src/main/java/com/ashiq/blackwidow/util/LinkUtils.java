@@ -1,5 +1,7 @@
 package com.ashiq.blackwidow.util;
 
+import com.ashiq.blackwidow.config.ScraperConfig;
+import com.ashiq.blackwidow.metrics.CrawlMetrics;
 import com.ashiq.blackwidow.service.JsoupService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -9,12 +11,16 @@ import org.jsoup.select.Elements;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
+import java.io.Reader;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 /**
  * Component for link-related operations.
@@ -25,75 +31,102 @@ import java.util.function.Predicate;
 public class LinkUtils {
 
     private final JsoupService jsoupService;
+    private final ScraperConfig config;
+    private final CrawlMetrics metrics;
 
     /**
      * Gets all links from a web page that are from the same domain.
      *
      * @param url    The URL to scrape
-     * @param domain The domain to filter links by
-     * @param sitemapUrls The URLs from the sitemap
+     * @param domainMatcher The matcher for the domain to filter links by, built once per crawl
      * @param isAllowedByRobotsTxt Predicate to check if a URL is allowed by robots.txt
      * @return A list of links from the same domain
      * @throws IOException        If there's an error connecting to or parsing the URL
      * @throws URISyntaxException If the URL is malformed
      */
-    public List<String> getLinksFromSameDomain(String url, String domain, Set<String> sitemapUrls, Predicate<String> isAllowedByRobotsTxt) throws IOException, URISyntaxException {
-        List<String> result = new ArrayList<>();
+    public List<String> getLinksFromSameDomain(String url, DomainMatcher domainMatcher, Predicate<String> isAllowedByRobotsTxt) throws IOException, URISyntaxException {
+        return collectLinks(url, domainMatcher,
+                links -> links.stream().filter(isAllowedByRobotsTxt).collect(Collectors.toCollection(ArrayList::new)), null);
+    }
 
-        // Connect to the URL and get the HTML document
-        Document doc = jsoupService.getDocument(url);
+    /**
+     * Gets all links from a web page that are from the same domain, checking them against robots.txt in one batch
+     * with the given filter, and appends the text of the page to a SimHash.
+     *
+     * @param url    The URL to scrape
+     * @param domainMatcher The matcher for the domain to filter links by
+     * @param robotsTxtFilter Function keeping the URLs of a list that are allowed by robots.txt, in order
+     * @param text   The SimHash to append the text of the page to, or null
+     * @return A list of links from the same domain
+     * @throws IOException        If there's an error connecting to or parsing the URL
+     * @throws URISyntaxException If the URL is malformed
+     */
+    public List<String> getLinksFromSameDomain(String url, DomainMatcher domainMatcher,
+                                               Function<List<String>, List<String>> robotsTxtFilter,
+                                               SimHash text) throws IOException, URISyntaxException {
+        return collectLinks(url, domainMatcher, robotsTxtFilter, text);
+    }
 
-        // Extract all links
-        Elements links = doc.select("a[href]");
+    /**
+     * Gets all links from a web page that are from the same domain.
+     * Links are collected and deduplicated first, so each distinct link is only checked against robots.txt once.
+     *
+     * @param robotsTxtFilter Function keeping the URLs of a list that are allowed by robots.txt, in order
+     * @param text The SimHash to append the text of the page to, or null
+     */
+    private List<String> collectLinks(String url, DomainMatcher domainMatcher,
+                                      Function<List<String>, List<String>> robotsTxtFilter, SimHash text) throws IOException {
+        // Keeps the order links were found in, while making duplicate checks O(1)
+        Set<String> found = new LinkedHashSet<>();
 
         // Filter links to only include those from the same domain
-        for (Element link : links) {
-            String href = link.attr("abs:href").trim();
-
-            // Skip empty links
-            if (href.isEmpty()) {
-                continue;
+        if (config.getLinkExtraction() == ScraperConfig.LinkExtraction.STREAMING) {
+            try (Reader reader = jsoupService.getPageReader(url)) {
+                long start = System.nanoTime();
+                new StreamingLinkExtractor().extractLinks(reader, url,
+                        href -> addIfSameDomain(href, domainMatcher, found), text);
+                metrics.recordParse("streaming", System.nanoTime() - start);
             }
+        } else {
+            // Connect to the URL and get the HTML document
+            Document doc = jsoupService.getDocument(url);
 
-            try{
-
-                URI hrefUri = new URI(href);
-                // Check if the link is from the same domain
-                if (DomainUtils.isSameDomain(hrefUri, domain)) {
-                    // Check if the link is allowed by robots.txt
-                    if (isAllowedByRobotsTxt.test(href)) {
-                        result.add(href);
-                    } else {
-                        log.debug("Link {} is disallowed by robots.txt. Skipping.", href);
-                    }
-                }
+            // Extract all links
+            Elements links = doc.select("a[href]");
 
-            } catch (URISyntaxException e) {
-                log.warn("Skipping Invalid URL in link: {}", href);
+            for (Element link : links) {
+                addIfSameDomain(link.attr("abs:href"), domainMatcher, found);
             }
+            if (text != null) {
+                text.append(doc.text());
+            }
+        }
+
+        List<String> result = robotsTxtFilter.apply(new ArrayList<>(found));
+        metrics.recordLinks(result.size());
+        return result;
+    }
 
+    /**
+     * Adds a link to the found links if it is from the same domain and a valid URL.
+     */
+    private void addIfSameDomain(String href, DomainMatcher domainMatcher, Set<String> found) {
+        href = href.trim();
 
+        // Skip empty links
+        if (href.isEmpty()) {
+            return;
         }
 
-        // Add sitemap URLs if available
-        if (sitemapUrls != null && !sitemapUrls.isEmpty()) {
-            for (String sitemapUrl : sitemapUrls) {
-                try {
-                    URI sitemapUri = new URI(sitemapUrl);
-                    if (DomainUtils.isSameDomain(sitemapUri, domain) && !result.contains(sitemapUrl)) {
-                        // Check if the sitemap URL is allowed by robots.txt
-                        if (isAllowedByRobotsTxt.test(sitemapUrl)) {
-                            result.add(sitemapUrl);
-                        } else {
-                            log.debug("Sitemap URL {} is disallowed by robots.txt. Skipping.", sitemapUrl);
-                        }
-                    }
-                } catch (URISyntaxException e) {
-                    log.warn("Skipping Invalid URL in sitemap: {}", sitemapUrl);
-                }
+        try {
+            // Check if the link is from the same domain, before paying for a full parse
+            if (domainMatcher.matchesUrl(href) && !found.contains(href)) {
+                // Make sure the URL is valid before handing it on
+                new URI(href);
+                found.add(href);
             }
+        } catch (URISyntaxException e) {
+            log.warn("Skipping Invalid URL in link: {}", href);
         }
-
-        return result;
     }
 }
@@ -0,0 +1,142 @@
+package com.ashiq.blackwidow.util;
+
+/**
+ * Incremental 64-bit SimHash of the text of a page, for finding pages with nearly the same content.
+ * Text is split into lower-cased words of letters and digits, and every run of {@link #SHINGLE_SIZE} words is
+ * hashed to 64 bits. Each bit of the fingerprint is set if more shingles had it set than not, so pages that share
+ * most of their shingles get fingerprints that differ in only a few bits, unlike with an ordinary hash.
+ * <p>
+ * Text can be appended in pieces, a character at a time if need be, so it can be fed from a stream without
+ * holding the page in memory. An instance is not thread-safe.
+ */
+public class SimHash {
+
+    /**
+     * Number of consecutive words in a shingle.
+     */
+    public static final int SHINGLE_SIZE = 3;
+
+    /**
+     * Number of shingles below which a page has too little text for its fingerprint to tell it apart from
+     * other pages reliably.
+     */
+    public static final int MIN_SHINGLES = 16;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final int[] votes = new int[64];
+    private final long[] window = new long[SHINGLE_SIZE];
+    private int words;
+    private int shingles;
+    private long wordHash = FNV_OFFSET;
+    private boolean inWord;
+
+    /**
+     * Appends a character of text.
+     *
+     * @param c The character
+     */
+    public void append(char c) {
+        if (Character.isLetterOrDigit(c)) {
+            wordHash ^= Character.toLowerCase(c);
+            wordHash *= FNV_PRIME;
+            inWord = true;
+        } else if (inWord) {
+            endWord();
+        }
+    }
+
+    /**
+     * Appends text. Separate pieces of text are not joined into one word, as if they were separated by a space.
+     *
+     * @param text The text
+     */
+    public void append(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            append(text.charAt(i));
+        }
+        if (inWord) {
+            endWord();
+        }
+    }
+
+    /**
+     * Gets the number of shingles hashed so far.
+     *
+     * @return The number of shingles
+     */
+    public int getShingleCount() {
+        return shingles;
+    }
+
+    /**
+     * Computes the fingerprint of the text appended so far. A text shorter than a shingle counts as a single
+     * shingle.
+     *
+     * @return The fingerprint, never 0, like the URL fingerprints of the visited set
+     */
+    public long fingerprint() {
+        if (inWord) {
+            endWord();
+        }
+        int[] counts = votes;
+        if (shingles == 0 && words > 0) {
+            counts = votes.clone();
+            vote(counts, shingleHash());
+        }
+        long fingerprint = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (counts[bit] > 0) {
+                fingerprint |= 1L << bit;
+            }
+        }
+        return fingerprint == 0 ? 1 : fingerprint;
+    }
+
+    /**
+     * Counts the bits two fingerprints differ in.
+     *
+     * @param a The first fingerprint
+     * @param b The second fingerprint
+     * @return The Hamming distance, from 0 to 64
+     */
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    private void endWord() {
+        window[words % SHINGLE_SIZE] = wordHash;
+        words++;
+        wordHash = FNV_OFFSET;
+        inWord = false;
+        if (words >= SHINGLE_SIZE) {
+            vote(votes, shingleHash());
+            shingles++;
+        }
+    }
+
+    /**
+     * Hashes the words in the window, in order, finishing with the MurmurHash3 finalizer so that all bits are
+     * well mixed.
+     */
+    private long shingleHash() {
+        long h = 0;
+        int count = Math.min(words, SHINGLE_SIZE);
+        for (int i = words - count; i < words; i++) {
+            h = Long.rotateLeft(h, 21) ^ window[i % SHINGLE_SIZE];
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static void vote(int[] counts, long hash) {
+        for (int bit = 0; bit < 64; bit++) {
+            counts[bit] += (hash >>> bit & 1) == 1 ? 1 : -1;
+        }
+    }
+}
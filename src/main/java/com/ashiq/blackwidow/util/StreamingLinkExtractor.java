@@ -0,0 +1,403 @@
+package com.ashiq.blackwidow.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.function.Consumer;
+
+/**
+ * DOM-free link extractor that tokenizes HTML as a stream.
+ * It only looks at tags: {@code href} values of {@code <a>} tags are resolved against the page URL, or against
+ * the first {@code <base href>}, and passed to a consumer. Comments, doctypes and the contents of raw text
+ * elements like {@code <script>} and {@code <style>} are skipped. Names and values are read into reused
+ * buffers, so the only allocations per link are the resolved URL itself. The text between the tags can be
+ * passed to a {@link SimHash} on the way.
+ * <p>
+ * An instance is not thread-safe, but can be reused for any number of pages.
+ */
+@Slf4j
+public class StreamingLinkExtractor {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final String[] RAW_TEXT_ELEMENTS = {
+            "script", "style", "textarea", "title", "xmp", "iframe", "noembed", "noframes"
+    };
+
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private final StringBuilder name = new StringBuilder(16);
+    private final StringBuilder value = new StringBuilder(256);
+    private final StringBuilder rawTextEnd = new StringBuilder(16);
+
+    private Reader reader;
+    private int position;
+    private int limit;
+
+    private URI base;
+    private boolean baseSeen;
+    private Consumer<String> consumer;
+    private SimHash text;
+
+    /**
+     * Extracts the absolute URLs of all links in an HTML document.
+     *
+     * @param reader   The HTML content
+     * @param pageUrl  The URL of the page, used to resolve relative links
+     * @param consumer The consumer to pass the resolved links to, in document order
+     * @throws IOException If there's an error reading the content
+     */
+    public void extractLinks(Reader reader, String pageUrl, Consumer<String> consumer) throws IOException {
+        extractLinks(reader, pageUrl, consumer, null);
+    }
+
+    /**
+     * Extracts the absolute URLs of all links in an HTML document, and appends its text to a SimHash.
+     * The text is everything outside of tags, comments and raw text elements, with character references left
+     * as they are.
+     *
+     * @param reader   The HTML content
+     * @param pageUrl  The URL of the page, used to resolve relative links
+     * @param consumer The consumer to pass the resolved links to, in document order
+     * @param text     The SimHash to append the text to, or null
+     * @throws IOException If there's an error reading the content
+     */
+    public void extractLinks(Reader reader, String pageUrl, Consumer<String> consumer, SimHash text)
+            throws IOException {
+        this.reader = reader;
+        this.position = 0;
+        this.limit = 0;
+        this.base = toBaseUri(pageUrl);
+        this.baseSeen = false;
+        this.consumer = consumer;
+        this.text = text;
+        try {
+            if (base != null) {
+                tokenize();
+            }
+        } finally {
+            this.reader = null;
+            this.consumer = null;
+            this.text = null;
+        }
+    }
+
+    private void tokenize() throws IOException {
+        int c;
+        while ((c = read()) != -1) {
+            if (c != '<') {
+                if (text != null) {
+                    text.append((char) c);
+                }
+                continue;
+            }
+            if (text != null) {
+                // Tags separate words, at least the block-level ones
+                text.append(' ');
+            }
+
+            c = read();
+            if (c == '!') {
+                skipMarkup();
+            } else if (c == '?') {
+                skipPast('>');
+            } else if (c == '/') {
+                skipPast('>');
+            } else if (isLetter(c)) {
+                readTag(c);
+            }
+        }
+    }
+
+    /**
+     * Reads a start tag whose first name character has already been consumed.
+     */
+    private void readTag(int first) throws IOException {
+        name.setLength(0);
+        name.append(Character.toLowerCase((char) first));
+        int c;
+        while ((c = read()) != -1 && !isWhitespace(c) && c != '>' && c != '/') {
+            name.append(Character.toLowerCase((char) c));
+        }
+
+        boolean anchor = contentEquals(name, "a");
+        boolean baseTag = !anchor && contentEquals(name, "base");
+        String rawText = anchor || baseTag ? null : rawTextElement(name);
+
+        // Walk the attributes, only keeping href on the tags we care about
+        while (c != -1 && c != '>') {
+            if (isWhitespace(c) || c == '/') {
+                c = read();
+                continue;
+            }
+
+            name.setLength(0);
+            while (c != -1 && !isWhitespace(c) && c != '=' && c != '>' && c != '/') {
+                name.append(Character.toLowerCase((char) c));
+                c = read();
+            }
+            while (isWhitespace(c)) {
+                c = read();
+            }
+            if (c != '=') {
+                continue;
+            }
+
+            c = read();
+            while (isWhitespace(c)) {
+                c = read();
+            }
+            boolean href = (anchor || baseTag) && contentEquals(name, "href");
+            value.setLength(0);
+            if (c == '"' || c == '\'') {
+                int quote = c;
+                while ((c = read()) != -1 && c != quote) {
+                    if (href) {
+                        value.append((char) c);
+                    }
+                }
+                c = read();
+            } else {
+                while (c != -1 && !isWhitespace(c) && c != '>') {
+                    if (href) {
+                        value.append((char) c);
+                    }
+                    c = read();
+                }
+            }
+
+            if (href) {
+                if (anchor) {
+                    emit();
+                } else if (!baseSeen) {
+                    // Only the first base element with an href counts
+                    baseSeen = true;
+                    String resolved = resolve();
+                    URI resolvedBase = resolved == null ? null : toBaseUri(resolved);
+                    if (resolvedBase != null) {
+                        base = resolvedBase;
+                    }
+                }
+            }
+        }
+
+        if (rawText != null) {
+            skipRawText(rawText);
+        }
+    }
+
+    private void emit() {
+        String link = resolve();
+        if (link != null) {
+            consumer.accept(link);
+        }
+    }
+
+    /**
+     * Resolves the href held in the value buffer against the current base.
+     *
+     * @return The absolute URL, or null if the href is empty or can't be resolved
+     */
+    private String resolve() {
+        int start = 0;
+        int end = value.length();
+        while (start < end && isWhitespace(value.charAt(start))) {
+            start++;
+        }
+        while (end > start && isWhitespace(value.charAt(end - 1))) {
+            end--;
+        }
+        if (start == end) {
+            return null;
+        }
+
+        String href = value.indexOf("&", start) >= 0
+                ? decodeEntities(value.substring(start, end))
+                : value.substring(start, end);
+
+        // Absolute links are by far the most common and need no parsing at all
+        if (href.regionMatches(true, 0, "http://", 0, 7) || href.regionMatches(true, 0, "https://", 0, 8)) {
+            return href;
+        }
+
+        try {
+            if (href.charAt(0) == '?') {
+                // java.net.URI follows RFC 2396 here, which drops the last path segment. The raw
+                // components are concatenated because the multi-argument constructor re-quotes '%'
+                return origin(base) + base.getRawPath() + href;
+            }
+            return base.resolve(href).toString();
+        } catch (IllegalArgumentException e) {
+            log.debug("Skipping link that can't be resolved: {}", href);
+            return null;
+        }
+    }
+
+    private void skipMarkup() throws IOException {
+        int c = read();
+        if (c == '-') {
+            c = read();
+            if (c == '-') {
+                // Comment: skip to "-->"
+                int dashes = 0;
+                while ((c = read()) != -1) {
+                    if (c == '>' && dashes >= 2) {
+                        return;
+                    }
+                    dashes = c == '-' ? dashes + 1 : 0;
+                }
+                return;
+            }
+        }
+        if (c != '>') {
+            skipPast('>');
+        }
+    }
+
+    /**
+     * Skips the content of a raw text element up to and including its end tag.
+     */
+    private void skipRawText(String element) throws IOException {
+        int c;
+        while ((c = read()) != -1) {
+            if (c != '<' || (c = read()) != '/') {
+                continue;
+            }
+            rawTextEnd.setLength(0);
+            while ((c = read()) != -1 && isLetter(c)) {
+                rawTextEnd.append(Character.toLowerCase((char) c));
+            }
+            if (contentEquals(rawTextEnd, element)) {
+                if (c != '>') {
+                    skipPast('>');
+                }
+                return;
+            }
+        }
+    }
+
+    private void skipPast(int target) throws IOException {
+        int c;
+        while ((c = read()) != -1 && c != target) {
+            // skip
+        }
+    }
+
+    private int read() throws IOException {
+        if (position == limit) {
+            limit = reader.read(buffer, 0, BUFFER_SIZE);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position++];
+    }
+
+    private static String rawTextElement(CharSequence tag) {
+        for (String element : RAW_TEXT_ELEMENTS) {
+            if (contentEquals(tag, element)) {
+                return element;
+            }
+        }
+        return null;
+    }
+
+    private static URI toBaseUri(String url) {
+        try {
+            URI uri = new URI(url);
+            if (!uri.isAbsolute() || uri.isOpaque()) {
+                return null;
+            }
+            // java.net.URI resolves "page.html" against "http://host" to "http://hostpage.html"
+            if (uri.getRawPath() == null || uri.getRawPath().isEmpty()) {
+                String query = uri.getRawQuery();
+                uri = new URI(origin(uri) + "/" + (query != null ? "?" + query : ""));
+            }
+            return uri;
+        } catch (URISyntaxException e) {
+            log.debug("Invalid base URL: {}", url);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the scheme and authority of a hierarchical URI, with any escapes left as they are.
+     */
+    private static String origin(URI uri) {
+        String authority = uri.getRawAuthority();
+        return uri.getScheme() + ":" + (authority != null ? "//" + authority : "");
+    }
+
+    /**
+     * Decodes the character references that commonly appear in URLs.
+     */
+    private static String decodeEntities(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        int i = 0;
+        while (i < s.length()) {
+            char c = s.charAt(i);
+            int semicolon;
+            if (c != '&' || (semicolon = s.indexOf(';', i)) < 0 || semicolon - i > 10) {
+                sb.append(c);
+                i++;
+                continue;
+            }
+
+            String entity = s.substring(i + 1, semicolon);
+            String decoded = switch (entity) {
+                case "amp" -> "&";
+                case "quot" -> "\"";
+                case "apos" -> "'";
+                case "lt" -> "<";
+                case "gt" -> ">";
+                default -> decodeNumericEntity(entity);
+            };
+            if (decoded == null) {
+                sb.append(c);
+                i++;
+            } else {
+                sb.append(decoded);
+                i = semicolon + 1;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String decodeNumericEntity(String entity) {
+        if (entity.length() < 2 || entity.charAt(0) != '#') {
+            return null;
+        }
+        try {
+            int codePoint = entity.charAt(1) == 'x' || entity.charAt(1) == 'X'
+                    ? Integer.parseInt(entity.substring(2), 16)
+                    : Integer.parseInt(entity.substring(1));
+            return Character.isValidCodePoint(codePoint) ? Character.toString(codePoint) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static boolean contentEquals(CharSequence a, String b) {
+        if (a.length() != b.length()) {
+            return false;
+        }
+        for (int i = 0; i < b.length(); i++) {
+            if (a.charAt(i) != b.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isLetter(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+    }
+}
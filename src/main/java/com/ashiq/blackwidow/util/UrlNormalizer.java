@@ -0,0 +1,39 @@
+package com.ashiq.blackwidow.util;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+
+/**
+ * Utility class for normalizing URLs, so that equivalent spellings of a URL are treated as the same page.
+ */
+public class UrlNormalizer {
+
+    /**
+     * Normalizes a URL by lower-casing the scheme and host, dropping default ports and the fragment,
+     * and using "/" for an empty path. The query is kept as is, since it usually selects different content.
+     *
+     * @param url The URL to normalize
+     * @return The normalized URL, or the URL unchanged if it can't be parsed
+     */
+    public static String normalize(String url) {
+        URI uri;
+        try {
+            uri = new URI(url);
+        } catch (URISyntaxException e) {
+            return url;
+        }
+
+        if (uri.isOpaque() || uri.getHost() == null) {
+            return url;
+        }
+
+        StringBuilder sb = new StringBuilder(url.length());
+        sb.append(DomainUtils.getHostKey(uri));
+        String path = uri.getRawPath();
+        sb.append(path == null || path.isEmpty() ? "/" : path);
+        if (uri.getRawQuery() != null) {
+            sb.append('?').append(uri.getRawQuery());
+        }
+        return sb.toString();
+    }
+}
@@ -36,4 +36,17 @@ public class InputProcessor {
             return null;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Checks if a processed URL can be crawled, i.e. it is an absolute http or https URL with a host.
+     *
+     * @param uri The URI returned by {@link #processUrl(String)}, may be null
+     * @return True if the URI can be used as a seed, false otherwise
+     */
+    public boolean isCrawlable(URI uri) {
+        if (uri == null || uri.getHost() == null) {
+            return false;
+        }
+        return "http".equalsIgnoreCase(uri.getScheme()) || "https".equalsIgnoreCase(uri.getScheme());
+    }
+}
@@ -0,0 +1,54 @@
+package com.ashiq.blackwidow.cluster;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the HashRing.
+ */
+public class HashRingTests {
+
+    private static final int KEYS = 100_000;
+
+    /**
+     * Tests that keys are spread evenly over the nodes.
+     */
+    @Test
+    public void testSpreadsKeysEvenly() {
+        HashRing ring = new HashRing(List.of("worker-a:7300", "worker-b:7300", "worker-c:7300", "worker-d:7300"), 128);
+        int[] counts = new int[ring.size()];
+        for (int i = 0; i < KEYS; i++) {
+            counts[ring.ownerOf("host-" + i + ".example.com")]++;
+        }
+
+        for (int count : counts) {
+            assertTrue(Math.abs(count - KEYS / 4) < KEYS / 4 * 0.2, "Every node should get about a quarter: " + count);
+        }
+    }
+
+    /**
+     * Tests that adding a node only moves about its share of the keys, all of them to the new node, and that
+     * rings built from the same nodes agree.
+     */
+    @Test
+    public void testAddingNodeMovesFewKeys() {
+        List<String> nodes = List.of("worker-a:7300", "worker-b:7300", "worker-c:7300");
+        HashRing before = new HashRing(nodes, 128);
+        HashRing after = new HashRing(List.of("worker-a:7300", "worker-b:7300", "worker-c:7300", "worker-d:7300"), 128);
+        HashRing same = new HashRing(List.copyOf(nodes), 128);
+
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String key = "host-" + i + ".example.com";
+            assertEquals(before.ownerOf(key), same.ownerOf(key));
+            if (before.ownerOf(key) != after.ownerOf(key)) {
+                assertEquals(3, after.ownerOf(key), "Keys should only move to the new node");
+                moved++;
+            }
+        }
+        assertTrue(Math.abs(moved - KEYS / 4) < KEYS / 4 * 0.2, "About a quarter of the keys should move: " + moved);
+    }
+}
@@ -0,0 +1,133 @@
+package com.ashiq.blackwidow.crawl;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the CrawlCheckpoint.
+ */
+public class CrawlCheckpointTests {
+
+    private static final String SEED = "https://example.com/";
+
+    /**
+     * Tests that a reopened checkpoint replays the seed, the edges and which pages were finished,
+     * before and after compaction.
+     */
+    @Test
+    public void testReplayAfterReopen(@TempDir Path dir) throws IOException {
+        try (CrawlCheckpoint checkpoint = CrawlCheckpoint.create(dir, SEED, 0)) {
+            checkpoint.recordDiscovered(SEED, "https://example.com/a", 1, true);
+            checkpoint.recordDiscovered(SEED, "https://example.com/b", 1, true);
+            checkpoint.recordDiscovered("https://example.com/a", "https://example.com/c", 2, false);
+            checkpoint.recordCompleted(SEED);
+            checkpoint.recordCompleted("https://example.com/a");
+        }
+
+        try (CrawlCheckpoint checkpoint = CrawlCheckpoint.open(dir, 0)) {
+            assertEquals(SEED, checkpoint.getSeedUrl());
+            List<CrawlCheckpoint.Entry> expected = List.of(
+                    new CrawlCheckpoint.Entry(null, SEED, 0, true, true),
+                    new CrawlCheckpoint.Entry(SEED, "https://example.com/a", 1, true, true),
+                    new CrawlCheckpoint.Entry(SEED, "https://example.com/b", 1, true, false),
+                    new CrawlCheckpoint.Entry("https://example.com/a", "https://example.com/c", 2, false, false));
+            assertEquals(expected, replay(checkpoint));
+
+            checkpoint.compact();
+            assertEquals(expected, replay(checkpoint));
+
+            checkpoint.recordCompleted("https://example.com/b");
+            assertTrue(replay(checkpoint).get(2).done(), "Records appended after compaction should be replayed");
+        }
+    }
+
+    /**
+     * Tests that a record cut short by a crash ends the log, and that appending continues in its place.
+     */
+    @Test
+    public void testTornRecordIsIgnored(@TempDir Path dir) throws IOException {
+        try (CrawlCheckpoint checkpoint = CrawlCheckpoint.create(dir, SEED, 0)) {
+            checkpoint.recordDiscovered(SEED, "https://example.com/a", 1, true);
+        }
+
+        // Simulate a crash halfway through writing a record: a length and some of the body, but a wrong CRC
+        try (FileChannel channel = FileChannel.open(dir.resolve("frontier.0.log"), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long end = 0;
+            ByteBuffer frame = ByteBuffer.allocate(8);
+            for (int i = 0; i < 2; i++) {
+                frame.clear();
+                channel.read(frame, end);
+                end += 8 + frame.getInt(0);
+            }
+            channel.write(ByteBuffer.allocate(12).putInt(40).putInt(12345).put((byte) 1).flip(), end);
+        }
+
+        try (CrawlCheckpoint checkpoint = CrawlCheckpoint.open(dir, 0)) {
+            assertEquals(2, replay(checkpoint).size());
+            checkpoint.recordDiscovered(SEED, "https://example.com/b", 1, false);
+            List<CrawlCheckpoint.Entry> entries = replay(checkpoint);
+            assertEquals(3, entries.size());
+            assertEquals("https://example.com/b", entries.get(2).url());
+        }
+    }
+
+    /**
+     * Tests that pages are still logged while a compaction is outstanding, that only one compaction runs at a time,
+     * and that the snapshot it writes replaces the segments it was made from.
+     */
+    @Test
+    public void testAppendsDuringCompaction(@TempDir Path dir) throws IOException {
+        List<Runnable> compactions = new ArrayList<>();
+        List<CrawlCheckpoint.Entry> expected = List.of(
+                new CrawlCheckpoint.Entry(null, SEED, 0, true, true),
+                new CrawlCheckpoint.Entry(SEED, "https://example.com/a", 1, true, true),
+                new CrawlCheckpoint.Entry(SEED, "https://example.com/b", 1, true, false));
+
+        try (CrawlCheckpoint checkpoint = CrawlCheckpoint.create(dir, SEED, 1, compactions::add)) {
+            checkpoint.recordDiscovered(SEED, "https://example.com/a", 1, true);
+            checkpoint.recordCompleted(SEED);
+            assertEquals(1, compactions.size(), "Half the URLs finished should start a compaction");
+
+            // The compaction hasn't run yet, so these go to the fresh segment
+            checkpoint.recordDiscovered(SEED, "https://example.com/b", 1, true);
+            checkpoint.recordCompleted("https://example.com/a");
+            assertEquals(1, compactions.size(), "Only one compaction should run at a time");
+            assertEquals(expected, replay(checkpoint));
+
+            Thread compaction = Thread.ofPlatform().start(compactions.getFirst());
+            for (int i = 0; i < 1000; i++) {
+                checkpoint.recordDiscovered("https://example.com/b", "https://example.com/b/" + i, 2, false);
+            }
+            compaction.join();
+            assertEquals(1003, replay(checkpoint).size());
+            assertEquals(expected, replay(checkpoint).subList(0, 3));
+        } catch (InterruptedException e) {
+            fail(e);
+        }
+
+        assertTrue(Files.exists(dir.resolve("frontier.0.snapshot")));
+        assertFalse(Files.exists(dir.resolve("frontier.0.log")), "Compacted segments should be deleted");
+        try (CrawlCheckpoint checkpoint = CrawlCheckpoint.open(dir, 0)) {
+            List<CrawlCheckpoint.Entry> entries = replay(checkpoint);
+            assertEquals(1003, entries.size());
+            assertEquals(expected, entries.subList(0, 3));
+        }
+    }
+
+    private static List<CrawlCheckpoint.Entry> replay(CrawlCheckpoint checkpoint) throws IOException {
+        List<CrawlCheckpoint.Entry> entries = new ArrayList<>();
+        checkpoint.replay(entries::add);
+        return entries;
+    }
+}
@@ -0,0 +1,227 @@
+package com.ashiq.blackwidow.crawl;
+
+import com.ashiq.blackwidow.model.SitemapEntry;
+import com.ashiq.blackwidow.payload.ScrapedPage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the CrawlFrontier, taking and completing tasks the way crawl workers do.
+ */
+public class CrawlFrontierTests {
+
+    private static final String SEED = "https://example.com/";
+
+    /**
+     * Tests that links deeper than the depth budget are recorded in the tree but never handed out.
+     */
+    @Test
+    public void testDepthBudget() throws InterruptedException {
+        CrawlFrontier frontier = frontier(1, 100);
+        frontier.seed(SEED);
+
+        CrawlTask seed = frontier.take();
+        assertTrue(offer(frontier, seed, SEED + "a"));
+        assertFalse(offer(frontier, seed, SEED + "a#top"), "A URL should only be seen once");
+        frontier.complete(seed);
+
+        CrawlTask child = frontier.take();
+        assertEquals(SEED + "a", child.url());
+        assertEquals(1, child.depth());
+        assertTrue(offer(frontier, child, SEED + "a/b"), "A link past the depth budget is still seen");
+        frontier.complete(child);
+
+        assertNull(frontier.take(), "A link past the depth budget should not be fetched");
+        assertEquals(2, frontier.getScheduledCount());
+        ScrapedPage tree = frontier.toScrapedPage(SEED);
+        assertEquals(SEED + "a/b", tree.links().getFirst().links().getFirst().url());
+    }
+
+    /**
+     * Tests that no more pages than the page budget are handed out, however many are found.
+     */
+    @Test
+    public void testPageBudget() throws InterruptedException {
+        CrawlFrontier frontier = frontier(10, 3);
+        frontier.seed(SEED);
+
+        CrawlTask seed = frontier.take();
+        for (int i = 0; i < 5; i++) {
+            offer(frontier, seed, SEED + i);
+        }
+        frontier.complete(seed);
+
+        List<CrawlTask> taken = new ArrayList<>();
+        CrawlTask task;
+        while ((task = frontier.take()) != null) {
+            taken.add(task);
+            frontier.complete(task);
+        }
+        assertEquals(2, taken.size());
+        assertEquals(3, frontier.getScheduledCount());
+    }
+
+    /**
+     * Tests that a worker finding no work waits while other pages are in flight, since they may find more, and
+     * that the crawl ends once the last of them completes without finding any.
+     */
+    @Test
+    public void testWaitsForTasksInFlight() throws Exception {
+        CrawlFrontier frontier = frontier(10, 100);
+        frontier.seed(SEED);
+        CrawlTask seed = frontier.take();
+
+        CompletableFuture<CrawlTask> waiting = takeAsync(frontier);
+        Thread.sleep(100);
+        assertFalse(waiting.isDone(), "A worker should wait while the seed is in flight");
+        offer(frontier, seed, SEED + "a");
+        CrawlTask child = waiting.get(5, TimeUnit.SECONDS);
+        assertEquals(SEED + "a", child.url());
+
+        CompletableFuture<CrawlTask> idle = takeAsync(frontier);
+        frontier.complete(seed);
+        Thread.sleep(100);
+        assertFalse(idle.isDone(), "A worker should wait while the child is in flight");
+        frontier.complete(child);
+        assertNull(idle.get(5, TimeUnit.SECONDS), "The crawl should end when nothing is queued or in flight");
+    }
+
+    /**
+     * Tests that a frontier restored from the checkpoint of an interrupted crawl skips the pages that were finished,
+     * counts them against the page budget, and fetches the page that was in progress again.
+     */
+    @Test
+    public void testRestoreFromCheckpoint(@TempDir Path dir) throws IOException, InterruptedException {
+        try (CrawlCheckpoint checkpoint = CrawlCheckpoint.create(dir, SEED, 0)) {
+            CrawlFrontier frontier = frontier(10, 3, checkpoint);
+            frontier.seed(SEED);
+            CrawlTask seed = frontier.take();
+            offer(frontier, seed, SEED + "a");
+            offer(frontier, seed, SEED + "b");
+            frontier.complete(seed);
+            frontier.complete(frontier.take());
+            assertNotNull(frontier.take(), "The crawl is interrupted while this page is in progress");
+        }
+
+        try (CrawlCheckpoint checkpoint = CrawlCheckpoint.open(dir, 0)) {
+            CrawlFrontier frontier = frontier(10, 3, checkpoint);
+            frontier.restore(checkpoint);
+            assertEquals(2, frontier.getScheduledCount());
+            assertFalse(offer(frontier, new CrawlTask(SEED, 0, null), SEED + "a"), "Restored URLs should be seen");
+
+            CrawlTask task = frontier.take();
+            assertEquals(SEED + "b", task.url());
+            assertEquals(1, task.depth());
+            frontier.complete(task);
+            assertNull(frontier.take(), "The page budget should include the pages finished before");
+            assertEquals(List.of(SEED + "a", SEED + "b"),
+                    frontier.toScrapedPage(SEED).links().stream().map(ScrapedPage::url).toList());
+        }
+    }
+
+    /**
+     * Tests that a postponed page gives back its share of the page budget and is handed out again once its host
+     * may be tried again.
+     */
+    @Test
+    public void testPostponeGivesBackBudget() throws InterruptedException {
+        CrawlFrontier frontier = frontier(10, 2);
+        frontier.seed(SEED);
+        CrawlTask seed = frontier.take();
+        offer(frontier, seed, SEED + "a");
+        frontier.complete(seed);
+
+        CrawlTask task = frontier.take();
+        assertEquals(2, frontier.getScheduledCount());
+        long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(50);
+        assertTrue(frontier.postpone(task, until));
+        assertEquals(1, frontier.getScheduledCount());
+
+        assertEquals(task, frontier.take(), "The postponed page should be fetched within the budget");
+        assertTrue(System.nanoTime() >= until, "The host should be held off until the given time");
+        frontier.complete(task);
+        assertNull(frontier.take());
+
+        frontier.close();
+        assertFalse(frontier.postpone(task, until), "A closed frontier should not take pages back");
+    }
+
+    /**
+     * Tests that a frontier holding a share of a distributed crawl is idle only while no page is in flight, and that
+     * its workers wait for forwarded URLs instead of finishing until it is released.
+     */
+    @Test
+    public void testHeldUntilReleased() throws Exception {
+        List<CrawlTask> forwarded = new ArrayList<>();
+        CrawlPartition partition = new CrawlPartition() {
+            @Override
+            public boolean owns(String url) {
+                return url.startsWith(SEED);
+            }
+
+            @Override
+            public void forward(CrawlTask task) {
+                forwarded.add(task);
+            }
+        };
+        CrawlFrontier frontier = new CrawlFrontier(10, 100, new PolitenessScheduler(host -> 0, 0, 0), null,
+                new VisitedUrlSet(1000, false), null, true, partition);
+        frontier.seed(SEED);
+        assertFalse(frontier.isIdle(), "A frontier with queued pages is not idle");
+
+        CrawlTask seed = frontier.take();
+        assertTrue(offer(frontier, seed, "https://other.example.com/"));
+        assertEquals(List.of("https://other.example.com/"), forwarded.stream().map(CrawlTask::url).toList());
+        assertFalse(frontier.isIdle(), "A frontier with a page in flight is not idle");
+        frontier.complete(seed);
+        assertTrue(frontier.isIdle());
+
+        CompletableFuture<CrawlTask> waiting = takeAsync(frontier);
+        Thread.sleep(100);
+        assertFalse(waiting.isDone(), "A held frontier should wait for forwarded URLs");
+        assertTrue(frontier.accept(new CrawlTask(SEED + "a", 1, "https://other.example.com/")));
+        CrawlTask task = waiting.get(5, TimeUnit.SECONDS);
+        assertEquals(SEED + "a", task.url());
+        assertFalse(frontier.isIdle());
+        frontier.complete(task);
+        assertTrue(frontier.isIdle());
+
+        CompletableFuture<CrawlTask> released = takeAsync(frontier);
+        Thread.sleep(100);
+        assertFalse(released.isDone());
+        frontier.release();
+        assertNull(released.get(5, TimeUnit.SECONDS), "A released frontier should finish once it runs out of work");
+    }
+
+    private static CrawlFrontier frontier(int maxDepth, int maxPages) {
+        return frontier(maxDepth, maxPages, null);
+    }
+
+    private static CrawlFrontier frontier(int maxDepth, int maxPages, CrawlCheckpoint checkpoint) {
+        return new CrawlFrontier(maxDepth, maxPages, new PolitenessScheduler(host -> 0, 0, 0), null,
+                new VisitedUrlSet(1000, false), checkpoint, true, null);
+    }
+
+    private static CompletableFuture<CrawlTask> takeAsync(CrawlFrontier frontier) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return frontier.take();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    private static boolean offer(CrawlFrontier frontier, CrawlTask parent, String url) {
+        return frontier.offer(parent, url, SitemapEntry.DEFAULT_PRIORITY, null);
+    }
+}
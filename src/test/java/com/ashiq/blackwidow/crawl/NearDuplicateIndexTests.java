@@ -0,0 +1,94 @@
+package com.ashiq.blackwidow.crawl;
+
+import com.ashiq.blackwidow.util.SimHash;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the NearDuplicateIndex and the SimHash fingerprints it holds.
+ */
+public class NearDuplicateIndexTests {
+
+    /**
+     * Tests that a fingerprint is a near-duplicate of one within the distance, wherever its differing bits are,
+     * and not of one further away.
+     */
+    @Test
+    public void testFindsFingerprintsWithinDistance() {
+        Random random = new Random(42);
+        NearDuplicateIndex index = new NearDuplicateIndex(3);
+        long[] fingerprints = new long[10_000];
+        for (int i = 0; i < fingerprints.length; i++) {
+            fingerprints[i] = random.nextLong() | 1;
+            index.add(fingerprints[i]);
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            long fingerprint = fingerprints[random.nextInt(fingerprints.length)];
+            long near = fingerprint ^ 1L << random.nextInt(64) ^ 1L << random.nextInt(64) ^ 1L << random.nextInt(64);
+            assertFalse(index.add(near), "Fingerprints at most 3 bits apart should be near-duplicates");
+        }
+        long first = fingerprints[0];
+        assertTrue(index.add(first ^ 1L << 1 ^ 1L << 20 ^ 1L << 40 ^ 1L << 60), "4 bits apart is not a near-duplicate");
+        assertEquals(10_001, index.size());
+    }
+
+    /**
+     * Tests that an index with a distance of 0 only finds exact duplicates.
+     */
+    @Test
+    public void testExactDuplicates() {
+        NearDuplicateIndex index = new NearDuplicateIndex(0);
+
+        assertTrue(index.add(0x0123456789abcdefL));
+        assertFalse(index.add(0x0123456789abcdefL));
+        assertTrue(index.add(0x0123456789abcdeeL));
+        assertEquals(2, index.size());
+    }
+
+    /**
+     * Tests that the fingerprints of long texts differing in a word are mostly within 3 bits, while those of
+     * unrelated texts never are, and that the text may be appended in pieces.
+     */
+    @Test
+    public void testSimHashOfSimilarTexts() {
+        int near = 0;
+        for (int seed = 0; seed < 100; seed++) {
+            String text = words(new Random(seed), 1000);
+            String edited = text.replaceFirst(" \\w+ ", " catalogue ");
+            long fingerprint = simHash(text);
+            if (SimHash.distance(fingerprint, simHash(edited)) <= 3) {
+                near++;
+            }
+            assertTrue(SimHash.distance(fingerprint, simHash(words(new Random(seed + 100), 1000))) > 10);
+        }
+        assertTrue(near >= 80, "Only " + near + " of 100 edited texts were within 3 bits");
+
+        String text = words(new Random(1), 1000);
+        long fingerprint = simHash(text);
+        assertEquals(fingerprint, simHash(text.toUpperCase()), "Case should not matter");
+        SimHash pieces = new SimHash();
+        int middle = text.indexOf(' ', text.length() / 2);
+        pieces.append(text.substring(0, middle));
+        pieces.append(text.substring(middle));
+        assertEquals(fingerprint, pieces.fingerprint());
+        assertEquals(998, pieces.getShingleCount());
+    }
+
+    private static long simHash(String text) {
+        SimHash simHash = new SimHash();
+        simHash.append(text);
+        return simHash.fingerprint();
+    }
+
+    private static String words(Random random, int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            text.append("word").append(random.nextInt(500)).append(' ');
+        }
+        return text.toString();
+    }
+}
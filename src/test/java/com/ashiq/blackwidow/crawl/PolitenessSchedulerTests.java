@@ -0,0 +1,130 @@
+package com.ashiq.blackwidow.crawl;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the PolitenessScheduler, driven by explicit times instead of the clock.
+ */
+public class PolitenessSchedulerTests {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * Tests that a host is fetched at most once per delay, while other hosts are handed out in the meantime.
+     */
+    @Test
+    public void testSpacesRequestsPerHost() {
+        PolitenessScheduler scheduler = new PolitenessScheduler(host -> 0, 100, 0);
+        scheduler.add(task("https://a.example.com/1"));
+        scheduler.add(task("https://a.example.com/2"));
+        scheduler.add(task("https://b.example.com/1"));
+        long now = System.nanoTime();
+
+        assertEquals("https://a.example.com/1", scheduler.poll(now).url());
+        assertEquals("https://b.example.com/1", scheduler.poll(now).url(), "Another host should go while a cools down");
+        assertNull(scheduler.poll(now));
+        assertEquals(100 * MILLIS, scheduler.nanosUntilReady(now));
+
+        assertNull(scheduler.poll(now + 99 * MILLIS));
+        assertEquals("https://a.example.com/2", scheduler.poll(now + 100 * MILLIS).url());
+        assertTrue(scheduler.isEmpty());
+        assertEquals(-1, scheduler.nanosUntilReady(now + 100 * MILLIS));
+    }
+
+    /**
+     * Tests that a robots.txt crawl delay replaces the default delay, and that the minimum delay bounds both.
+     */
+    @Test
+    public void testUsesCrawlDelayAboveMinimum() {
+        Map<String, Long> crawlDelays = Map.of("https://slow.example.com", 500L, "https://eager.example.com", 1L);
+        PolitenessScheduler scheduler = new PolitenessScheduler(host -> crawlDelays.getOrDefault(host, 0L), 100, 10);
+        for (String host : new String[]{"https://slow.example.com", "https://eager.example.com", "https://plain.example.com"}) {
+            scheduler.add(task(host + "/1"));
+            scheduler.add(task(host + "/2"));
+        }
+        long now = System.nanoTime();
+        for (int i = 0; i < 3; i++) {
+            assertNotNull(scheduler.poll(now));
+        }
+
+        assertEquals("https://eager.example.com/2", scheduler.poll(now + 10 * MILLIS).url());
+        assertEquals("https://plain.example.com/2", scheduler.poll(now + 100 * MILLIS).url());
+        assertNull(scheduler.poll(now + 499 * MILLIS));
+        assertEquals("https://slow.example.com/2", scheduler.poll(now + 500 * MILLIS).url());
+    }
+
+    /**
+     * Tests that the crawl delay of a host is looked up once while it has URLs queued, not for every URL.
+     */
+    @Test
+    public void testLooksUpCrawlDelayOncePerHost() {
+        AtomicInteger lookups = new AtomicInteger();
+        PolitenessScheduler scheduler = new PolitenessScheduler(host -> {
+            lookups.incrementAndGet();
+            return 0;
+        }, 0, 0);
+        for (int i = 0; i < 10; i++) {
+            scheduler.add(task("https://a.example.com/" + i));
+            scheduler.add(task("https://b.example.com/" + i));
+        }
+
+        long now = System.nanoTime();
+        for (int i = 0; i < 20; i++) {
+            assertNotNull(scheduler.poll(now));
+        }
+        assertEquals(2, lookups.get());
+    }
+
+    /**
+     * Tests that of the hosts that may be fetched, the one that has been ready the longest goes first.
+     */
+    @Test
+    public void testOrdersHostsByNextFetchTime() {
+        PolitenessScheduler scheduler = new PolitenessScheduler(host -> 0, 0, 0);
+        long now = System.nanoTime();
+        scheduler.postpone(task("https://a.example.com/1"), now + 50 * MILLIS);
+        scheduler.postpone(task("https://b.example.com/1"), now + 20 * MILLIS);
+        scheduler.postpone(task("https://c.example.com/1"), now + 30 * MILLIS);
+
+        assertNull(scheduler.poll(now + 10 * MILLIS));
+        assertEquals(10 * MILLIS, scheduler.nanosUntilReady(now + 10 * MILLIS));
+        assertEquals("https://b.example.com/1", scheduler.poll(now + 60 * MILLIS).url());
+        assertEquals("https://c.example.com/1", scheduler.poll(now + 60 * MILLIS).url());
+        assertEquals("https://a.example.com/1", scheduler.poll(now + 60 * MILLIS).url());
+    }
+
+    /**
+     * Tests that hosts with a single page are forgotten once their delay has passed, so a crawl over many hosts
+     * doesn't keep them all, while a host that gets new URLs while cooling down still waits out its delay.
+     */
+    @Test
+    public void testForgetsHostsAfterTheirDelay() {
+        PolitenessScheduler scheduler = new PolitenessScheduler(host -> 0, 10, 0);
+        for (int i = 0; i < 1000; i++) {
+            scheduler.add(task("https://host" + i + ".example.com/"));
+        }
+        long now = System.nanoTime();
+        for (int i = 0; i < 1000; i++) {
+            assertNotNull(scheduler.poll(now));
+        }
+        assertEquals(1000, scheduler.hostCount(), "Hosts should be remembered while cooling down");
+
+        scheduler.add(task("https://host0.example.com/again"));
+        assertNull(scheduler.poll(now + 5 * MILLIS), "A cooling host should wait out its delay");
+        assertEquals("https://host0.example.com/again", scheduler.poll(now + 10 * MILLIS).url());
+        assertEquals(1, scheduler.hostCount(), "Only the host fetched last should still be cooling down");
+
+        assertNull(scheduler.poll(now + 20 * MILLIS));
+        assertEquals(0, scheduler.hostCount());
+    }
+
+    private static CrawlTask task(String url) {
+        return new CrawlTask(url, 1, null);
+    }
+}
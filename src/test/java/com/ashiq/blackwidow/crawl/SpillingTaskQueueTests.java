@@ -0,0 +1,72 @@
+package com.ashiq.blackwidow.crawl;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the SpillingTaskQueue.
+ */
+public class SpillingTaskQueueTests {
+
+    /**
+     * Tests that tasks come out best first, whether they stayed in memory or were spilled to disk and merged,
+     * with everything about them intact, and that the spilled files are deleted.
+     */
+    @Test
+    public void testPollsBestFirstAcrossSpills(@TempDir Path dir) throws IOException {
+        SpillingTaskQueue queue = new SpillingTaskQueue(task -> task.priority(), 100, dir);
+        Random random = new Random(42);
+        for (int i = 0; i < 20_000; i++) {
+            queue.add(new CrawlTask("https://example.com/" + i, 2, "https://example.com/", random.nextDouble(),
+                    i % 2 == 0 ? Instant.ofEpochMilli(i) : null));
+        }
+        assertEquals(20_000, queue.size());
+        assertTrue(queue.getSpilledCount() >= 19_900, "All but the best 100 should be on disk");
+        assertTrue(countFiles(dir) <= SpillingTaskQueue.MAX_SEGMENTS + 1, "Segments should have been merged");
+
+        double last = Double.MAX_VALUE;
+        for (int i = 0; i < 20_000; i++) {
+            CrawlTask task = queue.poll();
+            assertTrue(task.priority() <= last, "Tasks should come out best first");
+            last = task.priority();
+            int id = Integer.parseInt(task.url().substring("https://example.com/".length()));
+            assertEquals(2, task.depth());
+            assertEquals("https://example.com/", task.parent());
+            assertEquals(id % 2 == 0 ? Instant.ofEpochMilli(id) : null, task.lastModified());
+        }
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+        queue.close();
+        assertEquals(0, countFiles(dir));
+    }
+
+    /**
+     * Tests that tasks with the same score come out in the order they were added, across spills.
+     */
+    @Test
+    public void testKeepsOrderOfEqualScores(@TempDir Path dir) {
+        SpillingTaskQueue queue = new SpillingTaskQueue(TaskScorer.FIFO, 10, dir);
+        for (int i = 0; i < 1000; i++) {
+            queue.add(new CrawlTask("https://example.com/" + i, 1, null));
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("https://example.com/" + i, queue.poll().url());
+        }
+        queue.close();
+    }
+
+    private static long countFiles(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            return files.filter(Files::isRegularFile).count();
+        }
+    }
+}
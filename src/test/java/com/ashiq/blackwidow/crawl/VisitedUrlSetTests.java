@@ -0,0 +1,77 @@
+package com.ashiq.blackwidow.crawl;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the VisitedUrlSet.
+ */
+public class VisitedUrlSetTests {
+
+    /**
+     * Tests that a URL is only added once, including equivalent spellings of it, with and without a Bloom filter.
+     */
+    @Test
+    public void testAddIfAbsent() {
+        for (boolean bloomFilter : new boolean[]{false, true}) {
+            VisitedUrlSet set = new VisitedUrlSet(16, bloomFilter);
+
+            assertTrue(set.add("https://example.com/about"));
+            assertFalse(set.add("https://example.com/about"));
+            assertFalse(set.add("HTTPS://Example.com:443/about#team"), "Normalized duplicates should be rejected");
+            assertTrue(set.add("https://example.com/about?lang=en"), "The query should make a URL distinct");
+
+            assertTrue(set.contains("https://example.com/about"));
+            assertFalse(set.contains("https://example.com/contact"));
+            assertEquals(2, set.size());
+        }
+    }
+
+    /**
+     * Tests that the set grows past its initial capacity and still finds every URL, with and without a Bloom filter.
+     */
+    @Test
+    public void testGrowsBeyondExpectedSize() {
+        for (boolean bloomFilter : new boolean[]{false, true}) {
+            VisitedUrlSet set = new VisitedUrlSet(100, bloomFilter);
+            for (int i = 0; i < 50_000; i++) {
+                assertTrue(set.add("https://example.com/page/" + i));
+            }
+            for (int i = 0; i < 50_000; i++) {
+                assertTrue(set.contains("https://example.com/page/" + i));
+                assertFalse(set.add("https://example.com/page/" + i));
+            }
+            assertFalse(set.contains("https://example.com/page/50000"));
+            assertEquals(50_000, set.size());
+        }
+    }
+
+    /**
+     * Tests that concurrent workers adding overlapping URLs each win exactly once per URL.
+     */
+    @Test
+    public void testConcurrentAdds() {
+        VisitedUrlSet set = new VisitedUrlSet(1000, true);
+        AtomicInteger added = new AtomicInteger();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int worker = 0; worker < 16; worker++) {
+                executor.submit(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        if (set.add("https://example.com/" + i)) {
+                            added.incrementAndGet();
+                        }
+                    }
+                });
+            }
+        }
+
+        assertEquals(10_000, added.get());
+        assertEquals(10_000, set.size());
+    }
+}
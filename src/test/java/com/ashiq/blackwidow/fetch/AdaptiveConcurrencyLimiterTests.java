@@ -0,0 +1,127 @@
+package com.ashiq.blackwidow.fetch;
+
+import com.ashiq.blackwidow.config.ScraperConfig;
+import com.ashiq.blackwidow.metrics.CrawlMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.net.http.HttpHeaders;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the adaptive per-host concurrency limits.
+ */
+public class AdaptiveConcurrencyLimiterTests {
+
+    private static final String HOST = "http://example.com";
+    private static final long LATENCY = TimeUnit.MILLISECONDS.toNanos(20);
+
+    /**
+     * Tests that the limit grows by one per round of responses with stable latency, up to the maximum.
+     */
+    @Test
+    public void testIncreasesAdditively() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = limiter(new ScraperConfig());
+        assertEquals(2, limiter.getLimit(HOST));
+
+        respond(limiter, 3, false, LATENCY);
+        assertEquals(3, limiter.getLimit(HOST));
+        respond(limiter, 3, false, LATENCY);
+        assertEquals(4, limiter.getLimit(HOST));
+
+        respond(limiter, 100, false, LATENCY);
+        assertEquals(8, limiter.getLimit(HOST));
+    }
+
+    /**
+     * Tests that throttled responses and latency spikes halve the limit, once per round trip.
+     */
+    @Test
+    public void testDecreasesMultiplicatively() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = limiter(new ScraperConfig());
+        respond(limiter, 100, false, LATENCY);
+        assertEquals(8, limiter.getLimit(HOST));
+
+        respond(limiter, 3, true, LATENCY);
+        assertEquals(4, limiter.getLimit(HOST), "A burst of throttled responses should cut the limit once");
+
+        Thread.sleep(50);
+        respond(limiter, 1, false, LATENCY * 10);
+        assertEquals(2, limiter.getLimit(HOST), "A latency spike should cut the limit");
+
+        Thread.sleep(50);
+        respond(limiter, 10, true, LATENCY);
+        assertEquals(1, limiter.getLimit(HOST), "The limit should not drop below the minimum");
+    }
+
+    /**
+     * Tests that requests wait for a free slot, and for the Retry-After of a throttled response.
+     */
+    @Test
+    public void testWaitsForSlotsAndRetryAfter() throws Exception {
+        ScraperConfig config = new ScraperConfig();
+        config.setAdaptiveConcurrency(false);
+        config.setMaxConnectionsPerHost(1);
+        AdaptiveConcurrencyLimiter limiter = limiter(config);
+
+        AdaptiveConcurrencyLimiter.Permit first = limiter.acquire(HOST);
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> second = CompletableFuture.supplyAsync(() -> {
+            try {
+                return limiter.acquire(HOST);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(50);
+        assertFalse(second.isDone(), "The second request should wait for the first one");
+
+        first.onResponse(true, LATENCY, TimeUnit.MILLISECONDS.toNanos(300));
+        long start = System.nanoTime();
+        first.release();
+        first.release();
+        AdaptiveConcurrencyLimiter.Permit permit = second.get(5, TimeUnit.SECONDS);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(250),
+                "The second request should wait for the Retry-After");
+        assertEquals(1, limiter.getLimit(HOST), "Without adapting, the limit should stay at the maximum");
+        permit.release();
+    }
+
+    /**
+     * Tests reading Retry-After headers given in seconds and as a date.
+     */
+    @Test
+    public void testParsesRetryAfter() {
+        assertEquals(TimeUnit.SECONDS.toNanos(120), HttpFetcher.retryAfterNanos(headers("120")));
+        assertEquals(HttpFetcher.DEFAULT_RETRY_AFTER.toNanos(), HttpFetcher.retryAfterNanos(headers("soon")));
+        assertEquals(HttpFetcher.DEFAULT_RETRY_AFTER.toNanos(), HttpFetcher.retryAfterNanos(headers(null)));
+
+        String date = DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now().plusSeconds(30));
+        long nanos = HttpFetcher.retryAfterNanos(headers(date));
+        assertTrue(nanos > TimeUnit.SECONDS.toNanos(25) && nanos <= TimeUnit.SECONDS.toNanos(30), date);
+    }
+
+    private static AdaptiveConcurrencyLimiter limiter(ScraperConfig config) {
+        return new AdaptiveConcurrencyLimiter(config, new CrawlMetrics(new SimpleMeterRegistry(), config));
+    }
+
+    private static void respond(AdaptiveConcurrencyLimiter limiter, int responses, boolean throttled, long latency)
+            throws InterruptedException {
+        for (int i = 0; i < responses; i++) {
+            AdaptiveConcurrencyLimiter.Permit permit = limiter.acquire(HOST);
+            permit.onResponse(throttled, latency, 0);
+            permit.release();
+        }
+    }
+
+    private static HttpHeaders headers(String retryAfter) {
+        return HttpHeaders.of(retryAfter == null ? Map.of() : Map.of("Retry-After", List.of(retryAfter)),
+                (name, value) -> true);
+    }
+}
@@ -0,0 +1,131 @@
+package com.ashiq.blackwidow.fetch;
+
+import com.ashiq.blackwidow.config.ScraperConfig;
+import com.ashiq.blackwidow.metrics.CrawlMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the DNS cache, with a resolver that counts lookups instead of asking DNS.
+ */
+public class DnsCacheTests {
+
+    private final Map<String, AtomicInteger> lookups = new ConcurrentHashMap<>();
+
+    /**
+     * Tests that a host is looked up once while its addresses are cached, and again once they have expired.
+     */
+    @Test
+    public void testCachesAddresses() throws Exception {
+        ScraperConfig config = new ScraperConfig();
+        config.setDnsCacheTtl(100);
+        DnsCache cache = cache(config, host -> new InetAddress[]{InetAddress.getByAddress(host, new byte[]{10, 0, 0, 1})});
+
+        assertEquals("10.0.0.1", cache.resolve("www.example.com")[0].getHostAddress());
+        cache.resolve("WWW.Example.com");
+        assertEquals(1, lookups("www.example.com"));
+
+        Thread.sleep(150);
+        cache.resolve("www.example.com");
+        assertEquals(2, lookups("www.example.com"));
+    }
+
+    /**
+     * Tests that a host that could not be resolved fails again without a lookup until the negative cache time
+     * has passed.
+     */
+    @Test
+    public void testCachesUnknownHosts() throws Exception {
+        ScraperConfig config = new ScraperConfig();
+        config.setDnsNegativeCacheTtl(100);
+        DnsCache cache = cache(config, host -> {
+            throw new UnknownHostException(host);
+        });
+
+        assertThrows(UnknownHostException.class, () -> cache.resolve("gone.example.com"));
+        assertThrows(UnknownHostException.class, () -> cache.resolve("gone.example.com"));
+        assertEquals(1, lookups("gone.example.com"));
+
+        Thread.sleep(150);
+        assertThrows(UnknownHostException.class, () -> cache.resolve("gone.example.com"));
+        assertEquals(2, lookups("gone.example.com"));
+    }
+
+    /**
+     * Tests that a prefetch resolves the host in the background, and that a fetch arriving while it is still in
+     * progress waits for it instead of starting another lookup.
+     */
+    @Test
+    public void testPrefetchesInBackground() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        DnsCache cache = cache(new ScraperConfig(), host -> {
+            started.countDown();
+            release.await();
+            return new InetAddress[]{InetAddress.getByAddress(host, new byte[]{10, 0, 0, 2})};
+        });
+
+        cache.prefetch("shop.example.com");
+        cache.prefetch("shop.example.com");
+        started.await();
+        Thread waiter = Thread.ofVirtual().start(() -> {
+            try {
+                cache.resolve("shop.example.com");
+            } catch (Exception e) {
+                throw new AssertionError(e);
+            }
+        });
+        Thread.sleep(50);
+        assertTrue(waiter.isAlive(), "The fetch should wait for the prefetch");
+
+        release.countDown();
+        waiter.join(1000);
+        assertFalse(waiter.isAlive());
+        assertEquals(1, lookups("shop.example.com"));
+    }
+
+    /**
+     * Tests that with the cache disabled, every fetch looks its host up and prefetches are ignored.
+     */
+    @Test
+    public void testDisabled() throws Exception {
+        ScraperConfig config = new ScraperConfig();
+        config.setDnsCacheSize(0);
+        DnsCache cache = cache(config, host -> new InetAddress[]{InetAddress.getByAddress(host, new byte[]{10, 0, 0, 3})});
+
+        cache.prefetch("www.example.com");
+        cache.resolve("www.example.com");
+        cache.resolve("www.example.com");
+        assertEquals(2, lookups("www.example.com"));
+    }
+
+    private DnsCache cache(ScraperConfig config, Lookup lookup) {
+        return new DnsCache(config, new CrawlMetrics(new SimpleMeterRegistry(), config), host -> {
+            lookups.computeIfAbsent(host, k -> new AtomicInteger()).incrementAndGet();
+            try {
+                return lookup.resolve(host);
+            } catch (InterruptedException e) {
+                throw new UnknownHostException("Interrupted");
+            }
+        });
+    }
+
+    private int lookups(String host) {
+        AtomicInteger count = lookups.get(host);
+        return count == null ? 0 : count.get();
+    }
+
+    @FunctionalInterface
+    private interface Lookup {
+        InetAddress[] resolve(String host) throws UnknownHostException, InterruptedException;
+    }
+}
@@ -0,0 +1,133 @@
+package com.ashiq.blackwidow.fetch;
+
+import com.ashiq.blackwidow.config.ScraperConfig;
+import com.ashiq.blackwidow.metrics.CrawlMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the per-host circuit breaker, on a clock that only moves when told to.
+ */
+public class HostCircuitBreakerTests {
+
+    private static final String HOST = "http://example.com";
+    private static final long OPEN_TIME = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final AtomicLong clock = new AtomicLong(1_000_000_000L);
+    private ScraperConfig config;
+
+    @BeforeEach
+    public void setUp() {
+        config = new ScraperConfig();
+        config.setCircuitFailureThreshold(3);
+        config.setCircuitOpenTime(100);
+    }
+
+    /**
+     * Tests that the circuit opens after enough failures in a row, lets a single probe through once the open time
+     * has passed, and closes again when the probe succeeds.
+     */
+    @Test
+    public void testOpensHalfOpensAndCloses() throws Exception {
+        HostCircuitBreaker breaker = breaker();
+        breaker.onFailure(HOST);
+        breaker.onFailure(HOST);
+        breaker.checkAvailable(HOST);
+
+        breaker.onFailure(HOST);
+        HostUnavailableException open = assertThrows(HostUnavailableException.class,
+                () -> breaker.checkAvailable(HOST));
+        assertEquals(clock.get() + OPEN_TIME, open.getRetryAt());
+        assertEquals(1, open.getOpens());
+        assertDoesNotThrow(() -> breaker.checkAvailable("http://example.org"), "Other hosts should be unaffected");
+
+        clock.addAndGet(OPEN_TIME - 1);
+        assertThrows(HostUnavailableException.class, () -> breaker.checkAvailable(HOST));
+        clock.addAndGet(1);
+        breaker.checkAvailable(HOST);
+        assertThrows(HostUnavailableException.class, () -> breaker.checkAvailable(HOST),
+                "Only one probe should be let through");
+
+        breaker.onSuccess(HOST);
+        breaker.checkAvailable(HOST);
+        breaker.checkAvailable(HOST);
+    }
+
+    /**
+     * Tests that every failed probe opens the circuit again for twice as long, up to the cap, and counts another
+     * opening, which is what lets the crawl give up on the host after {@code max-circuit-opens}; and that a
+     * successful request resets both.
+     */
+    @Test
+    public void testFailedProbesBackOff() throws Exception {
+        HostCircuitBreaker breaker = breaker();
+        for (int i = 0; i < 3; i++) {
+            breaker.onFailure(HOST);
+        }
+
+        long openFor = OPEN_TIME;
+        for (int opens = 1; opens <= 6; opens++) {
+            HostUnavailableException e = assertThrows(HostUnavailableException.class,
+                    () -> breaker.checkAvailable(HOST));
+            assertEquals(opens, e.getOpens());
+            assertEquals(clock.get() + openFor, e.getRetryAt(), "Opening " + opens);
+
+            clock.addAndGet(openFor);
+            breaker.checkAvailable(HOST);
+            breaker.onFailure(HOST);
+            openFor = Math.min(openFor * 2, OPEN_TIME * HostCircuitBreaker.MAX_OPEN_TIME_FACTOR);
+        }
+
+        clock.addAndGet(openFor);
+        breaker.checkAvailable(HOST);
+        breaker.onSuccess(HOST);
+        for (int i = 0; i < 3; i++) {
+            breaker.onFailure(HOST);
+        }
+        HostUnavailableException e = assertThrows(HostUnavailableException.class, () -> breaker.checkAvailable(HOST));
+        assertEquals(1, e.getOpens());
+        assertEquals(clock.get() + OPEN_TIME, e.getRetryAt());
+    }
+
+    /**
+     * Tests that another probe is let through if the first one never reports back within the request timeouts.
+     */
+    @Test
+    public void testReplacesLostProbe() throws Exception {
+        HostCircuitBreaker breaker = breaker();
+        for (int i = 0; i < 3; i++) {
+            breaker.onFailure(HOST);
+        }
+        clock.addAndGet(OPEN_TIME);
+        breaker.checkAvailable(HOST);
+
+        long probeTimeout = TimeUnit.MILLISECONDS.toNanos(config.getConnectTimeout() + config.getTimeout());
+        clock.addAndGet(probeTimeout - 1);
+        assertThrows(HostUnavailableException.class, () -> breaker.checkAvailable(HOST));
+        clock.addAndGet(1);
+        breaker.checkAvailable(HOST);
+    }
+
+    /**
+     * Tests that a failure threshold of 0 disables the circuit breaker.
+     */
+    @Test
+    public void testDisabled() throws Exception {
+        config.setCircuitFailureThreshold(0);
+        HostCircuitBreaker breaker = breaker();
+        for (int i = 0; i < 100; i++) {
+            breaker.onFailure(HOST);
+        }
+        breaker.checkAvailable(HOST);
+    }
+
+    private HostCircuitBreaker breaker() {
+        return new HostCircuitBreaker(config, new CrawlMetrics(new SimpleMeterRegistry(), config), clock::get);
+    }
+}
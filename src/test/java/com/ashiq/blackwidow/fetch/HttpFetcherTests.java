@@ -0,0 +1,163 @@
+package com.ashiq.blackwidow.fetch;
+
+import com.ashiq.blackwidow.config.ScraperConfig;
+import com.ashiq.blackwidow.metrics.CrawlMetrics;
+import com.ashiq.blackwidow.support.SyntheticSite;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the HttpFetcher, fetching pages of synthetic sites that throttle, fail or compress their responses.
+ */
+public class HttpFetcherTests {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private SyntheticSite site;
+    private DnsCache dnsCache;
+    private HttpFetcher fetcher;
+
+    @AfterEach
+    public void tearDown() {
+        if (fetcher != null) {
+            fetcher.close();
+            dnsCache.close();
+        }
+        if (site != null) {
+            site.close();
+        }
+    }
+
+    /**
+     * Tests that 429 and 503 responses are retried once their Retry-After has passed.
+     */
+    @Test
+    public void testRetriesThrottledAfterRetryAfter() throws IOException {
+        start(SyntheticSite.builder().tooManyRequestsEvery(2).serverErrorEvery(3).throttledRequests(1).retryAfter("1"));
+
+        for (int id : new int[]{2, 3}) {
+            long start = System.nanoTime();
+            assertEquals(200, status(site.pageUrl(id)));
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(900),
+                    "Page " + id + " should be fetched again after its Retry-After");
+            assertEquals(2, site.getRequestCount("/page/" + id));
+        }
+        assertEquals(2, retries("throttled", "retried"));
+    }
+
+    /**
+     * Tests that a throttled response asking for a longer wait than max-retry-after is returned as it is.
+     */
+    @Test
+    public void testGivesUpOnLongRetryAfter() throws IOException {
+        start(SyntheticSite.builder().tooManyRequestsEvery(1).retryAfter("30"), config -> config.setMaxRetryAfter(1000));
+
+        assertEquals(429, status(site.pageUrl(1)));
+        assertEquals(1, site.getRequestCount("/page/1"));
+        assertEquals(0, retries("throttled", "retried"));
+    }
+
+    /**
+     * Tests that failed requests are only retried while the retry budget allows, and that the denied retries are
+     * counted.
+     */
+    @Test
+    public void testRetryBudgetLimitsRetries() throws IOException {
+        start(SyntheticSite.builder().failAfter(0), config -> {
+            config.setMaxRetries(2);
+            config.setRetryBackoff(1);
+            config.setRetryBudgetRatio(0);
+            config.setRetryBudgetReserve(1);
+            config.setCircuitFailureThreshold(0);
+        });
+
+        assertEquals(500, status(site.pageUrl(1)));
+        assertEquals(2, site.getRequestCount("/page/1"), "Only the banked retry should be made");
+        assertEquals(500, status(site.pageUrl(2)));
+        assertEquals(1, site.getRequestCount("/page/2"), "The budget should be used up");
+
+        assertEquals(1, retries("error", "retried"));
+        assertEquals(2, retries("error", "denied"));
+    }
+
+    /**
+     * Tests that a host's circuit opens after failures in a row, failing its requests without sending them, and
+     * lets a single probe through once the open time has passed.
+     */
+    @Test
+    public void testCircuitOpensAfterFailures() throws Exception {
+        start(SyntheticSite.builder().failAfter(0), config -> {
+            config.setMaxRetries(0);
+            config.setCircuitFailureThreshold(3);
+            config.setCircuitOpenTime(200);
+        });
+
+        for (int id = 1; id <= 3; id++) {
+            assertEquals(500, status(site.pageUrl(id)));
+        }
+        assertThrows(HostUnavailableException.class, () -> status(site.pageUrl(4)));
+        assertEquals(3, site.getRequestCount());
+        assertEquals(1, registry.counter("blackwidow.host.circuit.opened").count());
+
+        Thread.sleep(250);
+        assertEquals(500, status(site.pageUrl(4)), "The probe should be sent once the circuit half-opens");
+        assertThrows(HostUnavailableException.class, () -> status(site.pageUrl(5)), "A failed probe should reopen the circuit");
+        assertEquals(4, site.getRequestCount());
+    }
+
+    /**
+     * Tests that gzip and deflate compressed pages are decompressed while they are read.
+     */
+    @Test
+    public void testDecodesCompressedBodies() throws IOException {
+        start(SyntheticSite.builder());
+        String plain = read(site.pageUrl(1), null);
+        assertTrue(plain.contains("<h1>Page 1</h1>"));
+
+        for (String encoding : new String[]{"gzip", "deflate"}) {
+            try (SyntheticSite compressed = SyntheticSite.builder().contentEncoding(encoding).start()) {
+                assertEquals(plain, read(compressed.pageUrl(1), encoding));
+            }
+        }
+    }
+
+    private void start(SyntheticSite.Builder siteBuilder) throws IOException {
+        start(siteBuilder, config -> {
+        });
+    }
+
+    private void start(SyntheticSite.Builder siteBuilder, Consumer<ScraperConfig> configurer) throws IOException {
+        site = siteBuilder.start();
+        ScraperConfig config = new ScraperConfig();
+        configurer.accept(config);
+        CrawlMetrics metrics = new CrawlMetrics(registry, config);
+        dnsCache = new DnsCache(config, metrics);
+        fetcher = new HttpFetcher(config, new HttpResponseCache(config), dnsCache, metrics);
+    }
+
+    private int status(String url) throws IOException {
+        try (FetchResponse response = fetcher.fetch(url)) {
+            return response.statusCode();
+        }
+    }
+
+    private String read(String url, String encoding) throws IOException {
+        try (FetchResponse response = fetcher.fetch(url); InputStream body = response.body()) {
+            assertEquals(200, response.statusCode());
+            assertEquals(encoding, response.headers().firstValue("Content-Encoding").orElse(null));
+            return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private double retries(String reason, String outcome) {
+        return registry.counter("blackwidow.fetch.retries", "reason", reason, "outcome", outcome).count();
+    }
+}
@@ -0,0 +1,201 @@
+package com.ashiq.blackwidow.fetch;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import com.ashiq.blackwidow.config.ScraperConfig;
+import com.ashiq.blackwidow.metrics.CrawlMetrics;
+import com.ashiq.blackwidow.support.SyntheticSite;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the response cache, revalidating pages of a synthetic site through an HttpFetcher.
+ */
+public class HttpResponseCacheTests {
+
+    @TempDir
+    private Path dir;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private SyntheticSite site;
+    private HttpResponseCache cache;
+    private DnsCache dnsCache;
+    private HttpFetcher fetcher;
+
+    @AfterEach
+    public void tearDown() {
+        if (fetcher != null) {
+            fetcher.close();
+            dnsCache.close();
+        }
+        if (site != null) {
+            site.close();
+        }
+    }
+
+    /**
+     * Tests that a page with an ETag is fetched again with If-None-Match and served from disk on a 304.
+     */
+    @Test
+    public void testRevalidatesWithETag() throws IOException {
+        start(SyntheticSite.builder().validators(true, false), 1024 * 1024);
+        assertRevalidates();
+    }
+
+    /**
+     * Tests that a page with a Last-Modified date is fetched again with If-Modified-Since and served from disk
+     * on a 304.
+     */
+    @Test
+    public void testRevalidatesWithLastModified() throws IOException {
+        start(SyntheticSite.builder().validators(false, true), 1024 * 1024);
+        assertRevalidates();
+    }
+
+    /**
+     * Tests that a body the caller stops reading partway is not committed to the cache.
+     */
+    @Test
+    public void testAbandonedReadIsNotCommitted() throws IOException {
+        start(SyntheticSite.builder().validators(true, true), 1024 * 1024);
+        String url = site.pageUrl(1);
+
+        try (FetchResponse response = fetcher.fetch(url)) {
+            assertEquals(200, response.statusCode());
+            assertEquals(16, response.body().readNBytes(16).length);
+        }
+        assertNull(cache.lookup(url));
+        assertEquals(List.of(), files(), "The half-written entry should be deleted");
+
+        read(url);
+        assertNotNull(cache.lookup(url), "A body read to the end should be committed");
+    }
+
+    /**
+     * Tests that a body closed twice, first by the parser and then by the response, is committed once.
+     */
+    @Test
+    public void testClosingTwiceCommitsOnce() throws IOException {
+        start(SyntheticSite.builder().validators(true, false), 1024 * 1024);
+        String url = site.pageUrl(1);
+        Logger logger = (Logger) LoggerFactory.getLogger(HttpResponseCache.class);
+        ListAppender<ILoggingEvent> appender = new ListAppender<>();
+        appender.start();
+        logger.addAppender(appender);
+        try {
+            try (FetchResponse response = fetcher.fetch(url)) {
+                response.body().readAllBytes();
+                response.body().close();
+            }
+
+            HttpResponseCache.CachedResponse cached = cache.lookup(url);
+            assertNotNull(cached, "The entry should be committed");
+            assertEquals(List.of(cached.file()), files());
+            assertEquals(List.of(), appender.list.stream().filter(event -> event.getLevel() == Level.WARN).toList(),
+                    "The second close should not try to commit again");
+        } finally {
+            logger.detachAppender(appender);
+        }
+    }
+
+    /**
+     * Tests that the least recently used entries are evicted once the cache grows past its size cap.
+     */
+    @Test
+    public void testEvictsLeastRecentlyUsed() throws Exception {
+        start(SyntheticSite.builder().validators(true, false), 2000);
+        for (int id = 0; id < 10; id++) {
+            read(site.pageUrl(id));
+            // Entries are ordered by modification time, which must differ between pages
+            Thread.sleep(10);
+        }
+
+        long size = 0;
+        for (Path file : files()) {
+            size += Files.size(file);
+        }
+        assertTrue(size <= 2000, "The cache should be under its cap, but holds " + size + " bytes");
+        assertNull(cache.lookup(site.pageUrl(0)), "The oldest entry should be evicted");
+        assertNotNull(cache.lookup(site.pageUrl(9)), "The newest entry should be kept");
+    }
+
+    /**
+     * Tests that a page evicted while its conditional request is in flight is fetched again without validators
+     * instead of failing on the 304.
+     */
+    @Test
+    public void testEvictedDuringRevalidation() throws Exception {
+        start(SyntheticSite.builder().validators(true, false).latencyMillis(300), 1024 * 1024);
+        String url = site.pageUrl(1);
+        String body = read(url);
+
+        CompletableFuture<String> refetched = CompletableFuture.supplyAsync(() -> {
+            try {
+                return read(url);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        Thread.sleep(100);
+        for (Path file : files()) {
+            Files.delete(file);
+        }
+
+        assertEquals(body, refetched.get());
+        assertEquals(1, site.getNotModifiedCount());
+        assertEquals(3, site.getRequestCount("/page/1"));
+        assertEquals(0, registry.counter("blackwidow.fetch.cached").count());
+    }
+
+    private void assertRevalidates() throws IOException {
+        String url = site.pageUrl(1);
+        String body = read(url);
+        assertEquals(0, site.getNotModifiedCount());
+        assertNotNull(cache.lookup(url));
+
+        assertEquals(body, read(url));
+        assertEquals(1, site.getNotModifiedCount());
+        assertEquals(2, site.getRequestCount("/page/1"));
+        assertEquals(1, registry.counter("blackwidow.fetch.cached").count());
+    }
+
+    private void start(SyntheticSite.Builder siteBuilder, long maxSize) throws IOException {
+        site = siteBuilder.start();
+        ScraperConfig config = new ScraperConfig();
+        config.setResponseCacheDir(dir.toString());
+        config.setResponseCacheMaxSize(maxSize);
+        CrawlMetrics metrics = new CrawlMetrics(registry, config);
+        cache = new HttpResponseCache(config);
+        dnsCache = new DnsCache(config, metrics);
+        fetcher = new HttpFetcher(config, cache, dnsCache, metrics);
+    }
+
+    private String read(String url) throws IOException {
+        try (FetchResponse response = fetcher.fetch(url); InputStream body = response.body()) {
+            assertEquals(200, response.statusCode());
+            return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private List<Path> files() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.toList();
+        }
+    }
+}
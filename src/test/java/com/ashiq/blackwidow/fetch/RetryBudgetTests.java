@@ -0,0 +1,56 @@
+package com.ashiq.blackwidow.fetch;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the retry budget shared by all hosts.
+ */
+public class RetryBudgetTests {
+
+    /**
+     * Tests that the budget starts with its reserve, and then earns a retry per {@code 1 / ratio} requests.
+     */
+    @Test
+    public void testAccruesRetriesPerRequest() {
+        RetryBudget budget = new RetryBudget(0.1, 2);
+        assertTrue(budget.tryRetry());
+        assertTrue(budget.tryRetry());
+        assertFalse(budget.tryRetry(), "The reserve should be used up");
+
+        for (int i = 0; i < 9; i++) {
+            budget.recordRequest();
+        }
+        assertFalse(budget.tryRetry(), "9 requests at a ratio of 0.1 don't earn a retry");
+        budget.recordRequest();
+        budget.recordRequest();
+        assertTrue(budget.tryRetry());
+        assertFalse(budget.tryRetry());
+    }
+
+    /**
+     * Tests that the balance is capped at the reserve however many requests succeed.
+     */
+    @Test
+    public void testCapsBalanceAtReserve() {
+        RetryBudget budget = new RetryBudget(0.5, 3);
+        for (int i = 0; i < 1000; i++) {
+            budget.recordRequest();
+        }
+        for (int i = 0; i < 3; i++) {
+            assertTrue(budget.tryRetry());
+        }
+        assertFalse(budget.tryRetry());
+    }
+
+    /**
+     * Tests that a budget without ratio or reserve allows no retries.
+     */
+    @Test
+    public void testEmptyBudget() {
+        RetryBudget budget = new RetryBudget(0, 0);
+        budget.recordRequest();
+        assertFalse(budget.tryRetry());
+    }
+}
@@ -0,0 +1,91 @@
+package com.ashiq.blackwidow.graph;
+
+import com.ashiq.blackwidow.payload.ScrapedPage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the LinkGraph and its UrlDictionary.
+ */
+public class LinkGraphTests {
+
+    /**
+     * Tests that every URL maps to an id and back, across block boundaries, and that unknown URLs have no id.
+     */
+    @Test
+    public void testDictionaryLookup() {
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            urls.add("https://example.com/products/item-" + i + ".html");
+        }
+        urls.add("https://example.com/");
+        urls.add("https://example.com/café");
+        UrlDictionary dictionary = UrlDictionary.build(urls);
+
+        assertEquals(urls.size(), dictionary.size());
+        for (String url : urls) {
+            int id = dictionary.id(url);
+            assertTrue(id >= 0, "Missing " + url);
+            assertEquals(url, dictionary.url(id));
+        }
+        assertEquals(-1, dictionary.id("https://example.com/products/item-100.html"));
+        assertEquals(-1, dictionary.id("https://a.example.com/"));
+        assertEquals(-1, dictionary.id("https://z.example.com/"));
+    }
+
+    /**
+     * Tests that a tree survives conversion to a graph, a round trip through a mapped file and conversion back.
+     */
+    @Test
+    public void testScrapedPageRoundTrip(@TempDir Path dir) throws IOException {
+        ScrapedPage tree = new ScrapedPage("https://example.com/", List.of(
+                new ScrapedPage("https://example.com/z", List.of(
+                        new ScrapedPage("https://example.com/z/1", List.of()))),
+                new ScrapedPage("https://example.com/a", List.of()),
+                new ScrapedPage("https://example.com/m", List.of(
+                        new ScrapedPage("https://example.com/m/2", List.of()),
+                        new ScrapedPage("https://example.com/m/1", List.of())))));
+
+        LinkGraph graph = LinkGraph.fromScrapedPage(tree);
+        assertEquals(7, graph.size());
+        assertEquals(6, graph.edgeCount());
+        assertEquals(tree, graph.toScrapedPage("https://example.com/"));
+
+        Path file = dir.resolve("site.graph");
+        graph.write(file);
+        LinkGraph mapped = LinkGraph.map(file);
+        assertEquals(tree, mapped.toScrapedPage("https://example.com/"));
+
+        int m = mapped.getUrls().id("https://example.com/m");
+        int[] links = mapped.outlinks(m);
+        assertEquals(2, links.length);
+        assertEquals("https://example.com/m/2", mapped.getUrls().url(links[0]), "Links should keep their order");
+    }
+
+    /**
+     * Tests that duplicate links are dropped and cycles don't repeat pages in the tree.
+     */
+    @Test
+    public void testGraphWithCycles() {
+        LinkGraph graph = LinkGraph.builder()
+                .addEdge("https://example.com/", "https://example.com/a")
+                .addEdge("https://example.com/a", "https://example.com/")
+                .addEdge("https://example.com/a", "https://example.com/b")
+                .addEdge("https://example.com/a", "https://example.com/b")
+                .addEdge("https://example.com/", "https://example.com/b")
+                .build();
+
+        assertEquals(4, graph.edgeCount());
+        ScrapedPage expected = new ScrapedPage("https://example.com/", List.of(
+                new ScrapedPage("https://example.com/a", List.of()),
+                new ScrapedPage("https://example.com/b", List.of())));
+        assertEquals(expected, graph.toScrapedPage("https://example.com/"));
+    }
+}
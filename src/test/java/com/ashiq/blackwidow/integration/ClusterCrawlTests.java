@@ -0,0 +1,195 @@
+package com.ashiq.blackwidow.integration;
+
+import com.ashiq.blackwidow.cluster.ClusterCoordinator;
+import com.ashiq.blackwidow.cluster.ClusterWorker;
+import com.ashiq.blackwidow.config.ScraperConfig;
+import com.ashiq.blackwidow.fetch.DnsCache;
+import com.ashiq.blackwidow.metrics.CrawlMetrics;
+import com.ashiq.blackwidow.output.ResultSink;
+import com.ashiq.blackwidow.payload.PageResult;
+import com.ashiq.blackwidow.service.RobotsTxtService;
+import com.ashiq.blackwidow.service.WebScraper;
+import com.ashiq.blackwidow.support.SyntheticSite;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * End-to-end tests of distributed crawls, with the coordinator and three workers in this process talking over
+ * loopback TCP, as separate processes would.
+ */
+@SpringBootTest(properties = {
+        "scraper.crawl-delay=0",
+        "scraper.max-connections-per-host=8",
+        "scraper.retry-backoff=10",
+        "scraper.circuit-open-time=100",
+        "scraper.retry-budget-reserve=1000",
+        "scraper.max-concurrency=8",
+        "scraper.cluster-status-interval=50"
+})
+public class ClusterCrawlTests {
+
+    private static final int WORKERS = 3;
+
+    @Autowired
+    private WebScraper webScraper;
+
+    @Autowired
+    private RobotsTxtService robotsTxtService;
+
+    @Autowired
+    private DnsCache dnsCache;
+
+    @Autowired
+    private ScraperConfig config;
+
+    @Autowired
+    private CrawlMetrics metrics;
+
+    @Autowired
+    private ClusterCoordinator coordinator;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    /**
+     * Tests that a site spread over several hosts is crawled in full, every page exactly once, with the results
+     * of all workers merged and the depth and parent of each page kept across workers.
+     */
+    @Test
+    public void testCrawlsEveryPageOnceAcrossWorkers() throws Exception {
+        double forwarded = forwardedUrls();
+        try (SyntheticSite site = SyntheticSite.builder().pages(300).fanOut(5).hosts(4).start()) {
+            Map<String, PageResult> results = crawl(site, 100, 100_000);
+
+            assertEquals(300, results.size());
+            for (int id = 0; id < 300; id++) {
+                assertEquals(1, site.getRequestCount("/page/" + id), "Page " + id + " should be fetched once");
+                assertNull(results.get(site.pageUrl(id)).error());
+            }
+            PageResult child = results.get(site.pageUrl(7));
+            assertEquals(2, child.depth());
+            assertEquals(site.pageUrl(1), child.parent());
+        }
+        assertTrue(forwardedUrls() > forwarded, "URLs of other workers' hosts should be forwarded");
+    }
+
+    /**
+     * Tests that the page budget holds over all workers together, give or take the pages in progress when it
+     * runs out, up to {@code max-concurrency} per worker. Every worker also caps itself at the budget, so this
+     * checks the crawl stops well short of each worker using it all. Responses are slowed down so that the workers
+     * don't race through the budget before the coordinator can stop them.
+     */
+    @Test
+    public void testRespectsPageBudgetAcrossWorkers() throws Exception {
+        try (SyntheticSite site = SyntheticSite.builder().pages(2000).fanOut(5).hosts(4).latencyMillis(20).start()) {
+            Map<String, PageResult> results = crawl(site, 100, 100);
+
+            assertTrue(results.size() >= 100, "The crawl should use its budget: " + results.size());
+            assertTrue(results.size() < 200, "The crawl should stop soon after its budget: " + results.size());
+            assertEquals(results.size(), IntStream.range(0, 2000).map(id -> site.getRequestCount("/page/" + id)).sum());
+        }
+    }
+
+    /**
+     * Tests that the crawl fails, rather than waits forever for a status reply, when a worker dies mid-crawl.
+     * Responses are slowed down so that the crawl is still running when the worker is closed.
+     */
+    @Test
+    public void testFailsWhenWorkerDies() throws Exception {
+        try (SyntheticSite site = SyntheticSite.builder().pages(2000).fanOut(5).hosts(4).latencyMillis(20).start()) {
+            List<ClusterWorker> workers = new ArrayList<>();
+            try {
+                List<String> addresses = new ArrayList<>();
+                for (int i = 0; i < WORKERS; i++) {
+                    ClusterWorker worker = new ClusterWorker(webScraper, robotsTxtService, dnsCache, config, metrics, 0);
+                    workers.add(worker);
+                    addresses.add("localhost:" + worker.getPort());
+                }
+                AtomicInteger reported = new AtomicInteger();
+                ResultSink sink = new ResultSink() {
+                    @Override
+                    public void accept(PageResult result) {
+                        // Closed on another thread, so as not to hold up the coordinator's reader thread
+                        if (reported.incrementAndGet() == 20) {
+                            Thread.ofVirtual().start(() -> {
+                                try {
+                                    workers.get(1).close();
+                                } catch (IOException e) {
+                                    throw new UncheckedIOException(e);
+                                }
+                            });
+                        }
+                    }
+
+                    @Override
+                    public void close() {
+                    }
+                };
+
+                assertTimeoutPreemptively(Duration.ofSeconds(30), () -> assertThrows(IOException.class,
+                        () -> coordinator.crawl(URI.create(site.getHomeUrl()), addresses, 100, 100_000, sink)));
+            } finally {
+                for (ClusterWorker worker : workers) {
+                    worker.close();
+                }
+            }
+        }
+    }
+
+    private Map<String, PageResult> crawl(SyntheticSite site, int maxDepth, int maxPages) throws IOException {
+        Map<String, PageResult> results = new ConcurrentHashMap<>();
+        List<String> duplicates = new CopyOnWriteArrayList<>();
+        List<ClusterWorker> workers = new ArrayList<>();
+        try {
+            List<String> addresses = new ArrayList<>();
+            for (int i = 0; i < WORKERS; i++) {
+                ClusterWorker worker = new ClusterWorker(webScraper, robotsTxtService, dnsCache, config, metrics, 0);
+                workers.add(worker);
+                addresses.add("localhost:" + worker.getPort());
+            }
+            ResultSink sink = new ResultSink() {
+                @Override
+                public void accept(PageResult result) {
+                    // Asserting here would only kill the coordinator's reader thread
+                    if (results.putIfAbsent(result.url(), result) != null) {
+                        duplicates.add(result.url());
+                    }
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+            int pages = coordinator.crawl(URI.create(site.getHomeUrl()), addresses, maxDepth, maxPages, sink);
+            assertEquals(List.of(), duplicates, "Pages should be reported once");
+            assertEquals(results.size(), pages);
+            return results;
+        } finally {
+            for (ClusterWorker worker : workers) {
+                worker.close();
+            }
+        }
+    }
+
+    private double forwardedUrls() {
+        Counter counter = registry.find("blackwidow.cluster.urls").tag("direction", "sent").counter();
+        return counter == null ? 0 : counter.count();
+    }
+}
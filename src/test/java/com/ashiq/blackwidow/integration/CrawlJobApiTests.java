@@ -0,0 +1,186 @@
+package com.ashiq.blackwidow.integration;
+
+import com.ashiq.blackwidow.job.CrawlJob;
+import com.ashiq.blackwidow.payload.CrawlJobStatus;
+import com.ashiq.blackwidow.support.SyntheticSite;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * End-to-end tests of the job API, submitting crawls of synthetic sites over HTTP.
+ * A single job runs at a time and one more can wait, so a slow site holds the queue in a known state.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "scraper.crawl-delay=0",
+        "scraper.max-connections-per-host=8",
+        "scraper.retry-backoff=10",
+        "scraper.circuit-open-time=100",
+        "scraper.retry-budget-reserve=1000",
+        "scraper.job-concurrency=1",
+        "scraper.job-queue-size=1",
+        "scraper.job-retention=2000"
+})
+public class CrawlJobApiTests {
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * Tests that jobs queue behind a running job, that a full queue answers 503, and that cancelling a queued job
+     * ends it straight away while a running job ends once its pages in flight are done, letting the next job run
+     * to completion.
+     */
+    @Test
+    public void testQueueAndCancel() throws Exception {
+        try (SyntheticSite slow = SyntheticSite.builder().pages(1000).latencyMillis(200).start();
+             SyntheticSite fast = SyntheticSite.builder().pages(20).start()) {
+            CrawlJobStatus running = submit(slow.getHomeUrl(), 1000);
+            await(running.id(), CrawlJob.State.RUNNING);
+
+            CrawlJobStatus queued = submit(fast.getHomeUrl(), 20);
+            assertEquals(CrawlJob.State.QUEUED, queued.state());
+            assertEquals(503, post(json(fast.getHomeUrl(), 20)).statusCode(), "The queue should be full");
+
+            CrawlJobStatus cancelled = parse(send(HttpRequest.newBuilder(jobUri(queued.id())).DELETE()));
+            assertEquals(CrawlJob.State.CANCELLED, cancelled.state());
+            assertNull(status(queued.id()).startedAt(), "A job cancelled while queued should never start");
+
+            CrawlJobStatus next = submit(fast.getHomeUrl(), 20);
+            assertEquals(CrawlJob.State.QUEUED, next.state(), "The cancelled job should free its place in the queue");
+
+            CrawlJobStatus cancelling = parse(send(HttpRequest.newBuilder(jobUri(running.id())).DELETE()));
+            assertEquals(CrawlJob.State.RUNNING, cancelling.state(), "A running job should finish its pages in flight");
+            CrawlJobStatus stopped = await(running.id(), CrawlJob.State.CANCELLED);
+            assertTrue(stopped.pagesCrawled() < 1000);
+
+            CrawlJobStatus completed = await(next.id(), CrawlJob.State.COMPLETED);
+            assertEquals(20, completed.pagesCrawled());
+            assertNotNull(completed.startedAt());
+            assertEquals(1, fast.getRequestCount("/page/0"), "Only the job that ran should have fetched the site");
+        }
+    }
+
+    /**
+     * Tests that the event stream of a job sends every page and ends with the final status once the job is done.
+     */
+    @Test
+    public void testEventsEndWithJob() throws Exception {
+        try (SyntheticSite site = SyntheticSite.builder().pages(50).latencyMillis(5).start()) {
+            CrawlJobStatus job = submit(site.getHomeUrl(), 50);
+
+            HttpRequest request = HttpRequest.newBuilder(URI.create(jobUri(job.id()) + "/events")).GET().build();
+            List<String> lines = client.sendAsync(request, HttpResponse.BodyHandlers.ofLines())
+                    .thenApply(response -> response.body().toList())
+                    .get(30, TimeUnit.SECONDS);
+
+            List<String> events = lines.stream().filter(line -> line.startsWith("event:")).toList();
+            assertEquals("event:status", events.getFirst());
+            assertEquals(50, events.stream().filter(event -> event.equals("event:page")).count());
+            assertEquals("event:status", events.getLast());
+
+            String last = lines.stream().filter(line -> line.startsWith("data:")).toList().getLast();
+            CrawlJobStatus status = objectMapper.readValue(last.substring("data:".length()), CrawlJobStatus.class);
+            assertEquals(CrawlJob.State.COMPLETED, status.state());
+            assertEquals(50, status.pagesCrawled());
+        }
+    }
+
+    /**
+     * Tests that invalid seeds and limits are rejected with 400, and unknown jobs answered with 404.
+     */
+    @Test
+    public void testRejectsBadInput() throws Exception {
+        assertEquals(400, post("{\"url\": \"ftp://example.com/\"}").statusCode());
+        assertEquals(400, post("{\"url\": \"/relative/path\"}").statusCode());
+        assertEquals(400, post("{}").statusCode());
+        assertEquals(400, post("{\"url\": \"http://localhost/\", \"maxDepth\": -1}").statusCode());
+        assertEquals(400, post("{\"url\": \"http://localhost/\", \"maxPages\": 0}").statusCode());
+
+        assertEquals(404, send(HttpRequest.newBuilder(jobUri("no-such-job")).GET()).statusCode());
+        assertEquals(404, send(HttpRequest.newBuilder(jobUri("no-such-job")).DELETE()).statusCode());
+    }
+
+    /**
+     * Tests that finished jobs are dropped once the retention time has passed.
+     */
+    @Test
+    public void testEvictsFinishedJobs() throws Exception {
+        try (SyntheticSite site = SyntheticSite.builder().pages(5).start()) {
+            CrawlJobStatus first = submit(site.getHomeUrl(), 5);
+            await(first.id(), CrawlJob.State.COMPLETED);
+            Thread.sleep(2100);
+
+            CrawlJobStatus second = submit(site.getHomeUrl(), 5);
+            assertEquals(404, send(HttpRequest.newBuilder(jobUri(first.id())).GET()).statusCode());
+            await(second.id(), CrawlJob.State.COMPLETED);
+        }
+    }
+
+    private CrawlJobStatus submit(String url, int maxPages) throws IOException, InterruptedException {
+        HttpResponse<String> response = post(json(url, maxPages));
+        assertEquals(202, response.statusCode(), response.body());
+        CrawlJobStatus status = parse(response);
+        assertEquals("/api/jobs/" + status.id(), response.headers().firstValue("Location").orElse(null));
+        return status;
+    }
+
+    private CrawlJobStatus status(String id) throws IOException, InterruptedException {
+        return parse(send(HttpRequest.newBuilder(jobUri(id)).GET()));
+    }
+
+    /**
+     * Polls a job until it reaches the given state, failing if it ends in another one.
+     */
+    private CrawlJobStatus await(String id, CrawlJob.State state) throws IOException, InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (System.nanoTime() < deadline) {
+            CrawlJobStatus status = status(id);
+            if (status.state() == state) {
+                return status;
+            }
+            assertFalse(status.state().isFinished(), "Job ended as " + status.state() + " instead of " + state);
+            Thread.sleep(20);
+        }
+        return fail("Job didn't reach " + state + " in time");
+    }
+
+    private HttpResponse<String> post(String body) throws IOException, InterruptedException {
+        return send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/jobs"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body)));
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private CrawlJobStatus parse(HttpResponse<String> response) throws IOException {
+        return objectMapper.readValue(response.body(), CrawlJobStatus.class);
+    }
+
+    private URI jobUri(String id) {
+        return URI.create("http://localhost:" + port + "/api/jobs/" + id);
+    }
+
+    private static String json(String url, int maxPages) {
+        return "{\"url\": \"" + url + "\", \"maxDepth\": 100, \"maxPages\": " + maxPages + "}";
+    }
+}
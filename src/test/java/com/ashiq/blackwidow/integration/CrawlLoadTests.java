@@ -0,0 +1,161 @@
+package com.ashiq.blackwidow.integration;
+
+import com.ashiq.blackwidow.output.ResultSink;
+import com.ashiq.blackwidow.payload.PageResult;
+import com.ashiq.blackwidow.service.WebScraper;
+import com.ashiq.blackwidow.support.SyntheticSite;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Load test streaming crawls of large synthetic sites through the WebScraper, reporting pages per second,
+ * the p99 fetch latency and the peak heap for each site size.
+ * Excluded from the normal build; run it with {@code mvn -P load-tests test}, and pick the site sizes with
+ * {@code -Dload.pages=10000,100000,1000000}; {@code -Dload.fanOut} and {@code -Dload.latencyMillis} shape the
+ * sites. Give the JVM the heap you want to measure against with {@code -DargLine=-Xmx512m}.
+ */
+@Slf4j
+@Tag("load")
+@SpringBootTest(properties = {
+        "scraper.crawl-delay=0",
+        "scraper.visited-expected-urls=1000000",
+        "management.metrics.distribution.percentiles.blackwidow.fetch.duration=0.99"
+})
+public class CrawlLoadTests {
+
+    @Autowired
+    private WebScraper webScraper;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    /**
+     * Crawls sites of each configured size and checks every page was crawled.
+     */
+    @Test
+    public void testCrawlThroughput() throws Exception {
+        int[] sizes = Arrays.stream(System.getProperty("load.pages", "10000,100000").split(","))
+                .map(String::trim)
+                .mapToInt(Integer::parseInt)
+                .toArray();
+        int fanOut = Integer.getInteger("load.fanOut", 10);
+        long latencyMillis = Long.getLong("load.latencyMillis", 0);
+
+        // Warm up the JIT on a small site first, so the first reported size isn't mostly compilation
+        try (SyntheticSite site = SyntheticSite.builder().pages(Integer.getInteger("load.warmupPages", 5000))
+                .fanOut(fanOut).trackRequests(false).start()) {
+            run(site);
+        }
+
+        List<String> report = new ArrayList<>();
+        for (int pages : sizes) {
+            try (SyntheticSite site = SyntheticSite.builder().pages(pages).fanOut(fanOut).latencyMillis(latencyMillis)
+                    .trackRequests(false).start()) {
+                report.add(run(site));
+            }
+        }
+
+        log.info("Crawl load test, fan-out {}, {} ms latency:", fanOut, latencyMillis);
+        log.info(String.format("%10s %10s %12s %12s %14s", "pages", "seconds", "pages/s", "p99 fetch ms", "peak heap MB"));
+        report.forEach(log::info);
+    }
+
+    private String run(SyntheticSite site) throws Exception {
+        // Start each run with fresh fetch timers, so the percentiles only cover this site
+        registry.find("blackwidow.fetch.duration").timers().forEach(registry::remove);
+        System.gc();
+
+        CountingSink sink = new CountingSink();
+        try (HeapSampler heap = new HeapSampler()) {
+            long start = System.nanoTime();
+            webScraper.scrape(new URI(site.getHomeUrl()), Integer.MAX_VALUE, site.getLinkedPages(), sink);
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            assertEquals(site.getLinkedPages(), sink.pages.get(), "Every page should be crawled");
+            assertEquals(0, sink.errors.get(), "No page should fail");
+
+            return String.format("%10d %10.2f %12.0f %12.2f %14.1f", site.getLinkedPages(), seconds,
+                    site.getLinkedPages() / seconds, p99FetchMillis(), heap.getPeakBytes() / 1e6);
+        }
+    }
+
+    private double p99FetchMillis() {
+        double p99 = 0;
+        for (Timer timer : registry.find("blackwidow.fetch.duration").timers()) {
+            for (ValueAtPercentile percentile : timer.takeSnapshot().percentileValues()) {
+                p99 = Math.max(p99, percentile.value(TimeUnit.MILLISECONDS));
+            }
+        }
+        return p99;
+    }
+
+    /**
+     * Sink counting pages without keeping them, so the heap only holds what the crawler itself needs.
+     */
+    private static class CountingSink implements ResultSink {
+        private final AtomicInteger pages = new AtomicInteger();
+        private final AtomicInteger errors = new AtomicInteger();
+
+        @Override
+        public void accept(PageResult result) {
+            pages.incrementAndGet();
+            if (result.error() != null) {
+                errors.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Samples the used heap every 10 ms on a background thread and keeps the highest value seen.
+     */
+    private static class HeapSampler implements AutoCloseable {
+        private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        private final AtomicLong peak = new AtomicLong();
+        private final Thread thread;
+
+        HeapSampler() {
+            thread = Thread.ofPlatform().daemon().name("heap-sampler").start(() -> {
+                while (!Thread.currentThread().isInterrupted()) {
+                    peak.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+                    try {
+                        Thread.sleep(10);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            });
+        }
+
+        long getPeakBytes() {
+            return Math.max(peak.get(), memory.getHeapMemoryUsage().getUsed());
+        }
+
+        @Override
+        public void close() throws InterruptedException {
+            thread.interrupt();
+            thread.join();
+        }
+    }
+}
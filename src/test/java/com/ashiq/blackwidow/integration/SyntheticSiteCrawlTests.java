@@ -0,0 +1,289 @@
+package com.ashiq.blackwidow.integration;
+
+import com.ashiq.blackwidow.output.ResultSink;
+import com.ashiq.blackwidow.payload.PageResult;
+import com.ashiq.blackwidow.service.WebScraper;
+import com.ashiq.blackwidow.support.SyntheticSite;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * End-to-end tests crawling synthetic sites served on the loopback interface, so they run without a network.
+ * Every test starts its own site on a fresh port, which the crawler sees as a new host with its own robots.txt.
+ */
+@SpringBootTest(properties = {
+        "scraper.crawl-delay=0",
+        "scraper.max-connections-per-host=8",
+        "scraper.retry-backoff=10",
+        "scraper.circuit-open-time=100",
+        "scraper.retry-budget-reserve=1000",
+        "scraper.near-duplicate-detection=true"
+})
+public class SyntheticSiteCrawlTests {
+
+    private static final int MAX_DEPTH = 100;
+    private static final int MAX_PAGES = 100_000;
+
+    @Autowired
+    private WebScraper webScraper;
+
+    /**
+     * Tests that every page of a site is crawled, exactly once, with the depth and parent it was first found at.
+     */
+    @Test
+    public void testCrawlsEveryPageOnce() throws Exception {
+        try (SyntheticSite site = SyntheticSite.builder().pages(500).fanOut(5).start()) {
+            Map<String, PageResult> results = crawl(site, MAX_DEPTH, MAX_PAGES);
+
+            assertEquals(500, results.size());
+            for (int id = 0; id < 500; id++) {
+                assertEquals(1, site.getRequestCount("/page/" + id), "Page " + id + " should be fetched once");
+                assertNull(results.get(site.pageUrl(id)).error());
+            }
+            PageResult child = results.get(site.pageUrl(7));
+            assertEquals(2, child.depth());
+            assertEquals(site.pageUrl(1), child.parent());
+            assertFalse(results.get(site.getHomeUrl()).links().contains("https://elsewhere.example.org/"),
+                    "Links to other sites should not be followed");
+        }
+    }
+
+    /**
+     * Tests that the depth and page budgets of a crawl are respected.
+     */
+    @Test
+    public void testRespectsDepthAndPageBudgets() throws Exception {
+        try (SyntheticSite site = SyntheticSite.builder().pages(500).fanOut(5).start()) {
+            // Depth 2 reaches the home page, its 5 children and their 25 children
+            assertEquals(31, crawl(site, 2, MAX_PAGES).size());
+        }
+        try (SyntheticSite site = SyntheticSite.builder().pages(500).fanOut(5).start()) {
+            assertEquals(50, crawl(site, MAX_DEPTH, 50).size());
+            assertEquals(50, IntStream.range(0, 500).map(id -> site.getRequestCount("/page/" + id)).sum());
+        }
+    }
+
+    /**
+     * Tests that pages disallowed by robots.txt are never requested, and that its Crawl-delay spaces out requests.
+     */
+    @Test
+    public void testHonoursRobotsTxt() throws Exception {
+        try (SyntheticSite site = SyntheticSite.builder().pages(6).fanOut(5).disallow("/page/3")
+                .crawlDelaySeconds(1).start()) {
+            Map<String, PageResult> results = crawl(site, MAX_DEPTH, MAX_PAGES);
+
+            assertEquals(5, results.size());
+            assertEquals(0, site.getRequestCount("/page/3"));
+            assertFalse(results.get(site.getHomeUrl()).links().contains(site.pageUrl(3)));
+
+            List<Long> times = site.getPageRequestTimes();
+            for (int i = 1; i < times.size(); i++) {
+                long gapMillis = (times.get(i) - times.get(i - 1)) / 1_000_000;
+                assertTrue(gapMillis >= 900, "Requests should be a crawl delay apart, but were " + gapMillis + " ms");
+            }
+        }
+    }
+
+    /**
+     * Tests that pages only listed in gzipped sitemaps, behind a nested sitemap index, are crawled.
+     */
+    @Test
+    public void testCrawlsPagesFromNestedGzippedSitemaps() throws Exception {
+        try (SyntheticSite site = SyntheticSite.builder().pages(20).fanOut(4).sitemapPages(250, 100).start()) {
+            Map<String, PageResult> results = crawl(site, MAX_DEPTH, MAX_PAGES);
+
+            assertEquals(270, results.size());
+            assertEquals(1, site.getRequestCount("/sitemaps/nested.xml"));
+            assertEquals(1, site.getRequestCount("/sitemaps/pages-2.xml.gz"));
+            PageResult orphan = results.get(site.pageUrl(269));
+            assertEquals(1, orphan.depth());
+            assertEquals(site.getHomeUrl(), orphan.parent());
+        }
+    }
+
+    /**
+     * Tests that a crawl running out of page budget has fetched the sitemap pages with a high priority and a recent
+     * modification time, rather than the first ones listed. Responses are slow, so URLs queue up instead of being
+     * taken as soon as they are parsed.
+     */
+    @Test
+    public void testFetchesImportantSitemapPagesFirst() throws Exception {
+        try (SyntheticSite site = SyntheticSite.builder().pages(20).fanOut(4).sitemapPages(250, 250)
+                .importantSitemapPageEvery(10).latencyMillis(20).start()) {
+            Map<String, PageResult> results = crawl(site, MAX_DEPTH, 60);
+
+            assertEquals(60, results.size());
+            for (int id = 20; id < 270; id += 10) {
+                assertNotNull(results.get(site.pageUrl(id)), "Important sitemap page " + id + " should be fetched");
+            }
+        }
+    }
+
+    /**
+     * Tests that error responses are reported as failed pages without stopping the crawl, once throttled requests
+     * have been retried, and that pages behind redirect chains are crawled.
+     */
+    @Test
+    public void testHandlesErrorsAndRedirects() throws Exception {
+        try (SyntheticSite site = SyntheticSite.builder().pages(200).fanOut(4).retryAfter("0")
+                .tooManyRequestsEvery(7).serverErrorEvery(11).forbiddenEvery(13).redirectEvery(5, 3).start()) {
+            Map<String, PageResult> results = crawl(site, MAX_DEPTH, MAX_PAGES);
+
+            PageResult tooManyRequests = results.get(site.pageUrl(7));
+            assertNotNull(tooManyRequests.error());
+            assertTrue(tooManyRequests.links().isEmpty());
+            assertEquals(3, site.getRequestCount("/page/7"), "A throttled request should be retried twice");
+            assertNotNull(results.get(site.pageUrl(11)).error());
+
+            // A 403 is an empty page rather than an error, so the crawl goes on
+            PageResult forbidden = results.get(site.pageUrl(13));
+            assertNull(forbidden.error());
+            assertTrue(forbidden.links().isEmpty());
+
+            // Page 5 redirects three times before it is served, and its children are still found
+            PageResult redirected = results.get(site.pageUrl(5));
+            assertNull(redirected.error());
+            assertTrue(redirected.links().contains(site.pageUrl(23)));
+            assertEquals(1, site.getRequestCount("/redirect/5/2"));
+            assertEquals(1, site.getRequestCount("/moved/5"));
+            assertTrue(results.containsKey(site.pageUrl(23)));
+        }
+    }
+
+    /**
+     * Tests that a throttled page is fetched again once its Retry-After has passed.
+     */
+    @Test
+    public void testRetriesAfterRetryAfter() throws Exception {
+        try (SyntheticSite site = SyntheticSite.builder().pages(30).fanOut(5)
+                .tooManyRequestsEvery(10).throttledRequests(1).start()) {
+            long start = System.nanoTime();
+            Map<String, PageResult> results = crawl(site, MAX_DEPTH, MAX_PAGES);
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+            assertEquals(30, results.size());
+            assertTrue(results.values().stream().allMatch(result -> result.error() == null));
+            assertEquals(2, site.getRequestCount("/page/10"));
+            assertTrue(elapsedMillis >= 900, "The crawl should wait out the Retry-After, but took " + elapsedMillis + " ms");
+        }
+    }
+
+    /**
+     * Tests that once a site goes dark, its circuit opens and its remaining pages are given up on after a few
+     * probe requests, rather than each being retried.
+     */
+    @Test
+    public void testGivesUpOnDarkHost() throws Exception {
+        try (SyntheticSite site = SyntheticSite.builder().pages(1000).fanOut(20).failAfter(40).start()) {
+            long start = System.nanoTime();
+            Map<String, PageResult> results = crawl(site, MAX_DEPTH, MAX_PAGES);
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+            List<PageResult> failed = results.values().stream().filter(result -> result.error() != null).toList();
+            int pageRequests = site.getPageRequestTimes().size();
+            assertTrue(failed.size() > 100, "Pages found before the site went dark should fail");
+            assertTrue(failed.stream().anyMatch(result -> result.error().contains("unavailable")));
+            assertTrue(pageRequests - 40 < failed.size(),
+                    "Failing pages should mostly not be requested, but there were " + pageRequests + " requests");
+            assertTrue(elapsedMillis < 10_000, "The crawl should give up quickly, but took " + elapsedMillis + " ms");
+        }
+    }
+
+    /**
+     * Tests that links to binary files are rejected after a HEAD request, without downloading them, and that pages
+     * over their size limit are given up on while they are being read.
+     */
+    @Test
+    public void testSkipsBinaryFilesAndOversizedPages() throws Exception {
+        long largePageSize = 64L * 1024 * 1024;
+        try (SyntheticSite site = SyntheticSite.builder().pages(30).fanOut(5).fileEvery(5, 10_000_000)
+                .largePageEvery(7, largePageSize).start()) {
+            Map<String, PageResult> results = crawl(site, MAX_DEPTH, MAX_PAGES);
+
+            URI home = URI.create(site.getHomeUrl());
+            for (int id = 5; id < 30; id += 5) {
+                String path = "/files/" + id + ".pdf";
+                assertTrue(results.get(home.resolve(path).toString()).error().contains("content type"), path);
+                assertEquals(1, site.getRequestCount(path), "Only a HEAD request should be sent for " + path);
+                assertEquals(0, site.getBodyBytesSent(path));
+            }
+            for (int id = 7; id < 30; id += 7) {
+                String path = "/large/" + id;
+                assertTrue(results.get(home.resolve(path).toString()).error().contains("larger than"), path);
+                assertTrue(site.getBodyBytesSent(path) < largePageSize / 2,
+                        "Reading " + path + " should stop at its limit, but " + site.getBodyBytesSent(path) + " bytes were sent");
+            }
+            for (int id = 0; id < 30; id++) {
+                assertNull(results.get(site.pageUrl(id)).error());
+            }
+        }
+    }
+
+    /**
+     * Tests that the links of a page that is a near-duplicate of one crawled before are not followed, so endless
+     * sort orders of the same pages stop after the first.
+     */
+    @Test
+    public void testSkipsLinksOfNearDuplicatePages() throws Exception {
+        try (SyntheticSite site = SyntheticSite.builder().pages(50).fanOut(5).sortVariants(true).start()) {
+            Map<String, PageResult> results = crawl(site, MAX_DEPTH, MAX_PAGES);
+
+            for (int id = 0; id < 50; id++) {
+                assertNull(results.get(site.pageUrl(id)).error());
+                assertNotNull(results.get(site.pageUrl(id) + "?sort=1"), "The first sort order should be crawled");
+                assertNull(results.get(site.pageUrl(id) + "?sort=2"), "The links of the first sort order should not be followed");
+            }
+            assertEquals(100, results.size());
+        }
+    }
+
+    /**
+     * Tests that pages of a slow site are fetched concurrently, with the number of requests in flight growing
+     * from the initial limit up to at most the connection limit per host.
+     */
+    @Test
+    public void testFetchesSlowPagesConcurrently() throws Exception {
+        try (SyntheticSite site = SyntheticSite.builder().pages(200).fanOut(10).latencyMillis(50).start()) {
+            long start = System.nanoTime();
+            Map<String, PageResult> results = crawl(site, MAX_DEPTH, MAX_PAGES);
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+            assertEquals(200, results.size());
+            assertTrue(site.getMaxConcurrentRequests() > 2, "The concurrency limit should grow while latency is stable");
+            assertTrue(site.getMaxConcurrentRequests() <= 8, "Requests should stay within the connections per host");
+            assertTrue(elapsedMillis < 200 * 50,
+                    "200 pages at 50 ms each should be fetched concurrently, but took " + elapsedMillis + " ms");
+        }
+    }
+
+    private Map<String, PageResult> crawl(SyntheticSite site, int maxDepth, int maxPages) throws Exception {
+        CollectingSink sink = new CollectingSink();
+        webScraper.scrape(new URI(site.getHomeUrl()), maxDepth, maxPages, sink);
+        return sink.results;
+    }
+
+    /**
+     * Sink keeping the results by URL, failing on pages that are emitted twice.
+     */
+    private static class CollectingSink implements ResultSink {
+        private final Map<String, PageResult> results = new ConcurrentHashMap<>();
+
+        @Override
+        public void accept(PageResult result) {
+            assertNull(results.put(result.url(), result), "Page emitted twice: " + result.url());
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
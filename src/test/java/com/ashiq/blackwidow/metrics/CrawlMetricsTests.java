@@ -0,0 +1,128 @@
+package com.ashiq.blackwidow.metrics;
+
+import com.ashiq.blackwidow.config.ScraperConfig;
+import com.ashiq.blackwidow.crawl.CrawlFrontier;
+import com.ashiq.blackwidow.crawl.PolitenessScheduler;
+import com.ashiq.blackwidow.crawl.VisitedUrlSet;
+import com.ashiq.blackwidow.service.RobotsTxtService;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the crawl metrics, recorded into a simple in-memory registry.
+ */
+public class CrawlMetricsTests {
+
+    /**
+     * Tests that fetches, parses and robots.txt lookups are recorded, with fetches of all hosts in one time series
+     * per status unless host tags are on.
+     */
+    @Test
+    public void testRecordsFetchParseAndRobotsMeters() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        CrawlMetrics metrics = new CrawlMetrics(registry, new ScraperConfig());
+
+        metrics.recordFetch("http://a.example.com", "200", TimeUnit.MILLISECONDS.toNanos(10));
+        metrics.recordFetch("http://b.example.com", "200", TimeUnit.MILLISECONDS.toNanos(30));
+        metrics.recordFetch("http://b.example.com", "404", TimeUnit.MILLISECONDS.toNanos(5));
+        Timer fetches = registry.get("blackwidow.fetch.duration").tag("host", "all").tag("status", "200").timer();
+        assertEquals(2, fetches.count());
+        assertEquals(40, fetches.totalTime(TimeUnit.MILLISECONDS), 0.001);
+        assertEquals(2, registry.find("blackwidow.fetch.duration").timers().size());
+
+        metrics.recordParse("jsoup", TimeUnit.MILLISECONDS.toNanos(3));
+        metrics.recordLinks(7);
+        assertEquals(1, registry.get("blackwidow.parse.duration").tag("parser", "jsoup").timer().count());
+        assertEquals(7, registry.get("blackwidow.page.links").summary().totalAmount());
+
+        Cache<String, String> robots = CacheBuilder.newBuilder().recordStats().build();
+        metrics.monitorCache(robots, "robots");
+        robots.put("http://a.example.com", "rules");
+        robots.getIfPresent("http://a.example.com");
+        robots.getIfPresent("http://b.example.com");
+        metrics.recordRobotsDenied();
+        assertEquals(1, registry.get("cache.gets").tag("cache", "robots").tag("result", "hit").functionCounter().count());
+        assertEquals(1, registry.get("cache.gets").tag("cache", "robots").tag("result", "miss").functionCounter().count());
+        assertEquals(1, registry.get("blackwidow.robots.denied").counter().count());
+
+        metrics.recordPage(true);
+        metrics.recordPage(false);
+        assertEquals(1, registry.get("blackwidow.pages").tag("outcome", "error").counter().count());
+    }
+
+    /**
+     * Tests that fetches and concurrency limits get a time series per host only when host tags are on.
+     */
+    @Test
+    public void testTagsHostsOnlyWhenEnabled() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        CrawlMetrics untagged = new CrawlMetrics(registry, new ScraperConfig());
+        untagged.monitorHostLimit("http://a.example.com", new int[]{4}, limit -> limit[0]);
+        assertNull(registry.find("blackwidow.host.concurrency.limit").gauge());
+
+        ScraperConfig config = new ScraperConfig();
+        config.setMetricsHostTag(true);
+        CrawlMetrics tagged = new CrawlMetrics(registry, config);
+        tagged.recordFetch("http://a.example.com", "200", 1);
+        tagged.recordFetch("http://b.example.com", "200", 1);
+        assertEquals(1, registry.get("blackwidow.fetch.duration").tag("host", "http://a.example.com").timer().count());
+        assertEquals(1, registry.get("blackwidow.fetch.duration").tag("host", "http://b.example.com").timer().count());
+
+        int[] limit = {4};
+        tagged.monitorHostLimit("http://a.example.com", limit, l -> l[0]);
+        assertEquals(4, registry.get("blackwidow.host.concurrency.limit").gauge().value());
+        tagged.removeHostLimit("http://a.example.com");
+        assertNull(registry.find("blackwidow.host.concurrency.limit").gauge());
+    }
+
+    /**
+     * Tests that the frontier gauges add up the running crawls, and drop a crawl once it is removed.
+     */
+    @Test
+    public void testReportsFrontiers() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        CrawlMetrics metrics = new CrawlMetrics(registry, new ScraperConfig());
+        CrawlFrontier first = frontier();
+        CrawlFrontier second = frontier();
+        first.seed("http://a.example.com/");
+        second.seed("http://b.example.com/");
+
+        metrics.addFrontier(first);
+        metrics.addFrontier(second);
+        assertEquals(2, registry.get("blackwidow.frontier.size").gauge().value());
+        assertEquals(0, registry.get("blackwidow.frontier.spilled").gauge().value());
+
+        metrics.removeFrontier(first);
+        assertEquals(1, registry.get("blackwidow.frontier.size").gauge().value());
+        assertEquals(0, registry.get("blackwidow.politeness.wait").functionCounter().count());
+    }
+
+    /**
+     * Tests that reading the crawl delay of a host, which the politeness scheduler does for every host it hands
+     * out, doesn't count as a robots.txt cache hit or miss.
+     */
+    @Test
+    public void testCrawlDelayLookupsAreNotCounted() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        ScraperConfig config = new ScraperConfig();
+        RobotsTxtService robotsTxtService = new RobotsTxtService(null, config, new CrawlMetrics(registry, config));
+
+        assertEquals(0, robotsTxtService.getCrawlDelay("http://a.example.com"));
+        assertEquals(0, robotsTxtService.getCrawlDelay("http://a.example.com"));
+        assertEquals(0, registry.get("cache.gets").tag("cache", "robots").tag("result", "hit").functionCounter().count());
+        assertEquals(0, registry.get("cache.gets").tag("cache", "robots").tag("result", "miss").functionCounter().count());
+    }
+
+    private static CrawlFrontier frontier() {
+        return new CrawlFrontier(10, 100, new PolitenessScheduler(host -> 0, 0, 0), null,
+                new VisitedUrlSet(1000, false), null, false, null);
+    }
+}
@@ -0,0 +1,59 @@
+package com.ashiq.blackwidow.output;
+
+import com.ashiq.blackwidow.payload.PageResult;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the StreamingResultSink.
+ */
+public class StreamingResultSinkTests {
+
+    private static final PageResult SEED = new PageResult("https://example.com/", 0, null,
+            List.of("https://example.com/a", "https://example.com/\"b\""), null);
+    private static final PageResult FAILED = new PageResult("https://example.com/a", 1, "https://example.com/",
+            List.of(), "HTTP error\tfetching URL");
+
+    /**
+     * Tests that NDJSON output has one escaped JSON object per page, and survives gzip.
+     */
+    @Test
+    public void testNdjson() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (StreamingResultSink sink = new StreamingResultSink(out, StreamingResultSink.Format.NDJSON, true, 1000)) {
+            sink.accept(SEED);
+            sink.accept(FAILED);
+        }
+
+        String text = new String(new GZIPInputStream(new ByteArrayInputStream(out.toByteArray())).readAllBytes(),
+                StandardCharsets.UTF_8);
+        assertEquals("""
+                {"url":"https://example.com/","depth":0,"links":["https://example.com/a","https://example.com/\\"b\\""]}
+                {"url":"https://example.com/a","depth":1,"parent":"https://example.com/","links":[],"error":"HTTP error\\tfetching URL"}
+                """, text);
+    }
+
+    /**
+     * Tests that TSV output has one line per page with empty fields for missing values.
+     */
+    @Test
+    public void testTsv() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (StreamingResultSink sink = new StreamingResultSink(out, StreamingResultSink.Format.TSV, false, 1000)) {
+            sink.accept(SEED);
+            sink.accept(FAILED);
+        }
+
+        assertEquals("https://example.com/\t0\t\thttps://example.com/a https://example.com/\"b\"\t\n"
+                + "https://example.com/a\t1\thttps://example.com/\t\tHTTP error fetching URL\n",
+                out.toString(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,121 @@
+package com.ashiq.blackwidow.service;
+
+import com.ashiq.blackwidow.config.ScraperConfig;
+import com.ashiq.blackwidow.support.SyntheticSite;
+import com.ashiq.blackwidow.validator.InputProcessor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the batch crawler, crawling seeds on synthetic sites into a temporary output directory.
+ * The batch settings come from a config of the test's own, so the shared application config is left alone.
+ */
+@SpringBootTest(properties = {
+        "scraper.crawl-delay=0",
+        "scraper.max-connections-per-host=8",
+        "scraper.retry-backoff=10",
+        "scraper.circuit-open-time=100",
+        "scraper.retry-budget-reserve=1000"
+})
+public class BatchCrawlerTests {
+
+    @Autowired
+    private WebScraper webScraper;
+
+    @Autowired
+    private InputProcessor inputProcessor;
+
+    @TempDir
+    private Path dir;
+
+    /**
+     * Tests that blank lines and comments are skipped, invalid seeds are only recorded in the summary, and every
+     * valid seed is crawled into a file of its own named after its position in the list.
+     */
+    @Test
+    public void testCrawlsEachSeedIntoItsOwnFile() throws IOException {
+        try (SyntheticSite small = SyntheticSite.builder().pages(10).start();
+             SyntheticSite large = SyntheticSite.builder().pages(20).start()) {
+            String seeds = """
+                    # Seeds for the test
+
+                    %s
+                    not a url
+                      %s
+                    ftp://example.com/
+                    """.formatted(small.getHomeUrl(), large.getHomeUrl());
+            batchCrawler(4, 100).crawl(new BufferedReader(new StringReader(seeds)));
+
+            assertEquals(List.of(
+                    "1\t" + small.getHomeUrl() + "\t10\tok",
+                    "2\tnot a url\t0\tinvalid URL",
+                    "3\t" + large.getHomeUrl() + "\t20\tok",
+                    "4\tftp://example.com/\t0\tinvalid URL"), summary());
+
+            assertEquals(List.of("00001-localhost.ndjson", "00003-localhost.ndjson", "summary.tsv"), fileNames());
+            List<String> first = Files.readAllLines(dir.resolve("00001-localhost.ndjson"));
+            assertEquals(10, first.size());
+            assertTrue(first.getFirst().contains(small.getHomeUrl()), "The seed should be the first page written");
+            assertEquals(20, Files.readAllLines(dir.resolve("00003-localhost.ndjson")).size());
+        }
+    }
+
+    /**
+     * Tests that no more than batch-concurrency seeds are crawled at once.
+     */
+    @Test
+    public void testLimitsConcurrentCrawls() throws IOException {
+        try (SyntheticSite site = SyntheticSite.builder().pages(10).latencyMillis(50).start()) {
+            StringBuilder seeds = new StringBuilder();
+            for (int id = 1; id <= 6; id++) {
+                seeds.append(site.pageUrl(id)).append('\n');
+            }
+            // Depth 0 fetches only the seed, so each crawl makes one page request at a time
+            batchCrawler(2, 0).crawl(new BufferedReader(new StringReader(seeds.toString())));
+
+            assertEquals(2, site.getMaxConcurrentRequests());
+            List<String> summary = summary();
+            assertEquals(6, summary.size());
+            for (int id = 1; id <= 6; id++) {
+                assertEquals(id + "\t" + site.pageUrl(id) + "\t1\tok", summary.get(id - 1));
+            }
+        }
+    }
+
+    private BatchCrawler batchCrawler(int concurrency, int maxDepth) {
+        ScraperConfig config = new ScraperConfig();
+        config.setBatchOutputDir(dir.toString());
+        config.setBatchConcurrency(concurrency);
+        config.setMaxDepth(maxDepth);
+        config.setOutputFormat(ScraperConfig.OutputFormat.NDJSON);
+        return new BatchCrawler(webScraper, inputProcessor, config);
+    }
+
+    /**
+     * Reads the rows of the summary in seed order, since seeds finish in any order.
+     */
+    private List<String> summary() throws IOException {
+        return Files.readAllLines(dir.resolve("summary.tsv")).stream()
+                .sorted(Comparator.comparingInt(row -> Integer.parseInt(row.substring(0, row.indexOf('\t')))))
+                .toList();
+    }
+
+    private List<String> fileNames() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(file -> file.getFileName().toString()).sorted().toList();
+        }
+    }
+}
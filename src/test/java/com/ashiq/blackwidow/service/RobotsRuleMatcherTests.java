@@ -0,0 +1,127 @@
+package com.ashiq.blackwidow.service;
+
+import crawlercommons.robots.SimpleRobotRules;
+import crawlercommons.robots.SimpleRobotRulesParser;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the compiled robots.txt rule matcher.
+ */
+public class RobotsRuleMatcherTests {
+
+    private static final String ROBOTS_TXT = """
+            User-agent: *
+            Disallow: /private
+            Allow: /private/public
+            Disallow: /*.pdf$
+            Disallow: /search?
+            Allow: /search?q=allowed
+            Disallow: /*/drafts/
+            Disallow: /tmp/*/cache*
+            Disallow: /exact$
+            Disallow: /docs/index.html
+            Allow: /same
+            Disallow: /same
+            Disallow: /a%2Fb
+            Disallow: /caf%C3%A9
+            Disallow: /*.php$
+            Allow: /*.php?
+            """;
+
+    private static final List<String> URLS = List.of(
+            "https://example.com/",
+            "https://example.com",
+            "https://example.com/robots.txt",
+            "https://example.com/private",
+            "https://example.com/private/page",
+            "https://example.com/private/public",
+            "https://example.com/private/public/page",
+            "https://example.com/file.pdf",
+            "https://example.com/dir/file.pdf",
+            "https://example.com/file.pdf?download=1",
+            "https://example.com/file.pdfx",
+            "https://example.com/search",
+            "https://example.com/search?q=anything",
+            "https://example.com/search?q=allowed&page=2",
+            "https://example.com/blog/drafts/post",
+            "https://example.com/drafts/post",
+            "https://example.com/tmp/a/cache",
+            "https://example.com/tmp/a/b/cached",
+            "https://example.com/tmp/cache",
+            "https://example.com/exact",
+            "https://example.com/exact/more",
+            "https://example.com/docs/",
+            "https://example.com/docs/index.html",
+            "https://example.com/docs/other.html",
+            "https://example.com/same",
+            "https://example.com/a%2fb",
+            "https://example.com/a/b",
+            "https://example.com/caf%c3%a9",
+            "https://example.com/page.php",
+            "https://example.com/page.php.php",
+            "https://example.com/page.php?x=1",
+            "https://example.com/with%20space",
+            "https://example.com/star*literal",
+            "https://example.com/private#fragment"
+    );
+
+    /**
+     * Tests that every URL gets the same verdict as from Crawler-Commons.
+     */
+    @Test
+    public void testMatchesCrawlerCommons() {
+        SimpleRobotRules rules = parse(ROBOTS_TXT);
+        RobotsRuleMatcher matcher = new RobotsRuleMatcher(rules);
+
+        for (String url : URLS) {
+            URI uri = URI.create(url);
+            assertEquals(rules.isAllowed(url), matcher.isAllowed(uri.getRawPath(), uri.getRawQuery()), url);
+        }
+    }
+
+    /**
+     * Tests the verdicts of the longest-match and wildcard rules, independently of Crawler-Commons.
+     */
+    @Test
+    public void testLongestMatchWins() {
+        RobotsRuleMatcher matcher = new RobotsRuleMatcher(parse(ROBOTS_TXT));
+
+        assertFalse(matcher.isAllowed("/private/page", null));
+        assertTrue(matcher.isAllowed("/private/public/page", null));
+        assertFalse(matcher.isAllowed("/file.pdf", null));
+        assertTrue(matcher.isAllowed("/file.pdf", "download=1"));
+        assertFalse(matcher.isAllowed("/search", "q=anything"));
+        assertTrue(matcher.isAllowed("/search", "q=allowed"));
+        assertTrue(matcher.isAllowed("/same", null), "Allow should win a tie with Disallow");
+        assertFalse(matcher.isAllowed("/docs/", null), "A rule for index.html should also cover its directory");
+    }
+
+    /**
+     * Tests that rules that allow or disallow everything are honoured, and that the verdict cache doesn't change
+     * the verdicts.
+     */
+    @Test
+    public void testAdapterVerdicts() {
+        RobotsTxtAdapter cached = new RobotsTxtAdapter(ROBOTS_TXT, "BlackWidow", 4);
+        for (int round = 0; round < 2; round++) {
+            for (String url : URLS) {
+                assertEquals(parse(ROBOTS_TXT).isAllowed(url), cached.isAllowed(url), url);
+            }
+        }
+
+        assertTrue(new RobotsTxtAdapter("", "BlackWidow").isAllowed("https://example.com/anything"));
+        assertFalse(new RobotsTxtAdapter("User-agent: *\nDisallow: /\n", "BlackWidow", 16)
+                .isAllowed("https://example.com/anything"));
+    }
+
+    private static SimpleRobotRules parse(String content) {
+        return new SimpleRobotRulesParser().parseContent("robots.txt", content.getBytes(StandardCharsets.UTF_8),
+                "text/plain", List.of("BlackWidow"));
+    }
+}
@@ -0,0 +1,119 @@
+package com.ashiq.blackwidow.service;
+
+import com.ashiq.blackwidow.config.ScraperConfig;
+import com.ashiq.blackwidow.fetch.DnsCache;
+import com.ashiq.blackwidow.fetch.HttpFetcher;
+import com.ashiq.blackwidow.fetch.HttpResponseCache;
+import com.ashiq.blackwidow.metrics.CrawlMetrics;
+import com.ashiq.blackwidow.support.SyntheticSite;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the robots.txt service, loading the rules of synthetic sites through an HttpFetcher.
+ */
+public class RobotsTxtServiceTests {
+
+    private DnsCache dnsCache;
+    private HttpFetcher fetcher;
+    private RobotsTxtService robotsTxtService;
+
+    @BeforeEach
+    public void setUp() {
+        ScraperConfig config = new ScraperConfig();
+        config.setMaxRetries(0);
+        config.setThrottleRetries(0);
+        config.setRobotsFailureTtl(200);
+        CrawlMetrics metrics = new CrawlMetrics(new SimpleMeterRegistry(), config);
+        dnsCache = new DnsCache(config, metrics);
+        fetcher = new HttpFetcher(config, new HttpResponseCache(config), dnsCache, metrics);
+        robotsTxtService = new RobotsTxtService(new JsoupService(fetcher, metrics, config), config, metrics);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        fetcher.close();
+        dnsCache.close();
+    }
+
+    /**
+     * Tests that concurrent checks of a host's URLs share a single robots.txt fetch, and that later checks are
+     * answered from the cache.
+     */
+    @Test
+    public void testLoadsRulesOncePerHost() throws Exception {
+        try (SyntheticSite site = SyntheticSite.builder().disallow("/page/1").latencyMillis(200).start();
+             ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<CompletableFuture<Boolean>> checks = new ArrayList<>();
+            for (int id = 0; id < 8; id++) {
+                String url = site.pageUrl(id % 2);
+                checks.add(CompletableFuture.supplyAsync(() -> robotsTxtService.isAllowed(url), executor));
+            }
+            for (int id = 0; id < 8; id++) {
+                assertEquals(id % 2 == 0, checks.get(id).get());
+            }
+            assertFalse(robotsTxtService.isAllowed(site.pageUrl(1)));
+            assertTrue(robotsTxtService.isAllowed(site.pageUrl(2)));
+
+            assertEquals(1, site.getRequestCount("/robots.txt"));
+        }
+    }
+
+    /**
+     * Tests that a host whose robots.txt is missing may be crawled, and that the answer is kept for the full TTL.
+     */
+    @Test
+    public void testMissingRobotsAllowsEverything() throws Exception {
+        try (SyntheticSite site = SyntheticSite.builder().robotsErrors(404, Integer.MAX_VALUE).start()) {
+            assertTrue(robotsTxtService.isAllowed(site.pageUrl(1)));
+            Thread.sleep(300);
+            assertTrue(robotsTxtService.isAllowed(site.pageUrl(2)));
+            assertEquals(1, site.getRequestCount("/robots.txt"));
+        }
+    }
+
+    /**
+     * Tests that a host whose robots.txt answers a server error may not be crawled, and that robots.txt is fetched
+     * again once the failure TTL has passed rather than the full TTL.
+     */
+    @Test
+    public void testServerErrorDisallowsUntilRetried() throws Exception {
+        try (SyntheticSite site = SyntheticSite.builder().robotsErrors(503, 1).start()) {
+            assertFalse(robotsTxtService.isAllowed(site.pageUrl(1)));
+            assertFalse(robotsTxtService.isAllowed(site.pageUrl(2)), "The failure should be cached for a while");
+            assertEquals(1, site.getRequestCount("/robots.txt"));
+
+            Thread.sleep(300);
+            assertTrue(robotsTxtService.isAllowed(site.pageUrl(1)));
+            assertTrue(robotsTxtService.getRules(hostKey(site)).isFetched());
+            assertEquals(2, site.getRequestCount("/robots.txt"));
+        }
+    }
+
+    /**
+     * Tests that a host that can't be connected to may not be crawled.
+     */
+    @Test
+    public void testUnreachableHostDisallowsEverything() throws IOException {
+        SyntheticSite site = SyntheticSite.builder().start();
+        site.close();
+        assertFalse(robotsTxtService.isAllowed(site.pageUrl(1)));
+        assertFalse(robotsTxtService.getRules(hostKey(site)).isFetched());
+    }
+
+    private static String hostKey(SyntheticSite site) {
+        String home = site.getHomeUrl();
+        return home.substring(0, home.indexOf("/page/"));
+    }
+}
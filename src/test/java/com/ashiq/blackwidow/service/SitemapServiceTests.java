@@ -0,0 +1,67 @@
+package com.ashiq.blackwidow.service;
+
+import com.ashiq.blackwidow.config.ScraperConfig;
+import com.ashiq.blackwidow.model.SitemapEntry;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for reading sitemaps, served from memory.
+ */
+public class SitemapServiceTests {
+
+    private static final String URLSET = "<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">"
+            + "<url><loc>https://example.com/a</loc><priority>0.8</priority></url>"
+            + "<url><loc>https://example.com/b</loc></url>"
+            + "</urlset>";
+
+    /**
+     * Tests that XML and plain text sitemaps are told apart after leading whitespace and a byte order mark.
+     */
+    @Test
+    public void testDetectsFormatAfterPadding() {
+        assertEquals(List.of("https://example.com/a", "https://example.com/b"),
+                read("﻿\n  " + URLSET));
+        assertEquals(List.of("https://example.com/c", "https://example.com/d"),
+                read("\n\n https://example.com/c\nhttps://example.com/d\n"));
+    }
+
+    /**
+     * Tests that a sitemap padded with more whitespace than is looked at to detect its format is read as XML,
+     * rather than dropped because the stream can't be reset.
+     */
+    @Test
+    public void testReadsSitemapWithLongPadding() {
+        assertEquals(List.of("https://example.com/a", "https://example.com/b"),
+                read(" ".repeat(20_000) + URLSET));
+    }
+
+    private static List<String> read(String sitemap) {
+        String url = "https://example.com/sitemap.xml";
+        Map<String, byte[]> content = Map.of(url, sitemap.getBytes(StandardCharsets.UTF_8));
+        JsoupService jsoupService = new JsoupService(null, null, null) {
+            @Override
+            public InputStream getContentStream(String contentUrl) throws FileNotFoundException {
+                byte[] bytes = content.get(contentUrl);
+                if (bytes == null) {
+                    throw new FileNotFoundException(contentUrl);
+                }
+                return new ByteArrayInputStream(bytes);
+            }
+        };
+
+        List<String> urls = new CopyOnWriteArrayList<>();
+        new SitemapService(jsoupService, new ScraperConfig()).streamSitemaps(List.of(url),
+                (SitemapEntry entry) -> urls.add(entry.url()));
+        return urls;
+    }
+}
@@ -0,0 +1,743 @@
+package com.ashiq.blackwidow.support;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Embedded HTTP server generating a synthetic site, for crawling without a network.
+ * Pages are numbered from 0 and served at {@code /page/<id>}; page 0 is the home page. Pages form a tree where
+ * page {@code i} links to pages {@code i * fanOut + 1} to {@code i * fanOut + fanOut}, plus back to its parent
+ * and to the home page, so the depth of the site follows from the number of pages and the fan-out.
+ * <p>
+ * The site can also serve robots.txt rules with a Crawl-delay, or an error in their place, extra pages that are only listed in nested,
+ * gzipped sitemaps, injected latency, 403/429/5xx responses, redirect chains, going dark partway through, links to
+ * large PDF files and oversized pages, endless sort orders of every page, like the listings of a shop, ETag
+ * and Last-Modified validators answered with 304 Not Modified, and gzip or deflate compressed pages. Pages are generated on request, so sites of millions of pages cost no memory. Requests are counted per path unless tracking is off.
+ */
+public class SyntheticSite implements Closeable {
+
+    static {
+        // Without TCP_NODELAY, Nagle's algorithm and delayed ACKs add 40 ms to every keep-alive response
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private static final String LAST_MODIFIED = "Mon, 01 Jan 2024 00:00:00 GMT";
+
+    private static final String[] WORDS = {
+            "cotton", "shirt", "blue", "red", "green", "linen", "jacket", "wool", "soft", "warm", "light", "summer",
+            "winter", "classic", "slim", "fit", "regular", "size", "small", "medium", "large", "button", "collar",
+            "pocket", "sleeve", "long", "short", "washable", "durable", "organic", "stretch", "denim", "casual",
+            "formal", "office", "weekend", "travel", "pack", "gift", "new", "season", "colour", "pattern", "stripe",
+            "check", "plain", "print", "made", "in", "with", "and", "for", "the", "a", "of", "to", "every", "day"
+    };
+
+    private final Builder settings;
+    private final List<HttpServer> servers = new ArrayList<>();
+    private final List<String> baseUrls = new ArrayList<>();
+    private final String baseUrl;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final Map<String, AtomicInteger> requestsByPath = new ConcurrentHashMap<>();
+    private final Queue<Long> pageRequestTimes = new ConcurrentLinkedQueue<>();
+    private final Map<Integer, AtomicInteger> throttledPages = new ConcurrentHashMap<>();
+    private final AtomicInteger pageRequests = new AtomicInteger();
+    private final Map<String, AtomicLong> bodyBytesByPath = new ConcurrentHashMap<>();
+    private final AtomicInteger notModified = new AtomicInteger();
+    private final AtomicInteger robotsRequests = new AtomicInteger();
+
+    private SyntheticSite(Builder settings) throws IOException {
+        this.settings = settings;
+        for (int i = 0; i < Math.max(1, settings.hosts); i++) {
+            HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+            server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+            server.createContext("/", this::handle);
+            server.start();
+            servers.add(server);
+            baseUrls.add("http://localhost:" + server.getAddress().getPort());
+        }
+        this.baseUrl = baseUrls.get(0);
+    }
+
+    /**
+     * Creates a builder for a site.
+     *
+     * @return The builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Gets the URL of the home page.
+     *
+     * @return The URL of page 0
+     */
+    public String getHomeUrl() {
+        return pageUrl(0);
+    }
+
+    /**
+     * Gets the URL of a page, on the host serving it.
+     *
+     * @param id The id of the page
+     * @return The URL
+     */
+    public String pageUrl(int id) {
+        return baseUrls.get(Math.floorMod(id, baseUrls.size())) + "/page/" + id;
+    }
+
+    /**
+     * Gets the number of pages linked from the home page, directly or indirectly.
+     *
+     * @return The number of linked pages
+     */
+    public int getLinkedPages() {
+        return settings.pages;
+    }
+
+    /**
+     * Gets the total number of pages, including those only listed in sitemaps.
+     *
+     * @return The number of pages
+     */
+    public int getTotalPages() {
+        return settings.pages + settings.sitemapPages;
+    }
+
+    /**
+     * Gets the number of requests the server has answered.
+     *
+     * @return The number of requests
+     */
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * Gets the highest number of requests the server was answering at once.
+     *
+     * @return The peak number of concurrent requests
+     */
+    public int getMaxConcurrentRequests() {
+        return maxInFlight.get();
+    }
+
+    /**
+     * Gets the number of requests for a path. Always 0 when request tracking is off.
+     *
+     * @param path The path, like {@code /page/3}
+     * @return The number of requests
+     */
+    public int getRequestCount(String path) {
+        AtomicInteger count = requestsByPath.get(path);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * Gets the paths that were requested. Empty when request tracking is off.
+     *
+     * @return The paths
+     */
+    public List<String> getRequestedPaths() {
+        return new ArrayList<>(requestsByPath.keySet());
+    }
+
+    /**
+     * Gets the times pages were requested, in order. Empty when request tracking is off.
+     *
+     * @return The request times from {@link System#nanoTime()}
+     */
+    public List<Long> getPageRequestTimes() {
+        return new ArrayList<>(pageRequestTimes);
+    }
+
+    /**
+     * Gets the number of body bytes written for a PDF file or oversized page, which may be less than its size if
+     * the client stopped reading.
+     *
+     * @param path The path, like {@code /files/5.pdf}
+     * @return The number of bytes
+     */
+    public long getBodyBytesSent(String path) {
+        AtomicLong bytes = bodyBytesByPath.get(path);
+        return bytes == null ? 0 : bytes.get();
+    }
+
+    /**
+     * Gets the number of conditional requests answered with 304 Not Modified.
+     *
+     * @return The number of 304 responses
+     */
+    public int getNotModifiedCount() {
+        return notModified.get();
+    }
+
+    @Override
+    public void close() {
+        for (HttpServer server : servers) {
+            server.stop(0);
+            ((ExecutorService) server.getExecutor()).close();
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            requests.incrementAndGet();
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            if (settings.trackRequests) {
+                requestsByPath.computeIfAbsent(path, k -> new AtomicInteger()).incrementAndGet();
+                if (path.startsWith("/page/")) {
+                    pageRequestTimes.add(System.nanoTime());
+                }
+            }
+            if (settings.latencyMillis > 0) {
+                Thread.sleep(settings.latencyMillis);
+            }
+
+            if (path.equals("/robots.txt") && robotsRequests.incrementAndGet() <= settings.robotsErrors) {
+                send(exchange, settings.robotsErrorStatus, "text/plain", "Error".getBytes(StandardCharsets.UTF_8));
+            } else if (path.equals("/robots.txt")) {
+                send(exchange, 200, "text/plain", robotsTxt().getBytes(StandardCharsets.UTF_8));
+            } else if (path.equals("/sitemap-index.xml")) {
+                send(exchange, 200, "application/xml", sitemapIndex(List.of(baseUrl + "/sitemaps/nested.xml")));
+            } else if (path.equals("/sitemaps/nested.xml")) {
+                List<String> children = new ArrayList<>();
+                for (int i = 0; i * settings.sitemapSize < settings.sitemapPages; i++) {
+                    children.add(baseUrl + "/sitemaps/pages-" + i + ".xml.gz");
+                }
+                send(exchange, 200, "application/xml", sitemapIndex(children));
+            } else if (path.startsWith("/sitemaps/pages-") && path.endsWith(".xml.gz")) {
+                int chunk = parseId(path.substring("/sitemaps/pages-".length(), path.length() - ".xml.gz".length()));
+                send(exchange, 200, "application/x-gzip", gzip(urlset(chunk)));
+            } else if (path.startsWith("/page/")) {
+                servePage(exchange, parseId(path.substring("/page/".length())));
+            } else if (path.startsWith("/redirect/")) {
+                String[] parts = path.substring("/redirect/".length()).split("/");
+                int id = parseId(parts[0]);
+                int hop = parseId(parts[1]);
+                redirect(exchange, hop + 1 < settings.redirectHops ? "/redirect/" + id + "/" + (hop + 1) : "/moved/" + id);
+            } else if (path.startsWith("/files/") && path.endsWith(".pdf")) {
+                exchange.getResponseHeaders().set("Content-Type", "application/pdf");
+                if (exchange.getRequestMethod().equals("HEAD")) {
+                    exchange.getResponseHeaders().set("Content-Length", String.valueOf(settings.fileSize));
+                    exchange.sendResponseHeaders(200, -1);
+                } else {
+                    exchange.sendResponseHeaders(200, settings.fileSize);
+                    stream(exchange, path, new byte[0], new byte[64 * 1024], settings.fileSize);
+                }
+            } else if (path.startsWith("/large/")) {
+                // Streamed without a Content-Length, so only the bytes read tell how large it is
+                exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+                exchange.sendResponseHeaders(200, 0);
+                byte[] filler = "<p>Filler</p>".repeat(4096).getBytes(StandardCharsets.UTF_8);
+                stream(exchange, path, "<!DOCTYPE html><html><body>".getBytes(StandardCharsets.UTF_8), filler,
+                        settings.largePageSize);
+            } else if (path.startsWith("/moved/")) {
+                int id = parseId(path.substring("/moved/".length()));
+                send(exchange, id >= 0 && id < getTotalPages() ? 200 : 404, "text/html; charset=utf-8", page(id, 0));
+            } else {
+                send(exchange, 404, "text/plain", "Not found".getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private void servePage(HttpExchange exchange, int id) throws IOException {
+        if (pageRequests.incrementAndGet() > settings.failAfter) {
+            send(exchange, 500, "text/plain", "Internal server error".getBytes(StandardCharsets.UTF_8));
+        } else if (id < 0 || id >= getTotalPages()) {
+            send(exchange, 404, "text/plain", "Not found".getBytes(StandardCharsets.UTF_8));
+        } else if (id > 0 && isEvery(id, settings.forbiddenEvery)) {
+            send(exchange, 403, "text/plain", "Forbidden".getBytes(StandardCharsets.UTF_8));
+        } else if (id > 0 && isEvery(id, settings.tooManyRequestsEvery) && throttle(id)) {
+            setRetryAfter(exchange);
+            send(exchange, 429, "text/plain", "Too many requests".getBytes(StandardCharsets.UTF_8));
+        } else if (id > 0 && isEvery(id, settings.serverErrorEvery) && throttle(id)) {
+            setRetryAfter(exchange);
+            send(exchange, 503, "text/plain", "Unavailable".getBytes(StandardCharsets.UTF_8));
+        } else if (id > 0 && isEvery(id, settings.redirectEvery)) {
+            redirect(exchange, settings.redirectHops > 1 ? "/redirect/" + id + "/1" : "/moved/" + id);
+        } else if (isNotModified(exchange, id)) {
+            notModified.incrementAndGet();
+            exchange.sendResponseHeaders(304, -1);
+        } else {
+            if (settings.etags) {
+                exchange.getResponseHeaders().set("ETag", etag(id));
+            }
+            if (settings.lastModified) {
+                exchange.getResponseHeaders().set("Last-Modified", LAST_MODIFIED);
+            }
+            byte[] page = page(id, sortOrder(exchange));
+            String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            if (settings.contentEncoding != null && acceptEncoding != null && acceptEncoding.contains(settings.contentEncoding)) {
+                exchange.getResponseHeaders().set("Content-Encoding", settings.contentEncoding);
+                page = settings.contentEncoding.equals("gzip") ? gzip(page) : deflate(page);
+            }
+            send(exchange, 200, "text/html; charset=utf-8", page);
+        }
+    }
+
+    /**
+     * Checks if a conditional request names the validator the page was served with. Pages never change, so only
+     * the exact ETag or date sent matches.
+     */
+    private boolean isNotModified(HttpExchange exchange, int id) {
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        if (settings.etags && ifNoneMatch != null) {
+            return ifNoneMatch.equals(etag(id));
+        }
+        String ifModifiedSince = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+        return settings.lastModified && LAST_MODIFIED.equals(ifModifiedSince);
+    }
+
+    private static String etag(int id) {
+        return "\"page-" + id + "\"";
+    }
+
+    private byte[] page(int id, int sort) {
+        StringBuilder html = new StringBuilder(512)
+                .append("<!DOCTYPE html><html><head><title>Page ").append(id).append("</title></head><body>")
+                .append("<h1>Page ").append(id).append("</h1>");
+        if (settings.sortVariants) {
+            // A description of its own per page, so only the sort orders of a page are near-duplicates of it
+            Random random = new Random(id);
+            html.append("<p>");
+            for (int i = 0; i < 500; i++) {
+                html.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+            html.append("</p><p><a href=\"/page/").append(id)
+                    .append("?sort=").append(sort + 1).append("\">Next sort order</a></p>");
+        }
+        html.append("<ul>");
+        if (id < settings.pages) {
+            long first = (long) id * settings.fanOut + 1;
+            for (long child = first; child < first + settings.fanOut && child < settings.pages; child++) {
+                html.append("<li><a href=\"").append(pageLink((int) child)).append("\">Page ").append(child).append("</a></li>");
+            }
+        }
+        if (id > 0) {
+            int parent = id < settings.pages ? (id - 1) / settings.fanOut : 0;
+            html.append("<li><a href=\"").append(pageLink(parent)).append("\">Up</a></li>")
+                    .append("<li><a href=\"").append(pageLink(0)).append("#top\">Home</a></li>");
+        }
+        if (id > 0 && isEvery(id, settings.fileEvery)) {
+            html.append("<li><a href=\"/files/").append(id).append(".pdf\">PDF</a></li>");
+        }
+        if (id > 0 && isEvery(id, settings.largePageEvery)) {
+            html.append("<li><a href=\"/large/").append(id).append("\">Large</a></li>");
+        }
+        html.append("<li><a href=\"https://elsewhere.example.org/\">Elsewhere</a></li>")
+                .append("</ul></body></html>");
+        return html.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gets the link to a page, relative unless the site is spread over several hosts.
+     */
+    private String pageLink(int id) {
+        return baseUrls.size() > 1 ? pageUrl(id) : "/page/" + id;
+    }
+
+    private String robotsTxt() {
+        StringBuilder robots = new StringBuilder("User-agent: *\n");
+        for (String path : settings.disallow) {
+            robots.append("Disallow: ").append(path).append('\n');
+        }
+        if (settings.crawlDelaySeconds > 0) {
+            robots.append("Crawl-delay: ").append(settings.crawlDelaySeconds).append('\n');
+        }
+        if (settings.sitemapPages > 0) {
+            robots.append("\nSitemap: ").append(baseUrl).append("/sitemap-index.xml\n");
+        }
+        return robots.toString();
+    }
+
+    private static byte[] sitemapIndex(List<String> sitemaps) {
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                .append("<sitemapindex xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n");
+        for (String sitemap : sitemaps) {
+            xml.append("  <sitemap><loc>").append(sitemap).append("</loc></sitemap>\n");
+        }
+        return xml.append("</sitemapindex>\n").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] urlset(int chunk) {
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                .append("<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n");
+        int first = settings.pages + chunk * settings.sitemapSize;
+        int end = Math.min(first + settings.sitemapSize, getTotalPages());
+        for (int id = first; id < end; id++) {
+            xml.append("  <url><loc>").append(pageUrl(id)).append("</loc>");
+            if (settings.importantSitemapPageEvery <= 0) {
+                xml.append("<priority>0.5</priority>");
+            } else if (isEvery(id, settings.importantSitemapPageEvery)) {
+                xml.append("<lastmod>").append(LocalDate.now()).append("</lastmod><priority>1.0</priority>");
+            } else {
+                xml.append("<lastmod>2001-01-01</lastmod><priority>0.1</priority>");
+            }
+            xml.append("</url>\n");
+        }
+        return xml.append("</urlset>\n").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] gzip(byte[] content) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(content);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] content) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflate = new DeflaterOutputStream(out)) {
+            deflate.write(content);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes a body of the given size, made of a head and repeated filler, counting the bytes written until the
+     * client stops reading.
+     * The server writes to the socket while holding a monitor, so a virtual thread blocked on a client that reads
+     * slowly would pin its carrier, and on a single CPU stall the crawler in the same JVM. Writing from a platform
+     * thread avoids that.
+     */
+    private void stream(HttpExchange exchange, String path, byte[] head, byte[] filler, long size)
+            throws InterruptedException {
+        AtomicLong sent = bodyBytesByPath.computeIfAbsent(path, k -> new AtomicLong());
+        Thread.ofPlatform().daemon().start(() -> {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(head);
+                sent.addAndGet(head.length);
+                for (long left = size - head.length; left > 0; left -= filler.length) {
+                    int length = (int) Math.min(left, filler.length);
+                    out.write(filler, 0, length);
+                    sent.addAndGet(length);
+                }
+            } catch (IOException e) {
+                // The client gave up on the body
+            }
+        }).join();
+    }
+
+    private static void redirect(HttpExchange exchange, String location) throws IOException {
+        exchange.getResponseHeaders().set("Location", location);
+        exchange.sendResponseHeaders(302, -1);
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Checks if a throttled page should still be refused, counting the refusal.
+     */
+    private boolean throttle(int id) {
+        return throttledPages.computeIfAbsent(id, key -> new AtomicInteger()).getAndIncrement()
+                < settings.throttledRequests;
+    }
+
+    private void setRetryAfter(HttpExchange exchange) {
+        if (settings.retryAfter != null) {
+            exchange.getResponseHeaders().set("Retry-After", settings.retryAfter);
+        }
+    }
+
+    /**
+     * Reads the sort order from the query of a page request, 0 if there is none.
+     */
+    private static int sortOrder(HttpExchange exchange) {
+        String query = exchange.getRequestURI().getQuery();
+        return query != null && query.startsWith("sort=") ? Math.max(0, parseId(query.substring(5))) : 0;
+    }
+
+    private static boolean isEvery(int id, int every) {
+        return every > 0 && id % every == 0;
+    }
+
+    private static int parseId(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Builder for the settings of a synthetic site.
+     */
+    public static class Builder {
+        private int pages = 100;
+        private int fanOut = 5;
+        private List<String> disallow = List.of();
+        private int crawlDelaySeconds;
+        private int robotsErrorStatus;
+        private int robotsErrors;
+        private int sitemapPages;
+        private int sitemapSize = 1000;
+        private int importantSitemapPageEvery;
+        private long latencyMillis;
+        private int forbiddenEvery;
+        private int tooManyRequestsEvery;
+        private int serverErrorEvery;
+        private int throttledRequests = Integer.MAX_VALUE;
+        private String retryAfter = "1";
+        private int failAfter = Integer.MAX_VALUE;
+        private int redirectEvery;
+        private int fileEvery;
+        private long fileSize;
+        private int largePageEvery;
+        private long largePageSize;
+        private int redirectHops = 1;
+        private boolean trackRequests = true;
+        private boolean sortVariants;
+        private boolean etags;
+        private boolean lastModified;
+        private String contentEncoding;
+        private int hosts = 1;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the number of pages linked from the home page, directly or indirectly.
+         */
+        public Builder pages(int pages) {
+            this.pages = pages;
+            return this;
+        }
+
+        /**
+         * Sets the number of child pages each page links to.
+         */
+        public Builder fanOut(int fanOut) {
+            this.fanOut = fanOut;
+            return this;
+        }
+
+        /**
+         * Sets the path prefixes robots.txt disallows.
+         */
+        public Builder disallow(String... paths) {
+            this.disallow = List.of(paths);
+            return this;
+        }
+
+        /**
+         * Sets the Crawl-delay in robots.txt.
+         */
+        public Builder crawlDelaySeconds(int crawlDelaySeconds) {
+            this.crawlDelaySeconds = crawlDelaySeconds;
+            return this;
+        }
+
+        /**
+         * Makes the first requests for robots.txt answer with the given status instead of the rules.
+         */
+        public Builder robotsErrors(int status, int requests) {
+            this.robotsErrorStatus = status;
+            this.robotsErrors = requests;
+            return this;
+        }
+
+        /**
+         * Sets the number of extra pages that are only listed in sitemaps, and how many go in each gzipped
+         * sitemap. The sitemaps hang off a sitemap index nested in another one, which robots.txt points to.
+         */
+        public Builder sitemapPages(int sitemapPages, int sitemapSize) {
+            this.sitemapPages = sitemapPages;
+            this.sitemapSize = sitemapSize;
+            return this;
+        }
+
+        /**
+         * Lists every so many sitemap pages with priority 1.0 and a modification time of today, and the others with
+         * priority 0.1 and a modification time long ago.
+         */
+        public Builder importantSitemapPageEvery(int every) {
+            this.importantSitemapPageEvery = every;
+            return this;
+        }
+
+        /**
+         * Sets the delay before every response.
+         */
+        public Builder latencyMillis(long latencyMillis) {
+            this.latencyMillis = latencyMillis;
+            return this;
+        }
+
+        /**
+         * Makes every nth page answer 403 Forbidden.
+         */
+        public Builder forbiddenEvery(int every) {
+            this.forbiddenEvery = every;
+            return this;
+        }
+
+        /**
+         * Makes every nth page answer 429 Too Many Requests, with a Retry-After header.
+         */
+        public Builder tooManyRequestsEvery(int every) {
+            this.tooManyRequestsEvery = every;
+            return this;
+        }
+
+        /**
+         * Makes every nth page answer 503 Service Unavailable, with a Retry-After header.
+         */
+        public Builder serverErrorEvery(int every) {
+            this.serverErrorEvery = every;
+            return this;
+        }
+
+        /**
+         * Sets how many requests a 429 or 503 page refuses before it is served. By default it never is.
+         */
+        public Builder throttledRequests(int throttledRequests) {
+            this.throttledRequests = throttledRequests;
+            return this;
+        }
+
+        /**
+         * Sets the Retry-After header of 429 and 503 responses, or leaves it out when null. Defaults to 1 second.
+         */
+        public Builder retryAfter(String retryAfter) {
+            this.retryAfter = retryAfter;
+            return this;
+        }
+
+        /**
+         * Makes the site go dark after the given number of page requests, answering 500 to every page request
+         * from then on.
+         */
+        public Builder failAfter(int pageRequests) {
+            this.failAfter = pageRequests;
+            return this;
+        }
+
+        /**
+         * Makes every nth page redirect, through the given number of redirects, to {@code /moved/<id>}.
+         */
+        public Builder redirectEvery(int every, int hops) {
+            this.redirectEvery = every;
+            this.redirectHops = Math.max(1, hops);
+            return this;
+        }
+
+        /**
+         * Makes every nth page link to a PDF file of the given size at {@code /files/<id>.pdf}, which also
+         * answers HEAD requests.
+         */
+        public Builder fileEvery(int every, long size) {
+            this.fileEvery = every;
+            this.fileSize = size;
+            return this;
+        }
+
+        /**
+         * Makes every nth page link to an HTML page of the given size at {@code /large/<id>}, streamed without a
+         * Content-Length.
+         */
+        public Builder largePageEvery(int every, long size) {
+            this.largePageEvery = every;
+            this.largePageSize = size;
+            return this;
+        }
+
+        /**
+         * Gives every page a description and a link to itself in the next sort order, {@code /page/<id>?sort=<n>},
+         * which serves the same page again, without end, like listings whose sort order only shows in the URL.
+         */
+        public Builder sortVariants(boolean sortVariants) {
+            this.sortVariants = sortVariants;
+            return this;
+        }
+
+        /**
+         * Sets whether pages are served with an ETag and a Last-Modified date, and answer 304 Not Modified to a
+         * request carrying the same value in If-None-Match or If-Modified-Since.
+         */
+        public Builder validators(boolean etags, boolean lastModified) {
+            this.etags = etags;
+            this.lastModified = lastModified;
+            return this;
+        }
+
+        /**
+         * Compresses pages with the given Content-Encoding, {@code gzip} or {@code deflate}, when the request
+         * accepts it.
+         */
+        public Builder contentEncoding(String contentEncoding) {
+            this.contentEncoding = contentEncoding;
+            return this;
+        }
+
+        /**
+         * Spreads the site over several hosts, each on a loopback port of its own, with page {@code i} served by
+         * host {@code i % hosts} and linked to there. The crawler sees every port as a host of its own, on the
+         * same domain. Every host serves the same robots.txt.
+         */
+        public Builder hosts(int hosts) {
+            this.hosts = hosts;
+            return this;
+        }
+
+        /**
+         * Sets whether requests are counted per path. Turn this off for large sites, where the counts would
+         * take up memory in the process being measured.
+         */
+        public Builder trackRequests(boolean trackRequests) {
+            this.trackRequests = trackRequests;
+            return this;
+        }
+
+        /**
+         * Starts a server for the site on a free loopback port, or one per host.
+         *
+         * @return The running site, which must be closed
+         * @throws IOException If the server can't be started
+         */
+        public SyntheticSite start() throws IOException {
+            return new SyntheticSite(this);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.ashiq.blackwidow.util;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Element;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the StreamingLinkExtractor.
+ */
+public class StreamingLinkExtractorTests {
+
+    private static final String PAGE_URL = "https://example.com/docs/guide/index.html?v=2";
+
+    /**
+     * Tests that the extractor finds the same links as Jsoup's a[href] selection, in the same order.
+     */
+    @Test
+    public void testMatchesJsoup() throws IOException {
+        String html = """
+                <!DOCTYPE html>
+                <html><head><title>Links <a href="/not-a-link">x</a></title>
+                <script>var s = '<a href="/in-script">';</script>
+                <style>a[href="/in-style"] { color: red }</style>
+                </head><body>
+                <!-- <a href="/in-comment"> -->
+                <a href="https://example.com/absolute">absolute</a>
+                <A HREF='relative.html'>relative</A>
+                <a class=nav href=/unquoted>unquoted</a>
+                <a href="../up/one">up</a>
+                <a href="//cdn.example.com/protocol-relative">cdn</a>
+                <a href="?page=3">query</a>
+                <a href="#top">fragment</a>
+                <a href="/search?q=a&amp;b=c">entity</a>
+                <a name="anchor-without-href">no href</a>
+                <a href = "  /spaced  " >spaced</a>
+                </body></html>
+                """;
+
+        assertEquals(jsoupLinks(html), streamingLinks(html));
+    }
+
+    /**
+     * Tests that the first base element changes how relative links are resolved.
+     */
+    @Test
+    public void testBaseHref() throws IOException {
+        String html = """
+                <html><head><base href="https://example.com/other/"><base href="https://ignored.com/"></head>
+                <body><a href="page.html">page</a><a href="/root">root</a></body></html>
+                """;
+
+        assertEquals(List.of("https://example.com/other/page.html", "https://example.com/root"), streamingLinks(html));
+        assertEquals(jsoupLinks(html), streamingLinks(html));
+    }
+
+    /**
+     * Tests that percent escapes in the page URL are kept as they are rather than encoded a second time.
+     */
+    @Test
+    public void testPercentEscapedBase() throws IOException {
+        String pageUrl = "http://h.com/a%20b/c.html?q=100%25";
+        String html = """
+                <a href="?x=1">query</a>
+                <a href="d.html">relative</a>
+                <a href="#top">fragment</a>
+                <a href="?y=a%2Fb">escaped query</a>
+                """;
+
+        List<String> links = streamingLinks(html, pageUrl);
+        assertEquals(List.of(
+                "http://h.com/a%20b/c.html?x=1",
+                "http://h.com/a%20b/d.html",
+                "http://h.com/a%20b/c.html?q=100%25#top",
+                "http://h.com/a%20b/c.html?y=a%2Fb"), links);
+        assertEquals(jsoupLinks(html, pageUrl), links);
+    }
+
+    /**
+     * Tests that a page URL without a path keeps its escaped query when a root path is added.
+     */
+    @Test
+    public void testPercentEscapedBaseWithoutPath() throws IOException {
+        String html = """
+                <a href="page.html">relative</a>
+                <a href="#top">fragment</a>
+                """;
+
+        assertEquals(List.of("http://h.com/page.html", "http://h.com/?q=a%20b#top"),
+                streamingLinks(html, "http://h.com?q=a%20b"));
+    }
+
+    private static List<String> streamingLinks(String html) throws IOException {
+        return streamingLinks(html, PAGE_URL);
+    }
+
+    private static List<String> streamingLinks(String html, String pageUrl) throws IOException {
+        List<String> links = new ArrayList<>();
+        new StreamingLinkExtractor().extractLinks(new StringReader(html), pageUrl, links::add);
+        return links;
+    }
+
+    private static List<String> jsoupLinks(String html) {
+        return jsoupLinks(html, PAGE_URL);
+    }
+
+    private static List<String> jsoupLinks(String html, String pageUrl) {
+        List<String> links = new ArrayList<>();
+        for (Element link : Jsoup.parse(html, pageUrl).select("a[href]")) {
+            String href = link.attr("abs:href").trim();
+            if (!href.isEmpty()) {
+                links.add(href);
+            }
+        }
+        return links;
+    }
+}